@@ -94,6 +94,19 @@ public class CommonConfig {
    */
   public static final String DEFAULT_BUFFER_TYPE = "OpenRate.buffer.ArrayListQueueBuffer";
 
+  /**
+   * The capacity of the buffers in a pipeline, if the buffer class is a
+   * bounded buffer (for example the ring buffers). Unbounded buffers ignore
+   * this value. Set in the pipeline configuration, next to the buffer class.
+   */
+  public static final String BUFFER_CAPACITY = "BufferCapacity";
+
+  /**
+   * The default capacity for bounded buffers. Suppliers will block when a
+   * buffer is full, so this should be larger than the batch size.
+   */
+  public static final String DEFAULT_BUFFER_CAPACITY = "16384";
+
   /**
    * Output adapter performance setting. This specifies the configuration
    * property name for setting the number of threads to allocate for output
@@ -130,6 +130,12 @@ public interface IPipeline
    */
   public boolean getSchedulerHigh();
 
+  /**
+   * Used for processing schedule management - wake the pipe from its idle
+   * sleep because new input has arrived
+   */
+  public void wakeUp();
+
   /**
    * Returns true if the pipe aborted
    *
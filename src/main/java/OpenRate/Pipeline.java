@@ -57,6 +57,7 @@ package OpenRate;
 import OpenRate.adapter.IInputAdapter;
 import OpenRate.adapter.IOutputAdapter;
 import OpenRate.adapter.realTime.IRTAdapter;
+import OpenRate.buffer.IBoundedBuffer;
 import OpenRate.buffer.IBuffer;
 import OpenRate.configurationmanager.ClientManager;
 import OpenRate.configurationmanager.IEventInterface;
@@ -187,6 +188,10 @@ public class Pipeline
   // long enough to roll from one file to the next at high speed.
   private long schedulerHighSpeed = 0;
 
+  // Used to wake the pipeline from its idle sleep when input arrives
+  private final Object idleLock = new Object();
+  private boolean wakeUpRequested = false;
+
   // Used to map the buffers in order that we can interrogate them
   ArrayList<IBuffer> bufferList = new ArrayList<>();
 
@@ -243,10 +248,54 @@ public class Pipeline
     // Set the max transactions
     TM.setMaxTransactions(maxTransTM);
 
+    // set up how the transactions are committed
+    initCommitScheduling();
+
     // set up the logger
     setPipeLog(LogUtil.getLogUtil().getLogger(Name));
   }
 
+  /**
+   * Read the commit scheduling properties of the pipeline and pass them to the
+   * transaction manager:
+   *  - CommitThreads: number of threads informing the clients of each
+   *    transaction phase in parallel (default 1, in turn)
+   *  - OrderedCommit: if the transactions must be finished in the order they
+   *    were flushed (default true)
+   *  - CommitPhaseTimeout: time in ms each phase may take before the late
+   *    clients are treated as failed (default 0, no limit). A client still
+   *    busy after twice the timeout is interrupted and left behind
+   *
+   * @throws InitializationException
+   */
+  private void initCommitScheduling() throws InitializationException {
+    String commitThreads = PropertyUtils.getPropertyUtils().getPropertyValueDef("PipelineList." + symbolicName + ".CommitThreads", "1");
+    String orderedCommit = PropertyUtils.getPropertyUtils().getPropertyValueDef("PipelineList." + symbolicName + ".OrderedCommit", "true");
+    String phaseTimeout = PropertyUtils.getPropertyUtils().getPropertyValueDef("PipelineList." + symbolicName + ".CommitPhaseTimeout", "0");
+    int commitThreadsTM;
+    long phaseTimeoutTM;
+
+    try {
+      commitThreadsTM = Integer.parseInt(commitThreads);
+      phaseTimeoutTM = Long.parseLong(phaseTimeout);
+    } catch (NumberFormatException ex) {
+      message = "CommitThreads and CommitPhaseTimeout must be numeric values, but we got <" + commitThreads + "> and <" + phaseTimeout + "> in pipeline <" + symbolicName + ">. Aborting.";
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (commitThreadsTM < 1 || phaseTimeoutTM < 0) {
+      message = "CommitThreads must be at least 1 and CommitPhaseTimeout must not be negative in pipeline <" + symbolicName + ">. Aborting.";
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (!orderedCommit.equalsIgnoreCase("true") && !orderedCommit.equalsIgnoreCase("false")) {
+      message = "OrderedCommit must be true or false, but we got <" + orderedCommit + "> in pipeline <" + symbolicName + ">. Aborting.";
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    TM.setCommitScheduling(commitThreadsTM, Boolean.parseBoolean(orderedCommit), phaseTimeoutTM);
+  }
+
 // -----------------------------------------------------------------------------
 // --------------------- Pipeline Building functions ---------------------------
 // -----------------------------------------------------------------------------
@@ -668,6 +717,11 @@ public class Pipeline
     IPlugIn tmpPlugIn;
     int Index;
 
+    // ------------------------- Check buffer type -------------------------
+    // Single threaded buffers can only be used if all the plug ins have a
+    // single thread, because each buffer has the plug in on both sides
+    checkBufferThreading(BufferClass);
+
     // ------------------------- Hookup buffers ----------------------------
     // Now that we have the input and the output, link them with a buffer
     // We will insert plugins, reconnecting the buffers as necessary later, but
@@ -677,7 +731,7 @@ public class Pipeline
       // Hookup the input buffers - there can only be one input adapter of each
       // type (realtime / batch) at the moment, so we can create these
       // statically
-      tmpBuffer = (IBuffer) BufferClass.newInstance();
+      tmpBuffer = createBuffer(BufferClass);
       bufferList.add(tmpBuffer);
 
       batchInputAdapter.setBatchOutboundValidBuffer(tmpBuffer);
@@ -699,7 +753,7 @@ public class Pipeline
 
         for (Index = 1; Index < plugInList.size(); Index++) {
           // create a new buffer
-          tmpBuffer = (IBuffer) BufferClass.newInstance();
+          tmpBuffer = createBuffer(BufferClass);
           bufferList.add(tmpBuffer);
 
           // hook the buffer up to the next processing module for batch
@@ -712,11 +766,11 @@ public class Pipeline
         }
 
         // Last processing module, hook it up to the first output adapter
-        tmpBuffer = (IBuffer) BufferClass.newInstance();
+        tmpBuffer = createBuffer(BufferClass);
         bufferList.add(tmpBuffer);
 
         // Last processing module, hook it up to the first output adapter
-        tmpBuffer = (IBuffer) BufferClass.newInstance();
+        tmpBuffer = createBuffer(BufferClass);
         tmpPlugIn = plugInList.get(plugInList.size() - 1);
         tmpPlugIn.setOutbound(tmpBuffer);
         tmpBuffer.setSupplier(tmpPlugIn.getSymbolicName());
@@ -745,7 +799,7 @@ public class Pipeline
       // do the rest of the chain.
       for (Index = 1; Index < batchOutputAdapterList.size(); Index++) {
         // create a new buffer for the valid and error records
-        tmpBuffer = (IBuffer) BufferClass.newInstance();
+        tmpBuffer = createBuffer(BufferClass);
         bufferList.add(tmpBuffer);
 
         // hook the valid and error buffers up to the next processing module
@@ -768,6 +822,69 @@ public class Pipeline
     }
   }
 
+  /**
+   * Create a buffer of the configured class. If the buffer is bounded, the
+   * capacity is set from the pipeline configuration.
+   *
+   * @param BufferClass The FIFO buffer class we are using for batch pipes
+   * @return The new buffer
+   * @throws InstantiationException
+   * @throws IllegalAccessException
+   * @throws InitializationException
+   */
+  private IBuffer createBuffer(Class<?> BufferClass)
+          throws InstantiationException, IllegalAccessException, InitializationException {
+    IBuffer newBuffer = (IBuffer) BufferClass.newInstance();
+
+    if (newBuffer instanceof IBoundedBuffer) {
+      String bufferCapacity = PropertyUtils.getPropertyUtils().getPipelinePropertyValueDef(symbolicName,
+              "Configuration",
+              CommonConfig.BUFFER_CAPACITY,
+              CommonConfig.DEFAULT_BUFFER_CAPACITY);
+
+      try {
+        ((IBoundedBuffer) newBuffer).setCapacity(Integer.parseInt(bufferCapacity));
+      } catch (IllegalArgumentException ex) {
+        message = "Invalid buffer capacity <" + bufferCapacity + "> in pipeline <" + symbolicName + ">";
+        throw new InitializationException(message, ex, getSymbolicName());
+      }
+    }
+
+    return newBuffer;
+  }
+
+  /**
+   * Check that a single threaded buffer class is only used in a pipeline where
+   * all of the plug ins run a single thread.
+   *
+   * @param BufferClass The FIFO buffer class we are using for batch pipes
+   * @throws InitializationException
+   */
+  private void checkBufferThreading(Class<?> BufferClass) throws InitializationException {
+    if (IBoundedBuffer.class.isAssignableFrom(BufferClass)) {
+      boolean singleThreaded;
+
+      try {
+        singleThreaded = ((IBoundedBuffer) BufferClass.newInstance()).isSingleThreaded();
+      } catch (InstantiationException | IllegalAccessException ex) {
+        message = "Error instantiating buffer class in pipeline <"
+                + symbolicName + ">. <" + ex.getMessage() + ">";
+        throw new InitializationException(message, getSymbolicName());
+      }
+
+      if (singleThreaded) {
+        for (IPlugIn tmpPlugIn : plugInList) {
+          if (tmpPlugIn.numThreads() > 1) {
+            message = "Buffer class <" + BufferClass.getName() + "> in pipeline <"
+                    + symbolicName + "> is single threaded, but plug in <"
+                    + tmpPlugIn.getSymbolicName() + "> uses <" + tmpPlugIn.numThreads() + "> threads";
+            throw new InitializationException(message, getSymbolicName());
+          }
+        }
+      }
+    }
+  }
+
 // -----------------------------------------------------------------------------
 // ---------------------- Pipeline Running functions ---------------------------
 // -----------------------------------------------------------------------------
@@ -885,7 +1002,12 @@ public class Pipeline
             OpenRate.getOpenRateFrameworkLog().debug(
                     "Pipeline <" + symbolicName + "> will sleep for "
                     + tmpSleepTime + " ms.");
-            Thread.sleep(tmpSleepTime);
+            synchronized (idleLock) {
+              if (!wakeUpRequested) {
+                idleLock.wait(tmpSleepTime);
+              }
+              wakeUpRequested = false;
+            }
           } catch (InterruptedException e) {
             // ignore the exception
           }
@@ -1321,6 +1443,21 @@ public class Pipeline
     schedulerHighSpeed = ConversionUtils.getConversionUtilsObject().getCurrentUTCms() + 10000;
   }
 
+  /**
+   * Wake the pipeline from its idle sleep, for example because an input
+   * adapter has been told that new input has arrived. The pipeline moves to
+   * the high speed schedule.
+   */
+  @Override
+  public void wakeUp() {
+    setSchedulerHigh();
+
+    synchronized (idleLock) {
+      wakeUpRequested = true;
+      idleLock.notifyAll();
+    }
+  }
+
   /**
    * Tell us if the scheduler is still in the high speed period.
    *
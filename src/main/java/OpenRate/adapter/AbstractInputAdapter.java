@@ -71,6 +71,7 @@ import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The IInputAdapter is responsible for creating the work set that the pipeline
@@ -119,6 +120,9 @@ public abstract class AbstractInputAdapter
   private int outBufferCapacity = 0;
   private int bufferHits = 0;
 
+  // time (ns) spent blocked pushing to the outbound buffer
+  private long outboundBlockedTime = 0;
+
   // used to simplify logging and exception handling
   public String message;
 
@@ -195,29 +199,29 @@ public abstract class AbstractInputAdapter
 
       // see how many records we got
       size = all.size();
-      if (size > 0) {
-        // push the records into the buffer if we had any
-        validBuffer.push(validRecords);
-      }
 
       endTime = System.currentTimeMillis();
       BatchTime = (endTime - startTime);
       processingTime += BatchTime;
       recordsProcessed += size;
+
+      long pushStart = System.nanoTime();
+      if (size > 0) {
+        // push the records into the buffer if we had any
+        validBuffer.push(validRecords);
+      }
+
       outBufferCapacity = validBuffer.getEventCount();
 
-      while (outBufferCapacity > bufferSize) {
+      // block until the consumer has brought the buffer below the high water
+      // mark
+      if (outBufferCapacity > bufferSize) {
         bufferHits++;
         OpenRate.getOpenRateStatsLog().debug("Input  <" + getSymbolicName() + "> buffer high water mark! Buffer max = <" + bufferSize + "> current count = <" + outBufferCapacity + ">");
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException ex) {
-          //
-        }
-
-        // refresh
-        outBufferCapacity = validBuffer.getEventCount();
+        validBuffer.waitForSpace(bufferSize);
       }
+
+      outboundBlockedTime += System.nanoTime() - pushStart;
     } catch (ProcessingException pe) {
       getPipeLog().error("Processing exception caught in Input Adapter <"
               + getSymbolicName() + ">", pe);
@@ -365,6 +369,7 @@ public abstract class AbstractInputAdapter
         recordsProcessed = 0;
         streamsProcessed = 0;
         bufferHits = 0;
+        outboundBlockedTime = 0;
       }
       ResultCode = 0;
     }
@@ -383,7 +388,8 @@ public abstract class AbstractInputAdapter
               + Double.toString(CDRsPerSec) + ":"
               + Long.toString(outBufferCapacity) + ":"
               + Long.toString(bufferHits) + ":"
-              + Long.toString(getBatchOutboundValidBuffer().getEventCount());
+              + Long.toString(getBatchOutboundValidBuffer().getEventCount()) + ":"
+              + Long.toString(TimeUnit.NANOSECONDS.toMillis(outboundBlockedTime));
     }
 
     if (Command.equalsIgnoreCase(SERVICE_BATCHSIZE)) {
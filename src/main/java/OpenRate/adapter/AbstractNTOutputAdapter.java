@@ -75,6 +75,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 
 /**
  * AbstractSTOutputAdapter - a single threaded output adapter implementation.
@@ -86,6 +87,8 @@ public abstract class AbstractNTOutputAdapter
 
   private String symbolicName;
 
+  // The MaxSleep setting is no longer used for scheduling, as the adapter is
+  // woken by the buffers, but is still accepted for existing configurations
   private int sleepTime = 50;
   private ISupplier inputValidBuffer = null;
   private IConsumer outputValidBuffer = null;
@@ -119,6 +122,17 @@ public abstract class AbstractNTOutputAdapter
   private int outBufferCapacity = 0;
   private int bufferHits = 0;
 
+  // time (ns) spent blocked on the outbound buffer and waiting on the inbound
+  // buffer
+  private long outboundBlockedTime = 0;
+  private long inboundWaitTime = 0;
+
+  // set by the inbound buffer when records arrive, cleared before each pull
+  private volatile boolean recordsAvailable = false;
+
+  // set while our thread is parked waiting for records
+  private volatile int waitingThreads = 0;
+
   // If we are the terminating output adapter, default no
   private boolean TerminatingAdaptor = false;
 
@@ -188,9 +202,25 @@ public abstract class AbstractNTOutputAdapter
       startTime = System.currentTimeMillis();
 
       do {
-        Thread.sleep(this.sleepTime);
         localDone = this.shutdownFlag;
         write();
+
+        // wait for the supplier to tell us that there are new records, or
+        // for the shut down
+        if (!localDone) {
+          long waitStart = System.nanoTime();
+          synchronized (this) {
+            waitingThreads++;
+            try {
+              while (!recordsAvailable && !shutdownFlag) {
+                wait();
+              }
+            } finally {
+              waitingThreads--;
+            }
+          }
+          inboundWaitTime += System.nanoTime() - waitStart;
+        }
       } while ((!localDone) && (getExceptionHandler().hasError() == false));
 
       // Do any flush processing that is required
@@ -248,6 +278,9 @@ public abstract class AbstractNTOutputAdapter
 
     try {
       do {
+        // clear the records available flag before pulling, so that a
+        // notification arriving after an empty pull is not lost
+        recordsAvailable = false;
         in = getBatchInboundValidBuffer().pull(batchSize);
         size = in.size();
         recordsProcessed += size;
@@ -317,18 +350,20 @@ public abstract class AbstractNTOutputAdapter
                       + out.size() + "> records at the end of the output adapter chain.");
             } else {
               // push the remaining records to the next adapter
+              long pushStart = System.nanoTime();
               getBatchOutboundValidBuffer().push(out);
 
-              while (outBufferCapacity > bufferSize) {
+              outBufferCapacity = getBatchOutboundValidBuffer().getEventCount();
+
+              // block until the next adapter has brought the buffer below the
+              // high water mark
+              if (outBufferCapacity > bufferSize) {
                 bufferHits++;
                 OpenRate.getOpenRateStatsLog().debug("Output <" + getSymbolicName() + "> buffer high water mark! Buffer max = <" + bufferSize + "> current count = <" + outBufferCapacity + ">");
-                try {
-                  Thread.sleep(sleepTime);
-                } catch (InterruptedException ex) {
-                  //
-                }
-                outBufferCapacity = getBatchOutboundValidBuffer().getEventCount();
+                getBatchOutboundValidBuffer().waitForSpace(bufferSize);
               }
+
+              outboundBlockedTime += System.nanoTime() - pushStart;
             }
           }
 
@@ -543,10 +578,21 @@ public abstract class AbstractNTOutputAdapter
   @Override
   public void notify(IEvent e) {
     synchronized (this) {
+      recordsAvailable = true;
       notifyAll();
     }
   }
 
+  /**
+   * Tells the inbound buffer if our thread is waiting for records.
+   *
+   * @return true if the thread is waiting
+   */
+  @Override
+  public boolean isWaiting() {
+    return waitingThreads > 0;
+  }
+
   // -----------------------------------------------------------------------------
   // ------------- Start of inherited IEventInterface functions ------------------
   // -----------------------------------------------------------------------------
@@ -592,6 +638,8 @@ public abstract class AbstractNTOutputAdapter
           recordsProcessed = 0;
           streamsProcessed = 0;
           bufferHits = 0;
+          outboundBlockedTime = 0;
+          inboundWaitTime = 0;
           break;
         case "":
           return "false";
@@ -612,7 +660,9 @@ public abstract class AbstractNTOutputAdapter
               + Double.toString(CDRsPerSec) + ":"
               + Long.toString(outBufferCapacity) + ":"
               + Long.toString(bufferHits) + ":"
-              + Long.toString(getOutboundRecordCount());
+              + Long.toString(getOutboundRecordCount()) + ":"
+              + Long.toString(TimeUnit.NANOSECONDS.toMillis(outboundBlockedTime)) + ":"
+              + Long.toString(TimeUnit.NANOSECONDS.toMillis(inboundWaitTime));
     }
 
     if (Command.equalsIgnoreCase(SERVICE_BATCHSIZE)) {
@@ -75,6 +75,7 @@ import OpenRate.utils.PropertyUtils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 
 /**
  * AbstractSTOutputAdapter - a single threaded output adapter implementation.
@@ -88,6 +89,8 @@ public abstract class AbstractOutputAdapter
 
   private String symbolicName;
 
+  // The MaxSleep setting is no longer used for scheduling, as the adapter is
+  // woken by the buffers, but is still accepted for existing configurations
   private int sleepTime = 100;
   private ISupplier inputValidBuffer = null;
   private IConsumer outputValidBuffer = null;
@@ -128,6 +131,17 @@ public abstract class AbstractOutputAdapter
   private int outBufferCapacity = 0;
   private int bufferHits = 0;
 
+  // time (ns) spent blocked on the outbound buffer and waiting on the inbound
+  // buffer
+  private long outboundBlockedTime = 0;
+  private long inboundWaitTime = 0;
+
+  // set by the inbound buffer when records arrive, cleared before each pull
+  private volatile boolean recordsAvailable = false;
+
+  // set while our thread is parked waiting for records
+  private volatile int waitingThreads = 0;
+
   // If we are the terminating output adapter, default no
   private boolean terminatingAdaptor = false;
 
@@ -221,6 +235,9 @@ public abstract class AbstractOutputAdapter
       // Start the timing for the statistics
       startTime = System.currentTimeMillis();
 
+      // clear the records available flag before pulling, so that a
+      // notification arriving after an empty pull is not lost
+      recordsAvailable = false;
       in = getBatchInboundValidBuffer().pull(batchSize);
       ThisBatchRecordCount = in.size();
       ThisBatchRecordsWritten = 0;
@@ -370,20 +387,20 @@ public abstract class AbstractOutputAdapter
             }
           } else {
             // push the remaining records to the next adapter
+            long pushStart = System.nanoTime();
             getBatchOutboundValidBuffer().push(out);
 
             outBufferCapacity = getBatchOutboundValidBuffer().getEventCount();
 
-            while (outBufferCapacity > bufferSize) {
+            // block until the next adapter has brought the buffer below the
+            // high water mark
+            if (outBufferCapacity > bufferSize) {
               bufferHits++;
               OpenRate.getOpenRateStatsLog().debug("Output <" + getSymbolicName() + "> buffer high water mark! Buffer max = <" + bufferSize + "> current count = <" + outBufferCapacity + ">");
-              try {
-                Thread.sleep(sleepTime);
-              } catch (InterruptedException ex) {
-                //
-              }
-              outBufferCapacity = getBatchOutboundValidBuffer().getEventCount();
+              getBatchOutboundValidBuffer().waitForSpace(bufferSize);
             }
+
+            outboundBlockedTime += System.nanoTime() - pushStart;
           }
         } else {
           // even if there are no valid records, we have to push the header/trailer
@@ -417,13 +434,22 @@ public abstract class AbstractOutputAdapter
 
         // If not marked for shutdown, wait for notification from the
         // supplier that new records are available for processing.
+        long waitStart = System.nanoTime();
         try {
           synchronized (this) {
-            wait();
+            waitingThreads++;
+            try {
+              while (!recordsAvailable && !shutdownFlag) {
+                wait();
+              }
+            } finally {
+              waitingThreads--;
+            }
           }
         } catch (InterruptedException e) {
           // ignore
         }
+        inboundWaitTime += System.nanoTime() - waitStart;
       }
     } // while loop
   }
@@ -581,10 +607,21 @@ public abstract class AbstractOutputAdapter
   @Override
   public void notify(IEvent e) {
     synchronized (this) {
+      recordsAvailable = true;
       notifyAll();
     }
   }
 
+  /**
+   * Tells the inbound buffer if our thread is waiting for records.
+   *
+   * @return true if the thread is waiting
+   */
+  @Override
+  public boolean isWaiting() {
+    return waitingThreads > 0;
+  }
+
   // -----------------------------------------------------------------------------
   // ------------- Start of inherited IEventInterface functions ------------------
   // -----------------------------------------------------------------------------
@@ -633,6 +670,8 @@ public abstract class AbstractOutputAdapter
           recordsProcessed = 0;
           streamsProcessed = 0;
           bufferHits = 0;
+          outboundBlockedTime = 0;
+          inboundWaitTime = 0;
           break;
         case "":
           return "false";
@@ -652,7 +691,9 @@ public abstract class AbstractOutputAdapter
               + Long.toString(streamsProcessed) + ":"
               + Double.toString(CDRsPerSec) + ":"
               + Long.toString(outBufferCapacity) + ":"
-              + Long.toString(bufferHits);
+              + Long.toString(bufferHits) + ":"
+              + Long.toString(TimeUnit.NANOSECONDS.toMillis(outboundBlockedTime)) + ":"
+              + Long.toString(TimeUnit.NANOSECONDS.toMillis(inboundWaitTime));
     }
 
     if (command.equalsIgnoreCase(SERVICE_BUFFERSIZE)) {
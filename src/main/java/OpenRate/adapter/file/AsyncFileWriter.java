@@ -0,0 +1,575 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Writer which moves the disk writes off the calling thread. The characters
+ * are encoded into direct buffers taken from a pool, and full buffers are
+ * passed to the I/O thread of the pool, which writes them to the file with a
+ * gathering write. The caller only waits when all of the buffers of the pool
+ * are waiting to be written, or when it flushes or closes the writer.
+ *
+ * The pool keeps at least two buffers for each writer which is open, so that
+ * a writer can always fill one buffer while the other is being written. The
+ * I/O thread is started when there is something to write, and stops when it
+ * has been idle for a short time, so that it does not outlive the thread
+ * which is writing (the pipeline waits for all of the threads of an output
+ * adapter to finish when it stops).
+ *
+ * Closing the writer waits until everything has been written, and if the
+ * writer was opened with sync set, until the file has been forced to the
+ * disk. An error in the I/O thread is thrown by the next call on the writer.
+ *
+ * Unmappable characters are replaced, as with FileWriter.
+ */
+public class AsyncFileWriter extends Writer {
+
+  /**
+   * The buffers and the I/O thread shared by the writers of an adapter.
+   */
+  public static class Pool implements Runnable {
+
+    // The buffers which are free to be filled, the size of each buffer and the
+    // number we have made
+    private final LinkedBlockingQueue<ByteBuffer> freeBuffers = new LinkedBlockingQueue<>();
+    private final int bufferSize;
+    private int bufferCount = 0;
+
+    // The number of writers which are open
+    private int openWriters = 0;
+
+    // The requests waiting for the I/O thread
+    private final LinkedBlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+
+    // The name of the I/O thread, and the thread while it is running
+    private final String threadName;
+    private Thread thread = null;
+
+    // The time the I/O thread waits for more requests before it stops
+    private static final long IDLE_TIME = 200;
+
+    /**
+     * Create a pool of buffers.
+     *
+     * @param threadName The name of the I/O thread
+     * @param bufferSize The size of each buffer
+     * @param bufferCount The number of buffers to start with. More are made if
+     * there are not 2 for each open writer.
+     */
+    public Pool(String threadName, int bufferSize, int bufferCount) {
+      this.threadName = threadName;
+      this.bufferSize = bufferSize;
+      addBuffers(bufferCount);
+    }
+
+    /**
+     * Make more buffers.
+     */
+    private void addBuffers(int count) {
+      for (int i = 0; i < count; i++) {
+        freeBuffers.add(ByteBuffer.allocateDirect(bufferSize));
+        bufferCount++;
+      }
+    }
+
+    /**
+     * Open a file for writing, replacing any contents it has.
+     *
+     * @param file The file to write
+     * @param charset The character set to encode with
+     * @param sync true if the file should be forced to the disk on closing
+     * @return The writer
+     * @throws IOException If the file could not be opened
+     */
+    public synchronized AsyncFileWriter open(File file, Charset charset, boolean sync) throws IOException {
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+              StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+      openWriters++;
+      if (bufferCount < openWriters * 2) {
+        addBuffers(openWriters * 2 - bufferCount);
+      }
+
+      return new AsyncFileWriter(this, channel, charset, sync);
+    }
+
+    /**
+     * Stop the I/O thread, discarding anything which has not been written.
+     */
+    public synchronized void close() {
+      if (thread != null) {
+        thread.interrupt();
+        thread = null;
+      }
+    }
+
+    /**
+     * Pass a request to the I/O thread, starting it if it is not running.
+     */
+    private synchronized void submit(Request request) {
+      requests.add(request);
+
+      if (thread == null) {
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+      }
+    }
+
+    /**
+     * Stop the I/O thread if there is nothing left to write.
+     *
+     * @return true if the thread should stop
+     */
+    private synchronized boolean stopIfIdle() {
+      if (requests.isEmpty()) {
+        if (thread == Thread.currentThread()) {
+          thread = null;
+        }
+        return true;
+      }
+
+      return false;
+    }
+
+    /**
+     * Called when a writer is closed.
+     */
+    private synchronized void writerClosed() {
+      openWriters--;
+    }
+
+    /**
+     * Tell us if the I/O thread is running.
+     */
+    private synchronized boolean isRunning() {
+      return (thread != null) && thread.isAlive();
+    }
+
+    /**
+     * Get a free buffer, waiting for the I/O thread to free one if we need to.
+     */
+    private ByteBuffer takeBuffer() throws IOException {
+      try {
+        while (true) {
+          ByteBuffer buffer = freeBuffers.poll(1, TimeUnit.SECONDS);
+          if (buffer != null) {
+            return buffer;
+          }
+
+          if (isRunning() == false) {
+            throw new IOException("Writer thread <" + threadName + "> is not running");
+          }
+        }
+      } catch (InterruptedException ex) {
+        throw new InterruptedIOException("Interrupted waiting for an output buffer");
+      }
+    }
+
+    /**
+     * Write the requests in order. Consecutive buffers of the same writer are
+     * written with one gathering write.
+     */
+    @Override
+    public void run() {
+      ArrayList<Request> batch = new ArrayList<>();
+
+      try {
+        while (true) {
+          Request first = requests.poll(IDLE_TIME, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            if (stopIfIdle()) {
+              return;
+            }
+            continue;
+          }
+
+          batch.add(first);
+          requests.drainTo(batch);
+
+          int i = 0;
+          while (i < batch.size()) {
+            Request request = batch.get(i);
+
+            if (request.buffer == null) {
+              request.writer.complete(request.close);
+              i++;
+              continue;
+            }
+
+            int end = i;
+            while ((end < batch.size()) && (batch.get(end).writer == request.writer) && (batch.get(end).buffer != null)) {
+              end++;
+            }
+
+            ByteBuffer[] buffers = new ByteBuffer[end - i];
+            for (int idx = 0; idx < buffers.length; idx++) {
+              buffers[idx] = batch.get(i + idx).buffer;
+            }
+
+            request.writer.writeBuffers(buffers);
+
+            for (ByteBuffer buffer : buffers) {
+              buffer.clear();
+              freeBuffers.add(buffer);
+            }
+
+            i = end;
+          }
+
+          batch.clear();
+        }
+      } catch (InterruptedException ex) {
+        // we are being stopped
+      }
+    }
+  }
+
+  // A buffer to write, or a flush or close of the writer if there is none
+  private static class Request {
+
+    final AsyncFileWriter writer;
+    final ByteBuffer buffer;
+    final boolean close;
+
+    Request(AsyncFileWriter writer, ByteBuffer buffer, boolean close) {
+      this.writer = writer;
+      this.buffer = buffer;
+      this.close = close;
+    }
+  }
+
+  // The pool we take the buffers from
+  private final Pool pool;
+
+  // The file we are writing
+  private final FileChannel channel;
+
+  // The encoder for the characters
+  private final CharsetEncoder encoder;
+
+  // true if we force the file to the disk on closing
+  private final boolean sync;
+
+  // The buffer we are filling, if any
+  private ByteBuffer current = null;
+
+  // A high surrogate waiting for the rest of its pair
+  private char pendingHigh = 0;
+  private boolean hasPendingHigh = false;
+
+  // The flushes asked for and done by the I/O thread
+  private int syncRequested = 0;
+  private int syncCompleted = 0;
+
+  // Set when we are closed
+  private boolean closed = false;
+
+  // The first error of the I/O thread
+  private volatile IOException failure = null;
+
+  /**
+   * Create a writer, opened by the pool.
+   */
+  private AsyncFileWriter(Pool pool, FileChannel channel, Charset charset, boolean sync) {
+    this.pool = pool;
+    this.channel = channel;
+    this.sync = sync;
+    this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * Encode the characters into the buffers, passing full buffers to the I/O
+   * thread.
+   *
+   * @param cbuf The characters
+   * @param off The offset of the first character to write
+   * @param len The number of characters to write
+   * @throws IOException If the writer is closed or the I/O thread failed
+   */
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    checkOpen();
+
+    if (len == 0) {
+      return;
+    }
+
+    if (hasPendingHigh) {
+      // finish the pair which was split between two writes
+      hasPendingHigh = false;
+      encode(CharBuffer.wrap(new char[]{pendingHigh, cbuf[off]}), false);
+      off++;
+      len--;
+    }
+
+    encode(CharBuffer.wrap(cbuf, off, len), false);
+  }
+
+  /**
+   * Pass everything written so far to the I/O thread, and wait until it has
+   * been written.
+   *
+   * @throws IOException If the writer is closed or the I/O thread failed
+   */
+  @Override
+  public void flush() throws IOException {
+    checkOpen();
+    submitCurrent();
+    waitForSync(false);
+    checkFailure();
+  }
+
+  /**
+   * Write everything which is left, force the file to the disk if the writer
+   * was opened with sync, and close the file.
+   *
+   * @throws IOException If the I/O thread failed
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    try {
+      if (failure == null) {
+        if (hasPendingHigh) {
+          hasPendingHigh = false;
+          encode(CharBuffer.wrap(new char[]{pendingHigh}), true);
+        } else {
+          encode(CharBuffer.allocate(0), true);
+        }
+
+        while (true) {
+          ensureBuffer();
+          if (encoder.flush(current).isOverflow() == false) {
+            break;
+          }
+          submitCurrent();
+        }
+      }
+
+      submitCurrent();
+      waitForSync(true);
+    } finally {
+      closed = true;
+
+      // give back the buffer we were filling if we did not get to write it
+      if (current != null) {
+        current.clear();
+        pool.freeBuffers.add(current);
+        current = null;
+      }
+
+      pool.writerClosed();
+      if (channel.isOpen()) {
+        channel.close();
+      }
+    }
+
+    checkFailure();
+  }
+
+  /**
+   * Encode the characters, passing each buffer to the I/O thread as it fills.
+   */
+  private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+    while (true) {
+      ensureBuffer();
+      CoderResult result = encoder.encode(in, current, endOfInput);
+
+      if (result.isOverflow()) {
+        submitCurrent();
+      } else if (result.isUnderflow()) {
+        if (in.hasRemaining()) {
+          // a high surrogate at the end, keep it for the next write
+          pendingHigh = in.get();
+          hasPendingHigh = true;
+        }
+        return;
+      } else {
+        result.throwException();
+      }
+    }
+  }
+
+  /**
+   * Make sure we have a buffer to fill.
+   */
+  private void ensureBuffer() throws IOException {
+    if (current == null) {
+      current = pool.takeBuffer();
+    }
+  }
+
+  /**
+   * Pass the buffer we are filling to the I/O thread.
+   */
+  private void submitCurrent() {
+    if (current != null) {
+      current.flip();
+      if (current.hasRemaining()) {
+        pool.submit(new Request(this, current, false));
+      } else {
+        current.clear();
+        pool.freeBuffers.add(current);
+      }
+      current = null;
+    }
+  }
+
+  /**
+   * Wait until the I/O thread has written everything passed to it so far.
+   */
+  private void waitForSync(boolean close) throws IOException {
+    int ticket;
+    synchronized (this) {
+      ticket = ++syncRequested;
+    }
+
+    pool.submit(new Request(this, null, close));
+
+    synchronized (this) {
+      try {
+        while (syncCompleted < ticket) {
+          wait(1000);
+          if ((syncCompleted < ticket) && (pool.isRunning() == false)) {
+            throw new IOException("Writer thread is not running");
+          }
+        }
+      } catch (InterruptedException ex) {
+        throw new InterruptedIOException("Interrupted waiting for the output to be written");
+      }
+    }
+  }
+
+  /**
+   * Called by the I/O thread to write a run of buffers.
+   */
+  private void writeBuffers(ByteBuffer[] buffers) {
+    if (failure != null) {
+      return;
+    }
+
+    try {
+      long remaining = 0;
+      for (ByteBuffer buffer : buffers) {
+        remaining += buffer.remaining();
+      }
+
+      while (remaining > 0) {
+        remaining -= channel.write(buffers);
+      }
+    } catch (IOException ex) {
+      failure = ex;
+    }
+  }
+
+  /**
+   * Called by the I/O thread when it reaches a flush or close.
+   */
+  private void complete(boolean close) {
+    if (close && sync && (failure == null)) {
+      try {
+        channel.force(false);
+      } catch (IOException ex) {
+        failure = ex;
+      }
+    }
+
+    synchronized (this) {
+      syncCompleted++;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Check that we can still write.
+   */
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Writer is closed");
+    }
+    checkFailure();
+  }
+
+  /**
+   * Throw the error of the I/O thread, if there was one.
+   */
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
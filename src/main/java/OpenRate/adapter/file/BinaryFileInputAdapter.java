@@ -66,6 +66,7 @@ import OpenRate.record.IRecord;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -142,6 +143,20 @@ import org.apache.oro.text.GlobCompiler;
  * name.<br>
  *
  * <p>
+ * Streaming<br>
+ * ---------
+ *
+ * <p>
+ * By default the whole file is read into memory and parsed in one go by
+ * parseBinaryFileContents(). For large files, the property StreamBufferSize
+ * can be set to a number of bytes. The file is then read a buffer at a time,
+ * and parseBinaryStreamContents() is called to take the complete records out
+ * of each buffer. Records are passed to the pipeline in batches of BatchSize
+ * as they are parsed, and the memory used is bounded by the buffer size and
+ * the batch size instead of the file size. The implementation class must
+ * override parseBinaryStreamContents() to use this.
+ *
+ * <p>
  * The input adapter is also able to process more than one file at a time. This
  * is to allow the efficient operation of long pipelines, where a commit might
  * not arrive until a long time after the input adapter has finished processing
@@ -240,6 +255,13 @@ public abstract class BinaryFileInputAdapter
   // Used to iterate through the results of the parse in batches of BatchSize
   private Iterator<IRecord> recordListIterator = null;
 
+  // Used to read the records when we are streaming the file
+  private BinaryStreamReader streamReader = null;
+
+  // The size of the buffer to stream the file through, 0 to read it whole
+  private static final String STREAM_BUFFER_SIZE = "StreamBufferSize";
+  private int streamBufferSize = 0;
+
   // List of Services that this Client supports
   private static final String SERVICE_I_PATH = "InputFilePath";
   private static final String SERVICE_D_PATH = "DoneFilePath";
@@ -252,6 +274,9 @@ public abstract class BinaryFileInputAdapter
   private static final String SERVICE_E_SUFFIX = "ErrFileSuffix";
   private static final String SERVICE_PROCPREFIX = "ProcessingPrefix";
 
+  // The watcher for event driven file discovery, null if we scan
+  private InputFileWatcher fileWatcher = null;
+
   /**
    * This method calls a parser to parse the binary input which has been read
    * out of the input file. The parse is responsible for splitting and preparing
@@ -262,6 +287,26 @@ public abstract class BinaryFileInputAdapter
    */
   public abstract ArrayList<IRecord> parseBinaryFileContents(byte[] fileContents);
 
+  /**
+   * This method is called to parse the file a buffer at a time when the
+   * StreamBufferSize is set. It must take as many complete records as it can
+   * out of the buffer, and leave the position of the buffer at the first byte
+   * that was not consumed. The bytes that were not consumed are passed again on
+   * the next call, with the next part of the file behind them. If a record is
+   * longer than the buffer, the buffer is grown.
+   *
+   * Implementations which want to stream large files must override this.
+   *
+   * @param buffer The part of the file to parse
+   * @param endOfStream true if this is the last part of the file
+   * @param records The list to add the parsed records to
+   * @throws ProcessingException
+   */
+  public void parseBinaryStreamContents(ByteBuffer buffer, boolean endOfStream, ArrayList<IRecord> records)
+          throws ProcessingException {
+    throw new ProcessingException("Streaming parse not implemented", getSymbolicName());
+  }
+
   // This is used to hold the calculated file names
   private class TransControlStructure {
 
@@ -329,10 +374,29 @@ public abstract class BinaryFileInputAdapter
     // if something is wrong.
     initFileName();
 
+    // See if we are streaming the files
+    initStreamBufferSize();
+
+    // Set up the event driven file discovery if we want it
+    fileWatcher = InputFileWatcher.getInputFileWatcher(this, getPipeLog(), InputFilePath,
+            new GlobFilenameFilter(InputFilePrefix + "*" + InputFileSuffix, GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK));
+
     // create the structure for storing filenames
     CurrentFileNames = new HashMap<>(10);
   }
 
+  /**
+   * Stop the file watcher if we are using one.
+   */
+  @Override
+  public void cleanup() {
+    if (fileWatcher != null) {
+      fileWatcher.close();
+    }
+
+    super.cleanup();
+  }
+
   /**
    * loadBatch() is called regularly by the framework to either process records
    * or to scan for work to do, depending on whether we are already processing
@@ -345,7 +409,8 @@ public abstract class BinaryFileInputAdapter
    * In contrast to the flat file adapter, this adapter loads all of the file
    * into memory, parses it in one go (using an implementation level parser) and
    * then pumps the records into the pipeline. Thus, a single call to load batch
-   * will load the whole file.
+   * will load the whole file. If we are streaming the file, each call to load
+   * batch reads and parses only as much of the file as it needs for the batch.
    *
    * @return
    * @throws OpenRate.exception.ProcessingException
@@ -408,18 +473,31 @@ public abstract class BinaryFileInputAdapter
           tmpHeader = procHeader(tmpHeader);
           Outbatch.add(tmpHeader);
 
-          // now load the file into a memory buffer - it's difficult to know
-          // where to split up binary files, so we don't attempt to, and let the
-          // parser work this out
-          int fileLength = (int) reader.length();
-          bytes = new byte[fileLength];
-          reader.readFully(bytes);
-
-          // call the parser to process the binary contents
-          Collection<IRecord> recordList = parseBinaryFileContents(bytes);
-
-          // Prepare the iterator for loading the records
-          recordListIterator = recordList.iterator();
+          if (streamBufferSize > 0) {
+            // read the file a buffer at a time, the parser tells us where
+            // the records end
+            streamReader = new BinaryStreamReader(reader.getChannel(), streamBufferSize,
+                    new BinaryStreamReader.RecordParser() {
+                      @Override
+                      public void parseRecords(ByteBuffer buffer, boolean endOfStream, ArrayList<IRecord> records)
+                      throws ProcessingException {
+                        parseBinaryStreamContents(buffer, endOfStream, records);
+                      }
+                    });
+          } else {
+            // now load the file into a memory buffer - it's difficult to know
+            // where to split up binary files, so we don't attempt to, and let the
+            // parser work this out
+            int fileLength = (int) reader.length();
+            bytes = new byte[fileLength];
+            reader.readFully(bytes);
+
+            // call the parser to process the binary contents
+            Collection<IRecord> recordList = parseBinaryFileContents(bytes);
+
+            // Prepare the iterator for loading the records
+            recordListIterator = recordList.iterator();
+          }
         } catch (FileNotFoundException exFileNotFound) {
           getPipeLog().error(
                   "Application is not able to read file <" + getProcName(transactionNumber) + ">");
@@ -439,8 +517,8 @@ public abstract class BinaryFileInputAdapter
       }
 
       // read from the file and prepare the batch
-      while ((recordListIterator.hasNext()) & (ThisBatchCounter < batchSize)) {
-        tmpDataRecord = recordListIterator.next();
+      while ((ThisBatchCounter < batchSize) && inputHasMoreRecords()) {
+        tmpDataRecord = readInputRecord();
 
         // skip blank records
         if (tmpDataRecord == null) {
@@ -459,6 +537,14 @@ public abstract class BinaryFileInputAdapter
         }
       }
 
+      // a stream which ends part way through a record is not complete
+      if ((streamReader != null) && (inputHasMoreRecords() == false)
+              && (streamReader.getUnparsedByteCount() > 0)) {
+        getPipeLog().error("File <" + getProcName(transactionNumber) + "> ends with an incomplete record of <"
+                + streamReader.getUnparsedByteCount() + "> bytes");
+        setTransactionAbort(transactionNumber);
+      }
+
       // see if we have to abort
       if (transactionAbortRequest(transactionNumber)) {
         // if so, clear down everything that is not a header or a trailer
@@ -483,7 +569,7 @@ public abstract class BinaryFileInputAdapter
       updateRecordCount(transactionNumber, InputRecordNumber);
 
       // see the reason that we closed
-      if (recordListIterator.hasNext() == false) {
+      if (inputHasMoreRecords() == false) {
         // we have finished
         InputStreamOpen = false;
 
@@ -535,12 +621,50 @@ public abstract class BinaryFileInputAdapter
 
         // Clean up the iterator and the byte array
         recordListIterator = null;
+        streamReader = null;
       }
     }
 
     return Outbatch;
   }
 
+  /**
+   * See if there are more records to read from the file we are working on.
+   * When we are streaming, this reads and parses more of the file if it needs
+   * to.
+   *
+   * @return true if there are more records
+   * @throws ProcessingException
+   */
+  private boolean inputHasMoreRecords() throws ProcessingException {
+    if (streamReader == null) {
+      return recordListIterator.hasNext();
+    }
+
+    try {
+      return streamReader.hasMoreRecords();
+    } catch (IOException ioex) {
+      getPipeLog().error("Application is not able to read file : '" + getProcName(transactionNumber) + "' ");
+      throw new ProcessingException("Application is not able to read file: <"
+              + getProcName(transactionNumber) + "> ",
+              ioex,
+              getSymbolicName());
+    }
+  }
+
+  /**
+   * Get the next record from the file we are working on.
+   *
+   * @return The next record
+   */
+  private IRecord readInputRecord() {
+    if (streamReader == null) {
+      return recordListIterator.next();
+    } else {
+      return streamReader.nextRecord();
+    }
+  }
+
   /**
    * Closes down the input stream after all the input has been collected
    *
@@ -1033,6 +1157,42 @@ public abstract class BinaryFileInputAdapter
     }
   }
 
+  /**
+   * Get the size of the buffer to stream the files through. If this is not
+   * set, each file is read whole. If it is, the implementation class must
+   * provide the streaming parser.
+   */
+  private void initStreamBufferSize()
+          throws InitializationException {
+    String sizeHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            STREAM_BUFFER_SIZE, "0");
+
+    try {
+      streamBufferSize = Integer.parseInt(sizeHelper);
+    } catch (NumberFormatException nfe) {
+      streamBufferSize = -1;
+    }
+
+    if (streamBufferSize < 0) {
+      message = "Stream buffer size <" + sizeHelper + "> must be a number of bytes, or 0 to read the whole file";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (streamBufferSize > 0) {
+      try {
+        if (getClass().getMethod("parseBinaryStreamContents", ByteBuffer.class, boolean.class, ArrayList.class)
+                .getDeclaringClass() == BinaryFileInputAdapter.class) {
+          message = "Stream buffer size set, but <" + getClass().getName() + "> does not implement parseBinaryStreamContents()";
+          getPipeLog().fatal(message);
+          throw new InitializationException(message, getSymbolicName());
+        }
+      } catch (NoSuchMethodException nsme) {
+        // cannot happen, the method is public in this class
+      }
+    }
+  }
+
   // -----------------------------------------------------------------------------
   // ---------------------- Start stream handling functions ----------------------
   // -----------------------------------------------------------------------------
@@ -1071,7 +1231,16 @@ public abstract class BinaryFileInputAdapter
     filter = new GlobFilenameFilter(InputFilePrefix + "*"
             + InputFileSuffix,
             GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK);
-    fileNames = dir.list(filter);
+    if (fileWatcher == null) {
+      fileNames = dir.list(filter);
+    } else {
+      fileNames = fileWatcher.getPendingFiles(new InputFileWatcher.DirectoryLister() {
+        @Override
+        public String[] list(File dir, FilenameFilter filter) {
+          return dir.list(filter);
+        }
+      });
+    }
 
     // if we have a file, add it to the list of transaction files
     if (fileNames.length > 0) {
@@ -1083,6 +1252,12 @@ public abstract class BinaryFileInputAdapter
         if (filterFileName(fileName)) {
           // We want to open it, will the transaction manager allow it?
           if (canStartNewTransaction()) {
+            // The file leaves the watcher queue whether we take it or not, if
+            // it is still there the reconciliation scan will find it again
+            if (fileWatcher != null) {
+              fileWatcher.remove(fileName);
+            }
+
             // Create the new transaction to hold the information. This is done in
             // The transactional layer - we just trigger it here
             tmpTransNumber = createNewTransaction();
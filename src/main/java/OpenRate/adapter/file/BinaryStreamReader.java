@@ -0,0 +1,231 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import OpenRate.exception.ProcessingException;
+import OpenRate.record.IRecord;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+
+/**
+ * Reads records out of a binary stream a buffer at a time, so that the memory
+ * used does not depend on the size of the file. The stream is read into a
+ * buffer, and a parser is called to take as many complete records out of the
+ * buffer as it can. The bytes of an incomplete record at the end of the buffer
+ * are kept, and the parser sees them again with more data behind them after
+ * the next read.
+ *
+ * A record may not be longer than the buffer. If the parser cannot take
+ * anything out of a full buffer, the buffer is grown.
+ */
+public class BinaryStreamReader implements Closeable {
+
+  /**
+   * The parser which turns the bytes of the stream into records.
+   */
+  public interface RecordParser {
+
+    /**
+     * Parse as many complete records as possible out of the buffer. The
+     * records are added to the collection, and the position of the buffer is
+     * left at the first byte which was not consumed. Bytes which are not
+     * consumed are passed again on the next call, with more data behind them.
+     *
+     * @param buffer The buffer to parse, positioned at the first unparsed byte
+     * @param endOfStream true if no more data will follow the buffer contents
+     * @param records The collection to add the parsed records to
+     * @throws ProcessingException
+     */
+    void parseRecords(ByteBuffer buffer, boolean endOfStream, ArrayList<IRecord> records)
+            throws ProcessingException;
+  }
+
+  // The stream we are reading
+  private final ReadableByteChannel channel;
+
+  // The parser we are using
+  private final RecordParser parser;
+
+  // The buffer we read into, kept ready for parsing between reads
+  private ByteBuffer buffer;
+
+  // true once the stream has been read to the end
+  private boolean endOfStream = false;
+
+  // true once the parser has seen the end of the stream
+  private boolean parseFinished = false;
+
+  // The records parsed out of the buffer which have not been read yet
+  private final ArrayList<IRecord> records = new ArrayList<>();
+  private int recordIndex = 0;
+
+  // The number of bytes read from the stream
+  private long bytesRead = 0;
+
+  /**
+   * Create a reader on a stream.
+   *
+   * @param channel The stream to read
+   * @param bufferSize The initial size of the read buffer
+   * @param parser The parser to take the records out of the buffer
+   */
+  public BinaryStreamReader(ReadableByteChannel channel, int bufferSize, RecordParser parser) {
+    this.channel = channel;
+    this.parser = parser;
+    this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 1));
+    this.buffer.flip();
+  }
+
+  /**
+   * Tell us if there are more records to read, reading and parsing more of the
+   * stream if we need to.
+   *
+   * @return true if there is another record
+   * @throws IOException If the stream could not be read
+   * @throws ProcessingException If the parser failed
+   */
+  public boolean hasMoreRecords() throws IOException, ProcessingException {
+    while (recordIndex == records.size()) {
+      if (parseFinished) {
+        return false;
+      }
+
+      records.clear();
+      recordIndex = 0;
+      fillBuffer();
+
+      parser.parseRecords(buffer, endOfStream, records);
+      parseFinished = endOfStream;
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the next record. hasMoreRecords() must have returned true.
+   *
+   * @return The next record
+   */
+  public IRecord nextRecord() {
+    IRecord nextRecord = records.get(recordIndex);
+
+    // let go of it, so that the list does not hold the records of the batch
+    records.set(recordIndex++, null);
+
+    return nextRecord;
+  }
+
+  /**
+   * Get the number of bytes left over that the parser did not consume. Once all
+   * of the records have been read, this is the length of an incomplete record
+   * at the end of the stream.
+   *
+   * @return The number of bytes not parsed
+   */
+  public int getUnparsedByteCount() {
+    return buffer.remaining();
+  }
+
+  /**
+   * Get the number of bytes read from the stream so far.
+   *
+   * @return The number of bytes read
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Read more of the stream into the buffer, behind the bytes which have not
+   * been parsed yet.
+   */
+  private void fillBuffer() throws IOException {
+    if (endOfStream) {
+      return;
+    }
+
+    buffer.compact();
+
+    // the parser could not take a record out of a full buffer, make room
+    if (buffer.hasRemaining() == false) {
+      ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+      buffer.flip();
+      newBuffer.put(buffer);
+      buffer = newBuffer;
+    }
+
+    int count = channel.read(buffer);
+    if (count < 0) {
+      endOfStream = true;
+    } else {
+      bytesRead += count;
+    }
+
+    buffer.flip();
+  }
+
+  /**
+   * Close the stream.
+   *
+   * @throws IOException If the stream could not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
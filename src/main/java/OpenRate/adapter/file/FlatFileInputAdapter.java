@@ -67,7 +67,9 @@ import OpenRate.record.IRecord;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -148,6 +150,32 @@ import org.apache.oro.text.GlobCompiler;
  * not arrive until a long time after the input adapter has finished processing
  * the input file. In this case, successive transactions can be opened before
  * the preceding transaction is closed.
+ *
+ * <p>
+ * Reading<br>
+ * -------
+ *
+ * <p>
+ * By default each file is read through a BufferedReader, decoding each line in
+ * the character set given by "Charset" (default: the platform character set).
+ * With "ReaderMode" set to "Mapped", the file is memory mapped and the lines
+ * are found on the bytes, so that a FlatRecord is only decoded when getData()
+ * is called on it. The output of a file is only committed when the whole
+ * transaction is, so a file that is put back into the input directory after a
+ * failure is always read again from the start.
+ *
+ * <p>
+ * In mapped mode "SplitReaders" can be set to read a large file with several
+ * threads. The file is divided into ranges on line boundaries, of at least 16MB
+ * each, which are read and decoded concurrently. The records are still passed
+ * on in the order of the file, in the same transaction, so the header and
+ * trailer are the same as for a single reader.
+ *
+ * <p>
+ * With "Compression" set to "Gzip" the input files are read as gzip compressed
+ * files, and with "Auto" the files with names ending in ".gz" are. Compressed
+ * files are inflated on a thread of their own, ahead of the reader. They are
+ * always read through a BufferedReader, even in mapped mode.
  */
 public abstract class FlatFileInputAdapter
         extends AbstractTransactionalInputAdapter
@@ -255,6 +283,31 @@ public abstract class FlatFileInputAdapter
   private static final String SERVICE_PROCPREFIX = "ProcessingPrefix";
   private static final String DEFAULT_PROCPREFIX = "tmp";
 
+  // The watcher for event driven file discovery, null if we scan
+  private InputFileWatcher fileWatcher = null;
+
+  // The reader mode, "Buffered" or "Mapped", and the character set of the input
+  private static final String READER_MODE = "ReaderMode";
+  private static final String CHARSET = "Charset";
+  private boolean mappedMode = false;
+  private Charset inputCharset;
+
+  // The reader used in mapped mode
+  private MappedLineReader mappedReader;
+
+  // The number of threads to read a file with in mapped mode, the smallest
+  // range of the file worth giving a thread, and the reader we use for it
+  private static final String SPLIT_READERS = "SplitReaders";
+  private static final long MIN_SPLIT_RANGE = 16 * 1024 * 1024;
+  private int splitReaders = 1;
+  private SplitFileReader splitReader;
+
+  // The compression of the input files, "None", "Gzip" or "Auto" (by the file
+  // name)
+  private static final String COMPRESSION = "Compression";
+  private static final String GZIP_SUFFIX = ".gz";
+  private String compression;
+
   // This is used to hold the calculated file names
   private class TransControlStructure {
 
@@ -323,10 +376,34 @@ public abstract class FlatFileInputAdapter
     // if something is wrong.
     initFileName();
 
+    // Set up the reader mode and character set
+    initReaderMode();
+    initCompression();
+
+    // Set up the event driven file discovery if we want it
+    fileWatcher = InputFileWatcher.getInputFileWatcher(this, getPipeLog(), inputFilePath,
+            new GlobFilenameFilter(inputFilePrefix + "*" + inputFileSuffix, GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK));
+
     // create the structure for storing filenames
     currentFileNames = new HashMap<>(10);
   }
 
+  /**
+   * Stop the file watcher and the split readers if we are using them.
+   */
+  @Override
+  public void cleanup() {
+    if (fileWatcher != null) {
+      fileWatcher.close();
+    }
+
+    if (splitReader != null) {
+      splitReader.close();
+    }
+
+    super.cleanup();
+  }
+
   /**
    * loadBatch() is called regularly by the framework to either process records
    * or to scan for work to do, depending on whether we are already processing
@@ -341,7 +418,6 @@ public abstract class FlatFileInputAdapter
    */
   @Override
   protected Collection<IRecord> loadBatch() throws ProcessingException {
-    String tmpFileRecord;
     String baseName = null;
     Collection<IRecord> Outbatch;
     int ThisBatchCounter = 0;
@@ -379,9 +455,23 @@ public abstract class FlatFileInputAdapter
         // Now that we have the file name, try to open it from
         // the renamed file provided by assignInput
         try {
-          reader = new BufferedReader(new FileReader(getProcName(transactionNumber)), BUF_SIZE);
+          if (isCompressed(getProcName(transactionNumber))) {
+            reader = new BufferedReader(new InputStreamReader(new GzipFileInputStream(new File(getProcName(transactionNumber)),
+                    getPipeName() + "-" + getSymbolicName() + "-Inflater"), inputCharset), BUF_SIZE);
+            inputRecordNumber = 0;
+          } else if (mappedMode) {
+            if (splitReaders > 1) {
+              splitReader = new SplitFileReader(new File(getProcName(transactionNumber)), splitReaders, MIN_SPLIT_RANGE,
+                      MappedLineReader.DEFAULT_WINDOW_SIZE, inputCharset, getPipeName() + "-" + getSymbolicName() + "-Reader");
+            } else {
+              mappedReader = new MappedLineReader(new File(getProcName(transactionNumber)), MappedLineReader.DEFAULT_WINDOW_SIZE);
+            }
+            inputRecordNumber = 0;
+          } else {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(getProcName(transactionNumber)), inputCharset), BUF_SIZE);
+            inputRecordNumber = 0;
+          }
           inputStreamOpen = true;
-          inputRecordNumber = 0;
 
           // Inform the transactional layer that we have started processing
           setTransactionProcessing(transactionNumber);
@@ -398,7 +488,7 @@ public abstract class FlatFileInputAdapter
           // needs to be done
           tmpHeader = procHeader(tmpHeader);
           Outbatch.add(tmpHeader);
-        } catch (FileNotFoundException exFileNotFound) {
+        } catch (IOException exFileNotFound) {
           getPipeLog().error(
                   "Application is not able to read file <" + getProcName(transactionNumber) + ">");
           throw new ProcessingException("Application is not able to read file <"
@@ -410,16 +500,14 @@ public abstract class FlatFileInputAdapter
         // Continue with the open file
         try {
           // read from the file and prepare the batch
-          while ((reader.ready()) & (ThisBatchCounter < batchSize)) {
-            tmpFileRecord = reader.readLine();
+          while ((inputHasMoreData()) & (ThisBatchCounter < batchSize)) {
+            tmpDataRecord = readFlatRecord();
 
             // skip blank records
-            if (tmpFileRecord.length() == 0) {
+            if (tmpDataRecord == null) {
               continue;
             }
 
-            tmpDataRecord = new FlatRecord(tmpFileRecord, inputRecordNumber);
-
             // Call the user layer for any processing that needs to be done
             batchRecord = procValidRecord(tmpDataRecord);
 
@@ -460,7 +548,7 @@ public abstract class FlatFileInputAdapter
           getPipeline().setSchedulerHigh();
 
           // see the reason that we closed
-          if (reader.ready() == false) {
+          if (inputHasMoreData() == false) {
             // we have finished
             inputStreamOpen = false;
 
@@ -529,7 +617,15 @@ public abstract class FlatFileInputAdapter
   public void closeStream(int TransactionNumber)
           throws ProcessingException {
     try {
-      reader.close();
+      if (splitReader != null) {
+        splitReader.close();
+        splitReader = null;
+      } else if (mappedReader != null) {
+        mappedReader.close();
+        mappedReader = null;
+      } else {
+        reader.close();
+      }
     } catch (IOException exFileNotFound) {
       getPipeLog().error("Application is not able to close file <" + getProcName(TransactionNumber) + ">");
       throw new ProcessingException("Application is not able to read file <"
@@ -1030,6 +1126,98 @@ public abstract class FlatFileInputAdapter
     }
   }
 
+  /**
+   * Set up the way we read the files. In "Buffered" mode (the default) each
+   * line is read and decoded by a BufferedReader. In "Mapped" mode the file is
+   * memory mapped, the lines are found on the bytes and a record is only
+   * decoded when its data is asked for. Mapped mode can also read large files
+   * with SplitReaders threads.
+   */
+  private void initReaderMode()
+          throws InitializationException {
+    String readerMode = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            READER_MODE, "Buffered");
+    String charsetName = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            CHARSET, Charset.defaultCharset().name());
+    String splitHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SPLIT_READERS, "1");
+
+    try {
+      inputCharset = Charset.forName(charsetName);
+    } catch (IllegalArgumentException iae) {
+      message = "Charset <" + charsetName + "> not supported";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (readerMode.equalsIgnoreCase("Mapped")) {
+      // we find the line ends on the bytes, so they must be single bytes
+      if ((Arrays.equals("\r\n".getBytes(inputCharset), new byte[]{'\r', '\n'}) == false)
+              || (Arrays.equals("A".getBytes(inputCharset), new byte[]{'A'}) == false)) {
+        message = "Charset <" + charsetName + "> cannot be used in Mapped reader mode";
+        getPipeLog().fatal(message);
+        throw new InitializationException(message, getSymbolicName());
+      }
+      mappedMode = true;
+    } else if (readerMode.equalsIgnoreCase("Buffered") == false) {
+      message = "Reader mode <" + readerMode + "> not supported. Use <Buffered> or <Mapped>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    try {
+      splitReaders = Integer.parseInt(splitHelper);
+    } catch (NumberFormatException nfe) {
+      splitReaders = 0;
+    }
+
+    if (splitReaders < 1) {
+      message = "Split readers <" + splitHelper + "> must be a number of threads, at least 1";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if ((splitReaders > 1) && (mappedMode == false)) {
+      message = "Split readers can only be used in Mapped reader mode";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
+  /**
+   * Set up the compression of the input files. "None" (the default) reads the
+   * files as they are, "Gzip" inflates all of the files and "Auto" inflates the
+   * files with names ending in ".gz".
+   */
+  private void initCompression()
+          throws InitializationException {
+    compression = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            COMPRESSION, "None");
+
+    if ((compression.equalsIgnoreCase("None") == false) && (compression.equalsIgnoreCase("Gzip") == false)
+            && (compression.equalsIgnoreCase("Auto") == false)) {
+      message = "Compression <" + compression + "> not supported. Use <None>, <Gzip> or <Auto>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
+  /**
+   * Tell us if an input file is compressed.
+   *
+   * @param fileName The name of the file
+   * @return true if the file is compressed
+   */
+  private boolean isCompressed(String fileName) {
+    if (compression.equalsIgnoreCase("Gzip")) {
+      return true;
+    } else if (compression.equalsIgnoreCase("Auto")) {
+      return fileName.toLowerCase().endsWith(GZIP_SUFFIX);
+    } else {
+      return false;
+    }
+  }
+
   // -----------------------------------------------------------------------------
   // ---------------------- Start stream handling functions ----------------------
   // -----------------------------------------------------------------------------
@@ -1073,8 +1261,18 @@ public abstract class FlatFileInputAdapter
             + inputFileSuffix,
             GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK);
 
-    // sort files
-    fileNames = getOrderedFileListForProcessing(dir, filter);
+    // sort files, or take them from the watcher queue, which uses the same
+    // ordering for its reconciliation scan
+    if (fileWatcher == null) {
+      fileNames = getOrderedFileListForProcessing(dir, filter);
+    } else {
+      fileNames = fileWatcher.getPendingFiles(new InputFileWatcher.DirectoryLister() {
+        @Override
+        public String[] list(File dir, FilenameFilter filter) {
+          return getOrderedFileListForProcessing(dir, filter);
+        }
+      });
+    }
 
     // if we have a file, add it to the list of transaction files
     if (fileNames.length > 0) {
@@ -1085,6 +1283,12 @@ public abstract class FlatFileInputAdapter
 
         // We want to open it, will the transaction manager allow it?
         if (canStartNewTransaction()) {
+          // The file leaves the watcher queue whether we take it or not, if it
+          // is still there the reconciliation scan will find it again
+          if (fileWatcher != null) {
+            fileWatcher.remove(fileName);
+          }
+
           // See if we want to open this file
           if (filterFileName(fileName)) {
             // Create the new transaction to hold the information. This is done in
@@ -1201,6 +1405,51 @@ public abstract class FlatFileInputAdapter
     }
   }
 
+  /**
+   * Tell us if there is more to read from the open file.
+   *
+   * @return true if there is more data
+   * @throws IOException
+   */
+  private boolean inputHasMoreData() throws IOException {
+    if (splitReader != null) {
+      return splitReader.hasMoreData();
+    } else if (mappedReader != null) {
+      return mappedReader.hasMoreData();
+    } else {
+      return reader.ready();
+    }
+  }
+
+  /**
+   * Read the next line of the open file as a record. In mapped mode the record
+   * holds the undecoded bytes of the line.
+   *
+   * @return The record, or null if the line was blank
+   * @throws IOException
+   */
+  private FlatRecord readFlatRecord() throws IOException {
+    if (splitReader != null) {
+      FlatRecord record = splitReader.readRecord();
+      record.recordNumber = inputRecordNumber;
+      return record;
+    } else if (mappedReader != null) {
+      byte[] line = mappedReader.readLine();
+      if ((line == null) || (line.length == 0)) {
+        return null;
+      }
+
+      return new FlatRecord(line, inputCharset, inputRecordNumber);
+    } else {
+      String line = reader.readLine();
+      if ((line == null) || (line.length() == 0)) {
+        return null;
+      }
+
+      return new FlatRecord(line, inputRecordNumber);
+    }
+  }
+
   // -----------------------------------------------------------------------------
   // -------------------------- Start custom functions ---------------------------
   // -----------------------------------------------------------------------------
@@ -70,6 +70,9 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -81,6 +84,11 @@ import java.util.Iterator;
  *
  * The number of parallel streams that this adapter can write is determined by
  * the implementation layer.
+ *
+ * "WriterMode" and "SyncOnCommit" work as in the FlatFileOutputAdapter. In
+ * "Async" mode all of the streams share the buffers and I/O thread of the
+ * adapter. "Compression" and "CompressionLevel" also work as in the
+ * FlatFileOutputAdapter, with a compression thread for each open stream.
  */
 public abstract class FlatFileMultiStreamOutputAdapter
         extends AbstractTransactionalOutputAdapter
@@ -90,6 +98,23 @@ public abstract class FlatFileMultiStreamOutputAdapter
 
   private static final int BUF_SIZE = 65536;
   private BufferedWriter errorWriter;
+
+  // The writer mode, "Buffered" or "Async", and if the files are forced to the
+  // disk before the commit in async mode
+  private static final String WRITER_MODE = "WriterMode";
+  private static final String SYNC_ON_COMMIT = "SyncOnCommit";
+  private boolean syncOnCommit = false;
+
+  // The buffers and I/O thread used in async mode, null in buffered mode
+  private AsyncFileWriter.Pool asyncPool = null;
+
+  // The compression, "None", "Gzip" or "Auto" (by the file name), and the
+  // level of the compression
+  private static final String COMPRESSION = "Compression";
+  private static final String COMPRESSION_LEVEL = "CompressionLevel";
+  private static final String GZIP_SUFFIX = ".gz";
+  private String compression;
+  private int compressionLevel;
   private String filePath;
   private String filePrefix;
   private String fileSuffix;
@@ -188,6 +213,10 @@ public abstract class FlatFileMultiStreamOutputAdapter
     ConfigHelper = initGetProcPrefix();
     processControlEvent(SERVICE_PROCPREFIX, true, ConfigHelper);
 
+    // Get the way we write the files
+    initWriterMode();
+    initCompression();
+
     // Check the parameters we received
     initFileName();
 
@@ -195,6 +224,18 @@ public abstract class FlatFileMultiStreamOutputAdapter
     currentFileNames = new HashMap<>(10);
   }
 
+  /**
+   * Stop the I/O thread if we are using async mode.
+   */
+  @Override
+  public void cleanup() {
+    if (asyncPool != null) {
+      asyncPool.close();
+    }
+
+    super.cleanup();
+  }
+
   /**
    * Process the stream header. Get the file base name and open the transaction.
    *
@@ -387,7 +428,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
    * @return The buffered file writer for the valid file
    */
   public BufferedWriter openValidFile(String fileName) {
-    FileWriter fwriter = null;
+    Writer fwriter = null;
     File file;
     file = new File(fileName);
 
@@ -396,7 +437,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
         getPipeLog().error("output file already exists = " + fileName);
       }
 
-      fwriter = new FileWriter(file);
+      fwriter = openWriter(file);
     } catch (IOException ex) {
       getPipeLog().error("Error opening valid stream output for file " + fileName);
     }
@@ -410,7 +451,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
    * @param filename The name of the file to open
    */
   public void openErrFile(String filename) {
-    FileWriter fwriter = null;
+    Writer fwriter = null;
     File file;
     file = new File(filename);
 
@@ -419,7 +460,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
         getPipeLog().error("output file already exists = " + filename);
       }
 
-      fwriter = new FileWriter(file);
+      fwriter = openWriter(file);
     } catch (IOException ex) {
       getPipeLog().error("Error opening error stream output for file " + filename);
     }
@@ -427,6 +468,40 @@ public abstract class FlatFileMultiStreamOutputAdapter
     errorWriter = new BufferedWriter(fwriter);
   }
 
+  /**
+   * Open the writer for a file, in the writer mode we are using.
+   *
+   * @param file The file to open
+   * @return The writer
+   * @throws IOException If the file could not be opened
+   */
+  private Writer openWriter(File file) throws IOException {
+    if (isCompressed(file.getName())) {
+      return new OutputStreamWriter(new GzipFileOutputStream(file, compressionLevel,
+              getPipeName() + "-" + getSymbolicName() + "-Deflater"), Charset.defaultCharset());
+    } else if (asyncPool == null) {
+      return new FileWriter(file);
+    } else {
+      return asyncPool.open(file, Charset.defaultCharset(), syncOnCommit);
+    }
+  }
+
+  /**
+   * Tell us if a file is written compressed.
+   *
+   * @param fileName The name of the file
+   * @return true if the file is compressed
+   */
+  private boolean isCompressed(String fileName) {
+    if (compression.equalsIgnoreCase("Gzip")) {
+      return true;
+    } else if (compression.equalsIgnoreCase("Auto")) {
+      return fileName.toLowerCase().endsWith(GZIP_SUFFIX);
+    } else {
+      return false;
+    }
+  }
+
   @Override
   public void closeStream(int transactionNumber) {
     // Nothing for the moment
@@ -927,6 +1002,75 @@ public abstract class FlatFileMultiStreamOutputAdapter
     return tmpProcPrefix;
   }
 
+  /**
+   * Set up the way we write the files, "Buffered" (the default) or "Async",
+   * and if the files are forced to the disk when they are closed in async mode.
+   */
+  private void initWriterMode()
+          throws InitializationException {
+    String writerMode = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            WRITER_MODE, "Buffered");
+    String syncHelper = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SYNC_ON_COMMIT, "False");
+
+    if (syncHelper.equalsIgnoreCase("True")) {
+      syncOnCommit = true;
+    } else if (syncHelper.equalsIgnoreCase("False") == false) {
+      message = "Sync on commit <" + syncHelper + "> must be <True> or <False>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (writerMode.equalsIgnoreCase("Async")) {
+      asyncPool = new AsyncFileWriter.Pool(getPipeName() + "-" + getSymbolicName() + "-Writer", BUF_SIZE, 4);
+    } else if (writerMode.equalsIgnoreCase("Buffered") == false) {
+      message = "Writer mode <" + writerMode + "> not supported. Use <Buffered> or <Async>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    } else if (syncOnCommit) {
+      message = "Sync on commit can only be used in Async writer mode";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
+  /**
+   * Set up the compression of the files, "None" (the default), "Gzip" or
+   * "Auto", which compresses the files with names ending in ".gz".
+   */
+  private void initCompression()
+          throws InitializationException {
+    compression = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            COMPRESSION, "None");
+    String levelHelper = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            COMPRESSION_LEVEL, "6");
+
+    if ((compression.equalsIgnoreCase("None") == false) && (compression.equalsIgnoreCase("Gzip") == false)
+            && (compression.equalsIgnoreCase("Auto") == false)) {
+      message = "Compression <" + compression + "> not supported. Use <None>, <Gzip> or <Auto>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    try {
+      compressionLevel = Integer.parseInt(levelHelper);
+    } catch (NumberFormatException nfe) {
+      compressionLevel = -1;
+    }
+
+    if ((compressionLevel < 0) || (compressionLevel > 9)) {
+      message = "Compression level <" + levelHelper + "> must be 0-9";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if ((asyncPool != null) && (isCompressed(fileSuffix) || isCompressed(errSuffix))) {
+      message = "Compression cannot be used in Async writer mode";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
   /**
    * Checks the file name from the input parameters.
    *
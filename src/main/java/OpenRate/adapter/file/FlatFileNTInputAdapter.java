@@ -56,10 +56,10 @@ package OpenRate.adapter.file;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -111,6 +111,12 @@ import OpenRate.record.TrailerRecord;
  * the stream, we do: - Inject a trailer record into the stream - close the
  * input stream and reset the "file in processing" flag so that we can scan for
  * more files
+ *
+ * Compression -----------
+ *
+ * With "Compression" set to "Gzip" the input files are read as gzip compressed
+ * files, and with "Auto" the files with names ending in ".gz" are. Compressed
+ * files are inflated on a thread of their own, ahead of the reader.
  */
 public abstract class FlatFileNTInputAdapter
         extends AbstractInputAdapter
@@ -165,6 +171,15 @@ public abstract class FlatFileNTInputAdapter
   private static final String SERVICE_E_SUFFIX = "ErrFileSuffix";
   private static final String SERVICE_PROCPREFIX = "ProcessingPrefix";
 
+  // The watcher for event driven file discovery, null if we scan
+  private InputFileWatcher fileWatcher = null;
+
+  // The compression of the input files, "None", "Gzip" or "Auto" (by the file
+  // name)
+  private static final String COMPRESSION = "Compression";
+  private static final String GZIP_SUFFIX = ".gz";
+  private String compression;
+
   /**
    * Default Constructor
    */
@@ -218,6 +233,23 @@ public abstract class FlatFileNTInputAdapter
     // Check the file name scanning variables, throw initialisation exception
     // if something is wrong.
     initFileName();
+    initCompression();
+
+    // Set up the event driven file discovery if we want it
+    fileWatcher = InputFileWatcher.getInputFileWatcher(this, getPipeLog(), InputFilePath,
+            new GlobFilenameFilter(InputFilePrefix + "*" + InputFileSuffix, GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK));
+  }
+
+  /**
+   * Stop the file watcher if we are using one.
+   */
+  @Override
+  public void cleanup() {
+    if (fileWatcher != null) {
+      fileWatcher.close();
+    }
+
+    super.cleanup();
   }
 
   /**
@@ -261,7 +293,12 @@ public abstract class FlatFileNTInputAdapter
           // Get the name to work on
           baseName = GetBaseName();
           procName = getProcFilePath(baseName);
-          reader = new BufferedReader(new FileReader(procName), BUF_SIZE);
+          if (isCompressed(procName)) {
+            reader = new BufferedReader(new InputStreamReader(new GzipFileInputStream(new File(procName),
+                    getPipeName() + "-" + getSymbolicName() + "-Inflater")), BUF_SIZE);
+          } else {
+            reader = new BufferedReader(new FileReader(procName), BUF_SIZE);
+          }
           InputStreamOpen = true;
           InputRecordNumber = 0;
 
@@ -277,7 +314,7 @@ public abstract class FlatFileNTInputAdapter
           tmpHeader = procHeader(tmpHeader);
           Outbatch.add(tmpHeader);
           ThisBatchCounter++;
-        } catch (FileNotFoundException exFileNotFound) {
+        } catch (IOException exFileNotFound) {
           getPipeLog().error(
                   "Application is not able to read file <" + procName + ">");
           throw new ProcessingException("Application is not able to read file <"
@@ -809,6 +846,40 @@ public abstract class FlatFileNTInputAdapter
     }
   }
 
+  /**
+   * Set up the compression of the input files. "None" (the default) reads the
+   * files as they are, "Gzip" inflates all of the files and "Auto" inflates the
+   * files with names ending in ".gz".
+   */
+  private void initCompression()
+          throws InitializationException {
+    compression = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            COMPRESSION, "None");
+
+    if ((compression.equalsIgnoreCase("None") == false) && (compression.equalsIgnoreCase("Gzip") == false)
+            && (compression.equalsIgnoreCase("Auto") == false)) {
+      message = "Compression <" + compression + "> not supported. Use <None>, <Gzip> or <Auto>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
+  /**
+   * Tell us if an input file is compressed.
+   *
+   * @param fileName The name of the file
+   * @return true if the file is compressed
+   */
+  private boolean isCompressed(String fileName) {
+    if (compression.equalsIgnoreCase("Gzip")) {
+      return true;
+    } else if (compression.equalsIgnoreCase("Auto")) {
+      return fileName.toLowerCase().endsWith(GZIP_SUFFIX);
+    } else {
+      return false;
+    }
+  }
+
   // -----------------------------------------------------------------------------
   // ---------------------- Start stream handling functions ----------------------
   // -----------------------------------------------------------------------------
@@ -837,13 +908,28 @@ public abstract class FlatFileNTInputAdapter
     filter = new GlobFilenameFilter(InputFilePrefix + "*"
             + InputFileSuffix,
             GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK);
-    FileNames = dir.list(filter);
+    if (fileWatcher == null) {
+      FileNames = dir.list(filter);
+    } else {
+      FileNames = fileWatcher.getPendingFiles(new InputFileWatcher.DirectoryLister() {
+        @Override
+        public String[] list(File dir, FilenameFilter filter) {
+          return dir.list(filter);
+        }
+      });
+    }
 
     // if we have a file, add it to the list of transaction files
     if (FileNames.length > 0) {
       // get the first file in the list
       fileName = FileNames[0];
       FilesAssigned = 1;
+
+      // Take the file out of the watcher queue
+      if (fileWatcher != null) {
+        fileWatcher.remove(fileName);
+      }
+
       baseName = fileName.replaceAll("^" + InputFilePrefix, "");
       baseName = baseName.replaceAll(InputFileSuffix + "$", "");
       getPipeLog().info("File base name is <" + baseName + ">");
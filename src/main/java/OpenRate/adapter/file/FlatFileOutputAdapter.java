@@ -70,6 +70,9 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -80,6 +83,21 @@ import java.util.Iterator;
  * here</a> to go to wiki page.
  * <br>Flat File Output Adapter. Writes to a file stream output, using
  * transaction aware handling.
+ *
+ * <p>
+ * By default the records are written through a FileWriter on the pipeline
+ * thread. With "WriterMode" set to "Async", the records are encoded into pooled
+ * buffers which are written to the files by a separate I/O thread, so that the
+ * pipeline does not wait for the disk. With "SyncOnCommit" set to "True" the
+ * files are also forced to the disk when they are closed at the end of the
+ * transaction, before the transaction can be committed.
+ *
+ * <p>
+ * With "Compression" set to "Gzip" the files are written gzip compressed, and
+ * with "Auto" the files with names ending in ".gz" are compressed. The
+ * compression runs on a thread of its own for each file, at the level given by
+ * "CompressionLevel" (0-9, default 6). Compression cannot be used in async
+ * writer mode.
  */
 public abstract class FlatFileOutputAdapter
         extends AbstractTransactionalOutputAdapter
@@ -96,6 +114,23 @@ public abstract class FlatFileOutputAdapter
   // If we are using a single writer
   private boolean singleWriter = false;
 
+  // The writer mode, "Buffered" or "Async", and if the files are forced to the
+  // disk before the commit in async mode
+  private static final String WRITER_MODE = "WriterMode";
+  private static final String SYNC_ON_COMMIT = "SyncOnCommit";
+  private boolean syncOnCommit = false;
+
+  // The buffers and I/O thread used in async mode, null in buffered mode
+  private AsyncFileWriter.Pool asyncPool = null;
+
+  // The compression, "None", "Gzip" or "Auto" (by the file name), and the
+  // level of the compression
+  private static final String COMPRESSION = "Compression";
+  private static final String COMPRESSION_LEVEL = "CompressionLevel";
+  private static final String GZIP_SUFFIX = ".gz";
+  private String compression;
+  private int compressionLevel;
+
   private String filePath;
   private String filePrefix;
   private String fileSuffix;
@@ -218,6 +253,10 @@ public abstract class FlatFileOutputAdapter
     configHelper = initGetProcPrefix();
     processControlEvent(SERVICE_PROCPREFIX, true, configHelper);
 
+    // Get the way we write the files
+    initWriterMode();
+    initCompression();
+
     // Check the parameters we received
     initFileName();
 
@@ -225,6 +264,18 @@ public abstract class FlatFileOutputAdapter
     CurrentFileNames = new HashMap<>(10);
   }
 
+  /**
+   * Stop the I/O thread if we are using async mode.
+   */
+  @Override
+  public void cleanup() {
+    if (asyncPool != null) {
+      asyncPool.close();
+    }
+
+    super.cleanup();
+  }
+
   /**
    * Process the stream header. Get the file base name and open the transaction.
    *
@@ -344,12 +395,13 @@ public abstract class FlatFileOutputAdapter
    */
   @Override
   public TrailerRecord procTrailer(TrailerRecord r) {
-    // Do the transaction level maintenance
-    super.procTrailer(r); 
-    
-    // Close the files
+    // Close the files before the transaction is marked as flushed, so that
+    // the commit does not see an unwritten file
     closeFiles(getTransactionNumber());
 
+    // Do the transaction level maintenance
+    super.procTrailer(r);
+
     return r;
   }
 
@@ -382,7 +434,7 @@ public abstract class FlatFileOutputAdapter
    * @param filename The name of the file to open
    */
   public void openValidFile(String filename) {
-    FileWriter fwriter = null;
+    Writer fwriter = null;
     File file;
     file = new File(filename);
 
@@ -391,7 +443,7 @@ public abstract class FlatFileOutputAdapter
         getPipeLog().error("output file already exists = " + filename);
       }
 
-      fwriter = new FileWriter(file);
+      fwriter = openWriter(file);
     } catch (IOException ex) {
       getPipeLog().error("Error opening valid stream output for file " + filename);
     }
@@ -405,7 +457,7 @@ public abstract class FlatFileOutputAdapter
    * @param filename The name of the file to open
    */
   public void openErrFile(String filename) {
-    FileWriter fwriter = null;
+    Writer fwriter = null;
     File file;
     file = new File(filename);
 
@@ -417,7 +469,7 @@ public abstract class FlatFileOutputAdapter
           getPipeLog().error("output file already exists = " + filename);
         }
 
-        fwriter = new FileWriter(file);
+        fwriter = openWriter(file);
       } catch (IOException ex) {
         getPipeLog().error("Error opening error stream output for file " + filename);
       }
@@ -426,6 +478,40 @@ public abstract class FlatFileOutputAdapter
     }
   }
 
+  /**
+   * Open the writer for a file, in the writer mode we are using.
+   *
+   * @param file The file to open
+   * @return The writer
+   * @throws IOException If the file could not be opened
+   */
+  private Writer openWriter(File file) throws IOException {
+    if (isCompressed(file.getName())) {
+      return new OutputStreamWriter(new GzipFileOutputStream(file, compressionLevel,
+              getPipeName() + "-" + getSymbolicName() + "-Deflater"), Charset.defaultCharset());
+    } else if (asyncPool == null) {
+      return new FileWriter(file);
+    } else {
+      return asyncPool.open(file, Charset.defaultCharset(), syncOnCommit);
+    }
+  }
+
+  /**
+   * Tell us if a file is written compressed.
+   *
+   * @param fileName The name of the file
+   * @return true if the file is compressed
+   */
+  private boolean isCompressed(String fileName) {
+    if (compression.equalsIgnoreCase("Gzip")) {
+      return true;
+    } else if (compression.equalsIgnoreCase("Auto")) {
+      return fileName.toLowerCase().endsWith(GZIP_SUFFIX);
+    } else {
+      return false;
+    }
+  }
+
   @Override
   public void closeStream(int transactionNumber) {
     // Nothing for the moment
@@ -992,6 +1078,79 @@ public abstract class FlatFileOutputAdapter
     return tmpProcPrefix;
   }
 
+  /**
+   * Set up the way we write the files. In "Buffered" mode (the default) each
+   * file is written by a FileWriter on the pipeline thread. In "Async" mode the
+   * records are encoded into pooled buffers, which are written by an I/O thread
+   * of the adapter. SyncOnCommit forces the files to the disk when they are
+   * closed in async mode.
+   */
+  private void initWriterMode()
+          throws InitializationException {
+    String writerMode = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            WRITER_MODE, "Buffered");
+    String syncHelper = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SYNC_ON_COMMIT, "False");
+
+    if (syncHelper.equalsIgnoreCase("True")) {
+      syncOnCommit = true;
+    } else if (syncHelper.equalsIgnoreCase("False") == false) {
+      message = "Sync on commit <" + syncHelper + "> must be <True> or <False>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (writerMode.equalsIgnoreCase("Async")) {
+      asyncPool = new AsyncFileWriter.Pool(getPipeName() + "-" + getSymbolicName() + "-Writer", BUF_SIZE, 4);
+    } else if (writerMode.equalsIgnoreCase("Buffered") == false) {
+      message = "Writer mode <" + writerMode + "> not supported. Use <Buffered> or <Async>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    } else if (syncOnCommit) {
+      message = "Sync on commit can only be used in Async writer mode";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
+  /**
+   * Set up the compression of the files. "None" (the default) writes the files
+   * as they are, "Gzip" compresses all of the files and "Auto" compresses the
+   * files with names ending in ".gz".
+   */
+  private void initCompression()
+          throws InitializationException {
+    compression = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            COMPRESSION, "None");
+    String levelHelper = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            COMPRESSION_LEVEL, "6");
+
+    if ((compression.equalsIgnoreCase("None") == false) && (compression.equalsIgnoreCase("Gzip") == false)
+            && (compression.equalsIgnoreCase("Auto") == false)) {
+      message = "Compression <" + compression + "> not supported. Use <None>, <Gzip> or <Auto>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    try {
+      compressionLevel = Integer.parseInt(levelHelper);
+    } catch (NumberFormatException nfe) {
+      compressionLevel = -1;
+    }
+
+    if ((compressionLevel < 0) || (compressionLevel > 9)) {
+      message = "Compression level <" + levelHelper + "> must be 0-9";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if ((asyncPool != null) && (isCompressed(fileSuffix) || ((singleWriter == false) && isCompressed(errSuffix)))) {
+      message = "Compression cannot be used in Async writer mode";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
   /**
    * Checks the file name from the input parameters.
    *
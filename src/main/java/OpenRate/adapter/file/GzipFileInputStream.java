@@ -0,0 +1,305 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a gzip compressed file, inflating it on a separate thread. The thread
+ * inflates the file into a small number of blocks ahead of the reader, so that
+ * the decompression overlaps with the processing of the records. Files made
+ * of several concatenated gzip members are read as one stream.
+ *
+ * Because the file adapters find the end of a file with ready(), available()
+ * waits for the next block to be inflated, and only returns 0 at the end of the
+ * file.
+ */
+public class GzipFileInputStream extends InputStream {
+
+  // The default size and number of the blocks
+  public static final int DEFAULT_BLOCK_SIZE = 65536;
+  public static final int DEFAULT_BLOCK_COUNT = 4;
+
+  // A block of inflated data
+  private static class Block {
+
+    final byte[] data;
+    int length;
+
+    Block(int size) {
+      data = new byte[size];
+    }
+  }
+
+  // The marker put after the last block
+  private static final Block END = new Block(0);
+
+  // The blocks which are free to be filled and the blocks which have been
+  // filled, in order
+  private final ArrayBlockingQueue<Block> freeBlocks;
+  private final ArrayBlockingQueue<Block> filledBlocks;
+
+  // The thread which inflates the file
+  private final Thread inflaterThread;
+
+  // The block we are reading from, and the position in it
+  private Block current = null;
+  private int position = 0;
+
+  // Set when we have reached the end of the file
+  private boolean ended = false;
+
+  // Set when we are closed
+  private volatile boolean closed = false;
+
+  // The error of the inflater thread, if there was one
+  private volatile IOException failure = null;
+
+  /**
+   * Open a compressed file with the default blocks.
+   *
+   * @param file The file to read
+   * @param threadName The name of the thread which inflates the file
+   * @throws IOException If the file could not be opened
+   */
+  public GzipFileInputStream(File file, String threadName) throws IOException {
+    this(file, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT, threadName);
+  }
+
+  /**
+   * Open a compressed file.
+   *
+   * @param file The file to read
+   * @param blockSize The size of each block of inflated data
+   * @param blockCount The number of blocks the thread can inflate ahead
+   * @param threadName The name of the thread which inflates the file
+   * @throws IOException If the file could not be opened
+   */
+  public GzipFileInputStream(File file, final int blockSize, int blockCount, String threadName) throws IOException {
+    freeBlocks = new ArrayBlockingQueue<>(blockCount);
+    filledBlocks = new ArrayBlockingQueue<>(blockCount + 1);
+    for (int i = 0; i < blockCount; i++) {
+      freeBlocks.add(new Block(blockSize));
+    }
+
+    // open the file here, so that a missing file is reported to the caller
+    final InputStream compressed = new FileInputStream(file);
+
+    inflaterThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        inflate(compressed, blockSize);
+      }
+    }, threadName);
+    inflaterThread.setDaemon(true);
+    inflaterThread.start();
+  }
+
+  /**
+   * Inflate the file into the blocks, until the end of the file or until we
+   * are closed.
+   */
+  private void inflate(InputStream compressed, int blockSize) {
+    try (InputStream in = new GZIPInputStream(compressed, blockSize)) {
+      while (true) {
+        Block block = freeBlocks.poll(100, TimeUnit.MILLISECONDS);
+        if (closed) {
+          return;
+        }
+        if (block == null) {
+          continue;
+        }
+
+        // fill the block, so that the reader gets as much as possible at once
+        block.length = 0;
+        int count;
+        while ((block.length < block.data.length)
+                && ((count = in.read(block.data, block.length, block.data.length - block.length)) > 0)) {
+          block.length += count;
+        }
+
+        if (block.length == 0) {
+          break;
+        }
+
+        filledBlocks.add(block);
+      }
+    } catch (IOException ex) {
+      failure = ex;
+    } catch (InterruptedException ex) {
+      return;
+    }
+
+    filledBlocks.add(END);
+  }
+
+  /**
+   * Make sure we have some data to read.
+   *
+   * @return false at the end of the file
+   */
+  private boolean fill() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+
+    while ((current == null) || (position >= current.length)) {
+      if (ended) {
+        return false;
+      }
+
+      if (current != null) {
+        freeBlocks.add(current);
+        current = null;
+      }
+
+      try {
+        Block block = filledBlocks.poll(1, TimeUnit.SECONDS);
+        if (block == null) {
+          if (inflaterThread.isAlive() == false) {
+            throw new IOException("Inflater thread <" + inflaterThread.getName() + "> is not running");
+          }
+        } else if (block == END) {
+          ended = true;
+          if (failure != null) {
+            throw failure;
+          }
+        } else {
+          current = block;
+          position = 0;
+        }
+      } catch (InterruptedException ex) {
+        throw new InterruptedIOException("Interrupted waiting for the file to be inflated");
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Read a byte.
+   *
+   * @return The byte, or -1 at the end of the file
+   * @throws IOException If the file could not be inflated
+   */
+  @Override
+  public int read() throws IOException {
+    if (fill() == false) {
+      return -1;
+    }
+
+    return current.data[position++] & 0xFF;
+  }
+
+  /**
+   * Read some bytes.
+   *
+   * @param b The buffer to read into
+   * @param off The offset in the buffer
+   * @param len The most bytes to read
+   * @return The number of bytes read, or -1 at the end of the file
+   * @throws IOException If the file could not be inflated
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    if (fill() == false) {
+      return -1;
+    }
+
+    int count = Math.min(len, current.length - position);
+    System.arraycopy(current.data, position, b, off, count);
+    position += count;
+
+    return count;
+  }
+
+  /**
+   * Get the number of bytes which can be read from the inflated block, waiting
+   * for the next block if we need to.
+   *
+   * @return The number of bytes, 0 only at the end of the file
+   * @throws IOException If the file could not be inflated
+   */
+  @Override
+  public int available() throws IOException {
+    if (fill() == false) {
+      return 0;
+    }
+
+    return current.length - position;
+  }
+
+  /**
+   * Close the file, stopping the inflater thread.
+   */
+  @Override
+  public void close() {
+    if (closed == false) {
+      closed = true;
+      inflaterThread.interrupt();
+    }
+  }
+}
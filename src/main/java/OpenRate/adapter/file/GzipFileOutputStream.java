@@ -0,0 +1,333 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a gzip compressed file, deflating it on a separate thread. The bytes
+ * are collected into blocks, and full blocks are passed to the thread which
+ * compresses them into the file, so that the compression overlaps with the
+ * processing of the records. The writer only waits when all of the blocks are
+ * waiting to be compressed.
+ *
+ * Closing the stream waits until the file has been completely written. An
+ * error in the deflater thread is thrown by the next call on the stream.
+ */
+public class GzipFileOutputStream extends OutputStream {
+
+  // The default size and number of the blocks
+  public static final int DEFAULT_BLOCK_SIZE = 65536;
+  public static final int DEFAULT_BLOCK_COUNT = 4;
+
+  // A block of data to compress
+  private static class Block {
+
+    final byte[] data;
+    int length;
+
+    Block(int size) {
+      data = new byte[size];
+    }
+  }
+
+  // The marker put after the last block
+  private static final Block END = new Block(0);
+
+  // The blocks which are free to be filled and the blocks which have been
+  // filled, in order
+  private final ArrayBlockingQueue<Block> freeBlocks;
+  private final ArrayBlockingQueue<Block> filledBlocks;
+
+  // The thread which deflates the file
+  private final Thread deflaterThread;
+
+  // The block we are filling
+  private Block current = null;
+
+  // Set when we are closed
+  private boolean closed = false;
+
+  // The error of the deflater thread, if there was one
+  private volatile IOException failure = null;
+
+  /**
+   * Create a compressed file with the default blocks.
+   *
+   * @param file The file to write
+   * @param level The compression level, 0-9 or Deflater.DEFAULT_COMPRESSION
+   * @param threadName The name of the thread which deflates the file
+   * @throws IOException If the file could not be created
+   */
+  public GzipFileOutputStream(File file, int level, String threadName) throws IOException {
+    this(file, level, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT, threadName);
+  }
+
+  /**
+   * Create a compressed file.
+   *
+   * @param file The file to write
+   * @param level The compression level, 0-9 or Deflater.DEFAULT_COMPRESSION
+   * @param blockSize The size of each block
+   * @param blockCount The number of blocks which can wait to be compressed
+   * @param threadName The name of the thread which deflates the file
+   * @throws IOException If the file could not be created
+   */
+  public GzipFileOutputStream(File file, final int level, final int blockSize, int blockCount, String threadName) throws IOException {
+    if ((level < Deflater.DEFAULT_COMPRESSION) || (level > Deflater.BEST_COMPRESSION)) {
+      throw new IllegalArgumentException("Compression level <" + level + "> must be 0-9");
+    }
+
+    freeBlocks = new ArrayBlockingQueue<>(blockCount);
+    filledBlocks = new ArrayBlockingQueue<>(blockCount + 1);
+    for (int i = 0; i < blockCount; i++) {
+      freeBlocks.add(new Block(blockSize));
+    }
+
+    // create the file here, so that an error is reported to the caller
+    final OutputStream compressed = new FileOutputStream(file);
+
+    deflaterThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        deflate(compressed, level, blockSize);
+      }
+    }, threadName);
+    deflaterThread.setDaemon(true);
+    deflaterThread.start();
+  }
+
+  /**
+   * Compress the blocks into the file until the end marker. After an error
+   * the blocks are still taken, but not written, so the writer does not wait
+   * for ever.
+   */
+  private void deflate(OutputStream compressed, final int level, int blockSize) {
+    GZIPOutputStream out = null;
+
+    try {
+      out = new GZIPOutputStream(compressed, blockSize) {
+        {
+          def.setLevel(level);
+        }
+      };
+
+      while (true) {
+        Block block = filledBlocks.take();
+        if (block == END) {
+          break;
+        }
+
+        if (failure == null) {
+          try {
+            out.write(block.data, 0, block.length);
+          } catch (IOException ex) {
+            failure = ex;
+          }
+        }
+
+        block.length = 0;
+        freeBlocks.add(block);
+      }
+    } catch (IOException ex) {
+      failure = ex;
+    } catch (InterruptedException ex) {
+      failure = new InterruptedIOException("Deflater thread interrupted");
+    } finally {
+      try {
+        if (out != null) {
+          out.close();
+        } else {
+          compressed.close();
+        }
+      } catch (IOException ex) {
+        if (failure == null) {
+          failure = ex;
+        }
+      }
+    }
+  }
+
+  /**
+   * Write a byte.
+   *
+   * @param b The byte to write
+   * @throws IOException If the stream is closed or the file could not be
+   * written
+   */
+  @Override
+  public void write(int b) throws IOException {
+    ensureBlock();
+    current.data[current.length++] = (byte) b;
+  }
+
+  /**
+   * Write some bytes.
+   *
+   * @param b The bytes to write
+   * @param off The offset of the first byte
+   * @param len The number of bytes to write
+   * @throws IOException If the stream is closed or the file could not be
+   * written
+   */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      ensureBlock();
+      int count = Math.min(len, current.data.length - current.length);
+      System.arraycopy(b, off, current.data, current.length, count);
+      current.length += count;
+      off += count;
+      len -= count;
+    }
+  }
+
+  /**
+   * Pass the bytes written so far to the deflater thread. This does not wait
+   * for them to be written.
+   *
+   * @throws IOException If the stream is closed or the file could not be
+   * written
+   */
+  @Override
+  public void flush() throws IOException {
+    checkOpen();
+    submitCurrent();
+  }
+
+  /**
+   * Compress everything which is left and close the file.
+   *
+   * @throws IOException If the file could not be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    submitCurrent();
+    filledBlocks.add(END);
+
+    try {
+      deflaterThread.join();
+    } catch (InterruptedException ex) {
+      throw new InterruptedIOException("Interrupted waiting for the file to be compressed");
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Make sure we have a block with room in it, passing the full block to the
+   * deflater thread.
+   */
+  private void ensureBlock() throws IOException {
+    checkOpen();
+
+    if ((current != null) && (current.length == current.data.length)) {
+      submitCurrent();
+    }
+
+    try {
+      while (current == null) {
+        current = freeBlocks.poll(1, TimeUnit.SECONDS);
+        if ((current == null) && (deflaterThread.isAlive() == false)) {
+          throw new IOException("Deflater thread <" + deflaterThread.getName() + "> is not running");
+        }
+      }
+    } catch (InterruptedException ex) {
+      throw new InterruptedIOException("Interrupted waiting for a block to be compressed");
+    }
+  }
+
+  /**
+   * Pass the block we are filling to the deflater thread.
+   */
+  private void submitCurrent() {
+    if (current != null) {
+      if (current.length > 0) {
+        filledBlocks.add(current);
+      } else {
+        freeBlocks.add(current);
+      }
+      current = null;
+    }
+  }
+
+  /**
+   * Check that we can still write.
+   */
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,338 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import OpenRate.IPipeline;
+import OpenRate.adapter.AbstractInputAdapter;
+import OpenRate.exception.InitializationException;
+import OpenRate.logging.ILogger;
+import OpenRate.utils.PropertyUtils;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+
+/**
+ * Event driven discovery of input files for the file input adapters. Instead
+ * of listing the input directory every time the pipeline polls the adapter,
+ * the directory is registered with a WatchService and the files which arrive
+ * are kept in an in memory queue, in the order in which they arrived. When a
+ * file arrives, the pipeline is woken up from its idle sleep, so that the
+ * file is picked up at once instead of at the end of the sleep.
+ *
+ * Watch events can be lost (for example if the event queue of the operating
+ * system overflows), so a reconciliation scan of the directory is still made
+ * every reconcile interval, and at once after an overflow. Files found by the
+ * scan that are not yet in the queue are added at the end, in the order of the
+ * scan.
+ *
+ * As with the directory scan, files should be written elsewhere and moved into
+ * the input directory when they are complete.
+ *
+ * The watcher is configured in the input adapter properties:
+ * - FileDiscovery: "Scan" (default) to list the directory at each poll or
+ *   "Watch" to use the watcher<br>
+ * - ReconcileInterval: the interval between reconciliation scans in ms,
+ *   default 60000<br>
+ */
+public class InputFileWatcher implements Runnable {
+
+  // The properties we read
+  private static final String FILE_DISCOVERY = "FileDiscovery";
+  private static final String RECONCILE_INTERVAL = "ReconcileInterval";
+  private static final String DEFAULT_RECONCILE_INTERVAL = "60000";
+
+  // The directory we are watching
+  private final File inputDir;
+
+  // The filter for the input files
+  private final FilenameFilter filter;
+
+  // The adapter whose pipeline we wake when a file arrives
+  private final AbstractInputAdapter adapter;
+
+  // The log to report to
+  private final ILogger log;
+
+  // The interval between reconciliation scans in ms
+  private final long reconcileInterval;
+
+  // The pending files, in the order they arrived
+  private final LinkedHashSet<String> pendingFiles = new LinkedHashSet<>();
+
+  // The time at which the next reconciliation scan is due
+  private long nextReconcile = 0;
+
+  // The watch service
+  private WatchService watchService;
+
+  // The thread taking the watch events
+  private Thread watchThread;
+
+  /**
+   * Create a new watcher for an input directory.
+   *
+   * @param inputDir The directory to watch
+   * @param filter The filter that input files must match
+   * @param adapter The adapter whose pipeline we wake when a file arrives
+   * @param log The log to report to
+   * @param reconcileInterval The interval between reconciliation scans in ms
+   */
+  public InputFileWatcher(File inputDir, FilenameFilter filter, AbstractInputAdapter adapter, ILogger log, long reconcileInterval) {
+    this.inputDir = inputDir;
+    this.filter = filter;
+    this.adapter = adapter;
+    this.log = log;
+    this.reconcileInterval = reconcileInterval;
+  }
+
+  /**
+   * Create and start the watcher for an input adapter if the adapter is
+   * configured for event driven file discovery.
+   *
+   * @param adapter The adapter to create the watcher for
+   * @param log The log to report to
+   * @param inputFilePath The directory to watch
+   * @param filter The filter that input files must match
+   * @return The started watcher, or null if the adapter scans the directory
+   * @throws InitializationException If the configuration is not valid
+   */
+  public static InputFileWatcher getInputFileWatcher(AbstractInputAdapter adapter, ILogger log, String inputFilePath, FilenameFilter filter)
+          throws InitializationException {
+    String message;
+    String discovery = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(adapter.getPipeName(), adapter.getSymbolicName(),
+            FILE_DISCOVERY, "Scan");
+
+    if (discovery.equalsIgnoreCase("Scan")) {
+      return null;
+    }
+
+    if (!discovery.equalsIgnoreCase("Watch")) {
+      message = "File discovery <" + discovery + "> not supported. Use <Scan> or <Watch>";
+      log.fatal(message);
+      throw new InitializationException(message, adapter.getSymbolicName());
+    }
+
+    String intervalHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(adapter.getPipeName(), adapter.getSymbolicName(),
+            RECONCILE_INTERVAL, DEFAULT_RECONCILE_INTERVAL);
+    long reconcileInterval;
+    try {
+      reconcileInterval = Long.parseLong(intervalHelper);
+    } catch (NumberFormatException nfe) {
+      reconcileInterval = -1;
+    }
+
+    if (reconcileInterval <= 0) {
+      message = "Reconcile interval <" + intervalHelper + "> must be a positive number of ms";
+      log.fatal(message);
+      throw new InitializationException(message, adapter.getSymbolicName());
+    }
+
+    InputFileWatcher watcher = new InputFileWatcher(new File(inputFilePath), filter, adapter, log, reconcileInterval);
+    try {
+      watcher.start("FileWatch." + adapter.getPipeName() + "." + adapter.getSymbolicName());
+    } catch (IOException ex) {
+      message = "Could not watch input file path <" + inputFilePath + ">";
+      log.fatal(message);
+      throw new InitializationException(message, ex, adapter.getSymbolicName());
+    }
+
+    log.info("Watching input file path <" + inputFilePath + ">, reconciling every <" + reconcileInterval + "> ms");
+
+    return watcher;
+  }
+
+  /**
+   * Register the directory with the watch service and start the thread which
+   * takes the events. The first call to getPendingFiles() performs the initial
+   * scan.
+   *
+   * @param threadName The name to give the watch thread
+   * @throws IOException If the directory could not be registered
+   */
+  public void start(String threadName) throws IOException {
+    Path dirPath = inputDir.toPath();
+    watchService = FileSystems.getDefault().newWatchService();
+    dirPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+    watchThread = new Thread(this, threadName);
+    watchThread.setDaemon(true);
+    watchThread.start();
+  }
+
+  /**
+   * Stop watching the directory.
+   */
+  public void close() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException ex) {
+        log.warning("Could not close watch service for <" + inputDir + ">");
+      }
+    }
+  }
+
+  /**
+   * Take the watch events and add the files that arrive to the queue.
+   */
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        boolean added = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            // we have lost events, scan the directory at the next request
+            synchronized (this) {
+              nextReconcile = 0;
+            }
+            added = true;
+          } else {
+            String fileName = ((Path) event.context()).getFileName().toString();
+            if (filter.accept(inputDir, fileName)) {
+              synchronized (this) {
+                added |= pendingFiles.add(fileName);
+              }
+            }
+          }
+        }
+
+        IPipeline pipeline = adapter.getPipeline();
+        if (added && pipeline != null) {
+          pipeline.wakeUp();
+        }
+
+        if (!key.reset()) {
+          log.error("Input directory <" + inputDir + "> is no longer accessible, falling back to scanning");
+          synchronized (this) {
+            watchService = null;
+          }
+          return;
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException ex) {
+      // we are closing down
+    }
+  }
+
+  /**
+   * Get the pending files in the order in which they arrived. If the
+   * reconciliation scan is due, the directory is scanned first using the
+   * given lister, so that the ordering of the scan is the ordering the adapter
+   * would use without the watcher.
+   *
+   * @param lister The directory lister to use for the reconciliation scan
+   * @return The pending file names, first in list gets processed first
+   */
+  public synchronized String[] getPendingFiles(DirectoryLister lister) {
+    long now = System.currentTimeMillis();
+
+    if ((watchService == null) || (now >= nextReconcile)) {
+      String[] scanned = lister.list(inputDir, filter);
+      if (scanned != null) {
+        for (String fileName : scanned) {
+          pendingFiles.add(fileName);
+        }
+      }
+      nextReconcile = now + reconcileInterval;
+    }
+
+    return pendingFiles.toArray(new String[pendingFiles.size()]);
+  }
+
+  /**
+   * Remove a file from the queue, because it has been taken for processing or
+   * because it is no longer there.
+   *
+   * @param fileName The name of the file to remove
+   */
+  public synchronized void remove(String fileName) {
+    pendingFiles.remove(fileName);
+  }
+
+  /**
+   * Get the number of files in the queue.
+   *
+   * @return The number of pending files
+   */
+  public synchronized int getPendingCount() {
+    return pendingFiles.size();
+  }
+
+  /**
+   * Lists the input directory for the reconciliation scan.
+   */
+  public interface DirectoryLister {
+
+    /**
+     * List the input files in the directory.
+     *
+     * @param dir The directory to list
+     * @param filter The filter the input files must match
+     * @return The file names, first in list gets processed first
+     */
+    public String[] list(File dir, FilenameFilter filter);
+  }
+}
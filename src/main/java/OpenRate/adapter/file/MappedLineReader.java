@@ -0,0 +1,244 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the lines of a file as bytes through a memory mapped window onto the
+ * file. Line boundaries are found on the bytes, so no character decoding is
+ * done while reading: the caller decides if and when to decode a line. This
+ * means that the character set of the file must encode CR and LF as single
+ * bytes, which is true of UTF-8, ASCII and the ISO-8859 and Windows single byte
+ * sets.
+ *
+ * The window is moved along the file as it is read, so files larger than the
+ * 2GB limit of a single mapping can be read. A line may not be longer than the
+ * window, the window is grown if a longer line is found.
+ *
+ * A reader can be limited to a range of the file, so that several readers can
+ * share a file.
+ *
+ * Lines end in LF, CR LF or CR, as for BufferedReader.readLine().
+ */
+public class MappedLineReader implements Closeable {
+
+  /**
+   * The default size of the window onto the file.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  // The file we are reading
+  private final RandomAccessFile file;
+
+  // The channel onto the file
+  private final FileChannel channel;
+
+  // The end of the range we read, at most the size of the file when we opened it
+  private final long fileSize;
+
+  // The size of the window we map
+  private int windowSize;
+
+  // The current window, and its offset in the file
+  private MappedByteBuffer window = null;
+  private long windowStart = 0;
+
+  // The offset in the file of the next line
+  private long position;
+
+  /**
+   * Open a file for reading from the start.
+   *
+   * @param inputFile The file to read
+   * @param windowSize The size of the window to map
+   * @throws IOException If the file could not be opened
+   */
+  public MappedLineReader(File inputFile, int windowSize) throws IOException {
+    this(inputFile, 0, Long.MAX_VALUE, windowSize);
+  }
+
+  /**
+   * Open a range of a file for reading. The range should start and end on line
+   * boundaries.
+   *
+   * @param inputFile The file to read
+   * @param startOffset The offset of the first line to read
+   * @param endOffset The offset after the last line to read
+   * @param windowSize The size of the window to map
+   * @throws IOException If the file could not be opened
+   */
+  public MappedLineReader(File inputFile, long startOffset, long endOffset, int windowSize) throws IOException {
+    this.file = new RandomAccessFile(inputFile, "r");
+    this.channel = file.getChannel();
+    this.fileSize = Math.min(channel.size(), endOffset);
+    this.windowSize = windowSize;
+    this.position = Math.min(Math.max(startOffset, 0), fileSize);
+  }
+
+  /**
+   * Tell us if there are more lines to read.
+   *
+   * @return true if there is more data
+   */
+  public boolean hasMoreData() {
+    return position < fileSize;
+  }
+
+  /**
+   * Get the offset in the file of the next line to be read.
+   *
+   * @return The byte offset
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  /**
+   * Read the next line, without the line terminator.
+   *
+   * @return The bytes of the line, or null at the end of the file
+   * @throws IOException If the file could not be read
+   */
+  public byte[] readLine() throws IOException {
+    if (position >= fileSize) {
+      return null;
+    }
+
+    while (true) {
+      mapWindow(position);
+
+      int start = (int) (position - windowStart);
+      int limit = window.limit();
+
+      for (int i = start; i < limit; i++) {
+        byte b = window.get(i);
+        if ((b == '\n') || (b == '\r')) {
+          byte[] line = copy(start, i);
+          position = windowStart + i + 1;
+
+          // CR LF is a single terminator
+          if ((b == '\r') && (position < fileSize) && (getByte(position) == '\n')) {
+            position++;
+          }
+
+          return line;
+        }
+      }
+
+      if (windowStart + limit >= fileSize) {
+        // the last line has no terminator
+        byte[] line = copy(start, limit);
+        position = fileSize;
+        return line;
+      }
+
+      if (start == 0) {
+        // the line is longer than the window
+        windowSize = (int) Math.min(2L * windowSize, Integer.MAX_VALUE - 8);
+      }
+
+      // move the window to the start of the line and look again
+      window = null;
+    }
+  }
+
+  /**
+   * Close the file. The mapping is released when the buffer is garbage
+   * collected.
+   *
+   * @throws IOException If the file could not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    window = null;
+    file.close();
+  }
+
+  /**
+   * Make sure the window covers the given offset, or starts at it if the
+   * window has been dropped.
+   */
+  private void mapWindow(long offset) throws IOException {
+    if ((window == null) || (offset < windowStart) || (offset >= windowStart + window.limit())) {
+      windowStart = offset;
+      window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, fileSize - offset));
+    }
+  }
+
+  /**
+   * Get a single byte, moving the window if needed.
+   */
+  private byte getByte(long offset) throws IOException {
+    mapWindow(offset);
+    return window.get((int) (offset - windowStart));
+  }
+
+  /**
+   * Copy a range of the window.
+   */
+  private byte[] copy(int from, int to) {
+    byte[] line = new byte[to - from];
+    for (int i = 0; i < line.length; i++) {
+      line[i] = window.get(from + i);
+    }
+    return line;
+  }
+}
@@ -0,0 +1,317 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import OpenRate.record.FlatRecord;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads the lines of one file with several threads. The file is divided into
+ * ranges which start and end on line boundaries, and each range is read by its
+ * own thread through a MappedLineReader. The threads also decode the records,
+ * which is where most of the reading time goes.
+ *
+ * The records are handed out in the order of the file: all of the first range,
+ * then all of the second and so on. The reader can therefore be used in place
+ * of a single MappedLineReader without changing the order of the stream.
+ *
+ * Each thread reads ahead by a bounded number of chunks of records, so the
+ * memory used does not depend on the size of the file. Blank lines are
+ * dropped. The records are numbered by the caller, because the threads do not
+ * know how many records the earlier ranges hold.
+ */
+public class SplitFileReader implements Closeable {
+
+  // The number of records in a chunk passed from a range thread
+  private static final int CHUNK_SIZE = 1000;
+
+  // The number of chunks a range thread may read ahead
+  private static final int CHUNKS_AHEAD = 4;
+
+  // The records read by a range thread
+  private static class Chunk {
+
+    final ArrayList<FlatRecord> records = new ArrayList<>(CHUNK_SIZE);
+    IOException error = null;
+    boolean last = false;
+  }
+
+  // A range of the file, read by its own thread
+  private class Range implements Runnable {
+
+    final long startOffset;
+    final long endOffset;
+    final ArrayBlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD);
+    Thread thread;
+
+    Range(long startOffset, long endOffset) {
+      this.startOffset = startOffset;
+      this.endOffset = endOffset;
+    }
+
+    @Override
+    public void run() {
+      Chunk chunk = new Chunk();
+
+      try (MappedLineReader reader = new MappedLineReader(inputFile, startOffset, endOffset, windowSize)) {
+        while (reader.hasMoreData()) {
+          byte[] line = reader.readLine();
+          if ((line == null) || (line.length == 0)) {
+            continue;
+          }
+
+          FlatRecord record = new FlatRecord(line, charset, 0);
+
+          // decode here, so that the decoding is spread over the threads
+          record.getData();
+
+          chunk.records.add(record);
+
+          if (chunk.records.size() == CHUNK_SIZE) {
+            chunks.put(chunk);
+            chunk = new Chunk();
+          }
+        }
+      } catch (IOException ex) {
+        chunk.error = ex;
+      } catch (InterruptedException ex) {
+        // we are being closed
+        return;
+      }
+
+      chunk.last = true;
+      try {
+        chunks.put(chunk);
+      } catch (InterruptedException ex) {
+        // we are being closed
+      }
+    }
+  }
+
+  // The file we are reading
+  private final File inputFile;
+
+  // The character set of the file
+  private final Charset charset;
+
+  // The size of the window each range maps
+  private final int windowSize;
+
+  // The ranges of the file, in file order
+  private final ArrayList<Range> ranges = new ArrayList<>();
+
+  // The range and chunk we are handing out
+  private int rangeIndex = 0;
+  private Chunk currentChunk = null;
+  private int recordIndex = 0;
+
+  /**
+   * Open a file for reading. The file is divided into at most the given number
+   * of ranges, each at least the minimum range size.
+   *
+   * @param inputFile The file to read
+   * @param maxRanges The maximum number of ranges, and so threads
+   * @param minRangeSize The minimum number of bytes in a range
+   * @param windowSize The size of the window each range maps
+   * @param charset The character set to decode the records with
+   * @param threadName The name to give the range threads
+   * @throws IOException If the file could not be opened
+   */
+  public SplitFileReader(File inputFile, int maxRanges, long minRangeSize,
+          int windowSize, Charset charset, String threadName) throws IOException {
+    this.inputFile = inputFile;
+    this.charset = charset;
+    this.windowSize = windowSize;
+
+    try (RandomAccessFile file = new RandomAccessFile(inputFile, "r")) {
+      long fileSize = file.length();
+      int rangeCount = (int) Math.max(1, Math.min(maxRanges, fileSize / Math.max(minRangeSize, 1)));
+
+      long rangeStart = 0;
+      for (int i = 1; i <= rangeCount; i++) {
+        long rangeEnd = (i == rangeCount) ? fileSize : findLineStart(file, (fileSize * i) / rangeCount);
+        if (rangeEnd > rangeStart) {
+          ranges.add(new Range(rangeStart, rangeEnd));
+          rangeStart = rangeEnd;
+        }
+      }
+    }
+
+    for (int i = 0; i < ranges.size(); i++) {
+      Range range = ranges.get(i);
+      range.thread = new Thread(range, threadName + "-" + i);
+      range.thread.setDaemon(true);
+      range.thread.start();
+    }
+  }
+
+  /**
+   * Get the number of ranges the file was divided into.
+   *
+   * @return The number of ranges
+   */
+  public int getRangeCount() {
+    return ranges.size();
+  }
+
+  /**
+   * Tell us if there are more records to read, waiting for the range threads
+   * if we need to.
+   *
+   * @return true if there is another record
+   * @throws IOException If a range could not be read
+   */
+  public boolean hasMoreData() throws IOException {
+    while ((currentChunk == null) || (recordIndex == currentChunk.records.size())) {
+      if ((currentChunk != null) && currentChunk.last) {
+        // the range is finished, go on to the next one
+        rangeIndex++;
+      }
+
+      if (rangeIndex >= ranges.size()) {
+        currentChunk = null;
+        return false;
+      }
+
+      try {
+        currentChunk = ranges.get(rangeIndex).chunks.take();
+      } catch (InterruptedException ex) {
+        throw new InterruptedIOException("Interrupted waiting for the records of <" + inputFile + ">");
+      }
+      recordIndex = 0;
+
+      if (currentChunk.error != null) {
+        throw currentChunk.error;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the next record. hasMoreData() must have returned true.
+   *
+   * @return The next record
+   */
+  public FlatRecord readRecord() {
+    FlatRecord record = currentChunk.records.get(recordIndex);
+
+    // let go of it, so that the chunk does not hold the records
+    currentChunk.records.set(recordIndex++, null);
+
+    return record;
+  }
+
+  /**
+   * Stop the range threads.
+   */
+  @Override
+  public void close() {
+    for (Range range : ranges) {
+      range.thread.interrupt();
+    }
+  }
+
+  /**
+   * Find the start of the first line at or after the given offset.
+   *
+   * @param file The file to look in
+   * @param offset The offset to start looking from
+   * @return The offset of the line start, or the file size if there is none
+   */
+  static long findLineStart(RandomAccessFile file, long offset) throws IOException {
+    long fileSize = file.length();
+    if (offset <= 0) {
+      return 0;
+    }
+
+    byte[] buffer = new byte[8192];
+    long bufferStart = offset - 1;
+    boolean afterCR = false;
+
+    while (bufferStart < fileSize) {
+      file.seek(bufferStart);
+      int count = file.read(buffer);
+      if (count <= 0) {
+        break;
+      }
+
+      for (int i = 0; i < count; i++) {
+        byte b = buffer[i];
+        if (afterCR) {
+          // CR LF is a single terminator
+          return (b == '\n') ? bufferStart + i + 1 : bufferStart + i;
+        }
+
+        if (b == '\n') {
+          return bufferStart + i + 1;
+        } else if (b == '\r') {
+          afterCR = true;
+        }
+      }
+
+      bufferStart += count;
+    }
+
+    return fileSize;
+  }
+}
@@ -63,15 +63,21 @@ import OpenRate.exception.ProcessingException;
 import OpenRate.logging.LogUtil;
 import OpenRate.parser.IXmlParser;
 import OpenRate.parser.XMLParser;
+import OpenRate.parser.XMLStreamParser;
 import OpenRate.record.HeaderRecord;
 import OpenRate.record.IRecord;
+import OpenRate.record.KeyValuePairRecord;
 import OpenRate.record.TrailerRecord;
-//import OpenRate.record.XMLRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import javax.xml.stream.XMLStreamException;
 import org.apache.oro.io.GlobFilenameFilter;
 import org.apache.oro.text.GlobCompiler;
 
@@ -95,6 +101,14 @@ import org.apache.oro.text.GlobCompiler;
  *
  * uses the tag "customer" to define the limits of the record.
  *
+ * Each record is passed to procValidRecord() as a KeyValuePairRecord, holding
+ * the values of the elements of the record, keyed by the path of element names
+ * from the record element, for example "customer.account.number".
+ *
+ * With "ParserMode" set to "Streaming", the file is read with a StAX pull
+ * parser instead of being split on lines, so the XML can be formatted in any
+ * way, and only the record being parsed is held in memory.
+ *
  * afzaal 07-11-2008 initial version
  */
 public abstract class XMLFileInputAdapter
@@ -121,6 +135,17 @@ public abstract class XMLFileInputAdapter
   // used by setAttribute method
   HashMap<String, String> xmlValues;
 
+  // The parser mode, "Lines" (the default) or "Streaming"
+  private static final String PARSER_MODE = "ParserMode";
+  private boolean streamingMode = false;
+
+  // The parsers we reuse for the records, and the stream we are parsing in
+  // streaming mode
+  private XMLParser lineParser;
+  private XMLStreamParser streamParser;
+  private InputStream xmlStream;
+  private boolean streamEnded;
+
   /**
    * The record identifier is used as the separator between records. It is not
    * possible/efficient to perform parsing on very long xml streams, we
@@ -297,6 +322,9 @@ public abstract class XMLFileInputAdapter
     // if something is wrong.
     initFileName();
 
+    // Get the way we parse the files
+    initParserMode();
+
     // create the structure for storing filenames
     CurrentFileNames = new HashMap<>(10);
   }
@@ -316,17 +344,15 @@ public abstract class XMLFileInputAdapter
   @Override
   protected Collection<IRecord> loadBatch()
           throws ProcessingException {
-    StringBuilder tmpFileRecord;
-    String tmpRecordLine;
     String baseName = null;
     Collection<IRecord> Outbatch;
     int ThisBatchCounter = 0;
-    XMLParser parser;
+    boolean recordParsed;
 
     // The Record types we will have to deal with
     HeaderRecord tmpHeader;
     TrailerRecord tmpTrailer;
-    //XMLRecord     tmpDataRecord;
+    KeyValuePairRecord tmpDataRecord;
     IRecord batchRecord;
 
     Outbatch = new ArrayList<>();
@@ -353,7 +379,18 @@ public abstract class XMLFileInputAdapter
         // Now that we have the file name, try to open it from
         // the renamed file provided by assignInput
         try {
-          reader = new BufferedReader(new FileReader(getProcName(transactionNumber)), BUF_SIZE);
+          if (streamingMode) {
+            xmlStream = Channels.newInputStream(FileChannel.open(new File(getProcName(transactionNumber)).toPath(), StandardOpenOption.READ));
+            try {
+              streamParser.open(xmlStream);
+            } catch (XMLStreamException ex) {
+              xmlStream.close();
+              throw ex;
+            }
+            streamEnded = false;
+          } else {
+            reader = new BufferedReader(new FileReader(getProcName(transactionNumber)), BUF_SIZE);
+          }
           InputStreamOpen = true;
           InputRecordNumber = 0;
 
@@ -372,7 +409,7 @@ public abstract class XMLFileInputAdapter
           // needs to be done
           tmpHeader = procHeader(tmpHeader);
           Outbatch.add(tmpHeader);
-        } catch (FileNotFoundException exFileNotFound) {
+        } catch (IOException | XMLStreamException exFileNotFound) {
           getPipeLog().error(
                   "Application is not able to read file : '" + getProcName(transactionNumber)
                   + "' ");
@@ -386,58 +423,31 @@ public abstract class XMLFileInputAdapter
       // Continue with the open file
       try {
         // read from the file and prepare the batch
-        while ((reader.ready()) & (ThisBatchCounter < batchSize)) {
-          tmpFileRecord = new StringBuilder();
-          parser = new XMLParser(this);
-          xmlValues = new HashMap<>();
-
-          while (reader.ready()) {
-            tmpRecordLine = reader.readLine();
-
-            // Start of record
-            if ((tmpRecordLine.contains("<" + recordIdentifier + ">"))
-                    || (tmpRecordLine.contains("<" + recordIdentifier + " "))) {
-              inRecord = true;
-            }
-
-            // if we are in a record, then append the line data to the record
-            if (inRecord) {
-              tmpFileRecord.append(tmpRecordLine);
-            }
+        while ((inputHasMoreData()) & (ThisBatchCounter < batchSize)) {
+          xmlValues = new LinkedHashMap<>();
 
-            // End of record
-            if (tmpRecordLine.contains("</" + recordIdentifier + ">")) {
-              // reset to say that we are no longer in a record
-              inRecord = false;
-
-              // We are ready to submit the record to xml parser
-              try {
-                parser.parseXML(tmpFileRecord.toString(), DEFAULT_RECORD_IDENTIFIER);
-              } catch (Exception exRecordError) {
-                message = "Application is not able to parse the record : '"
-                        + getProcName(transactionNumber) + "' ";
-                getPipeLog().error(message);
-                throw new ProcessingException(message, exRecordError, getSymbolicName());
-              }
-              break;
-            }
+          if (streamingMode) {
+            recordParsed = readStreamRecord();
+          } else {
+            recordParsed = readLinesRecord();
+          }
 
-            // skip blank records
-            if (tmpFileRecord.length() == 0) {
-            }
+          // the end of the file can come after the last record
+          if (recordParsed == false) {
+            continue;
           }
 
           ThisBatchCounter++;
-          //tmpDataRecord = new XMLRecord(tmpFileRecord.toString(), xmlValues, InputRecordNumber);
+          tmpDataRecord = new KeyValuePairRecord(xmlValues, InputRecordNumber);
 
           // Call the user layer for any processing that needs to be done
-          //batchRecord = procValidRecord((IRecord) tmpDataRecord);
+          batchRecord = procValidRecord(tmpDataRecord);
+
           // Add the prepared record to the batch, because of record compression
           // we may receive a null here. If we do, don't bother adding it
-          //if (batchRecord != null)
-          {
-            InputRecordNumber++;
-            //Outbatch.add(batchRecord);
+          InputRecordNumber++;
+          if (batchRecord != null) {
+            Outbatch.add(batchRecord);
           }
         }
 
@@ -452,7 +462,7 @@ public abstract class XMLFileInputAdapter
         updateRecordCount(transactionNumber, InputRecordNumber);
 
         // see the reason that we closed
-        if (reader.ready() == false) {
+        if (inputHasMoreData() == false) {
           // we have finished
           InputStreamOpen = false;
 
@@ -509,8 +519,13 @@ public abstract class XMLFileInputAdapter
   public void closeStream(int TransactionNumber)
           throws ProcessingException {
     try {
-      reader.close();
-    } catch (IOException exFileNotFound) {
+      if (streamingMode) {
+        streamParser.close();
+        xmlStream.close();
+      } else {
+        reader.close();
+      }
+    } catch (IOException | XMLStreamException exFileNotFound) {
       getPipeLog().error("Application is not able to close file : '" + getProcName(TransactionNumber)
               + "' ");
       throw new ProcessingException("Application is not able to read file <"
@@ -521,7 +536,8 @@ public abstract class XMLFileInputAdapter
   }
 
   /**
-   * Provides reader created during init()
+   * Provides reader created during init(). There is no reader in streaming
+   * mode.
    *
    * @return The buffered Reader to use
    */
@@ -529,6 +545,106 @@ public abstract class XMLFileInputAdapter
     return reader;
   }
 
+  /**
+   * This is called for each record read from the file, to allow the user to
+   * prepare it for the pipeline. By default the record is passed on as it is.
+   *
+   * @param r The record holding the values of the XML record
+   * @return The record to pass on, or null to drop it
+   * @throws ProcessingException
+   */
+  public IRecord procValidRecord(KeyValuePairRecord r) throws ProcessingException {
+    return r;
+  }
+
+  /**
+   * Tell us if there is more to read from the open file.
+   *
+   * @return true if there is more data
+   * @throws IOException
+   */
+  private boolean inputHasMoreData() throws IOException {
+    if (streamingMode) {
+      return (streamEnded == false);
+    } else {
+      return reader.ready();
+    }
+  }
+
+  /**
+   * Read the lines of the next record from the file, and parse them. The record
+   * starts on the line with the record start tag and ends on the line with the
+   * record end tag.
+   *
+   * @return true if a record was parsed, false at the end of the file
+   * @throws IOException
+   * @throws ProcessingException If the record could not be parsed
+   */
+  private boolean readLinesRecord() throws IOException, ProcessingException {
+    StringBuilder tmpFileRecord = new StringBuilder();
+    String tmpRecordLine;
+
+    if (lineParser == null) {
+      lineParser = new XMLParser(this);
+    }
+
+    while (reader.ready()) {
+      tmpRecordLine = reader.readLine();
+
+      // Start of record
+      if ((tmpRecordLine.contains("<" + recordIdentifier + ">"))
+              || (tmpRecordLine.contains("<" + recordIdentifier + " "))) {
+        inRecord = true;
+      }
+
+      // if we are in a record, then append the line data to the record
+      if (inRecord) {
+        tmpFileRecord.append(tmpRecordLine);
+      }
+
+      // End of record
+      if (tmpRecordLine.contains("</" + recordIdentifier + ">")) {
+        // reset to say that we are no longer in a record
+        inRecord = false;
+
+        // We are ready to submit the record to xml parser
+        try {
+          lineParser.parseXML(tmpFileRecord.toString(), DEFAULT_RECORD_IDENTIFIER);
+        } catch (Exception exRecordError) {
+          message = "Application is not able to parse the record : '"
+                  + getProcName(transactionNumber) + "' ";
+          getPipeLog().error(message);
+          throw new ProcessingException(message, exRecordError, getSymbolicName());
+        }
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Parse the next record from the stream.
+   *
+   * @return true if a record was parsed, false at the end of the file
+   * @throws ProcessingException If the record could not be parsed
+   */
+  private boolean readStreamRecord() throws ProcessingException {
+    try {
+      if (streamParser.nextRecord(recordIdentifier)) {
+        return true;
+      }
+    } catch (XMLStreamException exRecordError) {
+      message = "Application is not able to parse the record at line <" + streamParser.getLineNumber()
+              + "> of file <" + getProcName(transactionNumber) + ">";
+      getPipeLog().error(message);
+      throw new ProcessingException(message, exRecordError, getSymbolicName());
+    }
+
+    streamEnded = true;
+    return false;
+  }
+
   // -----------------------------------------------------------------------------
   // --------------- Start of transactional layer functions ----------------------
   // -----------------------------------------------------------------------------
@@ -879,6 +995,27 @@ public abstract class XMLFileInputAdapter
     return tmpProcPrefix;
   }
 
+  /**
+   * Set up the way we parse the files. In "Lines" mode (the default) the file
+   * is split into records on the lines holding the record tags, and each record
+   * is parsed with the XMLParser. In "Streaming" mode the file is read with the
+   * XMLStreamParser, which finds the records itself.
+   */
+  private void initParserMode()
+          throws InitializationException {
+    String parserMode = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            PARSER_MODE, "Lines");
+
+    if (parserMode.equalsIgnoreCase("Streaming")) {
+      streamingMode = true;
+      streamParser = new XMLStreamParser(this);
+    } else if (parserMode.equalsIgnoreCase("Lines") == false) {
+      message = "Parser mode <" + parserMode + "> not supported. Use <Lines> or <Streaming>";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
   /**
    * Checks the file name from the input parameters. Refactored from init() into
    * a method of its own so that derived classes can still reuse most of the
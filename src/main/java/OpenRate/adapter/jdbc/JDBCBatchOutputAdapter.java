@@ -60,7 +60,10 @@ import OpenRate.exception.ProcessingException;
 import OpenRate.record.DBRecord;
 import OpenRate.record.HeaderRecord;
 import OpenRate.record.IRecord;
+import OpenRate.utils.PropertyUtils;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 
@@ -75,10 +78,46 @@ import java.util.Iterator;
  * This is a higher performance version of the JDBC output adapter, which
  * performs batch commits. The rest of the operation is the same as the parent
  * version JDBC output adapter, "JDBCOutputAdapter".
+ *
+ * By default the batch is executed and committed once per pipeline block. With
+ * the WriterMode property set to "Pooled" the records are instead written by
+ * WriterCount writer threads, each with a connection of its own, which commit
+ * their work independently of the blocks:
+ *
+ * - RowsPerInsert rows are inserted with one statement, by rewriting the
+ * VALUES clause of the insert statement for that many rows (default 1, which
+ * uses plain JDBC batches). Drivers which can rewrite batches themselves, such
+ * as MySQL with rewriteBatchedStatements=true, can be left at 1.
+ *
+ * - The number of rows committed at once starts at the batch size and adapts
+ * to the time the commits take, aiming at TargetCommitTime milliseconds
+ * (default 500) and never going above MaxCommitRows (default 50000).
+ *
+ * All the work of a transaction is committed before the transaction ends.
  */
 public abstract class JDBCBatchOutputAdapter
         extends JDBCOutputAdapter {
 
+  // The way that we write the records
+  private static final String WRITER_MODE_KEY = "WriterMode";
+  private static final String WRITER_COUNT_KEY = "WriterCount";
+  private static final String ROWS_PER_INSERT_KEY = "RowsPerInsert";
+  private static final String TARGET_COMMIT_TIME_KEY = "TargetCommitTime";
+  private static final String MAX_COMMIT_ROWS_KEY = "MaxCommitRows";
+
+  // True if we write with a pool of writers
+  private boolean pooledMode = false;
+
+  // The settings of the pool of writers
+  private int writerCount = 1;
+  private int rowsPerInsert = 1;
+  private int targetCommitTime = 500;
+  private int maxCommitRows = 50000;
+
+  // The pool of writers for the transaction, and their connections
+  private JDBCBatchWriter batchWriter = null;
+  private final ArrayList<Connection> writerConnections = new ArrayList<>();
+
   /**
    * Default constructor
    */
@@ -119,6 +158,9 @@ public abstract class JDBCBatchOutputAdapter
       getPipeLog().fatal(message);
       throw new InitializationException(message, getSymbolicName());
     }
+
+    // get the way that we write the records
+    initWriterMode();
   }
 
   /**
@@ -144,6 +186,25 @@ public abstract class JDBCBatchOutputAdapter
       this.setTransactionAbort(getTransactionNumber());
     }
 
+    if (pooledMode) {
+      // start the writers for this transaction
+      try {
+        for (int i = 0; i < writerCount; i++) {
+          writerConnections.add(DBUtil.getConnection(dataSourceName));
+        }
+
+        batchWriter = new JDBCBatchWriter(writerConnections, insertQuery, rowsPerInsert, getBatchSize(),
+                maxCommitRows, targetCommitTime, getPipeName() + "-" + getSymbolicName() + "-Writer");
+      } catch (InitializationException | SQLException ex) {
+        // Not good. Abort the transaction
+        message = "Error starting writers. message <" + ex.getMessage() + "> in adapter <" + getSymbolicName() + ">. Aborting transaction.";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, ex, getSymbolicName()));
+        this.setTransactionAbort(getTransactionNumber());
+        closeWriters();
+      }
+    }
+
     return r;
   }
 
@@ -197,6 +258,12 @@ public abstract class JDBCBatchOutputAdapter
         outRec = outRecIter.next();
 
         try {
+          if (batchWriter != null) {
+            // the writers set the parameter values
+            batchWriter.write(outRec);
+            continue;
+          }
+
           // Prepare the parameter values
           stmtInsertQuery.clearParameters();
 
@@ -328,6 +395,12 @@ public abstract class JDBCBatchOutputAdapter
         outRec = outRecIter.next();
 
         try {
+          if (batchWriter != null) {
+            // the writers set the parameter values
+            batchWriter.write(outRec);
+            continue;
+          }
+
           // Prepare the parameter values
           stmtInsertQuery.clearParameters();
 
@@ -448,18 +521,25 @@ public abstract class JDBCBatchOutputAdapter
     if (getTransactionNumber() > 0) {
       // We are still in a transaction - do the flush
       try {
-        // perform the batch commit once per block
-        stmtInsertQuery.executeBatch();
-
-        // perform a commit once per block
-        getPipeLog().debug("Adapter <" + getSymbolicName() + "> performing commit.");
-        JDBCcon.commit();
+        if (batchWriter != null) {
+          // the writers commit on their own, we only look for failures
+          batchWriter.checkFailure();
+        } else {
+          // perform the batch commit once per block
+          stmtInsertQuery.executeBatch();
+
+          // perform a commit once per block
+          getPipeLog().debug("Adapter <" + getSymbolicName() + "> performing commit.");
+          JDBCcon.commit();
+        }
       } catch (SQLException Sex) {
         message = "Error performing batch commit in module <" + getSymbolicName()
                 + ">. message <" + Sex.getMessage() + ">. Aborting transaction.";
         getPipeLog().fatal(message);
-        String Nextmessage = "Next message <" + Sex.getNextException().getMessage() + ">";
-        getPipeLog().fatal(Nextmessage);
+        if (Sex.getNextException() != null) {
+          String Nextmessage = "Next message <" + Sex.getNextException().getMessage() + ">";
+          getPipeLog().fatal(Nextmessage);
+        }
         this.setTransactionAbort(getTransactionNumber());
         throw new ProcessingException(message, getSymbolicName());
       } catch (Exception ex) {
@@ -487,18 +567,30 @@ public abstract class JDBCBatchOutputAdapter
   public void flushStream() throws ProcessingException {
     // We are still in a transaction - do the flush
     try {
-      // perform the batch commit once per block
-      stmtInsertQuery.executeBatch();
+      if (batchWriter != null) {
+        // wait for the writers to commit the rest of the transaction. This
+        // waits for the writers to stop even if it fails, so closeWriters()
+        // only has to close the connections
+        getPipeLog().debug("Adapter <" + getSymbolicName() + "> waiting for writers to commit.");
+        JDBCBatchWriter closingWriter = batchWriter;
+        batchWriter = null;
+        closingWriter.close();
+      } else if (stmtInsertQuery != null) {
+        // perform the batch commit once per block
+        stmtInsertQuery.executeBatch();
 
-      // perform a commit once per block
-      getPipeLog().debug("Adapter <" + getSymbolicName() + "> performing commit.");
-      JDBCcon.commit();
+        // perform a commit once per block
+        getPipeLog().debug("Adapter <" + getSymbolicName() + "> performing commit.");
+        JDBCcon.commit();
+      }
     } catch (SQLException Sex) {
       message = "Error performing batch commit in module <" + getSymbolicName()
               + ">. message <" + Sex.getMessage() + ">. Aborting transaction.";
       getPipeLog().fatal(message);
-      String Nextmessage = "Next message <" + Sex.getNextException().getMessage() + ">";
-      getPipeLog().fatal(Nextmessage);
+      if (Sex.getNextException() != null) {
+        String Nextmessage = "Next message <" + Sex.getNextException().getMessage() + ">";
+        getPipeLog().fatal(Nextmessage);
+      }
       this.setTransactionAbort(getTransactionNumber());
       throw new ProcessingException(message, getSymbolicName());
     } catch (Exception ex) {
@@ -508,8 +600,120 @@ public abstract class JDBCBatchOutputAdapter
       getPipeLog().fatal(message);
       getExceptionHandler().reportException(new ProcessingException(message, ex, getSymbolicName()));
       setTransactionAbort(getTransactionNumber());
+    } finally {
+      closeWriters();
     }
 
     super.flushStream();
   }
+
+  /**
+   * Close Transaction is the trigger to clean up transaction related
+   * information such as variables, status etc. Stops any writers which are
+   * still running, for example after an abort.
+   *
+   * @param transactionNumber The transaction we are working on
+   */
+  @Override
+  public void closeTransaction(int transactionNumber) {
+    closeWriters();
+
+    super.closeTransaction(transactionNumber);
+  }
+
+  // -----------------------------------------------------------------------------
+  // ------------------------ Writer pool functions ------------------------------
+  // -----------------------------------------------------------------------------
+  /**
+   * Stop the writers if they are still running, and close their connections.
+   * Work the writers have not committed is rolled back, and the connections
+   * are only closed once all the writers have stopped.
+   */
+  private void closeWriters() {
+    if (batchWriter != null) {
+      try {
+        batchWriter.abort();
+      } catch (SQLException Sex) {
+        message = "Error rolling back writers in module <" + getSymbolicName()
+                + ">. message <" + Sex.getMessage() + ">";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, Sex, getSymbolicName()));
+      }
+      batchWriter = null;
+    }
+
+    for (Connection writerCon : writerConnections) {
+      DBUtil.close(writerCon);
+    }
+    writerConnections.clear();
+  }
+
+  /**
+   * Get the writer mode and the settings of the pool of writers from the
+   * properties.
+   *
+   * @throws InitializationException
+   */
+  private void initWriterMode() throws InitializationException {
+    String ConfigHelper;
+
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            WRITER_MODE_KEY,
+            "Block");
+
+    if (ConfigHelper.equalsIgnoreCase("Pooled")) {
+      pooledMode = true;
+    } else if (!ConfigHelper.equalsIgnoreCase("Block")) {
+      message = "Output <" + getSymbolicName() + "> - " + WRITER_MODE_KEY + " must be <Block> or <Pooled>, but was <" + ConfigHelper + ">";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    writerCount = initPositiveNumber(WRITER_COUNT_KEY, writerCount);
+    rowsPerInsert = initPositiveNumber(ROWS_PER_INSERT_KEY, rowsPerInsert);
+    targetCommitTime = initPositiveNumber(TARGET_COMMIT_TIME_KEY, targetCommitTime);
+    maxCommitRows = initPositiveNumber(MAX_COMMIT_ROWS_KEY, maxCommitRows);
+
+    if (!pooledMode) {
+      return;
+    }
+
+    // check now that we can insert several rows at once
+    if ((rowsPerInsert > 1) && (JDBCBatchWriter.getMultiRowInsert(insertQuery, rowsPerInsert) == null)) {
+      message = "Output <" + getSymbolicName() + "> - " + ROWS_PER_INSERT_KEY + " needs an insert statement which ends with a VALUES list, but got <" + insertQuery + ">";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+  }
+
+  /**
+   * Get a number greater than 0 from the properties.
+   *
+   * @param propertyName The name of the property
+   * @param defaultValue The value if the property is not given
+   * @return The number
+   * @throws InitializationException
+   */
+  private int initPositiveNumber(String propertyName, int defaultValue) throws InitializationException {
+    String ConfigHelper;
+    int value;
+
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            propertyName,
+            String.valueOf(defaultValue));
+
+    try {
+      value = Integer.parseInt(ConfigHelper);
+    } catch (NumberFormatException nfe) {
+      value = 0;
+    }
+
+    if (value < 1) {
+      message = "Output <" + getSymbolicName() + "> - " + propertyName + " must be a number greater than 0, but was <" + ConfigHelper + ">";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    return value;
+  }
 }
@@ -0,0 +1,570 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.jdbc;
+
+import OpenRate.record.DBRecord;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes records to the database with a pool of writer threads, each with a
+ * connection of its own. The records are handed to the writers in chunks
+ * through one queue, so the writers share the work between them, and each
+ * writer commits its own work.
+ *
+ * Each writer sends its rows in JDBC batches. When more than one row per
+ * insert is asked for, the insert statement is rewritten to insert that many
+ * rows at once with a multi-row VALUES clause, which saves the drivers which
+ * send each row of a batch separately most of their round trips.
+ *
+ * The number of rows a writer commits at once adapts to the time the commits
+ * take: it is halved when a commit takes longer than the target time, and
+ * doubled when a commit takes less than half of it. This keeps the commits
+ * short on a slow database, and keeps the round trips few on a fast one.
+ *
+ * When a writer fails, or the writers are aborted, each writer stops before
+ * its next chunk and rolls back its own work which is not yet committed. The
+ * connections are only touched by their writer threads, and close() and
+ * abort() wait for all the writers to stop, so the connections can be closed
+ * safely when they return.
+ */
+public class JDBCBatchWriter {
+
+  // The number of records in a chunk handed to the writers
+  private static final int CHUNK_SIZE = 1000;
+
+  // The number of chunks each writer may have waiting
+  private static final int CHUNKS_AHEAD = 2;
+
+  // How long we wait for room in the queue before looking for failures
+  private static final long OFFER_WAIT = 100;
+
+  // How long a writer waits for a chunk before looking for an abort
+  private static final long POLL_WAIT = 100;
+
+  // The chunk which tells a writer that there are no more records
+  private static final ArrayList<DBRecord> END = new ArrayList<>();
+
+  // A writer thread with its connection and statements
+  private class Writer implements Runnable {
+
+    final Connection con;
+    Thread thread;
+    PreparedStatement stmtInsert = null;
+    PreparedStatement stmtMultiInsert = null;
+    int paramCount;
+
+    // The records waiting to fill a multi-row insert
+    final ArrayList<DBRecord> multiRows = new ArrayList<>();
+
+    // The statements added to each batch since it was executed
+    int insertBatched = 0;
+    int multiInsertBatched = 0;
+
+    // The rows sent since the last commit, and the rows to commit at once
+    int pendingRows = 0;
+    int commitRows;
+
+    Writer(Connection con) {
+      this.con = con;
+      this.commitRows = initialCommitRows;
+    }
+
+    @Override
+    public void run() {
+      boolean committed = false;
+
+      try {
+        con.setAutoCommit(false);
+        stmtInsert = con.prepareStatement(insertQuery);
+        paramCount = stmtInsert.getParameterMetaData().getParameterCount();
+        if (rowsPerInsert > 1) {
+          stmtMultiInsert = con.prepareStatement(multiRowInsertQuery);
+        }
+
+        // look for an abort between the chunks
+        while (!aborted) {
+          ArrayList<DBRecord> chunk = chunks.poll(POLL_WAIT, TimeUnit.MILLISECONDS);
+          if (chunk == END) {
+            // send the rows which did not fill a multi-row insert on their own
+            for (DBRecord record : multiRows) {
+              bindRecord(stmtInsert, 0, paramCount, record);
+              stmtInsert.addBatch();
+              insertBatched++;
+            }
+            multiRows.clear();
+            commit();
+            committed = true;
+            break;
+          }
+
+          if (chunk != null) {
+            for (DBRecord record : chunk) {
+              write(record);
+            }
+          }
+        }
+      } catch (SQLException ex) {
+        fail(ex);
+      } catch (InterruptedException ex) {
+        fail(new SQLException("Writer <" + Thread.currentThread().getName() + "> was interrupted"));
+      } finally {
+        if (!committed) {
+          rollback();
+        }
+        close(stmtInsert);
+        close(stmtMultiInsert);
+      }
+    }
+
+    // Add a record to the batch, committing when we have enough rows
+    void write(DBRecord record) throws SQLException {
+      if (rowsPerInsert > 1) {
+        multiRows.add(record);
+        if (multiRows.size() < rowsPerInsert) {
+          return;
+        }
+
+        for (int i = 0; i < rowsPerInsert; i++) {
+          bindRecord(stmtMultiInsert, i * paramCount, paramCount, multiRows.get(i));
+        }
+        stmtMultiInsert.addBatch();
+        multiInsertBatched++;
+        multiRows.clear();
+        pendingRows += rowsPerInsert;
+      } else {
+        bindRecord(stmtInsert, 0, paramCount, record);
+        stmtInsert.addBatch();
+        insertBatched++;
+        pendingRows++;
+      }
+
+      if (pendingRows >= commitRows) {
+        commit();
+      }
+    }
+
+    // Send the batches and commit them, adapting the rows per commit
+    void commit() throws SQLException {
+      long startTime = System.currentTimeMillis();
+
+      // not all drivers accept an empty batch
+      if (multiInsertBatched > 0) {
+        stmtMultiInsert.executeBatch();
+        multiInsertBatched = 0;
+      }
+      if (insertBatched > 0) {
+        stmtInsert.executeBatch();
+        insertBatched = 0;
+      }
+      con.commit();
+
+      long commitTime = System.currentTimeMillis() - startTime;
+      if ((commitTime > targetCommitTime) && (commitRows > rowsPerInsert)) {
+        commitRows = Math.max(rowsPerInsert, commitRows / 2);
+      } else if ((commitTime < targetCommitTime / 2) && (commitRows < maxCommitRows)) {
+        commitRows = Math.min(maxCommitRows, commitRows * 2);
+      }
+
+      pendingRows = 0;
+    }
+
+    // Give up on the rows which are not committed
+    void rollback() {
+      try {
+        con.rollback();
+      } catch (SQLException ex) {
+        synchronized (JDBCBatchWriter.this) {
+          if (rollbackFailure == null) {
+            rollbackFailure = ex;
+          } else {
+            rollbackFailure.setNextException(ex);
+          }
+        }
+      }
+    }
+  }
+
+  // The insert statement for one row, and for several rows
+  private final String insertQuery;
+  private final String multiRowInsertQuery;
+  private final int rowsPerInsert;
+
+  // The limits of the adaptive commit size
+  private final int initialCommitRows;
+  private final int maxCommitRows;
+  private final long targetCommitTime;
+
+  // The writers
+  private final ArrayList<Writer> writers = new ArrayList<>();
+
+  // The chunks waiting for the writers
+  private final ArrayBlockingQueue<ArrayList<DBRecord>> chunks;
+
+  // The chunk we are filling
+  private ArrayList<DBRecord> currentChunk = new ArrayList<>(CHUNK_SIZE);
+
+  // The first failure of a writer, and of a rollback
+  private volatile SQLException failure = null;
+  private SQLException rollbackFailure = null;
+
+  // Tells the writers to stop and roll back
+  private volatile boolean aborted = false;
+
+  /**
+   * Start the writers, one for each connection.
+   *
+   * @param connections The connections to write with
+   * @param insertQuery The insert statement for one row
+   * @param rowsPerInsert The number of rows to insert with one statement
+   * @param initialCommitRows The number of rows to commit at once to start with
+   * @param maxCommitRows The most rows to commit at once
+   * @param targetCommitTime The time in milliseconds a commit should take
+   * @param threadName The name to give the writer threads
+   * @throws SQLException If the insert statement cannot be rewritten for
+   * several rows
+   */
+  public JDBCBatchWriter(List<Connection> connections, String insertQuery, int rowsPerInsert,
+          int initialCommitRows, int maxCommitRows, long targetCommitTime, String threadName) throws SQLException {
+    this.insertQuery = insertQuery;
+    this.rowsPerInsert = Math.max(rowsPerInsert, 1);
+    this.maxCommitRows = Math.max(maxCommitRows, this.rowsPerInsert);
+    this.initialCommitRows = Math.min(Math.max(initialCommitRows, this.rowsPerInsert), this.maxCommitRows);
+    this.targetCommitTime = targetCommitTime;
+
+    if (this.rowsPerInsert > 1) {
+      multiRowInsertQuery = getMultiRowInsert(insertQuery, this.rowsPerInsert);
+      if (multiRowInsertQuery == null) {
+        throw new SQLException("Cannot find the VALUES clause at the end of insert statement <" + insertQuery + ">");
+      }
+    } else {
+      multiRowInsertQuery = null;
+    }
+
+    chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD * Math.max(connections.size(), 1));
+
+    for (int i = 0; i < connections.size(); i++) {
+      Writer writer = new Writer(connections.get(i));
+      writer.thread = new Thread(writer, threadName + "-" + i);
+      writers.add(writer);
+    }
+
+    for (Writer writer : writers) {
+      writer.thread.start();
+    }
+  }
+
+  /**
+   * Hand a record to the writers.
+   *
+   * @param record The record to write
+   * @throws SQLException If a writer has failed
+   */
+  public void write(DBRecord record) throws SQLException {
+    currentChunk.add(record);
+    if (currentChunk.size() == CHUNK_SIZE) {
+      handOver(currentChunk);
+      currentChunk = new ArrayList<>(CHUNK_SIZE);
+    }
+  }
+
+  /**
+   * Check if a writer has failed.
+   *
+   * @throws SQLException The failure of the writer
+   */
+  public void checkFailure() throws SQLException {
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Hand the last records to the writers, and wait for them to commit all of
+   * their work and stop. If a writer has failed, all the writers are stopped
+   * and we wait for them to roll back instead. The writers have always
+   * stopped when this returns.
+   *
+   * @throws SQLException If a writer has failed
+   */
+  public void close() throws SQLException {
+    try {
+      handOver(currentChunk);
+      currentChunk = new ArrayList<>();
+
+      for (int i = 0; i < writers.size(); i++) {
+        handOver(END);
+      }
+    } catch (SQLException ex) {
+      aborted = true;
+    } finally {
+      joinWriters();
+    }
+
+    synchronized (this) {
+      if ((failure == null) && (rollbackFailure != null)) {
+        failure = rollbackFailure;
+      } else if ((failure != null) && (rollbackFailure != null)) {
+        failure.setNextException(rollbackFailure);
+      }
+      rollbackFailure = null;
+    }
+
+    checkFailure();
+  }
+
+  /**
+   * Stop the writers, and wait for them to roll back the work they have not
+   * committed. The writers have always stopped when this returns.
+   *
+   * @throws SQLException If a writer could not roll back
+   */
+  public void abort() throws SQLException {
+    aborted = true;
+    joinWriters();
+
+    SQLException result;
+    synchronized (this) {
+      result = rollbackFailure;
+      rollbackFailure = null;
+    }
+
+    if (result != null) {
+      throw result;
+    }
+  }
+
+  // Wait for all the writers to stop, even if we are interrupted
+  private void joinWriters() {
+    boolean interrupted = false;
+
+    for (Writer writer : writers) {
+      while (writer.thread.isAlive()) {
+        try {
+          writer.thread.join();
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Get the number of rows each writer commits at once at the moment.
+   *
+   * @return The rows per commit of each writer
+   */
+  int[] getCommitRows() {
+    int[] result = new int[writers.size()];
+    for (int i = 0; i < writers.size(); i++) {
+      result[i] = writers.get(i).commitRows;
+    }
+    return result;
+  }
+
+  // Put a chunk in the queue, looking out for failed writers while we wait
+  private void handOver(ArrayList<DBRecord> chunk) throws SQLException {
+    if (chunk.isEmpty() && (chunk != END)) {
+      return;
+    }
+
+    try {
+      while (!chunks.offer(chunk, OFFER_WAIT, TimeUnit.MILLISECONDS)) {
+        checkFailure();
+      }
+    } catch (InterruptedException ex) {
+      throw new SQLException("Interrupted handing records to the writers");
+    }
+
+    checkFailure();
+  }
+
+  // Record the first failure, and tell the writers to stop
+  private void fail(SQLException ex) {
+    synchronized (this) {
+      if (failure == null) {
+        failure = ex;
+      }
+    }
+    aborted = true;
+  }
+
+  // Close a statement, which may not have been prepared
+  private static void close(PreparedStatement statement) {
+    if (statement != null) {
+      try {
+        statement.close();
+      } catch (SQLException ex) {
+        // nothing more we can do
+      }
+    }
+  }
+
+  /**
+   * Set the parameters of one row of an insert from the output columns of a
+   * record.
+   *
+   * @param statement The statement to set the parameters of
+   * @param offset The number of parameters before the row
+   * @param paramCount The number of parameters of a row
+   * @param record The record to take the values from
+   * @throws SQLException If the record does not have a value for each
+   * parameter, or a value cannot be set
+   */
+  static void bindRecord(PreparedStatement statement, int offset, int paramCount, DBRecord record) throws SQLException {
+    if (record.getOutputColumnCount() != paramCount) {
+      throw new SQLException("Record has <" + record.getOutputColumnCount() + "> output columns, but the insert has <" + paramCount + "> parameters");
+    }
+
+    for (int i = 0; i < paramCount; i++) {
+      int param = offset + i + 1;
+
+      switch (record.getOutputColumnType(i)) {
+        case DBRecord.COL_TYPE_STRING:
+          statement.setString(param, record.getOutputColumnValueString(i));
+          break;
+        case DBRecord.COL_TYPE_INTEGER:
+          statement.setInt(param, record.getOutputColumnValueInt(i));
+          break;
+        case DBRecord.COL_TYPE_DOUBLE:
+          statement.setDouble(param, record.getOutputColumnValueDouble(i));
+          break;
+        case DBRecord.COL_TYPE_LONG:
+          statement.setLong(param, record.getOutputColumnValueLong(i));
+          break;
+        case DBRecord.COL_TYPE_DATE:
+          statement.setDate(param, new java.sql.Date(record.getOutputColumnValueLong(i)));
+          break;
+        case DBRecord.COL_TYPE_BOOL:
+          statement.setBoolean(param, record.getOutputColumnValueString(i).equals("1"));
+          break;
+        case DBRecord.COL_TYPE_TIME:
+          statement.setTime(param, new java.sql.Time(record.getOutputColumnValueLong(i)));
+          break;
+        case DBRecord.COL_TYPE_BINARY:
+          statement.setBytes(param, record.getOutputColumnValueBytes(i));
+          break;
+        default:
+          throw new SQLException("Unknown type <" + record.getOutputColumnType(i) + "> of output column <" + i + ">");
+      }
+    }
+  }
+
+  /**
+   * Rewrite a single row insert statement to insert several rows at once, by
+   * repeating the parenthesised list after VALUES. The list must end the
+   * statement.
+   *
+   * @param insertQuery The insert statement for one row
+   * @param rows The number of rows to insert
+   * @return The statement for the rows, or null if it cannot be rewritten
+   */
+  static String getMultiRowInsert(String insertQuery, int rows) {
+    String query = insertQuery.trim();
+    if (query.endsWith(";")) {
+      query = query.substring(0, query.length() - 1).trim();
+    }
+
+    // find the start of the last parenthesised list, outside quotes
+    int listStart = -1;
+    int depth = 0;
+    char quote = 0;
+    for (int i = 0; i < query.length(); i++) {
+      char c = query.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if ((c == '\'') || (c == '"')) {
+        quote = c;
+      } else if (c == '(') {
+        if (depth == 0) {
+          listStart = i;
+        }
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      }
+    }
+
+    if ((listStart < 0) || (depth != 0) || (quote != 0) || !query.endsWith(")")) {
+      return null;
+    }
+
+    // it has to be the list of the VALUES clause
+    String head = query.substring(0, listStart).trim();
+    if (!head.toUpperCase().endsWith("VALUES")) {
+      return null;
+    }
+
+    String list = query.substring(listStart);
+    StringBuilder result = new StringBuilder(query.length() + (list.length() + 1) * rows);
+    result.append(query);
+    for (int i = 1; i < rows; i++) {
+      result.append(',').append(list);
+    }
+
+    return result.toString();
+  }
+}
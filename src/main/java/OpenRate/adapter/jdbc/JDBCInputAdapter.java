@@ -120,6 +120,31 @@ import java.util.logging.Logger;
  * modules have finished, the transaction is committed by calling the trigger()
  * method with the parameter of "committed" which causes the input file to be
  * renamed and the transaction to be committed or rolled back.
+ *
+ * Fetching -----------------------
+ *
+ * By default the select uses a scrollable cursor, which many drivers fill by
+ * reading the whole result set into memory. With the FetchMode property set to
+ * "Streaming" the select uses a forward only cursor in a transaction of its
+ * own, and the rows are fetched from the database in blocks of FetchSize rows
+ * (the batch size if it is not given). Some drivers need a particular fetch
+ * size to stream, for example MySQL needs -2147483648.
+ *
+ * Partitioning -----------------------
+ *
+ * With the PartitionMode property the select is run as PartitionCount
+ * partitions at once, each on its own connection and read by its own thread.
+ * The rows of all the partitions feed the same transaction, in no particular
+ * order. The select statement must have two parameters, which are set for each
+ * partition by setPartitionParameters():
+ *
+ * - "Modulo": the partition count and the number of the partition, for example
+ * "... WHERE MOD(ID, ?) = ?"
+ *
+ * - "Range": the lowest key included and the highest key excluded, for example
+ * "... WHERE ID >= ? AND ID < ?". The PartitionRangeStatement gives the lowest
+ * and the highest key of the records to select, and the range between them is
+ * divided evenly between the partitions.
  */
 public abstract class JDBCInputAdapter
         extends AbstractTransactionalInputAdapter {
@@ -194,6 +219,15 @@ public abstract class JDBCInputAdapter
   private static final String COMMIT_QUERY_KEY = "CommitStatement";
   private static final String ROLLBACK_QUERY_KEY = "RollbackStatement";
 
+  // The way that we fetch the rows of the select
+  private static final String FETCH_MODE_KEY = "FetchMode";
+  private static final String FETCH_SIZE_KEY = "FetchSize";
+
+  // The way that we divide the select into partitions
+  private static final String PARTITION_MODE_KEY = "PartitionMode";
+  private static final String PARTITION_COUNT_KEY = "PartitionCount";
+  private static final String PARTITION_RANGE_QUERY_KEY = "PartitionRangeStatement";
+
   // List of Services that this Client supports
   private final static String SERVICE_DATASOURCE_KEY = "DataSource";
   private final static String SERVICE_INIT_QUERY_KEY = "InitStatement";
@@ -213,6 +247,32 @@ public abstract class JDBCInputAdapter
   // this is the persistent result set that we use to incrementally get the records
   ResultSet rs = null;
 
+  // The number of columns in the result set
+  private int columnCount;
+
+  // The row after the ones we have handed out, null at the end of the select
+  private String[] nextRow = null;
+
+  // True if we fetch the rows with a forward only cursor
+  private boolean streamingMode = false;
+
+  // The fetch size for the select, null to use the batch size
+  private Integer fetchSize = null;
+
+  // The partition mode, null if the select is not partitioned
+  private String partitionMode = null;
+  private int partitionCount = 1;
+
+  /**
+   * Gets the lowest and the highest key for the range partitions
+   */
+  protected String partitionRangeQuery;
+
+  // The connections and statements of the partitions, and their reader
+  private final ArrayList<Connection> partitionConnections = new ArrayList<>();
+  private final ArrayList<PreparedStatement> partitionStatements = new ArrayList<>();
+  private JDBCPartitionReader partitionReader = null;
+
   // used to track the status of our transaction
   private int transactionNumber = 0;
   private int InputRecordNumber = 0;
@@ -274,6 +334,10 @@ public abstract class JDBCInputAdapter
     ConfigHelper = initDataSourceName(PipelineName);
     processControlEvent(SERVICE_DATASOURCE_KEY, true, ConfigHelper);
 
+    // the way that we fetch the rows, and how we divide the select
+    initFetchMode(PipelineName);
+    initPartitionMode(PipelineName);
+
     // prepare the data source - this does not open a connection
     if (DBUtil.initDataSource(dataSourceName) == null) {
       message = "Could not initialise DB connection <" + dataSourceName + "> to in module <" + getSymbolicName() + ">.";
@@ -290,12 +354,8 @@ public abstract class JDBCInputAdapter
    */
   @Override
   protected Collection<IRecord> loadBatch() throws ProcessingException {
-    ResultSetMetaData Rsmd;
     Collection<IRecord> Outbatch;
     int ThisBatchCounter = 0;
-    int ColumnCount;
-    int ColumnIdx;
-    String[] tmpColumns;
 
     // The Record types we will have to deal with
     HeaderRecord tmpHeader;
@@ -316,13 +376,18 @@ public abstract class JDBCInputAdapter
 
         // the renamed file provided by assignInput
         try {
-          // Open the select statement
+          // Open the select statement, or the statements of the partitions
           prepareSelectStatement();
-          rs = stmtSelectQuery.executeQuery();
+          if (partitionMode == null) {
+            rs = stmtSelectQuery.executeQuery();
+            columnCount = rs.getMetaData().getColumnCount();
+          } else {
+            partitionReader = new JDBCPartitionReader(partitionStatements, getPipeName() + "-" + getSymbolicName() + "-Reader");
+          }
 
           // See if we get an empty result set
-          rs.last();
-          if (rs.getRow() > 0) {
+          nextRow = fetchRow();
+          if (nextRow != null) {
             // Create the new transaction to hold the information. This is done in
             // The transactional layer - we just trigger it here
             // Create the transaction base name according to a simple counter
@@ -331,9 +396,6 @@ public abstract class JDBCInputAdapter
             // This is the transaction identifier for all records in this stream
             ORTransactionId = getTransactionID(transactionNumber);
 
-            // reset the cursor
-            rs.beforeFirst();
-
             InputStreamOpen = true;
             InputRecordNumber = 0;
 
@@ -356,6 +418,9 @@ public abstract class JDBCInputAdapter
             message = "Select statement did not return rows in <" + getSymbolicName() + ">";
             getPipeLog().error(message);
 
+            // Close statement and connection
+            closeSelectStatement();
+
             // No work to do - return the empty batch
             return Outbatch;
           }
@@ -379,25 +444,14 @@ public abstract class JDBCInputAdapter
 
     if (InputStreamOpen) {
       try {
-        // we need to know something about the result set so we can build
-        // the records out of it
-        Rsmd = rs.getMetaData();
-        ColumnCount = Rsmd.getColumnCount();
-
-        while ((ThisBatchCounter < batchSize) & (!rs.isLast())) {
-          // get next row
-          rs.next();
-
+        while ((ThisBatchCounter < batchSize) && (nextRow != null)) {
           ThisBatchCounter++;
-          tmpColumns = new String[ColumnCount];
-
-          // create the array to transfer the columns into the DBRecord
-          for (ColumnIdx = 0; ColumnIdx < ColumnCount; ColumnIdx++) {
-            tmpColumns[ColumnIdx] = rs.getString(ColumnIdx + 1);
-          }
 
           // create the record
-          tmpRecord = new DBRecord(ColumnCount, tmpColumns, InputRecordNumber);
+          tmpRecord = new DBRecord(nextRow.length, nextRow, InputRecordNumber);
+
+          // read ahead, so that we know when we have reached the end
+          nextRow = fetchRow();
 
           // Call the user layer for any processing that needs to be done
           batchRecord = procValidRecord(tmpRecord);
@@ -423,54 +477,81 @@ public abstract class JDBCInputAdapter
       } catch (SQLException Sex) {
         message = "Retrieve SQL Exception in <" + getSymbolicName() + ">. message = <" + Sex.getMessage() + ">";
         getPipeLog().error(message);
+
+        // We will not get the rest of the rows, so stop the transaction
+        InputStreamOpen = false;
+        cancelTransaction(transactionNumber);
+
+        // Stop the other partitions and close statement and connections
+        closeSelectStatement();
+
+        // report the exception
         throw new ProcessingException(message, getSymbolicName());
       }
 
       // See if we need to add a stream trailer record - this is done immediately
       // after the last real record of the stream
-      try {
-        // see the reason that we closed
-        if (rs.isLast()) {
-          // we have finished
-          InputStreamOpen = false;
-
-          // Inject a stream header record into the stream
-          tmpTrailer = new TrailerRecord();
-          tmpTrailer.setStreamName(ORTransactionId);
-          tmpTrailer.setTransactionNumber(transactionNumber);
-
-          // Pass the header to the user layer for any processing that
-          // needs to be done. To allow for purging in the case of record
-          // compression, we allow multiple calls to procTrailer until the
-          // trailer is returned
+      if (nextRow == null) {
+        // we have finished
+        InputStreamOpen = false;
+
+        // Inject a stream header record into the stream
+        tmpTrailer = new TrailerRecord();
+        tmpTrailer.setStreamName(ORTransactionId);
+        tmpTrailer.setTransactionNumber(transactionNumber);
+
+        // Pass the header to the user layer for any processing that
+        // needs to be done. To allow for purging in the case of record
+        // compression, we allow multiple calls to procTrailer until the
+        // trailer is returned
+        batchRecord = procTrailer(tmpTrailer);
+
+        while (!(batchRecord instanceof TrailerRecord)) {
+          // the call the trailer returned a purged record. Add this
+          // to the batch and fetch again
+          Outbatch.add(batchRecord);
           batchRecord = procTrailer(tmpTrailer);
+        }
 
-          while (!(batchRecord instanceof TrailerRecord)) {
-            // the call the trailer returned a purged record. Add this
-            // to the batch and fetch again
-            Outbatch.add(batchRecord);
-            batchRecord = procTrailer(tmpTrailer);
-          }
-
-          Outbatch.add(tmpTrailer);
+        Outbatch.add(tmpTrailer);
 
-          // Notify the transaction layer that we have finished
-          setTransactionFlushed(transactionNumber);
+        // Notify the transaction layer that we have finished
+        setTransactionFlushed(transactionNumber);
 
-          // Close the connection
-          // Connection will be closed after commit or rollback
-          closeSelectStatement();
-        }
-      } catch (SQLException Sex) {
-        message = "Close SQL Exception in <" + getSymbolicName() + ">. message = <" + Sex.getMessage() + ">";
-        getPipeLog().error(message);
-        throw new ProcessingException(message, getSymbolicName());
+        // Close the connection
+        // Connection will be closed after commit or rollback
+        closeSelectStatement();
       }
     }
 
     return Outbatch;
   }
 
+  /**
+   * Get the column values of the next row of the select, from the result set
+   * or from the partitions.
+   *
+   * @return The column values, or null if there are no more rows
+   * @throws SQLException
+   */
+  private String[] fetchRow() throws SQLException {
+    if (partitionReader != null) {
+      return partitionReader.hasMoreData() ? partitionReader.readRow() : null;
+    }
+
+    if (!rs.next()) {
+      return null;
+    }
+
+    // create the array to transfer the columns into the DBRecord
+    String[] columns = new String[columnCount];
+    for (int columnIdx = 0; columnIdx < columnCount; columnIdx++) {
+      columns[columnIdx] = rs.getString(columnIdx + 1);
+    }
+
+    return columns;
+  }
+
   /**
    * This is called when a data record is encountered. You should do any normal
    * processing here.
@@ -793,23 +874,90 @@ public abstract class JDBCInputAdapter
       // Get the connection
       openConnection();
       // prepare the SQL for the TestStatement
-      stmtSelectQuery = JDBCcon.prepareStatement(selectQuery,
-              ResultSet.TYPE_SCROLL_INSENSITIVE,
-              ResultSet.CONCUR_READ_ONLY);
-      if (stmtSelectQuery.getMaxRows() > batchSize) {
-        message = "Input Adapter <" + getSymbolicName() + "> cannot get requested batch size <" + batchSize + ">, setting to <" + stmtSelectQuery.getMaxRows() + ">";
-        getPipeLog().warning(message);
-        stmtSelectQuery.setFetchSize(stmtSelectQuery.getMaxRows());
-      } else {
-        stmtSelectQuery.setFetchSize(batchSize);
+      stmtSelectQuery = prepareSelect(JDBCcon);
+
+      if (partitionMode != null) {
+        // the first partition uses the select statement, the others each
+        // have a connection of their own
+        long[] bounds = getPartitionBounds();
+        for (int i = 0; i < partitionCount; i++) {
+          PreparedStatement statement;
+          if (i == 0) {
+            statement = stmtSelectQuery;
+          } else {
+            Connection partitionCon = DBUtil.getConnection(dataSourceName);
+            partitionConnections.add(partitionCon);
+            statement = prepareSelect(partitionCon);
+          }
+          partitionStatements.add(statement);
+
+          if (bounds == null) {
+            setPartitionParameters(statement, partitionCount, i);
+          } else {
+            setPartitionParameters(statement, bounds[i], bounds[i + 1]);
+          }
+        }
       }
     } catch (SQLException Sex) {
       message = "SQL Exception in <" + getSymbolicName() + "> preparing query <" + selectQuery + ">. message = <" + Sex.getMessage() + ">";
       getPipeLog().error(message);
       throw new ProcessingException(message, getSymbolicName());
+    } catch (InitializationException ie) {
+      message = "Could not open partition connection in <" + getSymbolicName() + ">. message = <" + ie.getMessage() + ">";
+      getPipeLog().error(message);
+      throw new ProcessingException(message, getSymbolicName());
     }
   }
 
+  /**
+   * Prepare the select statement on a connection, for the fetch mode we are
+   * using.
+   */
+  private PreparedStatement prepareSelect(Connection con) throws SQLException {
+    PreparedStatement statement;
+
+    if (streamingMode) {
+      // drivers only stream the rows of a forward only cursor, and some of
+      // them only inside a transaction
+      con.setAutoCommit(false);
+      statement = con.prepareStatement(selectQuery,
+              ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY);
+    } else {
+      statement = con.prepareStatement(selectQuery,
+              ResultSet.TYPE_SCROLL_INSENSITIVE,
+              ResultSet.CONCUR_READ_ONLY);
+    }
+    statement.setFetchSize((fetchSize == null) ? batchSize : fetchSize);
+
+    return statement;
+  }
+
+  /**
+   * Get the bounds of the key ranges of the partitions in range mode, using
+   * the partition range query.
+   *
+   * @return The partitionCount + 1 bounds, or null in modulo mode
+   */
+  private long[] getPartitionBounds() throws SQLException {
+    if (!partitionMode.equals("Range")) {
+      return null;
+    }
+
+    try (Statement stmtRangeQuery = JDBCcon.createStatement();
+            ResultSet Trs = stmtRangeQuery.executeQuery(partitionRangeQuery)) {
+      if (Trs.next()) {
+        long min = Trs.getLong(1);
+        if (!Trs.wasNull()) {
+          return JDBCPartitionReader.splitRange(min, Trs.getLong(2), partitionCount);
+        }
+      }
+    }
+
+    // there are no keys, so every partition gets an empty range
+    return new long[partitionCount + 1];
+  }
+
   /**
    * PrepareStatements creates the statements from the SQL expressions so that
    * they can be run as needed
@@ -889,6 +1037,35 @@ public abstract class JDBCInputAdapter
    * CloseStatements closes the statements from the SQL expressions
    */
   public void closeSelectStatement() {
+    // stop the partition threads before we close their statements
+    if (partitionReader != null) {
+      partitionReader.close();
+      partitionReader = null;
+    }
+
+    for (PreparedStatement statement : partitionStatements) {
+      if (statement != stmtSelectQuery) {
+        try {
+          statement.close();
+        } catch (SQLException Sex) {
+          message = "SQL Exception in <" + getSymbolicName() + "> closing query <" + selectQuery + ">. message = <" + Sex.getMessage() + ">";
+          getPipeLog().error(message);
+        }
+      }
+    }
+    partitionStatements.clear();
+
+    for (Connection partitionCon : partitionConnections) {
+      endSelectTransaction(partitionCon);
+      try {
+        partitionCon.close();
+      } catch (SQLException Sex) {
+        message = "SQL Exception in <" + getSymbolicName() + "> closing connection. message = <" + Sex.getMessage() + ">";
+        getPipeLog().error(message);
+      }
+    }
+    partitionConnections.clear();
+
     if (stmtSelectQuery != null) {
       try {
         stmtSelectQuery.close();
@@ -899,9 +1076,27 @@ public abstract class JDBCInputAdapter
     }
 
     // close the connection
+    endSelectTransaction(JDBCcon);
     closeConnection();
   }
 
+  /**
+   * End the transaction that a streaming select runs in, so that the
+   * connection goes back to the pool as we got it.
+   */
+  private void endSelectTransaction(Connection con) {
+    if (streamingMode && (con != null)) {
+      try {
+        if (!con.isClosed()) {
+          con.setAutoCommit(true);
+        }
+      } catch (SQLException Sex) {
+        message = "SQL Exception in <" + getSymbolicName() + "> ending select transaction. message = <" + Sex.getMessage() + ">";
+        getPipeLog().error(message);
+      }
+    }
+  }
+
   /**
    * CloseStatements closes the statements from the SQL expressions
    */
@@ -1113,6 +1308,22 @@ public abstract class JDBCInputAdapter
     stmtRollbackQuery.execute();
   }
 
+  /**
+   * Overridable block for setting the parameters of the select statement of a
+   * partition. In modulo mode the values are the partition count and the
+   * number of the partition, in range mode they are the lowest key included
+   * and the highest key excluded.
+   *
+   * @param statement The select statement of the partition
+   * @param first The partition count or the lowest key
+   * @param second The partition number or the highest key
+   * @throws SQLException
+   */
+  public void setPartitionParameters(PreparedStatement statement, long first, long second) throws SQLException {
+    statement.setLong(1, first);
+    statement.setLong(2, second);
+  }
+
   // -----------------------------------------------------------------------------
   // --------------- Start of custom initialisation functions ---------------------
   // -----------------------------------------------------------------------------
@@ -1258,6 +1469,109 @@ public abstract class JDBCInputAdapter
     return query;
   }
 
+  /**
+   * Get the fetch mode and the fetch size from the properties.
+   *
+   * @param PipelineName The pipeline name we are working in
+   * @throws OpenRate.exception.InitializationException
+   */
+  private void initFetchMode(String PipelineName)
+          throws InitializationException {
+    String ConfigHelper;
+
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(PipelineName, getSymbolicName(),
+            FETCH_MODE_KEY,
+            "Scrollable");
+
+    if (ConfigHelper.equalsIgnoreCase("Streaming")) {
+      streamingMode = true;
+    } else if (!ConfigHelper.equalsIgnoreCase("Scrollable")) {
+      message = "JDBCInputAdapter config error. "
+              + FETCH_MODE_KEY
+              + " must be <Scrollable> or <Streaming>, but was <" + ConfigHelper + ">.";
+      getPipeLog().error(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(PipelineName, getSymbolicName(),
+            FETCH_SIZE_KEY,
+            "None");
+
+    if (!ConfigHelper.equalsIgnoreCase("None")) {
+      try {
+        fetchSize = Integer.valueOf(ConfigHelper);
+      } catch (NumberFormatException nfe) {
+        message = "JDBCInputAdapter config error. "
+                + FETCH_SIZE_KEY
+                + " must be a number, but was <" + ConfigHelper + ">.";
+        getPipeLog().error(message);
+        throw new InitializationException(message, getSymbolicName());
+      }
+    }
+  }
+
+  /**
+   * Get the partition mode, the number of partitions and the range query from
+   * the properties.
+   *
+   * @param PipelineName The pipeline name we are working in
+   * @throws OpenRate.exception.InitializationException
+   */
+  private void initPartitionMode(String PipelineName)
+          throws InitializationException {
+    String ConfigHelper;
+
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(PipelineName, getSymbolicName(),
+            PARTITION_MODE_KEY,
+            "None");
+
+    if (ConfigHelper.equalsIgnoreCase("None")) {
+      return;
+    } else if (ConfigHelper.equalsIgnoreCase("Modulo")) {
+      partitionMode = "Modulo";
+    } else if (ConfigHelper.equalsIgnoreCase("Range")) {
+      partitionMode = "Range";
+    } else {
+      message = "JDBCInputAdapter config error. "
+              + PARTITION_MODE_KEY
+              + " must be <None>, <Modulo> or <Range>, but was <" + ConfigHelper + ">.";
+      getPipeLog().error(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(PipelineName, getSymbolicName(),
+            PARTITION_COUNT_KEY,
+            "None");
+
+    try {
+      partitionCount = Integer.parseInt(ConfigHelper);
+    } catch (NumberFormatException nfe) {
+      partitionCount = 0;
+    }
+
+    if (partitionCount < 1) {
+      message = "JDBCInputAdapter config error. "
+              + PARTITION_COUNT_KEY
+              + " must be a number greater than 0, but was <" + ConfigHelper + ">.";
+      getPipeLog().error(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (partitionMode.equals("Range")) {
+      partitionRangeQuery = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(PipelineName, getSymbolicName(),
+              PARTITION_RANGE_QUERY_KEY,
+              "None");
+
+      if ((partitionRangeQuery == null) || partitionRangeQuery.equalsIgnoreCase("None")) {
+        message = "JDBCInputAdapter config error. "
+                + PARTITION_RANGE_QUERY_KEY
+                + " property not found.";
+        getPipeLog().error(message);
+        throw new InitializationException(message, getSymbolicName());
+      }
+    }
+  }
+
   /**
    * Get the data source name from the properties
    *
@@ -0,0 +1,322 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.jdbc;
+
+import java.io.Closeable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the rows of several partitions of a select at once. Each partition is
+ * a prepared statement, normally on its own connection, which is executed and
+ * read by its own thread. The threads also get the column values as strings,
+ * which is where much of the reading time goes.
+ *
+ * The rows of all the partitions are handed out through one queue, in the
+ * order the threads read them, so the order of the rows between partitions is
+ * not defined. Each thread reads ahead by a bounded number of chunks of rows,
+ * so the memory used does not depend on the size of the result sets, as long
+ * as the statements themselves are set up to stream their rows.
+ *
+ * The statements are executed by the reader, but they are closed by the
+ * caller, after the reader has been closed. close() waits for all of the
+ * threads to stop, so the statements can be closed safely when it returns.
+ */
+public class JDBCPartitionReader implements Closeable {
+
+  // The number of rows in a chunk passed from a partition thread
+  private static final int CHUNK_SIZE = 1000;
+
+  // The number of chunks each partition thread may read ahead
+  private static final int CHUNKS_AHEAD = 4;
+
+  // How long a partition thread waits for space in the queue before looking
+  // to see if the reader was closed
+  private static final long POLL_WAIT = 100;
+
+  // The rows read by a partition thread
+  private static class Chunk {
+
+    final ArrayList<String[]> rows = new ArrayList<>(CHUNK_SIZE);
+    SQLException error = null;
+    boolean last = false;
+  }
+
+  // A partition of the select, read by its own thread
+  private class Partition implements Runnable {
+
+    final PreparedStatement statement;
+    Thread thread;
+
+    Partition(PreparedStatement statement) {
+      this.statement = statement;
+    }
+
+    @Override
+    public void run() {
+      Chunk chunk = new Chunk();
+
+      try (ResultSet rs = statement.executeQuery()) {
+        int columnCount = rs.getMetaData().getColumnCount();
+
+        while (!closed && rs.next()) {
+          String[] columns = new String[columnCount];
+          for (int columnIdx = 0; columnIdx < columnCount; columnIdx++) {
+            columns[columnIdx] = rs.getString(columnIdx + 1);
+          }
+          chunk.rows.add(columns);
+
+          if (chunk.rows.size() == CHUNK_SIZE) {
+            if (!handOver(chunk)) {
+              return;
+            }
+            chunk = new Chunk();
+          }
+        }
+      } catch (SQLException ex) {
+        chunk.error = ex;
+      }
+
+      chunk.last = true;
+      handOver(chunk);
+    }
+
+    // Put a chunk into the queue, waiting while it is full. Returns false if
+    // the reader was closed meanwhile.
+    private boolean handOver(Chunk chunk) {
+      try {
+        while (!chunks.offer(chunk, POLL_WAIT, TimeUnit.MILLISECONDS)) {
+          if (closed) {
+            return false;
+          }
+        }
+      } catch (InterruptedException ex) {
+        return false;
+      }
+
+      return true;
+    }
+  }
+
+  // The partitions of the select
+  private final ArrayList<Partition> partitions = new ArrayList<>();
+
+  // The chunks read by all of the partitions
+  private final ArrayBlockingQueue<Chunk> chunks;
+
+  // The number of partitions which have not handed over their last chunk
+  private int running;
+
+  // Tells the partition threads to stop
+  private volatile boolean closed = false;
+
+  // The chunk we are handing out
+  private Chunk currentChunk = null;
+  private int rowIndex = 0;
+
+  /**
+   * Start reading the partitions. Each statement must already have its
+   * parameters set.
+   *
+   * @param statements The statements of the partitions
+   * @param threadName The name to give the partition threads
+   */
+  public JDBCPartitionReader(List<PreparedStatement> statements, String threadName) {
+    chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD * Math.max(statements.size(), 1));
+    running = statements.size();
+
+    for (int i = 0; i < statements.size(); i++) {
+      Partition partition = new Partition(statements.get(i));
+      partition.thread = new Thread(partition, threadName + "-" + i);
+      partition.thread.setDaemon(true);
+      partitions.add(partition);
+    }
+
+    for (Partition partition : partitions) {
+      partition.thread.start();
+    }
+  }
+
+  /**
+   * Tell us if there are more rows to read, waiting for the partition threads
+   * if we need to.
+   *
+   * @return true if there is another row
+   * @throws SQLException If a partition could not be read
+   */
+  public boolean hasMoreData() throws SQLException {
+    while ((currentChunk == null) || (rowIndex == currentChunk.rows.size())) {
+      if ((currentChunk != null) && currentChunk.last) {
+        // the partition is finished
+        running--;
+      }
+      currentChunk = null;
+
+      if (running == 0) {
+        return false;
+      }
+
+      try {
+        currentChunk = chunks.take();
+      } catch (InterruptedException ex) {
+        throw new SQLException("Interrupted waiting for the rows of the partitions");
+      }
+      rowIndex = 0;
+
+      if (currentChunk.error != null) {
+        throw currentChunk.error;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the column values of the next row. hasMoreData() must have returned
+   * true.
+   *
+   * @return The column values
+   */
+  public String[] readRow() {
+    String[] row = currentChunk.rows.get(rowIndex);
+
+    // let go of it, so that the chunk does not hold the rows
+    currentChunk.rows.set(rowIndex++, null);
+
+    return row;
+  }
+
+  /**
+   * Stop the partition threads, cancelling any statement which is still
+   * running, and wait for them to stop. A thread which is waiting for space
+   * in the full queue stops within the poll wait.
+   */
+  @Override
+  public void close() {
+    closed = true;
+
+    for (Partition partition : partitions) {
+      if (partition.thread.isAlive()) {
+        try {
+          partition.statement.cancel();
+        } catch (SQLException ex) {
+          // not all drivers can cancel, the thread stops after its next row
+        }
+      }
+    }
+
+    // wait for all the threads to stop, even if we are interrupted
+    boolean interrupted = false;
+
+    for (Partition partition : partitions) {
+      while (partition.thread.isAlive()) {
+        try {
+          partition.thread.join();
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * See if any of the partition threads is still running.
+   *
+   * @return true if a partition thread is alive
+   */
+  boolean threadsAlive() {
+    for (Partition partition : partitions) {
+      if (partition.thread.isAlive()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Divide the key range from min to max, both included, into ranges of
+   * nearly the same size. Range i runs from bounds[i] included to bounds[i+1]
+   * excluded.
+   *
+   * @param min The lowest key
+   * @param max The highest key
+   * @param count The number of ranges
+   * @return The count + 1 bounds of the ranges
+   */
+  static long[] splitRange(long min, long max, int count) {
+    long[] bounds = new long[count + 1];
+    long span = max - min + 1;
+    long size = span / count;
+    long rest = span % count;
+
+    bounds[0] = min;
+    for (int i = 1; i <= count; i++) {
+      // the first ranges take one more key each for the rest
+      bounds[i] = bounds[i - 1] + size + ((i <= rest) ? 1 : 0);
+    }
+
+    return bounds;
+  }
+}
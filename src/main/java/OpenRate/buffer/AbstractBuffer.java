@@ -55,8 +55,8 @@
 
 package OpenRate.buffer;
 
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -72,18 +72,35 @@ import java.util.Iterator;
  *
  * This abstract class must be extended with a storage class, which is able to
  * contain records, as this abstract class only deals with the monitor
- * management.
+ * management and the back pressure signalling.
+ *
+ * Back pressure works in both directions without polling: consumers are woken
+ * through their monitors when records arrive, and suppliers which find the
+ * buffer above their high water mark wait in waitForSpace() until a consumer
+ * has pulled records and signalled that space is available.
+ *
+ * Monitor notification is edge triggered: the storage class tells us whether a
+ * push found the buffer empty, and only then are all the monitors notified.
+ * Otherwise the consumers are known to be working on the buffer already, and
+ * only monitors which have a thread parked waiting for records are woken. The
+ * monitors are held in an array which is replaced on registration, so that a
+ * push can read it without taking any lock.
  */
 public abstract class AbstractBuffer
   implements IBuffer
 {
-  // this hash set contains all of the monitors to this buffer. These will
-  // be notified when new records are ready.
-  private final HashSet<IMonitor> monitors = new HashSet<>();
+  // this array contains all of the monitors to this buffer. These will be
+  // notified when new records are ready. The array is copied on write.
+  private volatile IMonitor[] monitors = new IMonitor[0];
 
   private String Supplier;
   private String Consumer;
 
+  // Used to block suppliers while the buffer is above their high water mark.
+  // The consumers only take the lock if a supplier is actually waiting.
+  private final Object        spaceLock        = new Object();
+  private final AtomicInteger waitingSuppliers = new AtomicInteger(0);
+
  /**
   * Constructor for AbstractBuffer
   */
@@ -97,14 +114,89 @@ public abstract class AbstractBuffer
   */
   protected void notifyMonitors()
   {
-    synchronized (monitors)
+    for (IMonitor m : monitors)
+    {
+      m.notify(BufferEvent.NEW_RECORDS);
+    }
+  }
+
+ /**
+  * notifyMonitors after a push. If the push found the buffer empty, the
+  * consumers may be about to wait, so all of the monitors are notified.
+  * Otherwise only the monitors which have a thread waiting are notified.
+  *
+  * @param wasEmpty true if the push found the buffer empty
+  */
+  protected void notifyMonitors(boolean wasEmpty)
+  {
+    if (wasEmpty)
+    {
+      notifyMonitors();
+    }
+    else
+    {
+      for (IMonitor m : monitors)
+      {
+        if (m.isWaiting())
+        {
+          m.notify(BufferEvent.NEW_RECORDS);
+        }
+      }
+    }
+  }
+
+ /**
+  * Block the calling supplier until the number of events in the buffer is at
+  * or below the given high water mark. The consumers are notified before we
+  * wait, so that a sleeping consumer will start emptying the buffer.
+  *
+  * @param highWaterMark The maximum number of events we will accept
+  */
+  @Override
+  public void waitForSpace(int highWaterMark)
+  {
+    if (getEventCount() <= highWaterMark)
+    {
+      return;
+    }
+
+    // make sure the consumers are awake, otherwise we could wait for ever
+    notifyMonitors();
+
+    synchronized (spaceLock)
     {
-      Iterator<IMonitor> iter = monitors.iterator();
+      waitingSuppliers.incrementAndGet();
+
+      try
+      {
+        while (getEventCount() > highWaterMark)
+        {
+          spaceLock.wait();
+        }
+      }
+      catch (InterruptedException ex)
+      {
+        // ignore interrupt exceptions, the caller will check again
+      }
+      finally
+      {
+        waitingSuppliers.decrementAndGet();
+      }
+    }
+  }
 
-      while (iter.hasNext())
+ /**
+  * signalSpace wakes up any suppliers which are waiting for space. This must
+  * be called by the storage class each time records have been pulled, after
+  * the event count has been updated.
+  */
+  protected void signalSpace()
+  {
+    if (waitingSuppliers.get() > 0)
+    {
+      synchronized (spaceLock)
       {
-        IMonitor m = iter.next();
-        m.notify(BufferEvent.NEW_RECORDS);
+        spaceLock.notifyAll();
       }
     }
   }
@@ -116,12 +208,19 @@ public abstract class AbstractBuffer
   * @param m The monitor object to be added
   */
   @Override
-  public void registerMonitor(IMonitor m)
+  public synchronized void registerMonitor(IMonitor m)
   {
-    synchronized (monitors)
+    for (IMonitor registered : monitors)
     {
-      monitors.add(m);
+      if (registered == m)
+      {
+        return;
+      }
     }
+
+    IMonitor[] newMonitors = Arrays.copyOf(monitors, monitors.length + 1);
+    newMonitors[monitors.length] = m;
+    monitors = newMonitors;
   }
 
  /**
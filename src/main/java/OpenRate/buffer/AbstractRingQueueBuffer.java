@@ -0,0 +1,194 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.buffer;
+
+import OpenRate.record.IRecord;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Abstract ring buffer, holding the storage and the sequence counters shared
+ * by the ring buffer implementations.
+ *
+ * The records are stored in a pre-sized array, which is used as a ring. The
+ * "tail" counter is the next position that will be written by a supplier and
+ * the "head" counter is the next position that will be read by a consumer. The
+ * counters only ever increase, and are mapped onto the array with a mask, so
+ * the capacity is always a power of two. No storage is allocated after the
+ * buffer has been created, and pulling a block of records is a single claim
+ * of a range of the ring, rather than removing the records one by one.
+ *
+ * When a supplier finds the ring full, it waits for space in the same way as
+ * for any other buffer, until a consumer has released some positions.
+ * Consumers only take the space lock if a supplier is actually waiting, so in
+ * the normal case a push or a pull costs only a few atomic operations.
+ */
+public abstract class AbstractRingQueueBuffer
+  extends AbstractBuffer
+  implements IBoundedBuffer
+{
+ /**
+  * The default capacity of a ring buffer, used if the pipeline does not set
+  * one.
+  */
+  public static final int DEFAULT_CAPACITY = 16384;
+
+  // The ring storage and the mask to map a sequence onto it
+  IRecord[] ring;
+  int       mask;
+  int       capacity;
+
+  // The next position to read
+  final AtomicLong head = new AtomicLong(0);
+
+  // The next position to write
+  final AtomicLong tail = new AtomicLong(0);
+
+ /**
+  * Default constructor. Allocates the ring with the default capacity.
+  */
+  public AbstractRingQueueBuffer()
+  {
+    super();
+
+    allocate(DEFAULT_CAPACITY);
+  }
+
+ /**
+  * Set the capacity of the buffer. The capacity is rounded up to the next
+  * power of two.
+  *
+  * @param newCapacity The requested capacity in records
+  */
+  @Override
+  public void setCapacity(int newCapacity)
+  {
+    if (tail.get() != 0)
+    {
+      throw new IllegalStateException("Cannot change the capacity of a ring buffer which is in use");
+    }
+
+    allocate(newCapacity);
+  }
+
+ /**
+  * Get the capacity of the buffer
+  *
+  * @return The capacity in records
+  */
+  @Override
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+ /**
+  * Return the number of events in the buffer
+  *
+  * @return The number of events in the buffer
+  */
+  @Override
+  public int getEventCount()
+  {
+    // read the head first, so that we can never see a negative count
+    long currentHead = head.get();
+
+    return (int) (tail.get() - currentHead);
+  }
+
+ /**
+  * Allocate the ring storage for the given capacity
+  *
+  * @param requested The requested capacity
+  */
+  private void allocate(int requested)
+  {
+    if (requested < 1)
+    {
+      throw new IllegalArgumentException("Ring buffer capacity must be positive, but got <" + requested + ">");
+    }
+
+    int newCapacity = 1;
+    while (newCapacity < requested)
+    {
+      newCapacity <<= 1;
+    }
+
+    ring = new IRecord[newCapacity];
+    mask = newCapacity - 1;
+    capacity = newCapacity;
+
+    allocateSequences(newCapacity);
+  }
+
+ /**
+  * Hook for implementations which need per position state alongside the
+  * ring. Called every time the ring is (re)allocated.
+  *
+  * @param newCapacity The capacity that was allocated
+  */
+  void allocateSequences(int newCapacity)
+  {
+    // nothing by default
+  }
+
+ /**
+  * Wait until there is at least one free position in the ring.
+  */
+  void awaitSpace()
+  {
+    waitForSpace(capacity - 1);
+  }
+}
@@ -100,14 +100,17 @@ public class ArrayListQueueBuffer
   @Override
   public void push(Collection<IRecord> collection)
   {
+    boolean wasEmpty;
+
     synchronized (lock)
     {
       // blocks waiting for queue availability.
+      wasEmpty = queueHelperBatch.isEmpty();
       queueHelperBatch.addAll(collection);
     }
 
     // tell the downstream modules that there is stuff to do
-    notifyMonitors();
+    notifyMonitors(wasEmpty);
   }
 
  /**
@@ -146,6 +149,9 @@ public class ArrayListQueueBuffer
       }
     }
 
+    // tell any waiting suppliers that there is space
+    signalSpace();
+
     return list;
   }
 
@@ -157,6 +163,9 @@ public class ArrayListQueueBuffer
   @Override
   public int getEventCount()
   {
-    return queueHelperBatch.size();
+    synchronized (lock)
+    {
+      return queueHelperBatch.size();
+    }
   }
 }
@@ -0,0 +1,96 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.buffer;
+
+/**
+ * A bounded buffer has a fixed capacity, which is allocated once when the
+ * pipeline is built. A push into a full bounded buffer does not fail: it
+ * blocks the supplier until the consumer has made enough space, so that the
+ * buffer itself provides the back pressure in the pipeline, instead of the
+ * suppliers polling the buffer event count.
+ *
+ * The capacity is set by the pipeline from the "BufferCapacity" configuration
+ * item immediately after the buffer has been created, and before any records
+ * are pushed into it.
+ */
+public interface IBoundedBuffer
+  extends IBuffer
+{
+ /**
+  * Set the capacity of the buffer. Implementations may round the capacity up
+  * (for example to a power of two). This may only be called before the first
+  * record is pushed.
+  *
+  * @param newCapacity The requested capacity in records
+  */
+  public void setCapacity(int newCapacity);
+
+ /**
+  * Get the capacity of the buffer.
+  *
+  * @return The number of records the buffer can hold
+  */
+  public int getCapacity();
+
+ /**
+  * Returns true if the buffer may only be used with one supplier thread and
+  * one consumer thread. The pipeline uses this to reject configurations
+  * which would put a multi-threaded plug in on either side of the buffer.
+  *
+  * @return true if the buffer is single producer, single consumer
+  */
+  public boolean isSingleThreaded();
+}
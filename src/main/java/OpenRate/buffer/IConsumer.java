@@ -73,6 +73,15 @@ public interface IConsumer
   */
   public void push(Collection<IRecord> c);
 
+ /**
+  * Block until the number of events in the buffer is at or below the given
+  * high water mark. This is how suppliers apply back pressure: the wait ends
+  * as soon as a consumer has pulled enough records, without polling.
+  *
+  * @param highWaterMark The maximum number of events the supplier accepts
+  */
+  public void waitForSpace(int highWaterMark);
+
  /**
   * Return the number of events in the buffer. To be implemented by the
   * concrete implementation.
@@ -70,4 +70,13 @@ public interface IMonitor
   * @param e The event to notify
   */
   public void notify(IEvent e);
+
+ /**
+  * Tell the buffer whether a thread of this monitor is currently parked
+  * waiting for records. Buffers use this to skip notifications while the
+  * monitor is busy working through records it already knows about.
+  *
+  * @return true if a thread is waiting for notification
+  */
+  public boolean isWaiting();
 }
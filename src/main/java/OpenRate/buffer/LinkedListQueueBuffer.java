@@ -101,14 +101,17 @@ public class LinkedListQueueBuffer
   @Override
   public void push(Collection<IRecord> collection)
   {
+    boolean wasEmpty;
+
     synchronized (lock)
     {
       // blocks waiting for queue availability.
+      wasEmpty = queueHelperBatch.isEmpty();
       queueHelperBatch.addAll(collection);
     }
 
     // tell the downstream modules that there is stuff to do
-    notifyMonitors();
+    notifyMonitors(wasEmpty);
   }
 
  /**
@@ -146,6 +149,9 @@ public class LinkedListQueueBuffer
       }
     }
 
+    // tell any waiting suppliers that there is space
+    signalSpace();
+
     return list;
   }
 
@@ -155,6 +161,9 @@ public class LinkedListQueueBuffer
   @Override
   public int getEventCount()
   {
-    return queueHelperBatch.size();
+    synchronized (lock)
+    {
+      return queueHelperBatch.size();
+    }
   }
 }
@@ -0,0 +1,226 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.buffer;
+
+import OpenRate.record.IRecord;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Multiple producer, multiple consumer ring buffer.
+ *
+ * This buffer can be used between any plug ins, regardless of the number of
+ * threads they run. Suppliers and consumers claim a range of positions with a
+ * single compare and set on the tail or head, and then fill or empty the
+ * range without any further coordination. Each position carries a sequence
+ * number which tells whether the position is ready to be written or read, so
+ * that a consumer cannot overtake a supplier which has claimed a range but
+ * not yet finished filling it (and vice versa).
+ *
+ * Records pushed in one call by one supplier keep their order, but records
+ * from concurrent suppliers may be interleaved, in the same way as with the
+ * list buffers.
+ */
+public class MPMCRingQueueBuffer
+  extends AbstractRingQueueBuffer
+{
+  // The sequence of each position. A position at sequence "s" is ready to be
+  // written when the sequence is "s" and ready to be read at "s + 1".
+  private AtomicLongArray sequences;
+
+ /**
+  * Default constructor.
+  */
+  public MPMCRingQueueBuffer()
+  {
+    super();
+  }
+
+ /**
+  * Create the sequence array to go with the ring
+  *
+  * @param newCapacity The capacity of the ring
+  */
+  @Override
+  void allocateSequences(int newCapacity)
+  {
+    sequences = new AtomicLongArray(newCapacity);
+
+    for (int i = 0; i < newCapacity; i++)
+    {
+      sequences.set(i, i);
+    }
+  }
+
+ /**
+  * Push an entire collection of batch records into the buffer. If the ring
+  * fills up, we push what we can and wait for the consumers to make space for
+  * the rest.
+  *
+  * @param collection The collection of records to push
+  */
+  @Override
+  public void push(Collection<IRecord> collection)
+  {
+    Iterator<IRecord> iter = collection.iterator();
+    int remaining = collection.size();
+    boolean wasEmpty = false;
+
+    while (remaining > 0)
+    {
+      long currentTail = tail.get();
+      long free = capacity - (currentTail - head.get());
+
+      if (free <= 0)
+      {
+        awaitSpace();
+        continue;
+      }
+
+      int count = (int) Math.min(free, remaining);
+
+      // claim the range, try again if another supplier got there first
+      if (!tail.compareAndSet(currentTail, currentTail + count))
+      {
+        continue;
+      }
+
+      // if the consumers had claimed everything before our range, they may be
+      // about to wait, so they need waking
+      wasEmpty |= (head.get() == currentTail);
+
+      for (int i = 0; i < count; i++)
+      {
+        long position = currentTail + i;
+        int index = (int) position & mask;
+
+        // wait for a consumer which claimed this position to finish reading
+        while (sequences.get(index) != position)
+        {
+          Thread.yield();
+        }
+
+        ring[index] = iter.next();
+        sequences.lazySet(index, position + 1);
+      }
+
+      remaining -= count;
+    }
+
+    // tell the downstream modules that there is stuff to do
+    notifyMonitors(wasEmpty);
+  }
+
+ /**
+  * Retrieve a number of batch records from the buffer. All the records that
+  * are available, up to the maximum, are claimed in one go.
+  *
+  * @param max The maximum number of records to pull
+  * @return The records pulled
+  */
+  @Override
+  public Collection<IRecord> pull(int max)
+  {
+    long currentHead;
+    int count;
+
+    do
+    {
+      currentHead = head.get();
+      count = (int) Math.min(tail.get() - currentHead, max);
+
+      if (count <= 0)
+      {
+        return new ArrayList<>(0);
+      }
+    } while (!head.compareAndSet(currentHead, currentHead + count));
+
+    ArrayList<IRecord> list = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      long position = currentHead + i;
+      int index = (int) position & mask;
+
+      // wait for a supplier which claimed this position to finish writing
+      while (sequences.get(index) != position + 1)
+      {
+        Thread.yield();
+      }
+
+      list.add(ring[index]);
+      ring[index] = null;
+      sequences.lazySet(index, position + capacity);
+    }
+
+    // release the positions to the suppliers
+    signalSpace();
+
+    return list;
+  }
+
+ /**
+  * This buffer can be used by any number of threads.
+  *
+  * @return false
+  */
+  @Override
+  public boolean isSingleThreaded()
+  {
+    return false;
+  }
+}
@@ -0,0 +1,175 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.buffer;
+
+import OpenRate.record.IRecord;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Single producer, single consumer ring buffer.
+ *
+ * This is the fastest buffer implementation, but may only be used where there
+ * is exactly one thread on each side of the buffer, that is, where the
+ * supplier and the consumer plug ins are both configured with a single
+ * processing thread. The pipeline checks this when it is built.
+ *
+ * Because there is only one writer of each counter, no locking or compare and
+ * set is needed: the supplier fills the free positions and then publishes the
+ * new tail, and the consumer takes all the available positions up to the
+ * maximum it asked for and then publishes the new head.
+ */
+public class SPSCRingQueueBuffer
+  extends AbstractRingQueueBuffer
+{
+ /**
+  * Default constructor.
+  */
+  public SPSCRingQueueBuffer()
+  {
+    super();
+  }
+
+ /**
+  * Push an entire collection of batch records into the buffer. If the ring
+  * fills up, we push what we can and wait for the consumer to make space for
+  * the rest.
+  *
+  * @param collection The collection of records to push
+  */
+  @Override
+  public void push(Collection<IRecord> collection)
+  {
+    Iterator<IRecord> iter = collection.iterator();
+    int remaining = collection.size();
+    long currentTail = tail.get();
+    boolean wasEmpty = false;
+
+    while (remaining > 0)
+    {
+      int free = capacity - (int) (currentTail - head.get());
+
+      if (free == 0)
+      {
+        awaitSpace();
+        continue;
+      }
+
+      int count = Math.min(free, remaining);
+      for (int i = 0; i < count; i++)
+      {
+        ring[(int) (currentTail + i) & mask] = iter.next();
+      }
+
+      long chunkStart = currentTail;
+      currentTail += count;
+      remaining -= count;
+
+      // publish the records to the consumer. If the consumer had taken
+      // everything before them, it may be about to wait, so it needs waking
+      tail.set(currentTail);
+      wasEmpty |= (head.get() == chunkStart);
+    }
+
+    // tell the downstream modules that there is stuff to do
+    notifyMonitors(wasEmpty);
+  }
+
+ /**
+  * Retrieve a number of batch records from the buffer. All the records that
+  * are available, up to the maximum, are taken in one claim.
+  *
+  * @param max The maximum number of records to pull
+  * @return The records pulled
+  */
+  @Override
+  public Collection<IRecord> pull(int max)
+  {
+    long currentHead = head.get();
+    int count = (int) Math.min(tail.get() - currentHead, max);
+
+    if (count <= 0)
+    {
+      return new ArrayList<>(0);
+    }
+
+    ArrayList<IRecord> list = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      int index = (int) (currentHead + i) & mask;
+      list.add(ring[index]);
+      ring[index] = null;
+    }
+
+    // release the positions to the supplier
+    head.set(currentHead + count);
+    signalSpace();
+
+    return list;
+  }
+
+ /**
+  * This buffer may only be used by one supplier and one consumer thread.
+  *
+  * @return true
+  */
+  @Override
+  public boolean isSingleThreaded()
+  {
+    return true;
+  }
+}
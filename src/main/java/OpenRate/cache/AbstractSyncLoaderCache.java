@@ -70,6 +70,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class implements an abstract cache loader class that implements sync
@@ -79,6 +80,13 @@ import java.util.List;
  * transactionally safe reloading is required. This means that the processing
  * must be completely stopped before the loading can begin.
  *
+ * Caches which implement ICacheShadowReloadable can instead be configured with
+ * "ReloadMode" set to "Shadow". A reload then loads a new instance of the cache in a background
+ * thread, while the processing carries on using the current data. When the
+ * new instance is loaded, its data is published into this cache by swapping
+ * the references to the data structures, so that the pipelines never have to
+ * stop for a reload. This needs enough memory for two copies of the data.
+ *
  * @author i.sparkes
  * @author AminS auto reloadable caches
  */
@@ -144,6 +152,7 @@ public abstract class AbstractSyncLoaderCache
   private final static String SERVICE_DATE_FORMAT   = "DateFormat";
   private final static String SERVICE_LOAD_LOG_STEP = "LoadLogStep";
   private final static String SERVICE_NO_AUTORELOAD = "ExcludeFromAutoReload";
+  private final static String SERVICE_RELOAD_MODE   = "ReloadMode";
 
   // Variables for managing the sync points
   private int syncStatus = 0;
@@ -165,6 +174,16 @@ public abstract class AbstractSyncLoaderCache
   // if we are to be excluded from auto-reload
   private boolean excludeFromAutoReload;
 
+  // if we reload by building a shadow copy in the background
+  private boolean shadowReload = false;
+
+  // set while a shadow reload is running, so that we only run one at a time
+  private final AtomicBoolean shadowReloadRunning = new AtomicBoolean(false);
+
+  // the names we were loaded with, used to load the shadow copy
+  private String loadResourceName;
+  private String loadCacheName;
+
  /**
   * the frequency with which we update the log progress messages on loading
   */
@@ -209,6 +228,11 @@ public abstract class AbstractSyncLoaderCache
 
     // Get the module symbolic name
     setSymbolicName(CacheName);
+    loadResourceName = ResourceName;
+    loadCacheName = CacheName;
+
+    // Get the reload mode before we spend time loading
+    shadowReload = initGetShadowReload(ResourceName, CacheName);
 
     // Find the location of the configuration data
     OpenRate.getOpenRateFrameworkLog().info("Starting cache loading for <" + getSymbolicName() + ">");
@@ -450,6 +474,135 @@ public abstract class AbstractSyncLoaderCache
     }
   }
 
+ /**
+  * Reload the data into a new instance of this cache, and then publish it into
+  * this cache. The current data stays in use until the new data is published,
+  * and is left untouched if the loading fails.
+  *
+  * @throws InitializationException
+  */
+  public void shadowReloadData() throws InitializationException
+  {
+    AbstractSyncLoaderCache shadowCache;
+
+    if (isShadowReloadable() == false)
+    {
+      message = "Cache <" + getSymbolicName() + "> does not support shadow reloading";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    // See if we are excluded from reloading
+    if (getExcludeFromAutoReload())
+    {
+      // log that we skipped it
+      OpenRate.getOpenRateFrameworkLog().info("Skipped auto reloading cache <" + getSymbolicName() + "> because it is excluded from AutoReload");
+      return;
+    }
+
+    try
+    {
+      shadowCache = getClass().getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException ex)
+    {
+      message = "Could not create shadow copy of cache <" + getSymbolicName() + ">";
+      throw new InitializationException(message,ex,getSymbolicName());
+    }
+
+    // Load the new data, using the configuration we were loaded with
+    OpenRate.getOpenRateFrameworkLog().info("Starting shadow reload of cache <" + getSymbolicName() + ">");
+    shadowCache.loadCache(loadResourceName, loadCacheName);
+
+    // and make it live
+    ((ICacheShadowReloadable) this).publishShadowCache(shadowCache);
+
+    // inform the user
+    OpenRate.getOpenRateFrameworkLog().info("Published shadow reload of cache <" + getSymbolicName() + ">");
+    System.out.println("    Reload Cacheable Class <" + getSymbolicName() + "> (shadow)");
+  }
+
+ /**
+  * Start a shadow reload in a background thread, unless one is already
+  * running.
+  *
+  * @return true if the reload was started, false if one was already running
+  */
+  public boolean startShadowReload()
+  {
+    if (shadowReloadRunning.compareAndSet(false, true) == false)
+    {
+      OpenRate.getOpenRateFrameworkLog().warning("Shadow reload of cache <" + getSymbolicName() + "> already running");
+      return false;
+    }
+
+    Thread reloadThread = new Thread("ShadowReload-" + getSymbolicName())
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          shadowReloadData();
+        }
+        catch (InitializationException | RuntimeException ex)
+        {
+          OpenRate.getOpenRateFrameworkLog().fatal("Shadow reload of cache <" + getSymbolicName() + "> failed, keeping the current data",ex);
+        }
+        finally
+        {
+          shadowReloadRunning.set(false);
+        }
+      }
+    };
+
+    reloadThread.setDaemon(true);
+    reloadThread.start();
+
+    return true;
+  }
+
+ /**
+  * See if this cache is configured to reload by building a shadow copy.
+  *
+  * @return true if shadow reloading is used, otherwise false
+  */
+  public boolean getShadowReload()
+  {
+    return shadowReload;
+  }
+
+ /**
+  * See if a shadow reload is running at the moment.
+  *
+  * @return true if a shadow reload is running
+  */
+  public boolean isShadowReloadRunning()
+  {
+    return shadowReloadRunning.get();
+  }
+
+ /**
+  * See if this cache can publish a shadow copy of itself. It must implement
+  * ICacheShadowReloadable, and a derived class must publish its own data, so
+  * the class itself must declare publishShadowCache.
+  */
+  private boolean isShadowReloadable()
+  {
+    if ((this instanceof ICacheShadowReloadable) == false)
+    {
+      return false;
+    }
+
+    try
+    {
+      return getClass().getMethod("publishShadowCache", AbstractSyncLoaderCache.class).getDeclaringClass() == getClass();
+    }
+    catch (NoSuchMethodException ex)
+    {
+      return false;
+    }
+  }
+
  /**
   * Get the data from the data layer method
   *
@@ -556,7 +709,12 @@ public abstract class AbstractSyncLoaderCache
   @Override
   public void setSyncStatus(int newStatus)
   {
-    if (newStatus == ISyncPoint.SYNC_STATUS_SYNC_FLAGGED)
+    if ((newStatus == ISyncPoint.SYNC_STATUS_SYNC_FLAGGED) && shadowReload)
+    {
+      // we reload in the background, so the pipelines do not need to stop
+      startShadowReload();
+    }
+    else if (newStatus == ISyncPoint.SYNC_STATUS_SYNC_FLAGGED)
     {
       // we are being forced to reload by the cache manager
       // Add the command to the pending list
@@ -655,6 +813,7 @@ public abstract class AbstractSyncLoaderCache
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_DATE_FORMAT, ClientManager.PARAM_SYNC);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_LOAD_LOG_STEP, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_NO_AUTORELOAD, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_RELOAD_MODE, ClientManager.PARAM_NONE);
   }
 
  /**
@@ -675,7 +834,19 @@ public abstract class AbstractSyncLoaderCache
 
     if (Command.equalsIgnoreCase(SERVICE_RELOAD))
     {
-      if (Parameter.equalsIgnoreCase("true"))
+      if (Parameter.equalsIgnoreCase("true") && shadowReload)
+      {
+        // reload in the background without stopping the pipelines
+        if (startShadowReload())
+        {
+          return "Shadow reload started";
+        }
+        else
+        {
+          return "Shadow reload already running";
+        }
+      }
+      else if (Parameter.equalsIgnoreCase("true"))
       {
         // Add the command to the pending list
         pendingCommands.add(SERVICE_RELOAD);
@@ -694,7 +865,7 @@ public abstract class AbstractSyncLoaderCache
       else if (Parameter.equals(""))
       {
         // return the current state
-        if (syncStatus == 0)
+        if ((syncStatus == 0) && (shadowReloadRunning.get() == false))
         {
           return "false";
         }
@@ -941,4 +1112,39 @@ public abstract class AbstractSyncLoaderCache
       throw new InitializationException(message,getSymbolicName());
     }
   }
+
+ /**
+  * Temporary function to gather the information from the properties file. Will
+  * be removed with the introduction of the new configuration model.
+  */
+  private boolean initGetShadowReload(String ResourceName, String CacheName) throws InitializationException
+  {
+    String tmpValue;
+
+    tmpValue = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
+                                                       CacheName,
+                                                       SERVICE_RELOAD_MODE,
+                                                       "Sync");
+
+    if (tmpValue.equalsIgnoreCase("Sync"))
+    {
+      return false;
+    }
+    else if (tmpValue.equalsIgnoreCase("Shadow"))
+    {
+      if (isShadowReloadable() == false)
+      {
+        message = "Cache <" + getSymbolicName() + "> does not support <" + SERVICE_RELOAD_MODE + "> <Shadow>";
+        throw new InitializationException(message,getSymbolicName());
+      }
+
+      return true;
+    }
+    else
+    {
+      message = "Value provided for property <" + SERVICE_RELOAD_MODE +
+                "> must be Sync or Shadow. Received value <" + tmpValue + ">.";
+      throw new InitializationException(message,getSymbolicName());
+    }
+  }
 }
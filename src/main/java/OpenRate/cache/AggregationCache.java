@@ -67,7 +67,8 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * The aggregation cache is used to produce aggregation results against a set
@@ -83,6 +84,12 @@ import java.util.Set;
  * The results are created for each transaction, and are kept separate from
  * the main results until the end of the transaction, and then at that point
  * they are merged into the main results.
+ *
+ * Each thread aggregates into its own partial results for the transaction, so
+ * that aggregation plug ins can run in several threads without locking each
+ * other. The grouping keys are hashed from the record fields in place, and
+ * the results are held in primitive tables (see AggregationTable). The partial
+ * results of all the threads are merged on commit.
  */
 public class AggregationCache
      extends AbstractCache
@@ -157,34 +164,59 @@ public class AggregationCache
     // The file name of the results
     String fileName = null;
 
-    // These are the results - we hold the transactions in process and the
-    // overall merged transaction result
-    HashMap<String, AggResultList> resultCache;
+    // The position of the scenario in the scenario array
+    int scenarioIndex;
+
+    // The (0 based) offsets of the grouping fields, set up after loading
+    int[] groupingOffsets;
+
+    // This is the accumulated result of the committed transactions
+    AggregationTable results;
   }
 
-  // The aggregation result class holds the results for each individual
-  // aggregation scenario
-  private class AggResult
+  // The partial results of one thread for one transaction, one table for each
+  // scenario
+  private static class ThreadResults
   {
-    int    count = 0;
-    double sum = 0;
-    double max = 0;
-    double min = 0;
+    // The transaction the results are for
+    final int transactionNumber;
+
+    // The results, by scenario index, created when first used
+    final AggregationTable[] tables;
+
+    // Set when the transaction has been committed or rolled back
+    boolean closed = false;
+
+    // The values parsed from the current record, by field offset, valid
+    // where the stamp is the stamp of the current record
+    double[] parsedValues = new double[0];
+    int[]    parsedStamps = new int[0];
+    int      stamp = 0;
+
+    ThreadResults(int transactionNumber, int scenarioCount)
+    {
+      this.transactionNumber = transactionNumber;
+      this.tables = new AggregationTable[scenarioCount];
+    }
   }
 
-  // In order to deal with overlayed transactions, we have to be able to
-  // manage multiple concurrent results being built
-  private class AggResultList
+  // The partial results of all the threads for one transaction
+  private static class TransactionResults
   {
-    // These hold the in process transactions
-    HashMap<Integer,AggResult> currentTransactionResults;
+    final ConcurrentLinkedQueue<ThreadResults> threadResults = new ConcurrentLinkedQueue<>();
+  }
 
-    // This is the accumulated overall result
-    AggResult AccumulatedResult;
+  // The scenarios by scenario index, set up after loading
+  private AggScenario[] scenarioArray;
 
-    // The list of the grouping fields in the scenario
-    ArrayList<String> AggFields;
-  }
+  // The scenario indexes for each key, set up after loading
+  private HashMap<String, int[]> keyScenarios;
+
+  // The partial results of the transactions in progress
+  private final ConcurrentHashMap<Integer, TransactionResults> transactionResults;
+
+  // The partial results the current thread is working on
+  private final ThreadLocal<ThreadResults> currentThreadResults;
 
   // This is used during the write to collect the results
   private class MergedAggregation
@@ -207,6 +239,8 @@ public class AggregationCache
     keyList      = new HashMap<>(50);
     scenarioList = new HashMap<>(50);
     MergeStrings = new HashMap<>(50);
+    transactionResults = new ConcurrentHashMap<>(10);
+    currentThreadResults = new ThreadLocal<>();
   }
 
  /**
@@ -476,6 +510,9 @@ public class AggregationCache
       throw new InitializationException(message,getSymbolicName());
     }
 
+    // Set up the lookups used in the aggregation
+    compileScenarios();
+
     // Done
     OpenRate.getOpenRateFrameworkLog().info("Completed Aggregation Cache Configuration <" + getSymbolicName() + ">");
   }
@@ -504,7 +541,7 @@ public class AggregationCache
     }
 
     tmpAggScenario = new AggScenario();
-    tmpAggScenario.resultCache = new HashMap<>(1000);
+    tmpAggScenario.results = new AggregationTable();
     tmpAggScenario.groupingFieldList = new ArrayList<>();
     tmpAggScenario.groupingFieldIndex = 0;
     tmpAggScenario.description = description;
@@ -820,6 +857,40 @@ public class AggregationCache
     }
   }
 
+ /**
+  * Set up the arrays used in the aggregation from the configuration: the
+  * scenarios by index, the scenario indexes for each key and the 0 based
+  * grouping field offsets.
+  */
+  private void compileScenarios()
+  {
+    int idx = 0;
+
+    scenarioArray = new AggScenario[scenarioList.size()];
+    for (AggScenario tmpAggScenario : scenarioList.values())
+    {
+      tmpAggScenario.scenarioIndex = idx;
+      tmpAggScenario.groupingOffsets = new int[tmpAggScenario.groupingFieldIndex];
+      for (int j = 0 ; j < tmpAggScenario.groupingFieldIndex ; j++)
+      {
+        tmpAggScenario.groupingOffsets[j] = tmpAggScenario.groupingFieldList.get(j) - 1;
+      }
+      scenarioArray[idx++] = tmpAggScenario;
+    }
+
+    keyScenarios = new HashMap<>(keyList.size() * 2);
+    for (String keyValue : keyList.keySet())
+    {
+      ArrayList<String> scenarioMap = keyList.get(keyValue).scenarioMap;
+      int[] scenarioIndexes = new int[scenarioMap.size()];
+      for (int k = 0 ; k < scenarioMap.size() ; k++)
+      {
+        scenarioIndexes[k] = scenarioList.get(scenarioMap.get(k)).scenarioIndex;
+      }
+      keyScenarios.put(keyValue, scenarioIndexes);
+    }
+  }
+
   // -----------------------------------------------------------------------------
   // ---------------- Start of user interface level functions --------------------
   // -----------------------------------------------------------------------------
@@ -835,134 +906,184 @@ public class AggregationCache
   public void aggregate(String[] fieldList, ArrayList<String> keysToAggregate, int transactionNumber)
     throws ProcessingException
   {
-    AggScenarioList tmpAggScenarioList;
+    ThreadResults   tmpThreadResults = getThreadResults(transactionNumber);
     AggScenario     tmpAggScenario;
-    AggResult       tmpAggResult;
-    AggResultList   tmpAggResultList;
-    int         	i;
-    int         	j;
-    String      	tmpKey;
-    int         	k;
-    String      	tmpScenarioKey;
-    double      	currentValue = 0;
-
-    // Find the aggregations to do for the key list
-    for ( i = 0 ; i < keysToAggregate.size() ; i++)
+    AggregationTable tmpTable;
+    int[]           tmpScenarioIndexes;
+    int             entry;
+    double          currentValue = 0;
+
+    synchronized (tmpThreadResults)
     {
-      if (keyList.containsKey(keysToAggregate.get(i)))
+      // a new record: forget the values parsed for the last one
+      tmpThreadResults.stamp++;
+      if (tmpThreadResults.parsedStamps.length < fieldList.length)
+      {
+        tmpThreadResults.parsedValues = new double[fieldList.length];
+        tmpThreadResults.parsedStamps = new int[fieldList.length];
+      }
+
+      // Find the aggregations to do for the key list
+      for (int i = 0 ; i < keysToAggregate.size() ; i++)
       {
-        // Get the scenario list
-        tmpAggScenarioList = keyList.get(keysToAggregate.get(i));
+        tmpScenarioIndexes = keyScenarios.get(keysToAggregate.get(i));
 
-        for ( k = 0 ; k < tmpAggScenarioList.scenarioMap.size() ; k++ )
+        if (tmpScenarioIndexes == null)
         {
-          tmpScenarioKey = tmpAggScenarioList.scenarioMap.get(k);
+          String ErrorString = "Aggregation cache does not contain key <" + keysToAggregate.get(i) +">";
+          OpenRate.getOpenRateFrameworkLog().error(ErrorString);
+          throw new ProcessingException (ErrorString,getSymbolicName());
+        }
 
-          tmpAggScenario = scenarioList.get(tmpScenarioKey);
+        for (int scenarioIndex : tmpScenarioIndexes)
+        {
+          tmpAggScenario = scenarioArray[scenarioIndex];
 
-          // Build the key
-          tmpKey = "";
-          for ( j = 0 ; j < tmpAggScenario.groupingFieldIndex ; j++)
+          tmpTable = tmpThreadResults.tables[scenarioIndex];
+          if (tmpTable == null)
           {
-            tmpKey += fieldList[tmpAggScenario.groupingFieldList.get(j)-1];
+            tmpTable = new AggregationTable();
+            tmpThreadResults.tables[scenarioIndex] = tmpTable;
           }
 
-          // Retrieve the object, or create it
-          if (tmpAggScenario.resultCache.containsKey(tmpKey))
-          {
-            // get the already created scenario object
-            tmpAggResultList = tmpAggScenario.resultCache.get(tmpKey);
-
-            // get the information for the transaction
-            tmpAggResult = tmpAggResultList.currentTransactionResults.get(transactionNumber);
-
-            // if does not exist, create it
-            if (tmpAggResult == null)
-            {
-              tmpAggResult = new AggResult();
-              tmpAggResultList.currentTransactionResults.put(transactionNumber, tmpAggResult);
-            }
-          }
-          else
-          {
-            // Create the results object
-            tmpAggResultList = new AggResultList();
-            tmpAggResultList.currentTransactionResults = new HashMap<>();
-            tmpAggResultList.AccumulatedResult = new AggResult();
-            tmpAggScenario.resultCache.put(tmpKey,tmpAggResultList);
-
-            // Add the aggregation result for the transaction
-            tmpAggResult = new AggResult();
-            tmpAggResultList.currentTransactionResults.put(transactionNumber, tmpAggResult);
-
-            // Set up the agg field structure
-            tmpAggResultList.AggFields = new ArrayList<>();
-
-            // Add the information that we will need for outputting
-            for ( j = 0 ; j < tmpAggScenario.groupingFieldIndex ; j++)
-            {
-              tmpAggResultList.AggFields.add(fieldList[tmpAggScenario.groupingFieldList.get(j)-1]);
-            }
-          }
-
-          // Now perform the aggregation - we always count
-          try
-          {
-            tmpAggResult.count++;
-          }
-          catch (NullPointerException npe)
-          {
-            String ErrorString = "Error accessing the aggregation result cache for scenario <" + tmpAggScenario + "> and transaction <" + transactionNumber + ">";
-            OpenRate.getOpenRateFrameworkLog().error(ErrorString);
-            throw new ProcessingException (ErrorString,getSymbolicName());
-          }
+          // Find the group, and count the record - we always count
+          entry = tmpTable.getEntry(fieldList, tmpAggScenario.groupingOffsets);
+          tmpTable.count(entry);
 
           if (tmpAggScenario.operation > 1)
           {
-            // Parse the input value and handle any errors
-            try
+            // Parse the input value once per record and handle any errors. If
+            // it is not numeric we use the last value we had.
+            int inpOffset = tmpAggScenario.inpField - 1;
+            if (tmpThreadResults.parsedStamps[inpOffset] == tmpThreadResults.stamp)
             {
-              currentValue = Double.parseDouble(fieldList[tmpAggScenario.inpField-1]);
+              currentValue = tmpThreadResults.parsedValues[inpOffset];
             }
-            catch (NumberFormatException nfe)
+            else
             {
-              // log the error
-              OpenRate.getOpenRateFrameworkLog().error("Error converting non numeric value <" +
-                fieldList[tmpAggScenario.inpField-1] + "> in scenario <" +
-                keysToAggregate.get(i) + " in module <" + getSymbolicName() +">");
+              try
+              {
+                currentValue = Double.parseDouble(fieldList[inpOffset]);
+                tmpThreadResults.parsedValues[inpOffset] = currentValue;
+                tmpThreadResults.parsedStamps[inpOffset] = tmpThreadResults.stamp;
+              }
+              catch (NumberFormatException | NullPointerException nfe)
+              {
+                // log the error
+                OpenRate.getOpenRateFrameworkLog().error("Error converting non numeric value <" +
+                  fieldList[inpOffset] + "> in scenario <" +
+                  keysToAggregate.get(i) + " in module <" + getSymbolicName() +">");
+              }
             }
 
             if (tmpAggScenario.operation == 2)
             {
               //perform the summing
-              tmpAggResult.sum += currentValue;
+              tmpTable.sum(entry, currentValue);
             }
             else if (tmpAggScenario.operation == 3)
             {
               //perform the max
-              if (currentValue > tmpAggResult.max)
-              {
-                tmpAggResult.max = currentValue;
-              }
+              tmpTable.max(entry, currentValue);
             }
             else if (tmpAggScenario.operation == 4)
             {
               //perform the min
-              if (currentValue < tmpAggResult.min)
-              {
-                tmpAggResult.min = currentValue;
-              }
+              tmpTable.min(entry, currentValue);
             }
           }
         }
       }
-      else
+    }
+  }
+
+ /**
+  * Get the partial results of the current thread for a transaction, creating
+  * them if this is the first record of the transaction in this thread.
+  *
+  * @param transactionNumber The transaction we are aggregating for
+  * @return The partial results
+  */
+  private ThreadResults getThreadResults(int transactionNumber)
+  {
+    ThreadResults tmpThreadResults = currentThreadResults.get();
+
+    if (tmpThreadResults != null &&
+        tmpThreadResults.transactionNumber == transactionNumber &&
+        tmpThreadResults.closed == false)
+    {
+      return tmpThreadResults;
+    }
+
+    TransactionResults tmpTransResults = transactionResults.get(transactionNumber);
+    if (tmpTransResults == null)
+    {
+      TransactionResults newTransResults = new TransactionResults();
+      tmpTransResults = transactionResults.putIfAbsent(transactionNumber, newTransResults);
+      if (tmpTransResults == null)
       {
-        String ErrorString = "Aggregation cache does not contain key <" + keysToAggregate.get(i) +">";
-        OpenRate.getOpenRateFrameworkLog().error(ErrorString);
-        throw new ProcessingException (ErrorString,getSymbolicName());
+        tmpTransResults = newTransResults;
       }
     }
+
+    tmpThreadResults = new ThreadResults(transactionNumber, scenarioArray.length);
+    tmpTransResults.threadResults.add(tmpThreadResults);
+    currentThreadResults.set(tmpThreadResults);
+
+    return tmpThreadResults;
+  }
+
+ /**
+  * Format the result of a group for output.
+  *
+  * @param operation The operation of the scenario
+  * @param table The results of the scenario
+  * @param entry The entry of the group, or -1 if the scenario has no result for the group
+  * @return The result value
+  */
+  private static String formatResult(int operation, AggregationTable table, int entry)
+  {
+    switch (operation)
+    {
+      // count
+      case 1:
+        return Long.toString(entry < 0 ? 0 : table.getCount(entry));
+
+      // sum
+      case 2:
+        return Double.toString(entry < 0 ? 0 : table.getSum(entry));
+
+      // max
+      case 3:
+        return Double.toString(entry < 0 ? 0 : table.getMax(entry));
+
+      // minimum
+      case 4:
+        return Double.toString(entry < 0 ? 0 : table.getMin(entry));
+
+      default:
+        return "";
+    }
+  }
+
+ /**
+  * Format the start of a result line: the scenario and the grouping values.
+  *
+  * @param scenarioName The scenario
+  * @param group The grouping values
+  * @return The start of the line
+  */
+  private static StringBuilder formatGroup(String scenarioName, String[] group)
+  {
+    StringBuilder tmpLine = new StringBuilder(64);
+
+    tmpLine.append(scenarioName).append(';');
+    for (String value : group)
+    {
+      tmpLine.append(value).append(';');
+    }
+
+    return tmpLine;
   }
 
  /**
@@ -971,81 +1092,29 @@ public class AggregationCache
   *
   * @return A collection of the aggregation results
   */
-  public ArrayList<String> getResults()
+  public synchronized ArrayList<String> getResults()
   {
-    Set<String>      scenarioKeySet;
-    Iterator<String> scenarioKeySetIterator;
-    Set<String>  		 resultKeySet;
-    Iterator<String> resKeySetIterator;
-    AggScenario 		 tmpAggScenario;
-    AggResultList    tmpAggResultList;
-    AggResult   		 tmpAggResult;
-    String      		 tmpLine;
-    int         		 i;
-    String      		 tmpScenario;
-    String 				   resultIterator;
+    AggScenario      tmpAggScenario;
+    AggregationTable tmpTable;
+    StringBuilder    tmpLine;
 
     ArrayList<String>   results = new ArrayList<>();
 
-    // get all of the scenarios
-    scenarioKeySet = scenarioList.keySet();
-    scenarioKeySetIterator = scenarioKeySet.iterator();
-
     // for each of the scenarios
-    while (scenarioKeySetIterator.hasNext())
+    for (String tmpScenario : scenarioList.keySet())
     {
-      tmpScenario = scenarioKeySetIterator.next();
       tmpAggScenario = scenarioList.get(tmpScenario);
+      tmpTable = tmpAggScenario.results;
 
       // dump all of the information
-      resultKeySet = tmpAggScenario.resultCache.keySet();
-      resKeySetIterator = resultKeySet.iterator();
-
-      while (resKeySetIterator.hasNext())
+      for (int entry = 0 ; entry < tmpTable.size() ; entry++)
       {
-        resultIterator = resKeySetIterator.next();
-        tmpAggResultList = tmpAggScenario.resultCache.get(resultIterator);
-        tmpAggResult = tmpAggResultList.AccumulatedResult;
-
-        tmpLine = tmpScenario + ";";
-        for (i = 0 ; i < tmpAggResultList.AggFields.size() ; i++)
-        {
-          tmpLine = tmpLine + tmpAggResultList.AggFields.get(i) + ";";
-        }
+        tmpLine = formatGroup(tmpScenario, tmpTable.getGroup(entry));
 
         // Output the results
-        switch (tmpAggScenario.operation)
-        {
-          // count
-          case 1:
-          {
-            tmpLine = tmpLine + tmpAggResult.count + ";";
-          }
-          break;
-
-          // sum
-          case 2:
-          {
-            tmpLine = tmpLine + tmpAggResult.sum + ";";
-          }
-          break;
-
-          // max
-          case 3:
-          {
-            tmpLine = tmpLine + tmpAggResult.max + ";";
-          }
-          break;
+        tmpLine.append(formatResult(tmpAggScenario.operation, tmpTable, entry)).append(';');
 
-          // minimum
-          case 4:
-          {
-            tmpLine = tmpLine + tmpAggResult.min + ";";
-          }
-          break;
-        }
-
-        results.add(tmpLine);
+        results.add(tmpLine.toString());
       }
     }
 
@@ -1063,24 +1132,14 @@ public class AggregationCache
   *
   * @param baseName - the base name of the transaction for which we are writing
   */
-  public void writeResults(String baseName)
+  public synchronized void writeResults(String baseName)
   {
-    Set<String>         scenarioKeySet;
-    Iterator<String>    scenarioKeySetIterator;
-    Set<String>         resultKeySet;
-    Iterator<String>    resKeySetIterator;
     AggScenario 		tmpAggScenario;
     AggScenario 		tmpMergedScenario;
-    AggResult   		tmpAggResult;
-    AggResult   		tmpMergedResult;
-    String      		tmpLine;
-    int         		i;
-    String      		tmpScenario;
+    AggregationTable  tmpTable;
+    StringBuilder 		tmpLine;
     File        		tmpFile;
     BufferedWriter 		writer;
-    String      		resultIterator;
-    AggResultList 		tmpAggResultList;
-    AggResultList 		tmpMergedResultList;
     ArrayList<MergedAggregation> ResultCache;
     MergedAggregation 	tmpMergedAggregation;
     MergeString 		tmpMergeString;
@@ -1090,22 +1149,17 @@ public class AggregationCache
     // Create the output cache
     ResultCache = new ArrayList<>();
 
-    // get all of the scenarios
-    scenarioKeySet = scenarioList.keySet();
-    scenarioKeySetIterator = scenarioKeySet.iterator();
-
     // for each of the scenarios
-    while (scenarioKeySetIterator.hasNext())
+    for (String tmpScenario : scenarioList.keySet())
     {
-      tmpScenario = scenarioKeySetIterator.next();
       tmpAggScenario = scenarioList.get(tmpScenario);
+      tmpTable = tmpAggScenario.results;
 
       // Merging works like this:
       // If this scenario has not been delegated to another scenario, we write the
       // results here. Otherwise, we get the merge string and follow it.
-      if (MergeStrings.containsKey(tmpScenario))
+      if (MergeStrings.containsKey(tmpScenario) || tmpAggScenario.merged == false)
       {
-        // there is a string defined for this scenario - we should follow it
         tmpMergedAggregation = new MergedAggregation();
         tmpMergedAggregation.Scenario = tmpScenario;
         tmpMergedAggregation.FileName = AggregationResultPath +
@@ -1114,165 +1168,34 @@ public class AggregationCache
         tmpMergedAggregation.ResultList = new ArrayList<>();
         ResultCache.add(tmpMergedAggregation);
 
-        // We use the results keys from the main scenario to merge
-        resultKeySet = tmpAggScenario.resultCache.keySet();
-        resKeySetIterator = resultKeySet.iterator();
+        // there may be a string defined for this scenario - we should follow it
+        tmpMergeString = MergeStrings.get(tmpScenario);
 
-        while (resKeySetIterator.hasNext())
+        // We use the results keys from the main scenario to merge
+        for (int entry = 0 ; entry < tmpTable.size() ; entry++)
         {
-          resultIterator = resKeySetIterator.next();
-          tmpAggResultList = tmpAggScenario.resultCache.get(resultIterator);
-          tmpAggResult = tmpAggResultList.AccumulatedResult;
-
-          tmpLine = tmpScenario + ";";
-          for (i = 0 ; i < tmpAggResultList.AggFields.size() ; i++)
-          {
-            tmpLine = tmpLine + tmpAggResultList.AggFields.get(i) + ";";
-          }
+          String[] group = tmpTable.getGroup(entry);
+          tmpLine = formatGroup(tmpScenario, group);
 
           // Output the results
-          switch (tmpAggScenario.operation)
-          {
-            // count
-            case 1:
-            {
-              tmpLine = tmpLine + tmpAggResult.count + ";";
-            }
-            break;
-
-            // sum
-            case 2:
-            {
-              tmpLine = tmpLine + tmpAggResult.sum + ";";
-            }
-            break;
-
-            // max
-            case 3:
-            {
-              tmpLine = tmpLine + tmpAggResult.max + ";";
-            }
-            break;
-
-            // minimum
-            case 4:
-            {
-              tmpLine = tmpLine + tmpAggResult.min + ";";
-            }
-            break;
-          }
+          tmpLine.append(formatResult(tmpAggScenario.operation, tmpTable, entry)).append(';');
 
           // Now get the rest of the results from the merge string
-          tmpMergeString = MergeStrings.get(tmpScenario);
-          for (idx = 1 ; idx < tmpMergeString.MergeOrder.size() ; idx++)
+          if (tmpMergeString != null)
           {
-            // Get the referenced scenario
-            tmpMergedScenario = tmpMergeString.MergeOrder.get(idx);
-            tmpMergedResultList = tmpMergedScenario.resultCache.get(resultIterator);
-            tmpMergedResult = tmpMergedResultList.AccumulatedResult;
-
-            // Output the results
-            switch (tmpMergedScenario.operation)
+            for (idx = 1 ; idx < tmpMergeString.MergeOrder.size() ; idx++)
             {
-              // count
-              case 1:
-              {
-                tmpLine = tmpLine + tmpMergedResult.count + ";";
-              }
-              break;
+              // Get the referenced scenario
+              tmpMergedScenario = tmpMergeString.MergeOrder.get(idx);
+              int mergedEntry = tmpMergedScenario.results.findEntry(group);
 
-              // sum
-              case 2:
-              {
-                tmpLine = tmpLine + tmpMergedResult.sum + ";";
-              }
-              break;
-
-              // max
-              case 3:
-              {
-                tmpLine = tmpLine + tmpMergedResult.max + ";";
-              }
-              break;
-
-              // min
-              case 4:
-              {
-                tmpLine = tmpLine + tmpMergedResult.min + ";";
-              }
-              break;
+              // Output the results
+              tmpLine.append(formatResult(tmpMergedScenario.operation, tmpMergedScenario.results, mergedEntry)).append(';');
             }
           }
 
           // Add the result to the list
-          tmpMergedAggregation.ResultList.add(tmpLine);
-        }
-      }
-      else
-      {
-        // There is no merge string defined for this scenario so we use the
-        // results keys from the main scenario to merge, but only if it has not
-        // been delegated
-        if (tmpAggScenario.merged == false)
-        {
-          tmpMergedAggregation = new MergedAggregation();
-          tmpMergedAggregation.Scenario = tmpScenario;
-          tmpMergedAggregation.FileName = AggregationResultPath +
-                                          System.getProperty("file.separator") +
-                                          baseName + tmpAggScenario.fileName;
-          tmpMergedAggregation.ResultList = new ArrayList<>();
-          ResultCache.add(tmpMergedAggregation);
-
-          resultKeySet = tmpAggScenario.resultCache.keySet();
-          resKeySetIterator = resultKeySet.iterator();
-
-          while (resKeySetIterator.hasNext())
-          {
-            resultIterator = resKeySetIterator.next();
-            tmpAggResultList = tmpAggScenario.resultCache.get(resultIterator);
-            tmpAggResult = tmpAggResultList.AccumulatedResult;
-
-            tmpLine = tmpScenario + ";";
-            for (i = 0 ; i < tmpAggResultList.AggFields.size() ; i++)
-            {
-              tmpLine = tmpLine + tmpAggResultList.AggFields.get(i) + ";";
-            }
-
-            // Output the results
-            switch (tmpAggScenario.operation)
-            {
-              // count
-              case 1:
-              {
-                tmpLine = tmpLine + tmpAggResult.count + ";";
-              }
-              break;
-
-              // sum
-              case 2:
-              {
-                tmpLine = tmpLine + tmpAggResult.sum + ";";
-              }
-              break;
-
-              // max
-              case 3:
-              {
-                tmpLine = tmpLine + tmpAggResult.max + ";";
-              }
-              break;
-
-              // min
-              case 4:
-              {
-                tmpLine = tmpLine + tmpAggResult.min + ";";
-              }
-              break;
-            }
-
-            // Add the result to the list
-            tmpMergedAggregation.ResultList.add(tmpLine);
-          }
+          tmpMergedAggregation.ResultList.add(tmpLine.toString());
         }
       }
     }
@@ -1292,8 +1215,7 @@ public class AggregationCache
 
         for (idx = 0 ; idx < tmpMergedAggregation.ResultList.size() ; idx++)
         {
-          tmpLine = tmpMergedAggregation.ResultList.get(idx);
-          writer.write(tmpLine);
+          writer.write(tmpMergedAggregation.ResultList.get(idx));
           writer.newLine();
         }
 
@@ -1313,24 +1235,12 @@ public class AggregationCache
   * This purges the results from memory. This works on the aggregated result
   * cache, not the transaction object cache
   */
-  public void purgeResults()
+  public synchronized void purgeResults()
   {
-    AggScenario 	tmpAggScenario;
-    String      	tmpScenario;
-    Set<String>     scenarioKeySet;
-    Iterator<String>scenarioKeySetIterator;
-
-    // get all of the scenarios
-    scenarioKeySet = scenarioList.keySet();
-    scenarioKeySetIterator = scenarioKeySet.iterator();
-
     // for each of the scenarios
-    while (scenarioKeySetIterator.hasNext())
+    for (AggScenario tmpAggScenario : scenarioList.values())
     {
-      tmpScenario = scenarioKeySetIterator.next();
-      tmpAggScenario = scenarioList.get(tmpScenario);
-
-      tmpAggScenario.resultCache.clear();
+      tmpAggScenario.results.clear();
     }
   }
 
@@ -1339,25 +1249,14 @@ public class AggregationCache
   *
   * @return The number of results cached at present
   */
-  public int countResults()
+  public synchronized int countResults()
   {
-    AggScenario tmpAggScenario;
-    String      tmpScenario;
-    Set<String>         ScenarioKeySet;
-    Iterator<String>    ScenarioKeySetIterator;
     int         ResultObjectCount = 0;
 
-    // get all of the scenarios
-    ScenarioKeySet = scenarioList.keySet();
-    ScenarioKeySetIterator = ScenarioKeySet.iterator();
-
     // for each of the scenarios
-    while (ScenarioKeySetIterator.hasNext())
+    for (AggScenario tmpAggScenario : scenarioList.values())
     {
-      tmpScenario = ScenarioKeySetIterator.next();
-      tmpAggScenario = scenarioList.get(tmpScenario);
-
-      ResultObjectCount += tmpAggScenario.resultCache.size();
+      ResultObjectCount += tmpAggScenario.results.size();
     }
 
     return ResultObjectCount;
@@ -1369,66 +1268,38 @@ public class AggregationCache
 
  /**
   * This function commits the information from the transaction object into the
-  * main cache, and clears down the transaction object
+  * main cache, and clears down the transaction object. The partial results of
+  * all of the threads that worked on the transaction are merged.
   *
   * @param transactionNumber
   */
   public void commitTransaction(int transactionNumber)
   {
-    Set<String>         scenarioKeySet;
-    Iterator<String>    scenarioKeySetIterator;
-    Set<String>         resultKeySet;
-    Iterator<String>    resKeySetIterator;
-    AggScenario 		tmpAggScenario;
-    AggResult   		tmpAggResult;
-    AggResult   		mergedAggResult;
-    String      		tmpScenario;
-    String      		resultIterator;
-    AggResultList 		tmpAggResultList;
-
-    // get all of the scenarios
-    scenarioKeySet = scenarioList.keySet();
-    scenarioKeySetIterator = scenarioKeySet.iterator();
+    TransactionResults tmpTransResults = transactionResults.remove(transactionNumber);
 
-    // for each of the scenarios
-    while (scenarioKeySetIterator.hasNext())
+    if (tmpTransResults == null)
     {
-      tmpScenario = scenarioKeySetIterator.next();
-      tmpAggScenario = scenarioList.get(tmpScenario);
-
-      // dump all of the information
-      resultKeySet = tmpAggScenario.resultCache.keySet();
-      resKeySetIterator = resultKeySet.iterator();
+      // nothing was aggregated in this transaction
+      return;
+    }
 
-      while (resKeySetIterator.hasNext())
+    synchronized (this)
+    {
+      for (ThreadResults tmpThreadResults : tmpTransResults.threadResults)
       {
-        resultIterator = resKeySetIterator.next();
-        tmpAggResultList = tmpAggScenario.resultCache.get(resultIterator);
-
-        // See if we have information for this transaction
-        if (tmpAggResultList.currentTransactionResults.containsKey(transactionNumber))
+        synchronized (tmpThreadResults)
         {
-          // yes, so merge the information
-          tmpAggResult = tmpAggResultList.currentTransactionResults.get(transactionNumber);
-          mergedAggResult = tmpAggResultList.AccumulatedResult;
+          tmpThreadResults.closed = true;
 
           // do the merge of the current results into the accumulated object
-          mergedAggResult.count += tmpAggResult.count;
-          mergedAggResult.sum += tmpAggResult.sum;
-
-          if (tmpAggResult.max > mergedAggResult.max)
-          {
-            mergedAggResult.max = tmpAggResult.max;
-          }
-
-          if (tmpAggResult.min < mergedAggResult.min)
+          for (int scenarioIndex = 0 ; scenarioIndex < tmpThreadResults.tables.length ; scenarioIndex++)
           {
-            mergedAggResult.min = tmpAggResult.min;
+            if (tmpThreadResults.tables[scenarioIndex] != null)
+            {
+              scenarioArray[scenarioIndex].results.merge(tmpThreadResults.tables[scenarioIndex]);
+            }
           }
         }
-
-        // remove the transaction information
-        tmpAggResultList.currentTransactionResults.remove(transactionNumber);
       }
     }
   }
@@ -1441,39 +1312,15 @@ public class AggregationCache
   */
   public void rollbackTransaction(int transactionNumber)
   {
-    Set<String>         scenarioKeySet;
-    Iterator<String>    scenarioKeySetIterator;
-    Set<String>         resultKeySet;
-    Iterator<String>    resKeySetIterator;
-    AggScenario 		tmpAggScenario;
-    String      		tmpScenario;
-    String      		resultIterator;
-    AggResultList 		tmpAggResultList;
-
-    // get all of the scenarios
-    scenarioKeySet = scenarioList.keySet();
-    scenarioKeySetIterator = scenarioKeySet.iterator();
+    TransactionResults tmpTransResults = transactionResults.remove(transactionNumber);
 
-    // for each of the scenarios
-    while (scenarioKeySetIterator.hasNext())
+    if (tmpTransResults != null)
     {
-      tmpScenario = scenarioKeySetIterator.next();
-      tmpAggScenario = scenarioList.get(tmpScenario);
-
-      // dump all of the information
-      resultKeySet = tmpAggScenario.resultCache.keySet();
-      resKeySetIterator = resultKeySet.iterator();
-
-      while (resKeySetIterator.hasNext())
+      for (ThreadResults tmpThreadResults : tmpTransResults.threadResults)
       {
-        resultIterator = resKeySetIterator.next();
-        tmpAggResultList = tmpAggScenario.resultCache.get(resultIterator);
-
-        // See if we have information for this transaction
-        if (tmpAggResultList.currentTransactionResults.containsKey(transactionNumber))
+        synchronized (tmpThreadResults)
         {
-          // remove the transaction information
-          tmpAggResultList.currentTransactionResults.remove(transactionNumber);
+          tmpThreadResults.closed = true;
         }
       }
     }
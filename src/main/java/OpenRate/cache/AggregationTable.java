@@ -0,0 +1,456 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.cache;
+
+import java.util.Arrays;
+
+/**
+ * The results of one aggregation scenario, grouped by the values of the
+ * grouping fields.
+ *
+ * The grouping values are not joined into a key String: the hash is worked out
+ * from the fields of the record in place, and the fields are compared one by
+ * one, so that finding an existing group does not allocate. The results are
+ * held in primitive arrays, one entry per group in the order the groups were
+ * first seen, with an open addressing index over the entries.
+ *
+ * This is not thread safe. The aggregation cache gives each thread its own
+ * tables for each transaction and merges them on commit.
+ */
+final class AggregationTable
+{
+  // the initial number of entries
+  private static final int INITIAL_ENTRIES = 16;
+
+  // the grouping values of each entry
+  private String[][] groups;
+
+  // the hash of each entry
+  private int[] hashes;
+
+  // the results of each entry
+  private long[] counts;
+  private double[] sums;
+  private double[] maxs;
+  private double[] mins;
+
+  // the number of entries
+  private int size = 0;
+
+  // the index: entry number + 1 for each slot, 0 for an empty slot
+  private int[] index;
+
+ /**
+  * Create an empty table.
+  */
+  AggregationTable()
+  {
+    groups = new String[INITIAL_ENTRIES][];
+    hashes = new int[INITIAL_ENTRIES];
+    counts = new long[INITIAL_ENTRIES];
+    sums = new double[INITIAL_ENTRIES];
+    maxs = new double[INITIAL_ENTRIES];
+    mins = new double[INITIAL_ENTRIES];
+    index = new int[INITIAL_ENTRIES * 2];
+  }
+
+ /**
+  * Get the entry for the grouping values of a record, creating it if this is
+  * the first record of the group.
+  *
+  * @param fieldList The fields of the record
+  * @param groupingOffsets The (0 based) positions of the grouping fields
+  * @return The entry number
+  */
+  int getEntry(String[] fieldList, int[] groupingOffsets)
+  {
+    int hash = 1;
+    for (int offset : groupingOffsets)
+    {
+      String value = fieldList[offset];
+      hash = hash * 31 + (value == null ? 0 : value.hashCode());
+    }
+
+    int mask = index.length - 1;
+    int slot = spread(hash) & mask;
+
+    while (true)
+    {
+      int entry = index[slot] - 1;
+
+      if (entry < 0)
+      {
+        String[] group = new String[groupingOffsets.length];
+        for (int idx = 0; idx < groupingOffsets.length; idx++)
+        {
+          group[idx] = fieldList[groupingOffsets[idx]];
+        }
+        return addEntry(group, hash, slot);
+      }
+
+      if (hashes[entry] == hash && sameGroup(groups[entry], fieldList, groupingOffsets))
+      {
+        return entry;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+  }
+
+ /**
+  * Find the entry for a group.
+  *
+  * @param group The grouping values
+  * @return The entry number, or -1 if there is no such group
+  */
+  int findEntry(String[] group)
+  {
+    int hash = hashOf(group);
+    int mask = index.length - 1;
+    int slot = spread(hash) & mask;
+
+    while (true)
+    {
+      int entry = index[slot] - 1;
+
+      if (entry < 0)
+      {
+        return -1;
+      }
+
+      if (hashes[entry] == hash && sameGroup(groups[entry], group))
+      {
+        return entry;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+  }
+
+ /**
+  * Add the results of another table into this one. The counts and sums are
+  * added, the maximum and minimum are taken.
+  *
+  * @param other The table to merge in
+  */
+  void merge(AggregationTable other)
+  {
+    for (int otherEntry = 0; otherEntry < other.size; otherEntry++)
+    {
+      int entry = getEntry(other.groups[otherEntry], other.hashes[otherEntry]);
+
+      counts[entry] += other.counts[otherEntry];
+      sums[entry] += other.sums[otherEntry];
+
+      if (other.maxs[otherEntry] > maxs[entry])
+      {
+        maxs[entry] = other.maxs[otherEntry];
+      }
+
+      if (other.mins[otherEntry] < mins[entry])
+      {
+        mins[entry] = other.mins[otherEntry];
+      }
+    }
+  }
+
+ /**
+  * Count a record in an entry.
+  *
+  * @param entry The entry number
+  */
+  void count(int entry)
+  {
+    counts[entry]++;
+  }
+
+ /**
+  * Add a value to the sum of an entry.
+  *
+  * @param entry The entry number
+  * @param value The value to add
+  */
+  void sum(int entry, double value)
+  {
+    sums[entry] += value;
+  }
+
+ /**
+  * Take a value into the maximum of an entry. The maximum starts at 0.
+  *
+  * @param entry The entry number
+  * @param value The value
+  */
+  void max(int entry, double value)
+  {
+    if (value > maxs[entry])
+    {
+      maxs[entry] = value;
+    }
+  }
+
+ /**
+  * Take a value into the minimum of an entry. The minimum starts at 0.
+  *
+  * @param entry The entry number
+  * @param value The value
+  */
+  void min(int entry, double value)
+  {
+    if (value < mins[entry])
+    {
+      mins[entry] = value;
+    }
+  }
+
+ /**
+  * @return The number of groups
+  */
+  int size()
+  {
+    return size;
+  }
+
+ /**
+  * @param entry The entry number
+  * @return The grouping values of the entry
+  */
+  String[] getGroup(int entry)
+  {
+    return groups[entry];
+  }
+
+ /**
+  * @param entry The entry number
+  * @return The number of records counted
+  */
+  long getCount(int entry)
+  {
+    return counts[entry];
+  }
+
+ /**
+  * @param entry The entry number
+  * @return The sum of the values
+  */
+  double getSum(int entry)
+  {
+    return sums[entry];
+  }
+
+ /**
+  * @param entry The entry number
+  * @return The maximum of the values, or 0 if all were negative
+  */
+  double getMax(int entry)
+  {
+    return maxs[entry];
+  }
+
+ /**
+  * @param entry The entry number
+  * @return The minimum of the values, or 0 if all were positive
+  */
+  double getMin(int entry)
+  {
+    return mins[entry];
+  }
+
+ /**
+  * Remove all the groups.
+  */
+  void clear()
+  {
+    groups = new String[INITIAL_ENTRIES][];
+    hashes = new int[INITIAL_ENTRIES];
+    counts = new long[INITIAL_ENTRIES];
+    sums = new double[INITIAL_ENTRIES];
+    maxs = new double[INITIAL_ENTRIES];
+    mins = new double[INITIAL_ENTRIES];
+    index = new int[INITIAL_ENTRIES * 2];
+    size = 0;
+  }
+
+  // -----------------------------------------------------------------------------
+  // ------------------------------ Internal functions ---------------------------
+  // -----------------------------------------------------------------------------
+
+ /**
+  * Get the entry for a group and its hash, creating it if needed.
+  */
+  private int getEntry(String[] group, int hash)
+  {
+    int mask = index.length - 1;
+    int slot = spread(hash) & mask;
+
+    while (true)
+    {
+      int entry = index[slot] - 1;
+
+      if (entry < 0)
+      {
+        return addEntry(group, hash, slot);
+      }
+
+      if (hashes[entry] == hash && sameGroup(groups[entry], group))
+      {
+        return entry;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+  }
+
+ /**
+  * Add an entry in the given free slot of the index.
+  */
+  private int addEntry(String[] group, int hash, int slot)
+  {
+    int entry = size;
+
+    if (entry == groups.length)
+    {
+      int newLength = groups.length * 2;
+      groups = Arrays.copyOf(groups, newLength);
+      hashes = Arrays.copyOf(hashes, newLength);
+      counts = Arrays.copyOf(counts, newLength);
+      sums = Arrays.copyOf(sums, newLength);
+      maxs = Arrays.copyOf(maxs, newLength);
+      mins = Arrays.copyOf(mins, newLength);
+    }
+
+    groups[entry] = group;
+    hashes[entry] = hash;
+    index[slot] = entry + 1;
+    size++;
+
+    // keep the index at most half full
+    if (size * 2 > index.length)
+    {
+      rebuildIndex(index.length * 2);
+    }
+
+    return entry;
+  }
+
+ /**
+  * Build a new index of the given size over the entries.
+  */
+  private void rebuildIndex(int length)
+  {
+    int[] newIndex = new int[length];
+    int mask = length - 1;
+
+    for (int entry = 0; entry < size; entry++)
+    {
+      int slot = spread(hashes[entry]) & mask;
+      while (newIndex[slot] != 0)
+      {
+        slot = (slot + 1) & mask;
+      }
+      newIndex[slot] = entry + 1;
+    }
+
+    index = newIndex;
+  }
+
+ /**
+  * Spread the bits of a hash so that the low bits used for the slot depend
+  * on all of them.
+  */
+  private static int spread(int hash)
+  {
+    hash *= 0x9e3779b9;
+    return hash ^ (hash >>> 16);
+  }
+
+ /**
+  * Work out the hash of a group, the same way as for the fields of a record.
+  */
+  private static int hashOf(String[] group)
+  {
+    int hash = 1;
+    for (String value : group)
+    {
+      hash = hash * 31 + (value == null ? 0 : value.hashCode());
+    }
+    return hash;
+  }
+
+ /**
+  * See if the grouping fields of a record are the values of a group.
+  */
+  private static boolean sameGroup(String[] group, String[] fieldList, int[] groupingOffsets)
+  {
+    for (int idx = 0; idx < groupingOffsets.length; idx++)
+    {
+      String value = fieldList[groupingOffsets[idx]];
+      if (value == null ? group[idx] != null : !value.equals(group[idx]))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+ /**
+  * See if two groups have the same values.
+  */
+  private static boolean sameGroup(String[] group, String[] other)
+  {
+    return Arrays.equals(group, other);
+  }
+}
@@ -87,6 +87,11 @@ import java.util.concurrent.ConcurrentHashMap;
  * manage transactions. That means if a transaction fails (very unusual)
  * either the balances will have to be cleaned up, or reloaded from the table.
  *
+ * Balance groups can be used from several threads at once. Each balance group
+ * is mapped to one of a fixed number of lock stripes (property "LockStripes",
+ * default 256), and the counters of the group must be read and updated while
+ * holding the lock returned by getBalanceLock().
+ *
  * The data should be presented in the form:
  *   BalanceGroupId - the identifier of the balance group (integer)
  *   CounterId      - the counter identifier (integer)
@@ -141,6 +146,12 @@ public class BalanceCache extends AbstractCache
    // if we have to save a snapshot even when in DB mode
    private boolean saveSnapshot = false;
 
+  // The default number of lock stripes for the balance groups
+  private static final int DEFAULT_LOCK_STRIPES = 256;
+
+  // The lock stripes for the balance groups, a power of 2 long
+  private Object[] balanceLocks;
+
   // List of Services that this Client supports
   private final static String SERVICE_DUMP_BALGROUP = "DumpBalGroup";
 
@@ -152,6 +163,9 @@ public class BalanceCache extends AbstractCache
     // Initialise the cache hash 
     balanceCache = new ConcurrentHashMap<>(1000);
 
+    // Initialise the locks
+    setLockStripes(DEFAULT_LOCK_STRIPES);
+
     // Initialise variables that we will be using regularly - this is the
     // default that can be overwritten using "setDateFormat"
     conv = new ConversionUtils();
@@ -174,19 +188,9 @@ public class BalanceCache extends AbstractCache
   {
     BalanceGroup tmpBalGrp;
 
-    if (balanceCache.containsKey(BalanceGroupId))
-    {
-      // Add the balance to the existing group
-      tmpBalGrp = balanceCache.get(BalanceGroupId);
-      tmpBalGrp.addCounter(CounterId,RecId,ValidFrom,ValidTo,CurrentBal);
-    }
-    else
-    {
-      // Create a new group
-      tmpBalGrp = new BalanceGroup();
-      balanceCache.put(BalanceGroupId,tmpBalGrp);
-      tmpBalGrp.addCounter(CounterId,RecId,ValidFrom,ValidTo,CurrentBal);
-    }
+    // Get the existing group or create a new one
+    tmpBalGrp = getOrCreateBalanceGroup(BalanceGroupId);
+    tmpBalGrp.addCounter(CounterId,RecId,ValidFrom,ValidTo,CurrentBal);
   }
 
  /**
@@ -205,19 +209,9 @@ public class BalanceCache extends AbstractCache
   {
     BalanceGroup tmpBalGrp;
 
-    if (balanceCache.containsKey(BalanceGroupId))
-    {
-      // Add the balance to the existing group
-      tmpBalGrp = balanceCache.get(BalanceGroupId);
-      return tmpBalGrp.addCounter(CounterId,ValidFrom,ValidTo,CurrentBal);
-    }
-    else
-    {
-      // Create a new group
-      tmpBalGrp = new BalanceGroup();
-      balanceCache.put(BalanceGroupId,tmpBalGrp);
-      return tmpBalGrp.addCounter(CounterId,ValidFrom,ValidTo,CurrentBal);
-    }
+    // Get the existing group or create a new one
+    tmpBalGrp = getOrCreateBalanceGroup(BalanceGroupId);
+    return tmpBalGrp.addCounter(CounterId,ValidFrom,ValidTo,CurrentBal);
   }
 
  /**
@@ -273,18 +267,88 @@ public class BalanceCache extends AbstractCache
   */
   public BalanceGroup addBalanceGroup(long BalanceGroupId)
   {
-    BalanceGroup tmpBalGrp = null;
+    BalanceGroup tmpBalGrp = new BalanceGroup();
+    tmpBalGrp.balanceLock = getBalanceLock(BalanceGroupId);
 
-    if (!balanceCache.containsKey(BalanceGroupId))
+    // Create a new group, unless there is one already
+    if (balanceCache.putIfAbsent(BalanceGroupId,tmpBalGrp) != null)
+    {
+      return null;
+    }
+
+    return tmpBalGrp;
+  }
+
+ /**
+  * Get a balance group, creating it if it does not exist yet. Safe to call
+  * from several threads for the same balance group.
+  *
+  * @param BalanceGroupId The balance group identifier
+  * @return The balance group object
+  */
+  private BalanceGroup getOrCreateBalanceGroup(long BalanceGroupId)
+  {
+    BalanceGroup tmpBalGrp = balanceCache.get(BalanceGroupId);
+
+    if (tmpBalGrp == null)
     {
-      // Create a new group
       tmpBalGrp = new BalanceGroup();
-      balanceCache.put(BalanceGroupId,tmpBalGrp);
+      tmpBalGrp.balanceLock = getBalanceLock(BalanceGroupId);
+
+      BalanceGroup existingBalGrp = balanceCache.putIfAbsent(BalanceGroupId,tmpBalGrp);
+      if (existingBalGrp != null)
+      {
+        tmpBalGrp = existingBalGrp;
+      }
     }
 
     return tmpBalGrp;
   }
 
+ /**
+  * Get the lock for a balance group. The counters of the group must be read
+  * and updated while holding this lock. The lock exists whether the balance
+  * group exists or not, so it can also be used to serialise the creation of
+  * the group. Balance groups share the locks, so no other lock may be taken
+  * while holding it.
+  *
+  * @param BalanceGroupId The balance group identifier
+  * @return The lock object
+  */
+  public Object getBalanceLock(long BalanceGroupId)
+  {
+    long hash = BalanceGroupId * 0x9E3779B97F4A7C15L;
+
+    return balanceLocks[(int) (hash >>> 32) & (balanceLocks.length - 1)];
+  }
+
+ /**
+  * Set the number of lock stripes, rounded up to a power of 2. Only to be
+  * used before the balance groups are used by more than one thread.
+  *
+  * @param stripes The number of stripes
+  */
+  private void setLockStripes(int stripes)
+  {
+    int size = 1;
+    while (size < stripes)
+    {
+      size <<= 1;
+    }
+
+    balanceLocks = new Object[size];
+    for (int i = 0 ; i < size ; i++)
+    {
+      balanceLocks[i] = new Object();
+    }
+
+    // Update any groups already loaded
+    for (Map.Entry<Long, BalanceGroup> entry : balanceCache.entrySet())
+    {
+      entry.getValue().balanceLock = getBalanceLock(entry.getKey());
+    }
+  }
+
  /**
   * Gets a counter from a balance group by counter id and UTC date
   *
@@ -396,6 +460,31 @@ public class BalanceCache extends AbstractCache
       throw new InitializationException(message,getSymbolicName());
     }
 
+    // get the number of lock stripes
+    String tmpLockStripes = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
+                                                       CacheName,
+                                                       "LockStripes",
+                                                       String.valueOf(DEFAULT_LOCK_STRIPES));
+    int lockStripes;
+    try
+    {
+      lockStripes = Integer.parseInt(tmpLockStripes);
+    }
+    catch (NumberFormatException nfe)
+    {
+      lockStripes = 0;
+    }
+
+    if (lockStripes < 1)
+    {
+      message = "LockStripes for cache <" + getSymbolicName() +
+                "> must be a positive integer, found <" + tmpLockStripes + ">";
+      OpenRate.getOpenRateFrameworkLog().error(message);
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    setLockStripes(lockStripes);
+
     // get the date format
     tmpDateFormat = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
                                                        CacheName,
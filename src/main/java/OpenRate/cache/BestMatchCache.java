@@ -59,8 +59,11 @@ import OpenRate.OpenRate;
 import OpenRate.configurationmanager.ClientManager;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
+import OpenRate.lang.CompactDigitTree;
 import OpenRate.lang.DigitTree;
+import OpenRate.lang.IDigitTree;
 import OpenRate.logging.LogUtil;
+import OpenRate.utils.PropertyUtils;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -94,24 +97,38 @@ import java.util.Iterator;
  * This module is intended to be used with the AbstractBestMatch process module,
  * which provides the control for reloading.
  *
+ * The "TreeType" property selects the search tree used for each group:
+ *
+ *     Digit   - (default) the DigitTree, one node per digit
+ *     Compact - the CompactDigitTree, path compressed and array based, which
+ *               uses much less memory on large tables, and also accepts
+ *               prefixes with non-digit characters such as "+" or "#"
+ *
  * @author i.sparkes
  */
 public class BestMatchCache
      extends AbstractSyncLoaderCache
+  implements ICacheShadowReloadable
 {
  /**
-  * This stores all the cacheable data. The DigitTree class is
+  * This stores all the cacheable data. The digit tree classes are
   * a way of storing numeric values for a best match search.
   * The cost of a search is linear with the number of digits
   * stored in the search tree
   */
-  protected HashMap<String, DigitTree> groupCache;
+  protected volatile HashMap<String, IDigitTree> groupCache;
+
+  // If we are to use the compact tree instead of the digit tree
+  private boolean useCompactTree = false;
 
   // List of Services that this Client supports
   private final static String SERVICE_OBJECT_COUNT = "ObjectCount";
   private final static String SERVICE_GROUP_COUNT = "GroupCount";
   private final static String SERVICE_DUMP_MAP = "DumpMap";
 
+  // The configuration item for the tree type
+  private final static String SERVICE_TREE_TYPE = "TreeType";
+
   // This is the null result
   private final ArrayList<String> noResult = new ArrayList<>();
 
@@ -136,6 +153,45 @@ public class BestMatchCache
 // ------------------ Start of inherited Plug In functions ---------------------
 // -----------------------------------------------------------------------------
 
+ /**
+  * loadCache is called automatically on startup of the cache factory, as a
+  * result of implementing the CacheLoader interface. We get the tree type
+  * before the data is loaded.
+  *
+  * @param ResourceName The name of the resource to load for
+  * @param CacheName The name of the cache to load for
+  * @throws InitializationException
+  */
+  @Override
+  public void loadCache(String ResourceName, String CacheName)
+                 throws InitializationException
+  {
+    String tmpValue;
+
+    tmpValue = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
+                                                       CacheName,
+                                                       SERVICE_TREE_TYPE,
+                                                       "Digit");
+
+    if (tmpValue.equalsIgnoreCase("Compact"))
+    {
+      useCompactTree = true;
+    }
+    else if (tmpValue.equalsIgnoreCase("Digit"))
+    {
+      useCompactTree = false;
+    }
+    else
+    {
+      message = "Value provided for property <" + SERVICE_TREE_TYPE +
+                "> must be Digit or Compact. Received value <" + tmpValue + ">";
+      throw new InitializationException(message,CacheName);
+    }
+
+    // Do the loading
+    super.loadCache(ResourceName, CacheName);
+  }
+
  /**
   * Load the data from the defined file
   * @throws InitializationException
@@ -254,6 +310,8 @@ public class BestMatchCache
       }
     }
 
+    trimGroupCache();
+
     OpenRate.getOpenRateFrameworkLog().info(
           "Best Match Data Loading completed. <" + ZonesLoaded +
           "> configuration lines loaded for <" + getSymbolicName() + " > from <"
@@ -365,6 +423,8 @@ public class BestMatchCache
       throw new InitializationException(message,ex,getSymbolicName());
     }
 
+    trimGroupCache();
+
     OpenRate.getOpenRateFrameworkLog().info(
           "Best Match Data Loading completed. <" + ZonesLoaded +
           "> configuration lines loaded for <" + getSymbolicName() + "> from <" +
@@ -442,6 +502,8 @@ public class BestMatchCache
       }
     }
 
+    trimGroupCache();
+
     OpenRate.getOpenRateFrameworkLog().info(
           "Best Match Cache Data Loading completed. " + ZonesLoaded +
           " configuration lines loaded from <" + cacheDataSourceName +
@@ -472,7 +534,7 @@ public class BestMatchCache
     if (!groupCache.containsKey(mapGroup))
     {
       // Create the new Digit Tree
-      DigitTree prefixCache = new DigitTree();
+      IDigitTree prefixCache = newPrefixTree();
 
       groupCache.put(mapGroup, prefixCache);
 
@@ -489,7 +551,7 @@ public class BestMatchCache
     else
     {
       // Otherwise just add it to the existing Digit Tree
-      DigitTree prefixCache = groupCache.get(mapGroup);
+      IDigitTree prefixCache = groupCache.get(mapGroup);
       
       try
       {
@@ -518,7 +580,7 @@ public class BestMatchCache
     String Value;
 
     // Get the service if we know it
-    DigitTree prefixCache = groupCache.get(mapGroup);
+    IDigitTree prefixCache = groupCache.get(mapGroup);
 
     if (prefixCache != null)
     {
@@ -545,7 +607,7 @@ public class BestMatchCache
   public ArrayList<String> getMatchWithChildData(String mapGroup, String prefix)
   {
     // Get the service if we know it
-    DigitTree prefixCache = groupCache.get(mapGroup);
+    IDigitTree prefixCache = groupCache.get(mapGroup);
 
     if (prefixCache != null)
     {
@@ -558,6 +620,49 @@ public class BestMatchCache
     }
   }
 
+ /**
+  * Create the search tree for a new group, according to the configured tree
+  * type.
+  *
+  * @return The new, empty tree
+  */
+  protected IDigitTree newPrefixTree()
+  {
+    if (useCompactTree)
+    {
+      return new CompactDigitTree();
+    }
+    else
+    {
+      return new DigitTree();
+    }
+  }
+
+ /**
+  * Release the spare storage of the compact trees once loading is complete.
+  */
+  private void trimGroupCache()
+  {
+    for (IDigitTree prefixCache : groupCache.values())
+    {
+      if (prefixCache instanceof CompactDigitTree)
+      {
+        ((CompactDigitTree) prefixCache).trimToSize();
+      }
+    }
+  }
+
+ /**
+  * Take over the groups of a shadow copy of this cache.
+  *
+  * @param shadowCache The loaded shadow copy
+  */
+  @Override
+  public void publishShadowCache(AbstractSyncLoaderCache shadowCache)
+  {
+    groupCache = ((BestMatchCache) shadowCache).groupCache;
+  }
+
  /**
   * Clear down the cache contents in the case that we are ordered to reload
   */
@@ -636,7 +741,7 @@ public class BestMatchCache
   public String processControlEvent(String Command, boolean Init,
                                     String Parameter)
   {
-    DigitTree   tmpPrefixCache;
+    IDigitTree  tmpPrefixCache;
     Collection<String>  tmpGroups;
     Iterator<String>    GroupIter;
     String      tmpGroupName;
@@ -62,15 +62,25 @@ import OpenRate.configurationmanager.IEventInterface;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
 import OpenRate.exception.ProcessingException;
+import OpenRate.lang.FingerprintKeyStore;
 import OpenRate.logging.LogUtil;
 import OpenRate.utils.PropertyUtils;
 
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
 /**
@@ -88,6 +98,9 @@ public class DuplicateCheckCache
 	
   // Regular expression pattern for duplicate check 
   private static final Pattern duplicateCheckPattern = Pattern.compile("(?s).*uplicate.*");  	
+
+  // SQL state for a unique constraint violation
+  private static final String SQL_STATE_UNIQUE_VIOLATION = "23505";
 	
   // the only supported one is Database
   private String DataSourceType = null;
@@ -100,6 +113,12 @@ public class DuplicateCheckCache
   */
   protected ConcurrentHashMap<String, Long> recordList;
 
+ /**
+  * This stores the fingerprints of the Record IDs instead of the IDs, when the
+  * compact key store is configured. recordList is not used in this case.
+  */
+  protected FingerprintKeyStore fingerprintStore = null;
+
   /**
    * This stores all the Record IDs for CDRs which have been processed so far in
    * the current transaction
@@ -111,6 +130,12 @@ public class DuplicateCheckCache
   */
   protected ConcurrentHashMap<Integer, Connection> insertConnection;
 
+ /**
+  * This stores the insert statement per transaction for speculative inserts,
+  * so that it is prepared once per transaction and not once per record
+  */
+  protected ConcurrentHashMap<Integer, PreparedStatement> insertStatement;
+
   // Purge the internal memory
   private final static String SERVICE_PURGE   = "Purge";
 
@@ -126,6 +151,18 @@ public class DuplicateCheckCache
   // Log every n records loaded
   private final static String SERVICE_LOAD_LOG_STEP = "LoadLogStep";
 
+  // The number of keys sent to the DB in each JDBC batch
+  private final static String SERVICE_COMMIT_BATCH_SIZE = "CommitBatchSize";
+
+  // The number of parallel writers used to insert the keys of a transaction
+  private final static String SERVICE_COMMIT_THREADS = "CommitThreads";
+
+  // The in-memory key store: "Map" for the key map, "Fingerprint" for the compact store
+  private final static String SERVICE_KEY_STORE = "KeyStore";
+
+  // Whether the compact key store has Bloom filters in front of its segments
+  private final static String SERVICE_BLOOM_FILTER = "BloomFilter";
+
   // Active service 
   private final static String SERVICE_ACTIVE  = CommonConfig.ACTIVE;
   
@@ -133,6 +170,10 @@ public class DuplicateCheckCache
   private static final int    DEFAULT_BUFFER_LIMIT_DAYS = 90;
   private static final int    DEFAULT_STORE_LIMIT_DAYS = 180;
 
+  // default values for the commit batching
+  private static final int    DEFAULT_COMMIT_BATCH_SIZE = 1000;
+  private static final int    DEFAULT_COMMIT_THREADS = 1;
+
   // this is used to age old duplicate data in memory
   private long bufferLimit;
   private long storeLimit;
@@ -185,6 +226,19 @@ public class DuplicateCheckCache
   */
   protected long loadingLogNotificationStep = 10000;
 
+ /**
+  * The number of keys we insert in each JDBC batch
+  */
+  protected int commitBatchSize = DEFAULT_COMMIT_BATCH_SIZE;
+
+ /**
+  * The number of parallel writers we use on commit
+  */
+  protected int commitThreads = DEFAULT_COMMIT_THREADS;
+
+  // the writers for the parallel commit, null if we commit in the calling thread
+  private ExecutorService commitExecutor = null;
+
   /**
    * The duplicate check cache is used to detect and identify duplicate records
    * based on a unique record key
@@ -199,6 +253,9 @@ public class DuplicateCheckCache
 
     // initialise the inser connection array
     insertConnection = new ConcurrentHashMap<>(10);
+
+    // initialise the insert statement array
+    insertStatement = new ConcurrentHashMap<>(10);
   }
 // -----------------------------------------------------------------------------
 // ------------------ Start of inherited Plug In functions ---------------------
@@ -333,6 +390,7 @@ public class DuplicateCheckCache
     {
       // use default limit
       bufferLimitDays = DEFAULT_BUFFER_LIMIT_DAYS;
+      bufferLimit = Calendar.getInstance().getTimeInMillis()/1000 - bufferLimitDays * 86400;
       OpenRate.getOpenRateFrameworkLog().info("Set default value for <" + SERVICE_BUFFER + "> to <" + new Date(bufferLimit*1000) + ">");
     }
     else
@@ -363,6 +421,7 @@ public class DuplicateCheckCache
     {
       // use default limit
       storeLimitDays = DEFAULT_STORE_LIMIT_DAYS;
+      storeLimit = Calendar.getInstance().getTimeInMillis()/1000 - storeLimitDays * 86400;
       OpenRate.getOpenRateFrameworkLog().info("Set default value for <" + SERVICE_STORE + "> to <" + new Date(storeLimit*1000) + ">");
     }
     else
@@ -400,6 +459,31 @@ public class DuplicateCheckCache
     // Get the loading step, if one is defined
     loadingLogNotificationStep = initGetLoadingStep(ResourceName, CacheName);
 
+    // Get the commit batching
+    commitBatchSize = initGetPositiveInteger(ResourceName, CacheName, SERVICE_COMMIT_BATCH_SIZE, DEFAULT_COMMIT_BATCH_SIZE);
+    commitThreads = initGetPositiveInteger(ResourceName, CacheName, SERVICE_COMMIT_THREADS, DEFAULT_COMMIT_THREADS);
+
+    // Get the key store
+    initKeyStore(ResourceName, CacheName);
+
+    if (commitThreads > 1)
+    {
+      final String threadName = "DupChkCommit-" + getSymbolicName();
+      commitExecutor = Executors.newFixedThreadPool(commitThreads, new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread writer = new Thread(r, threadName);
+          writer.setDaemon(true);
+          return writer;
+        }
+      });
+    }
+
+    OpenRate.getOpenRateFrameworkLog().info("Duplicate check commit uses batches of <" + commitBatchSize +
+                                            "> keys and <" + commitThreads + "> writers for <" + getSymbolicName() + ">");
+
     // The data source property was added to allow database to database
     // JDBC adapters to work properly using 1 configuration file.
     if(DBUtil.initDataSource(cacheDataSourceName) == null)
@@ -430,85 +514,234 @@ public class DuplicateCheckCache
   */
   public boolean DuplicateCheck(String RecordKey, long TimeStamp, int TransactionNumber) throws ProcessingException
   {
-    Connection tmpInsertConnection;
-    PreparedStatement tmpInsertStatement = null;
-
     if (Active)
     {
-	    if (TimeStamp > bufferLimit)
-	    {
-	      // look only in the HashMap
-	      if (recordList.containsKey(RecordKey))
-	      {
-	        // found in the main cache
-	        return true;
-	      }
-	      else
-	      {
-	        // Check in the current transaction cache
-	        if  (TransRecordList.get(TransactionNumber).containsKey(RecordKey))
-	        {
-	          // found in the transaction cache
-	          return true;
-	        }
-	        else
-	        {
-	          // Add the record to the transaction list
-	          TransRecordList.get(TransactionNumber).put(RecordKey, TimeStamp);
-	          return false;
-	        }
-	      }
-	    }
-	    else if (TimeStamp > storeLimit)
-	    {
-	      // the key won't be in the HashMap, we need to check directly in the database
-	
-	      try
-	      {
-	        // Get the connection
-	        tmpInsertConnection = getTransactionInsertConnection(TransactionNumber);
-	        tmpInsertStatement = getInsertStatement(tmpInsertConnection);
-	
-	        // We should not normally have to use the in-transaction insert, so we
-	        // will spend the time to open the connection and close it afterwards
-	        // which makes the connection management and transaction management much easier
-	        try
-	        {
-	          tmpInsertStatement.setString(1, RecordKey);
-	          Timestamp date = new Timestamp(TimeStamp*1000);
-	          tmpInsertStatement.setTimestamp(2, date);
-	          tmpInsertStatement.execute();
-	        }
-	        catch (SQLException ex)
-	        {
-	          // check which type of exception we got
-	          message=ex.getMessage();
-	          if (duplicateCheckPattern.matcher(message).matches())
-	          {
-	            // the unique constraint of the DB has been violated, that means the key is already there
-	            return true;
-	          }
-	          else
-	          {
-	            // other SQL exception
-	            message = "Error inserting into <" + cacheDataSourceName + "> for the duplicate "
-	                + "check data on direct DB insert. message=<" + ex.getMessage()+">";
-	            OpenRate.getOpenRateFrameworkLog().error(message);
-	            throw new ProcessingException(message,ex,getSymbolicName());
-	          }
-	        }
-	      }
-	      finally
-	      {
-	        DBUtil.close(tmpInsertStatement);
-	      }
-	    }
+      if (TimeStamp > bufferLimit)
+      {
+        return checkInMemory(RecordKey, TimeStamp, TransactionNumber);
+      }
+      else if (TimeStamp > storeLimit)
+      {
+        // the key won't be in the HashMap, we need to check directly in the
+        // database, using the unique constraint to find out if it is there
+        PreparedStatement tmpInsertStatement = getTransactionInsertStatement(TransactionNumber);
+        SQLException insertError = insertKey(tmpInsertStatement, RecordKey, TimeStamp);
+
+        if (insertError != null)
+        {
+          return isDuplicateError(insertError, "direct DB insert");
+        }
+      }
     }
 
     // CDR is older than the storeLimit, don't even bother to check and treat it as non-duplicate
     return false;
   }
 
+ /**
+  * Check a block of records for duplicates. This gives the same results as
+  * calling DuplicateCheck for each record in turn, but the records which are
+  * too old to be in memory are checked against the database in JDBC batches,
+  * instead of with one insert per record.
+  *
+  * @param RecordKeys The keys of the records
+  * @param TimeStamps The UTC dates of the records
+  * @param TransactionNumber The transaction the records belong to
+  * @return For each record, true if it is a duplicate, otherwise false
+  * @throws ProcessingException
+  */
+  public boolean[] DuplicateCheck(String[] RecordKeys, long[] TimeStamps, int TransactionNumber) throws ProcessingException
+  {
+    boolean[] duplicates = new boolean[RecordKeys.length];
+
+    if (Active)
+    {
+      // check the recent records in memory, and collect the older ones
+      int[] dbIndex = new int[RecordKeys.length];
+      int dbCount = 0;
+
+      for (int idx = 0; idx < RecordKeys.length; idx++)
+      {
+        if (TimeStamps[idx] > bufferLimit)
+        {
+          duplicates[idx] = checkInMemory(RecordKeys[idx], TimeStamps[idx], TransactionNumber);
+        }
+        else if (TimeStamps[idx] > storeLimit)
+        {
+          dbIndex[dbCount++] = idx;
+        }
+      }
+
+      if (dbCount > 0)
+      {
+        String[] dbKeys = new String[dbCount];
+        long[] dbDates = new long[dbCount];
+        for (int idx = 0; idx < dbCount; idx++)
+        {
+          dbKeys[idx] = RecordKeys[dbIndex[idx]];
+          dbDates[idx] = TimeStamps[dbIndex[idx]];
+        }
+
+        // insert the lot, the ones that fail on the unique constraint are the duplicates
+        PreparedStatement tmpInsertStatement = getTransactionInsertStatement(TransactionNumber);
+        SQLException[] insertErrors = insertKeys(tmpInsertStatement, dbKeys, dbDates, 0, dbCount);
+
+        for (int idx = 0; idx < dbCount; idx++)
+        {
+          if (insertErrors[idx] != null)
+          {
+            duplicates[dbIndex[idx]] = isDuplicateError(insertErrors[idx], "direct DB batch insert");
+          }
+        }
+      }
+    }
+
+    return duplicates;
+  }
+
+ /**
+  * Check for a duplicate in the main cache and then in the transaction cache,
+  * adding the key to the transaction cache if it is not found.
+  *
+  * @param RecordKey The key of the record
+  * @param TimeStamp The UTC date of the record
+  * @param TransactionNumber The transaction the record belongs to
+  * @return True if the record is a duplicate, otherwise false
+  */
+  private boolean checkInMemory(String RecordKey, long TimeStamp, int TransactionNumber)
+  {
+    if (isStoredKey(RecordKey))
+    {
+      // found in the main cache
+      return true;
+    }
+
+    HashMap<String, Long> thisTrxRecordList = TransRecordList.get(TransactionNumber);
+
+    if (thisTrxRecordList.containsKey(RecordKey))
+    {
+      // found in the transaction cache
+      return true;
+    }
+
+    // Add the record to the transaction list
+    thisTrxRecordList.put(RecordKey, TimeStamp);
+    return false;
+  }
+
+ /**
+  * See if an insert error is a violation of the unique constraint of the
+  * table, either by the standard SQL state or by the message of databases
+  * which report it as a "duplicate" error.
+  *
+  * @param ex The exception the insert gave
+  * @return True if the key was already there
+  */
+  private static boolean isUniqueViolation(SQLException ex)
+  {
+    if (SQL_STATE_UNIQUE_VIOLATION.equals(ex.getSQLState()))
+    {
+      return true;
+    }
+
+    return ex.getMessage() != null && duplicateCheckPattern.matcher(ex.getMessage()).matches();
+  }
+
+ /**
+  * Work out if an insert error was caused by the unique constraint of the
+  * table, meaning that the key is already there.
+  *
+  * @param ex The exception the insert gave
+  * @param context The operation we were doing, for the error message
+  * @return True if the key was already there
+  * @throws ProcessingException If the insert failed for another reason
+  */
+  private boolean isDuplicateError(SQLException ex, String context) throws ProcessingException
+  {
+    if (isUniqueViolation(ex))
+    {
+      // the unique constraint of the DB has been violated, that means the key is already there
+      return true;
+    }
+
+    // other SQL exception
+    message = "Error inserting into <" + cacheDataSourceName + "> for the duplicate "
+        + "check data on " + context + ". message=<" + ex.getMessage()+">";
+    OpenRate.getOpenRateFrameworkLog().error(message);
+    throw new ProcessingException(message,ex,getSymbolicName());
+  }
+
+  // -----------------------------------------------------------------------------
+  // --------------------------- Start of key store functions --------------------
+  // -----------------------------------------------------------------------------
+
+ /**
+  * See if a key is held in the in-memory key store.
+  *
+  * @param RecordKey The key to look for
+  * @return true if the key is held
+  */
+  private boolean isStoredKey(String RecordKey)
+  {
+    if (fingerprintStore != null)
+    {
+      return fingerprintStore.contains(RecordKey);
+    }
+
+    return recordList.containsKey(RecordKey);
+  }
+
+ /**
+  * Add a key to the in-memory key store.
+  *
+  * @param RecordKey The key to add
+  * @param TimeStamp The UTC date of the record
+  */
+  private void storeKey(String RecordKey, long TimeStamp)
+  {
+    if (fingerprintStore != null)
+    {
+      fingerprintStore.add(RecordKey, TimeStamp);
+    }
+    else
+    {
+      recordList.put(RecordKey, TimeStamp);
+    }
+  }
+
+ /**
+  * Add the keys of a transaction to the in-memory key store.
+  *
+  * @param keysToStore The keys and their UTC dates
+  */
+  private void storeKeys(Map<String, Long> keysToStore)
+  {
+    if (fingerprintStore != null)
+    {
+      for (Map.Entry<String, Long> entry : keysToStore.entrySet())
+      {
+        fingerprintStore.add(entry.getKey(), entry.getValue());
+      }
+    }
+    else
+    {
+      recordList.putAll(keysToStore);
+    }
+  }
+
+ /**
+  * @return The number of keys held in the in-memory key store
+  */
+  private long getStoredKeyCount()
+  {
+    if (fingerprintStore != null)
+    {
+      return fingerprintStore.size();
+    }
+
+    return recordList.size();
+  }
+
   // -----------------------------------------------------------------------------
   // ------------------ Start of transaction layer functions ---------------------
   // -----------------------------------------------------------------------------
@@ -554,53 +787,9 @@ public class DuplicateCheckCache
 	      
 	      if (recordCount > 0)
 	      {
-	        // we are going to insert something, get the connection and statement
-	        Connection tmpInsertConnection = getTransactionInsertConnection(TransactionNumber);
-	        PreparedStatement tmpInsertStatement = getInsertStatement(tmpInsertConnection);
-	
-	        try
-	        {
-	          // Get the keys to insert
-	          Set<String> keys = ThisTrxRecordList.keySet();
-	          for (String key : keys)
-	          {
-	            try
-	            {
-	              tmpInsertStatement.setString(1, key);
-	              Timestamp date = new Timestamp(ThisTrxRecordList.get(key)*1000);
-	              tmpInsertStatement.setTimestamp(2, date);
-	              tmpInsertStatement.execute();
-	              
-	              // Update the count of what we have inserted
-	              recordsInserted++;
-	            }
-	            catch (SQLException ex)
-	            {
-	              message=ex.getMessage();
-	              if (duplicateCheckPattern.matcher(message).matches())
-	              {
-	                // other SQL exception
-	                message = "Duplicate Error inserting into <" + cacheDataSourceName + "> for the duplicate "
-	                    + "check data on transaction commit for key <" + key+"> in transaction <" + TransactionNumber + ">";
-	                OpenRate.getOpenRateFrameworkLog().warning(message);
-	              }
-	              else
-	              {
-	                // other SQL exception
-	                message = "Error inserting into <" + cacheDataSourceName + "> for the duplicate "
-	                    + "check data on transaction commit. message=<" + ex.getMessage()+"> in transaction <" + TransactionNumber + ">";
-	                OpenRate.getOpenRateFrameworkLog().error(message);
-	              }
-	            }
-	          }
-	        }
-	        finally
-	        {
-	          // Close the statement
-	          DBUtil.close(tmpInsertStatement);
-	        }
+	        recordsInserted = insertTransactionKeys(TransactionNumber, ThisTrxRecordList);
 	
-	        recordList.putAll(TransRecordList.get(TransactionNumber));
+	        storeKeys(ThisTrxRecordList);
 	      }
 	
 	
@@ -623,6 +812,230 @@ public class DuplicateCheckCache
 	}
   }
 
+ /**
+  * Insert the keys of a transaction into the database. The keys are split
+  * into slices, one for each commit writer, and each slice is inserted on its
+  * own connection in JDBC batches of commitBatchSize keys.
+  *
+  * @param TransactionNumber The transaction we are committing
+  * @param keysToInsert The keys and dates to insert
+  * @return The number of keys inserted
+  */
+  private int insertTransactionKeys(final int TransactionNumber, Map<String, Long> keysToInsert)
+  {
+    final String[] keys = new String[keysToInsert.size()];
+    final long[] dates = new long[keys.length];
+    int idx = 0;
+
+    for (Map.Entry<String, Long> entry : keysToInsert.entrySet())
+    {
+      keys[idx] = entry.getKey();
+      dates[idx++] = entry.getValue();
+    }
+
+    // don't bother with the writers for less than a batch each
+    int slices = Math.min(commitThreads, (keys.length + commitBatchSize - 1) / commitBatchSize);
+
+    if (commitExecutor == null || slices <= 1)
+    {
+      return insertSlice(getTransactionInsertConnection(TransactionNumber), keys, dates, 0, keys.length, TransactionNumber);
+    }
+
+    int sliceSize = (keys.length + slices - 1) / slices;
+    List<Future<Integer>> results = new ArrayList<>(slices);
+
+    for (int sliceStart = 0; sliceStart < keys.length; sliceStart += sliceSize)
+    {
+      final int start = sliceStart;
+      final int end = Math.min(keys.length, sliceStart + sliceSize);
+
+      results.add(commitExecutor.submit(new Callable<Integer>()
+      {
+        @Override
+        public Integer call() throws InitializationException
+        {
+          Connection sliceConnection = DBUtil.getConnection(cacheDataSourceName);
+
+          try
+          {
+            return insertSlice(sliceConnection, keys, dates, start, end, TransactionNumber);
+          }
+          finally
+          {
+            DBUtil.close(sliceConnection);
+          }
+        }
+      }));
+    }
+
+    // wait for all the writers, so that the keys are stored when we return
+    int recordsInserted = 0;
+    for (Future<Integer> result : results)
+    {
+      try
+      {
+        recordsInserted += result.get();
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        OpenRate.getOpenRateFrameworkLog().error("Interrupted waiting for duplicate check commit in transaction <" + TransactionNumber + ">");
+      }
+      catch (ExecutionException ex)
+      {
+        OpenRate.getOpenRateFrameworkLog().error("Error inserting into <" + cacheDataSourceName + "> for the duplicate "
+            + "check data on transaction commit. message=<" + ex.getCause().getMessage() + "> in transaction <" + TransactionNumber + ">");
+      }
+    }
+
+    return recordsInserted;
+  }
+
+ /**
+  * Insert a slice of the keys of a transaction, logging the keys which
+  * could not be inserted. This may run in a commit writer thread.
+  *
+  * @param JDBCconInsert The connection to insert on
+  * @param keys The keys
+  * @param dates The UTC dates of the keys
+  * @param start The first key of the slice
+  * @param end The key after the last key of the slice
+  * @param TransactionNumber The transaction we are committing
+  * @return The number of keys inserted
+  */
+  private int insertSlice(Connection JDBCconInsert, String[] keys, long[] dates, int start, int end, int TransactionNumber)
+  {
+    int recordsInserted = 0;
+    PreparedStatement tmpInsertStatement = getInsertStatement(JDBCconInsert);
+
+    if (tmpInsertStatement == null)
+    {
+      return 0;
+    }
+
+    try
+    {
+      for (int chunkStart = start; chunkStart < end; chunkStart += commitBatchSize)
+      {
+        int chunkEnd = Math.min(end, chunkStart + commitBatchSize);
+        SQLException[] insertErrors = insertKeys(tmpInsertStatement, keys, dates, chunkStart, chunkEnd);
+
+        for (int idx = 0; idx < insertErrors.length; idx++)
+        {
+          SQLException ex = insertErrors[idx];
+
+          if (ex == null)
+          {
+            // Update the count of what we have inserted
+            recordsInserted++;
+          }
+          else if (isUniqueViolation(ex))
+          {
+            OpenRate.getOpenRateFrameworkLog().warning("Duplicate Error inserting into <" + cacheDataSourceName + "> for the duplicate "
+                + "check data on transaction commit for key <" + keys[chunkStart + idx] + "> in transaction <" + TransactionNumber + ">");
+          }
+          else
+          {
+            // other SQL exception
+            OpenRate.getOpenRateFrameworkLog().error("Error inserting into <" + cacheDataSourceName + "> for the duplicate "
+                + "check data on transaction commit. message=<" + ex.getMessage()+"> in transaction <" + TransactionNumber + ">");
+          }
+        }
+      }
+    }
+    finally
+    {
+      // Close the statement
+      DBUtil.close(tmpInsertStatement);
+    }
+
+    return recordsInserted;
+  }
+
+ /**
+  * Insert a range of keys as a JDBC batch. The rows the batch did not insert
+  * are tried again one at a time, so that we get the error for each of them
+  * and can tell duplicates from other errors. Rows the driver reports as
+  * inserted are taken as inserted.
+  *
+  * @param tmpInsertStatement The insert statement
+  * @param keys The keys
+  * @param dates The UTC dates of the keys
+  * @param start The first key to insert
+  * @param end The key after the last key to insert
+  * @return For each key in the range, null if inserted, otherwise the error
+  */
+  private SQLException[] insertKeys(PreparedStatement tmpInsertStatement, String[] keys, long[] dates, int start, int end)
+  {
+    SQLException[] insertErrors = new SQLException[end - start];
+    int[] updateCounts;
+
+    try
+    {
+      for (int idx = start; idx < end; idx++)
+      {
+        tmpInsertStatement.setString(1, keys[idx]);
+        tmpInsertStatement.setTimestamp(2, new Timestamp(dates[idx]*1000));
+        tmpInsertStatement.addBatch();
+      }
+
+      tmpInsertStatement.executeBatch();
+      return insertErrors;
+    }
+    catch (BatchUpdateException ex)
+    {
+      updateCounts = ex.getUpdateCounts();
+    }
+    catch (SQLException ex)
+    {
+      // the batch did not run at all, try them all one by one
+      updateCounts = new int[0];
+    }
+
+    try
+    {
+      tmpInsertStatement.clearBatch();
+    }
+    catch (SQLException ex)
+    {
+      // nothing queued any more, the single inserts will show any real problem
+    }
+
+    for (int idx = start; idx < end; idx++)
+    {
+      int row = idx - start;
+      if (updateCounts == null || row >= updateCounts.length || updateCounts[row] == Statement.EXECUTE_FAILED)
+      {
+        insertErrors[row] = insertKey(tmpInsertStatement, keys[idx], dates[idx]);
+      }
+    }
+
+    return insertErrors;
+  }
+
+ /**
+  * Insert a single key.
+  *
+  * @param tmpInsertStatement The insert statement
+  * @param key The key
+  * @param date The UTC date of the key
+  * @return null if inserted, otherwise the error
+  */
+  private SQLException insertKey(PreparedStatement tmpInsertStatement, String key, long date)
+  {
+    try
+    {
+      tmpInsertStatement.setString(1, key);
+      tmpInsertStatement.setTimestamp(2, new Timestamp(date*1000));
+      tmpInsertStatement.execute();
+      return null;
+    }
+    catch (SQLException ex)
+    {
+      return ex;
+    }
+  }
+
  /**
   * Deletes the transaction object without storing the data
   *
@@ -690,7 +1103,7 @@ public class DuplicateCheckCache
     else if (Command.equalsIgnoreCase(SERVICE_OBJECT_COUNT))
     {
       // Return the number of objects in the duplicate cache
-      return Integer.toString(recordList.size());
+      return Long.toString(getStoredKeyCount());
     }
     else if (Command.equalsIgnoreCase(SERVICE_BUFFER))
     {
@@ -816,7 +1229,7 @@ public class DuplicateCheckCache
 
         if (CDRDate > bufferLimit)
         {
-          recordList.put(CDRKey, CDRDate);
+          storeKey(CDRKey, CDRDate);
           recordsLoaded++;
         }
         else
@@ -870,11 +1283,11 @@ public class DuplicateCheckCache
   public void purgeDupChkData()
   {
     Long recordDate;
-    int recordsPurgedMemory = 0;
+    long recordsPurgedMemory = 0;
     int recordsPurgedDatabase = 0;
 
     // log the cutoff date
-    OpenRate.getOpenRateFrameworkLog().info("Duplicate check purge started. Original cache size = <" + recordList.size() + "> records.");
+    OpenRate.getOpenRateFrameworkLog().info("Duplicate check purge started. Original cache size = <" + getStoredKeyCount() + "> records.");
 
     // re-calculate the buffer limit cutoff date
     bufferLimit = Calendar.getInstance().getTimeInMillis()/1000 - bufferLimitDays * 86400;
@@ -885,31 +1298,39 @@ public class DuplicateCheckCache
     try
     {
       // **** Clean up the memory ****
-      // Create a new HashMap that will replace the current one. We cannot simply
-      // remove the items from the current one due to the ConcurrentModificationException
-      ConcurrentHashMap<String, Long> NewRecordList = new ConcurrentHashMap<>(50000);
-
-      // Dump the contents of the current hashmap
-      Set<String> keySet = recordList.keySet();
-
-      // loop through the keys and add to the new hashmap only the ones newer than cutoff
-      for (String dupKey : keySet)
+      if (fingerprintStore != null)
       {
-        recordDate = recordList.get(dupKey);
+        // drop the segments of the days which have passed the limit
+        recordsPurgedMemory = fingerprintStore.purge(bufferLimit);
+      }
+      else
+      {
+        // Create a new HashMap that will replace the current one. We cannot simply
+        // remove the items from the current one due to the ConcurrentModificationException
+        ConcurrentHashMap<String, Long> NewRecordList = new ConcurrentHashMap<>(50000);
 
-        if (recordDate < bufferLimit)
-        {
-          // this will not be stored in the new hashmap
-          recordsPurgedMemory++;
-        }
-        else
+        // Dump the contents of the current hashmap
+        Set<String> keySet = recordList.keySet();
+
+        // loop through the keys and add to the new hashmap only the ones newer than cutoff
+        for (String dupKey : keySet)
         {
-          NewRecordList.put(dupKey,recordDate);
+          recordDate = recordList.get(dupKey);
+
+          if (recordDate < bufferLimit)
+          {
+            // this will not be stored in the new hashmap
+            recordsPurgedMemory++;
+          }
+          else
+          {
+            NewRecordList.put(dupKey,recordDate);
+          }
         }
-      }
 
-      // Swap the existing and new record list over
-      recordList = NewRecordList;
+        // Swap the existing and new record list over
+        recordList = NewRecordList;
+      }
 
       // log that we have moved onto the DB part
       OpenRate.getOpenRateFrameworkLog().info("Duplicate check DB purge started.");
@@ -1055,6 +1476,87 @@ public class DuplicateCheckCache
     return tmpLoadStep;
   }
 
+ /**
+  * Set up the in-memory key store. The default is the map of keys. The
+  * compact store holds fingerprints of the keys in one table per day, which
+  * uses far less memory, and purges by dropping whole days.
+  */
+  private void initKeyStore(String ResourceName, String CacheName) throws InitializationException
+  {
+    String tmpKeyStore;
+    String tmpBloomFilter;
+
+    tmpKeyStore = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
+                                                       CacheName,
+                                                       SERVICE_KEY_STORE,
+                                                       "Map");
+
+    tmpBloomFilter = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
+                                                       CacheName,
+                                                       SERVICE_BLOOM_FILTER,
+                                                       "false");
+
+    if (!tmpBloomFilter.equalsIgnoreCase("true") && !tmpBloomFilter.equalsIgnoreCase("false"))
+    {
+      message = "Value provided for property <" + SERVICE_BLOOM_FILTER +
+                "> must be <true> or <false>. Received value <" + tmpBloomFilter + ">.";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    if (tmpKeyStore.equalsIgnoreCase("Fingerprint"))
+    {
+      fingerprintStore = new FingerprintKeyStore(tmpBloomFilter.equalsIgnoreCase("true"));
+      recordList.clear();
+    }
+    else if (tmpKeyStore.equalsIgnoreCase("Map"))
+    {
+      fingerprintStore = null;
+    }
+    else
+    {
+      message = "Value provided for property <" + SERVICE_KEY_STORE +
+                "> must be <Map> or <Fingerprint>. Received value <" + tmpKeyStore + ">.";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    OpenRate.getOpenRateFrameworkLog().info("Duplicate check uses key store <" + tmpKeyStore + "> for <" + getSymbolicName() + ">");
+  }
+
+ /**
+  * Get an optional positive integer property, using the default if it is
+  * not defined.
+  */
+  private int initGetPositiveInteger(String ResourceName, String CacheName, String PropertyName, int DefaultValue) throws InitializationException
+  {
+    String tmpValue;
+    int    tmpResult;
+
+    tmpValue = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
+                                                       CacheName,
+                                                       PropertyName,
+                                                       Integer.toString(DefaultValue));
+
+    // try to convert it
+    try
+    {
+      tmpResult = Integer.parseInt(tmpValue);
+    }
+    catch (NumberFormatException ex)
+    {
+      message = "Value provided for property <" + PropertyName +
+                "> was not numeric. Received value <" + tmpValue + ">.";
+      throw new InitializationException(message,ex,getSymbolicName());
+    }
+
+    if (tmpResult < 1)
+    {
+      message = "Value given for <" + PropertyName + "> was less than <1> for cache <" + getSymbolicName() + ">";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    return tmpResult;
+  }
+
  /**
   * Gets a connection for use in the insert processing module. If the connection
   * is not available, we create it.
@@ -1097,6 +1599,13 @@ public class DuplicateCheckCache
   */
   public void closeTransactionInsertConnection(int TransactionNumber)
   {
+    // Close the statement, if we used one
+    PreparedStatement tmpStatement = insertStatement.remove(TransactionNumber);
+    if (tmpStatement != null)
+    {
+      DBUtil.close(tmpStatement);
+    }
+
     if (insertConnection.containsKey(TransactionNumber))
     {
       // Close the connection
@@ -1107,6 +1616,35 @@ public class DuplicateCheckCache
     }
   }
 
+ /**
+  * Gets the insert statement for the direct inserts of a transaction. The
+  * statement is prepared on the first use and closed with the transaction
+  * insert connection.
+  *
+  * @param TransactionNumber The transaction number we are inserting for
+  * @return The prepared insert statement
+  * @throws ProcessingException
+  */
+  protected PreparedStatement getTransactionInsertStatement(int TransactionNumber) throws ProcessingException
+  {
+    PreparedStatement tmpStatement = insertStatement.get(TransactionNumber);
+
+    if (tmpStatement == null)
+    {
+      tmpStatement = getInsertStatement(getTransactionInsertConnection(TransactionNumber));
+
+      if (tmpStatement == null)
+      {
+        message = "Could not prepare the insert statement for the duplicate check in transaction <" + TransactionNumber + ">";
+        throw new ProcessingException(message,getSymbolicName());
+      }
+
+      insertStatement.put(TransactionNumber, tmpStatement);
+    }
+
+    return tmpStatement;
+  }
+
  /**
   * getInsertStatement creates the statement from the SQL insert expression
   * so that it can be run for updating the database on transaction commit or
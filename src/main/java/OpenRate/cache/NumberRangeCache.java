@@ -68,6 +68,7 @@ import java.io.IOException;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -88,8 +89,13 @@ import java.util.Iterator;
  *  [- Result field 2] - more results (optional)
  *  [- Result field n] - more results (optional)
  *
- * "Range From" must always be less than or equal to "Range To". Overlapping
- * ranges in a group are not allowed.
+ * "Range From" must always be less than or equal to "Range To". A range may
+ * be loaded more than once with different validity periods. If more than one
+ * entry matches a number at a date, the one loaded first is returned.
+ *
+ * The entries of a group are indexed the first time the group is searched
+ * after loading, so that a search takes a binary search over the range
+ * boundaries, and then only looks at the entries which cover the number.
  *
  * Loading from a file:
  * --------------------
@@ -107,15 +113,164 @@ import java.util.Iterator;
 public class NumberRangeCache
      extends AbstractSyncLoaderCache
 {
-  // This is the management structure which allows us to order the ranges
-  private class RangeItem
+  /**
+   * The entries of one group. Entries are appended in loading order, and the
+   * index is (re)built the first time the group is searched after an entry
+   * has been added.
+   *
+   * The index cuts the number line into segments at every range boundary, so
+   * that within a segment the same entries always cover the number. A search
+   * finds the segment with a binary search, and then checks the validity of
+   * just the entries covering that segment.
+   */
+  private static class RangeGroup
   {
-    long RangeFrom;
-    long RangeTo;
-    long ValidityFrom;
-    long ValidityTo;
-    RangeItem nextRange;
-    ArrayList<String> Results;
+    // the entries, in loading order
+    private long[] rangeFrom = new long[16];
+    private long[] rangeTo = new long[16];
+    private long[] validityFrom = new long[16];
+    private long[] validityTo = new long[16];
+    private ArrayList<?>[] results = new ArrayList<?>[16];
+    private int count = 0;
+
+    // the index: segment s starts at segmentStart[s] and is covered by the
+    // entries segmentEntries[segmentOffset[s]] to segmentEntries[segmentOffset[s+1]-1]
+    private long[] segmentStart;
+    private int[] segmentOffset;
+    private int[] segmentEntries;
+    private volatile boolean indexed = false;
+
+   /**
+    * Add an entry to the group. The index must be built again before the
+    * entry can be found.
+    */
+    private void add(long newRangeFrom, long newRangeTo, long newValidityFrom, long newValidityTo, ArrayList<String> newResults)
+    {
+      if (count == rangeFrom.length)
+      {
+        int newSize = count * 2;
+        rangeFrom = Arrays.copyOf(rangeFrom, newSize);
+        rangeTo = Arrays.copyOf(rangeTo, newSize);
+        validityFrom = Arrays.copyOf(validityFrom, newSize);
+        validityTo = Arrays.copyOf(validityTo, newSize);
+        results = Arrays.copyOf(results, newSize);
+      }
+
+      rangeFrom[count] = newRangeFrom;
+      rangeTo[count] = newRangeTo;
+      validityFrom[count] = newValidityFrom;
+      validityTo[count] = newValidityTo;
+      results[count] = newResults;
+      count++;
+
+      indexed = false;
+    }
+
+   /**
+    * Find the entry covering the number at the date.
+    *
+    * @return The results of the entry, or null if there is none
+    */
+    @SuppressWarnings("unchecked")
+    private ArrayList<String> find(long rangeSearchValue, long UTCDate)
+    {
+      if (!indexed)
+      {
+        buildIndex();
+      }
+
+      int segment = Arrays.binarySearch(segmentStart, rangeSearchValue);
+      if (segment < 0)
+      {
+        // not a boundary, so we are in the segment before the insertion point
+        segment = -segment - 2;
+        if (segment < 0)
+        {
+          return null;
+        }
+      }
+
+      for (int i = segmentOffset[segment]; i < segmentOffset[segment + 1]; i++)
+      {
+        int entry = segmentEntries[i];
+        if ((validityFrom[entry] <= UTCDate) && (validityTo[entry] > UTCDate))
+        {
+          return (ArrayList<String>) results[entry];
+        }
+      }
+
+      return null;
+    }
+
+   /**
+    * Build the segment index. This is synchronized, so that if several
+    * threads search a new group at the same time, only one builds the index.
+    */
+    private synchronized void buildIndex()
+    {
+      if (indexed)
+      {
+        return;
+      }
+
+      // Collect the distinct segment boundaries
+      long[] bounds = new long[count * 2];
+      int boundCount = 0;
+      for (int entry = 0; entry < count; entry++)
+      {
+        bounds[boundCount++] = rangeFrom[entry];
+        if (rangeTo[entry] != Long.MAX_VALUE)
+        {
+          bounds[boundCount++] = rangeTo[entry] + 1;
+        }
+      }
+
+      Arrays.sort(bounds, 0, boundCount);
+      int segments = 0;
+      for (int i = 0; i < boundCount; i++)
+      {
+        if (segments == 0 || bounds[i] != bounds[segments - 1])
+        {
+          bounds[segments++] = bounds[i];
+        }
+      }
+      long[] newSegmentStart = Arrays.copyOf(bounds, segments);
+
+      // Count the entries covering each segment, then fill them in, keeping
+      // the loading order within each segment
+      int[] newSegmentOffset = new int[segments + 1];
+      for (int entry = 0; entry < count; entry++)
+      {
+        int segment = Arrays.binarySearch(newSegmentStart, rangeFrom[entry]);
+        while (segment < segments && newSegmentStart[segment] <= rangeTo[entry])
+        {
+          newSegmentOffset[segment + 1]++;
+          segment++;
+        }
+      }
+
+      for (int segment = 0; segment < segments; segment++)
+      {
+        newSegmentOffset[segment + 1] += newSegmentOffset[segment];
+      }
+
+      int[] newSegmentEntries = new int[newSegmentOffset[segments]];
+      int[] fill = Arrays.copyOf(newSegmentOffset, segments);
+      for (int entry = 0; entry < count; entry++)
+      {
+        int segment = Arrays.binarySearch(newSegmentStart, rangeFrom[entry]);
+        while (segment < segments && newSegmentStart[segment] <= rangeTo[entry])
+        {
+          newSegmentEntries[fill[segment]++] = entry;
+          segment++;
+        }
+      }
+
+      segmentStart = newSegmentStart;
+      segmentOffset = newSegmentOffset;
+      segmentEntries = newSegmentEntries;
+      indexed = true;
+    }
   }
 
   /**
@@ -124,7 +279,7 @@ public class NumberRangeCache
    * the global possibilities to find ours. We only have to search through the
    * group of similar entries.
    */
-  private HashMap<String, RangeItem> GroupCache;
+  private HashMap<String, RangeGroup> GroupCache;
 
   // List of Services that this Client supports
   private final static String SERVICE_OBJECT_COUNT = "ObjectCount";
@@ -152,8 +307,8 @@ public class NumberRangeCache
 // -----------------------------------------------------------------------------
 
  /**
-  * Add an object into the Object Cache, creating a chain of values to search,
-  * ordered by "RangeFrom".
+  * Add an object into the Object Cache. The group index is built again on the
+  * next search.
   * @param Group The group to add the entry to
   * @param ValidityFrom The start of the validity of the range
   * @param ValidityTo The end of the validity of the range
@@ -165,10 +320,6 @@ public class NumberRangeCache
   public void addEntry(String Group, long RangeFrom, long RangeTo, long ValidityFrom, long ValidityTo, ArrayList<String> Results)
           throws InitializationException
   {
-    RangeItem tmpRangeItem;
-    RangeItem newRangeItem;
-    RangeItem tmpRangeNextNode;
-
     // these hold the modified values
     long tmpRF = RangeFrom;
     long tmpRT = RangeTo;
@@ -214,69 +365,15 @@ public class NumberRangeCache
     }
 
     // Get/Create the group cache
-    if (GroupCache.containsKey(Group))
-    {
-      tmpRangeItem = GroupCache.get(Group);
-
-      // now run down the ranges until we find the right position
-      while (tmpRangeItem != null)
-      {
-        tmpRangeNextNode = tmpRangeItem.nextRange;
+    RangeGroup tmpRangeGroup = GroupCache.get(Group);
 
-        if ((tmpRF > tmpRangeItem.RangeFrom) &
-            (tmpRangeNextNode == null))
-        {
-          // insert at the tail of the list if we are able
-          newRangeItem = new RangeItem();
-          newRangeItem.RangeFrom = tmpRF;
-          newRangeItem.RangeTo = tmpRT;
-          newRangeItem.ValidityFrom = tmpVF;
-          newRangeItem.ValidityTo = tmpVT;
-          newRangeItem.Results = Results;
-
-          // Link to the previous range
-          tmpRangeItem.nextRange = newRangeItem;
-
-          // done
-          return;
-        }
-        else if (tmpRF < tmpRangeItem.RangeFrom)
-        {
-          // insert at the head/middle of the list
-          newRangeItem = new RangeItem();
-          newRangeItem.RangeFrom = tmpRF;
-          newRangeItem.RangeTo = tmpRT;
-          newRangeItem.ValidityFrom = tmpVF;
-          newRangeItem.ValidityTo = tmpVT;
-          newRangeItem.Results = Results;
-          newRangeItem.nextRange = tmpRangeItem.nextRange;
-          tmpRangeItem.nextRange = newRangeItem;
-
-          // done
-          return;
-        }
-
-        // Move down the map
-        tmpRangeItem = tmpRangeItem.nextRange;
-      }
-
-      // If we get here, we could not insert the period
-      message = "Range From <" + RangeFrom +
-              "> to <" + RangeTo + "> overlaps with another range in group <" +
-              Group + ">";
-      throw new InitializationException(message,getSymbolicName());
-    }
-    else
+    if (tmpRangeGroup == null)
     {
-      // create the new group and initialise
-      tmpRangeItem = new RangeItem();
-      tmpRangeItem.RangeFrom = tmpRF;
-      tmpRangeItem.RangeTo = tmpRT;
-      tmpRangeItem.ValidityFrom = tmpVF;
-      tmpRangeItem.ValidityTo = tmpVT;
-      tmpRangeItem.Results = Results;
-      GroupCache.put(Group, tmpRangeItem);
+      tmpRangeGroup = new RangeGroup();
+      GroupCache.put(Group, tmpRangeGroup);
     }
+
+    tmpRangeGroup.add(tmpRF, tmpRT, tmpVF, tmpVT, Results);
   }
 
  /**
@@ -289,31 +386,17 @@ public class NumberRangeCache
   */
   public ArrayList<String> getEntryWithChildData(String Group, long rangeSearchValue, long UTCDate)
   {
-    RangeItem tmpRangeItem;
-    ArrayList<String> Value = null;
+    RangeGroup tmpRangeGroup;
 
     // Get the Group
-    tmpRangeItem  = GroupCache.get(Group);
+    tmpRangeGroup = GroupCache.get(Group);
 
-    // search for the right object
-    while (tmpRangeItem != null)
+    if (tmpRangeGroup == null)
     {
-      if ((tmpRangeItem.RangeFrom <= rangeSearchValue) &
-          (tmpRangeItem.RangeTo >= rangeSearchValue))
-      {
-        // we have found a candidate - see if it is valid at the date
-        if ((tmpRangeItem.ValidityFrom <= UTCDate) && (tmpRangeItem.ValidityTo > UTCDate))
-        {
-          // found it!
-          return tmpRangeItem.Results;
-        }
-      }
-
-      // Move down the map
-      tmpRangeItem = tmpRangeItem.nextRange;
+      return null;
     }
 
-    return Value;
+    return tmpRangeGroup.find(rangeSearchValue, UTCDate);
   }
 
  /**
@@ -326,30 +409,18 @@ public class NumberRangeCache
   */
   public String getEntry(String Group, long rangeSearchValue, long UTCDate)
   {
-    RangeItem tmpRangeItem;
+    ArrayList<String> tmpResults;
 
-    // Get the Group
-    tmpRangeItem  = GroupCache.get(Group);
+    tmpResults = getEntryWithChildData(Group, rangeSearchValue, UTCDate);
 
-    // search for the right object
-    while (tmpRangeItem != null)
+    if (tmpResults == null)
     {
-      if ((tmpRangeItem.RangeFrom <= rangeSearchValue) &
-          (tmpRangeItem.RangeTo >= rangeSearchValue))
-      {
-        // we have found a candidate - see if it is valid at the date
-        if ((tmpRangeItem.ValidityFrom <= UTCDate) && (tmpRangeItem.ValidityTo > UTCDate))
-        {
-          // found it!
-          return tmpRangeItem.Results.get(0);
-        }
-      }
-
-      // Move down the map
-      tmpRangeItem = tmpRangeItem.nextRange;
+      return NO_RANGE_MATCH;
+    }
+    else
+    {
+      return tmpResults.get(0);
     }
-
-    return NO_RANGE_MATCH;
   }
 
  /**
@@ -642,7 +713,6 @@ public class NumberRangeCache
     Iterator<String>    GroupIter;
     String      tmpGroupName;
     int         Objects = 0;
-    RangeItem   tmpRangeItem;
 
     // Return the number of objects in the cache
     if (Command.equalsIgnoreCase(SERVICE_GROUP_COUNT))
@@ -661,12 +731,7 @@ public class NumberRangeCache
         tmpGroupName = GroupIter.next();
 
         // Count the elements in the group
-        tmpRangeItem = GroupCache.get(tmpGroupName);
-        while (tmpRangeItem != null)
-        {
-          Objects++;
-          tmpRangeItem = tmpRangeItem.nextRange;
-        }
+        Objects += GroupCache.get(tmpGroupName).count;
       }
 
       return Integer.toString(Objects);
@@ -57,6 +57,7 @@ package OpenRate.cache;
 import OpenRate.OpenRate;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
+import OpenRate.record.RUMRegistry;
 import OpenRate.utils.PropertyUtils;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
@@ -127,6 +128,16 @@ public class RUMMapCache
      */
     public String Resource;
 
+    /**
+     * The RUMRegistry ID of the RUM
+     */
+    public int RUMId;
+
+    /**
+     * The RUMRegistry ID of the resource
+     */
+    public int ResourceId;
+
     /**
      * The counter ID for the resource to impact
      */
@@ -215,6 +226,8 @@ public class RUMMapCache
       tmpRMEntry.PriceModel = PriceModel;
       tmpRMEntry.RUM = RUM;
       tmpRMEntry.Resource = Resource;
+      tmpRMEntry.RUMId = RUMRegistry.getId(RUM);
+      tmpRMEntry.ResourceId = RUMRegistry.getId(Resource);
       tmpRMEntry.ResourceCounter = Integer.parseInt(ResourceCounter);
 
       if (RUMType.equalsIgnoreCase("flat")) {
@@ -243,6 +256,8 @@ public class RUMMapCache
       tmpRMEntry.PriceModel = PriceModel;
       tmpRMEntry.RUM = RUM;
       tmpRMEntry.Resource = Resource;
+      tmpRMEntry.RUMId = RUMRegistry.getId(RUM);
+      tmpRMEntry.ResourceId = RUMRegistry.getId(Resource);
       tmpRMEntry.ResourceCounter = Integer.parseInt(ResourceCounter);
 
       if (RUMType.equalsIgnoreCase("flat")) {
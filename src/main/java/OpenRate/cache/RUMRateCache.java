@@ -58,6 +58,8 @@ import OpenRate.CommonConfig;
 import OpenRate.OpenRate;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
+import OpenRate.record.CompiledPriceModel;
+import OpenRate.record.RUMRegistry;
 import OpenRate.record.RateMapEntry;
 import OpenRate.utils.PropertyUtils;
 import java.io.BufferedReader;
@@ -71,6 +73,7 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Please
@@ -130,7 +133,8 @@ import java.util.Iterator;
  * @author i.sparkes
  */
 public class RUMRateCache
-        extends AbstractSyncLoaderCache {
+        extends AbstractSyncLoaderCache
+        implements ICacheShadowReloadable {
 
   /**
    * RUM Map entry
@@ -157,6 +161,16 @@ public class RUMRateCache
      */
     public String Resource;
 
+    /**
+     * The RUMRegistry ID of the RUM
+     */
+    public int RUMId;
+
+    /**
+     * The RUMRegistry ID of the resource
+     */
+    public int ResourceId;
+
     /**
      * The counter ID for the resource to impact
      */
@@ -169,15 +183,75 @@ public class RUMRateCache
   }
 
   /**
-   * This stores all the cacheable data necessary for the definition of the rate
-   * plans.
+   * The data of the cache: the price models, their compiled form and the RUM
+   * map. A shadow reload publishes all of it at once by replacing this
+   * reference, so a reader which reads the reference once per record sees the
+   * price models and the RUM map of the same load.
    */
-  protected HashMap<String, ArrayList<RateMapEntry>> PriceModelCache;
+  public static final class RateData {
 
-  /**
-   * This holds the RUM map
-   */
-  protected HashMap<String, ArrayList<RUMMapEntry>> RUMMapCache;
+    // This stores all the cacheable data necessary for the definition of the
+    // rate plans
+    private final HashMap<String, ArrayList<RateMapEntry>> priceModelCache;
+
+    // The compiled form of the price models, built the first time each model
+    // is used for rating, and discarded when the model changes
+    private final ConcurrentHashMap<String, CompiledPriceModel> compiledPriceModelCache = new ConcurrentHashMap<>();
+
+    // This holds the RUM map
+    private final HashMap<String, ArrayList<RUMMapEntry>> rumMapCache;
+
+    RateData(int initialObjectSize) {
+      priceModelCache = new HashMap<>(initialObjectSize);
+      rumMapCache = new HashMap<>(initialObjectSize);
+    }
+
+    /**
+     * Get a price model.
+     *
+     * @param key The price model to recover
+     * @return The price model structure containing all of the tiers
+     */
+    public ArrayList<RateMapEntry> getPriceModel(String key) {
+      return priceModelCache.get(key);
+    }
+
+    /**
+     * Get the compiled form of a price model, compiling it if this is the
+     * first use since it was loaded.
+     *
+     * @param key The price model to get
+     * @return The compiled price model, or null if it is not defined
+     */
+    public CompiledPriceModel getCompiledPriceModel(String key) {
+      CompiledPriceModel tmpEntry = compiledPriceModelCache.get(key);
+
+      if (tmpEntry == null) {
+        ArrayList<RateMapEntry> tmpPriceModel = priceModelCache.get(key);
+
+        if (tmpPriceModel != null) {
+          tmpEntry = new CompiledPriceModel(tmpPriceModel);
+          compiledPriceModelCache.put(key, tmpEntry);
+        }
+      }
+
+      return tmpEntry;
+    }
+
+    /**
+     * Get a RUM map.
+     *
+     * @param key The identifier for the RUM map to recover
+     * @return The RUM map containing all of the pricemodel-RUM-Resource
+     * combinations
+     */
+    public ArrayList<RUMMapEntry> getRUMMap(String key) {
+      return rumMapCache.get(key);
+    }
+  }
+
+  // The data of the cache, replaced as a whole by a shadow reload
+  private volatile RateData rateData;
 
   /**
    * these are the statements that we have to prepare to be able to get records
@@ -243,8 +317,7 @@ public class RUMRateCache
     // inform the user about the start of the price model phase
     OpenRate.getOpenRateFrameworkLog().debug("Setting initial hash map size to <" + initialObjectSize + "> for cache <" + getSymbolicName() + ">");
 
-    PriceModelCache = new HashMap<>(initialObjectSize);
-    RUMMapCache = new HashMap<>(initialObjectSize);
+    rateData = new RateData(initialObjectSize);
 
     // Do the parent initialisation
     super.loadCache(ResourceName, CacheName);
@@ -294,11 +367,14 @@ public class RUMRateCache
       throw new InitializationException(message, getSymbolicName());
     }
 
+    // the compiled form will be built again when it is next used
+    rateData.compiledPriceModelCache.remove(priceModel);
+
     // See if we already have the cache object for this price
-    if (!PriceModelCache.containsKey(priceModel)) {
+    if (!rateData.priceModelCache.containsKey(priceModel)) {
       // Create the new PriceModel object
       tmpRateCache = new ArrayList<>();
-      PriceModelCache.put(priceModel, tmpRateCache);
+      rateData.priceModelCache.put(priceModel, tmpRateCache);
 
       // Add it as the first element in the ArrayList
       tmpRMEntry = new RateMapEntry();
@@ -314,7 +390,7 @@ public class RUMRateCache
       tmpRateCache.add(tmpRMEntry);
     } else {
       // Otherwise just add it to the existing rate model
-      tmpRateCache = PriceModelCache.get(priceModel);
+      tmpRateCache = rateData.priceModelCache.get(priceModel);
 
       // Add the new entry
       tmpRMEntry = new RateMapEntry();
@@ -371,14 +447,19 @@ public class RUMRateCache
    * @return The price model structure containing all of the tiers
    */
   public ArrayList<RateMapEntry> getPriceModel(String key) {
+    return rateData.getPriceModel(key);
+  }
 
-    ArrayList<RateMapEntry> tmpEntry;
-
-    // Get the rate plan
-    tmpEntry = PriceModelCache.get(key);
-
-    // and return it
-    return tmpEntry;
+  /**
+   * Get the compiled form of a price model, compiling it if this is the first
+   * use since it was loaded. The compiled form is used for rating when no
+   * rating breakdown is needed.
+   *
+   * @param key The price model to get
+   * @return The compiled price model, or null if it is not defined
+   */
+  public CompiledPriceModel getCompiledPriceModel(String key) {
+    return rateData.getCompiledPriceModel(key);
   }
 
   /**
@@ -398,15 +479,17 @@ public class RUMRateCache
     RUMMapEntry tmpRMEntry;
 
     // See if we already have the cache object for this price
-    if (!RUMMapCache.containsKey(PriceGroup)) {
+    if (!rateData.rumMapCache.containsKey(PriceGroup)) {
 
       // Create the new PriceModel object
       tmpRUMMapCache = new ArrayList<>();
-      RUMMapCache.put(PriceGroup, tmpRUMMapCache);
+      rateData.rumMapCache.put(PriceGroup, tmpRUMMapCache);
       tmpRMEntry = new RUMMapEntry();
       tmpRMEntry.PriceModel = PriceModel;
       tmpRMEntry.RUM = RUM;
       tmpRMEntry.Resource = Resource;
+      tmpRMEntry.RUMId = RUMRegistry.getId(RUM);
+      tmpRMEntry.ResourceId = RUMRegistry.getId(Resource);
       tmpRMEntry.ResourceCounter = Integer.parseInt(ResourceCounter);
 
       if (RUMType.equalsIgnoreCase("flat")) {
@@ -428,13 +511,15 @@ public class RUMRateCache
     } else {
 
       // Otherwise just add it to the existing rate model
-      tmpRUMMapCache = RUMMapCache.get(PriceGroup);
+      tmpRUMMapCache = rateData.rumMapCache.get(PriceGroup);
 
       // Add the new entry
       tmpRMEntry = new RUMMapEntry();
       tmpRMEntry.PriceModel = PriceModel;
       tmpRMEntry.RUM = RUM;
       tmpRMEntry.Resource = Resource;
+      tmpRMEntry.RUMId = RUMRegistry.getId(RUM);
+      tmpRMEntry.ResourceId = RUMRegistry.getId(Resource);
       tmpRMEntry.ResourceCounter = Integer.parseInt(ResourceCounter);
 
       if (RUMType.equalsIgnoreCase("flat")) {
@@ -466,14 +551,18 @@ public class RUMRateCache
    * combinations
    */
   public ArrayList<RUMMapEntry> getRUMMap(String key) {
+    return rateData.getRUMMap(key);
+  }
 
-    ArrayList<RUMMapEntry> tmpEntry;
-
-    // Get the rate plan
-    tmpEntry = RUMMapCache.get(key);
-
-    // and return it
-    return tmpEntry;
+  /**
+   * Get the current data of the cache. Rating reads this once per record, and
+   * takes the RUM map and the price models from it, so that a shadow reload
+   * published while the record is rated cannot mix old and new data.
+   *
+   * @return The current data
+   */
+  public RateData getRateData() {
+    return rateData;
   }
 
   // -----------------------------------------------------------------------------
@@ -878,16 +967,28 @@ public class RUMRateCache
     throw new InitializationException("Not implemented yet", getSymbolicName());
   }
 
+  /**
+   * Take over the data of a shadow copy of this cache, in a single reference
+   * swap.
+   *
+   * @param shadowCache The loaded shadow copy
+   */
+  @Override
+  public void publishShadowCache(AbstractSyncLoaderCache shadowCache) {
+    rateData = ((RUMRateCache) shadowCache).rateData;
+  }
+
   /**
    * Clear down the cache contents in the case that we are ordered to reload
    */
   @Override
   public void clearCacheObjects() {
     // clear the price model cache
-    PriceModelCache.clear();
+    rateData.priceModelCache.clear();
+    rateData.compiledPriceModelCache.clear();
 
     // clear the RUM map cache
-    RUMMapCache.clear();
+    rateData.rumMapCache.clear();
   }
 
   // -----------------------------------------------------------------------------
@@ -59,6 +59,7 @@ import OpenRate.OpenRate;
 import static OpenRate.cache.RUMRateCache.PriceModelDataFile;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
+import OpenRate.record.CompiledPriceModel;
 import OpenRate.record.RateMapEntry;
 import OpenRate.utils.PropertyUtils;
 import java.io.BufferedReader;
@@ -70,6 +71,7 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Please
@@ -103,13 +105,20 @@ import java.util.Iterator;
  * @author i.sparkes
  */
 public class RateCache
-        extends AbstractSyncLoaderCache {
+        extends AbstractSyncLoaderCache
+        implements ICacheShadowReloadable {
 
   /**
    * This stores all the cacheable data necessary for the definition of the rate
    * plans.
    */
-  protected HashMap<String, ArrayList<RateMapEntry>> PriceModelCache;
+  protected volatile HashMap<String, ArrayList<RateMapEntry>> PriceModelCache;
+
+  /**
+   * The compiled form of the price models, built the first time each model is
+   * used for rating, and discarded when the model changes.
+   */
+  private volatile ConcurrentHashMap<String, CompiledPriceModel> CompiledPriceModelCache = new ConcurrentHashMap<>();
 
   // -----------------------------------------------------------------------------
   // ----------------------- Start of custom functions ---------------------------
@@ -190,6 +199,9 @@ public class RateCache
       throw new InitializationException(message, getSymbolicName());
     }
 
+    // the compiled form will be built again when it is next used
+    CompiledPriceModelCache.remove(priceModel);
+
     // See if we already have the cache object for this price
     if (!PriceModelCache.containsKey(priceModel)) {
       // Create the new PriceModel object
@@ -278,6 +290,31 @@ public class RateCache
     return tmpEntry;
   }
 
+  /**
+   * Get the compiled form of a price model, compiling it if this is the first
+   * use since it was loaded. The compiled form is used for rating when no
+   * rating breakdown is needed.
+   *
+   * @param PriceModel The price model to get
+   * @return The compiled price model, or null if it is not defined
+   */
+  public CompiledPriceModel getCompiledPriceModel(String PriceModel) {
+    // read the map once, a shadow reload may swap it while we work
+    ConcurrentHashMap<String, CompiledPriceModel> tmpCompiledCache = CompiledPriceModelCache;
+    CompiledPriceModel tmpEntry = tmpCompiledCache.get(PriceModel);
+
+    if (tmpEntry == null) {
+      ArrayList<RateMapEntry> tmpPriceModel = PriceModelCache.get(PriceModel);
+
+      if (tmpPriceModel != null) {
+        tmpEntry = new CompiledPriceModel(tmpPriceModel);
+        tmpCompiledCache.put(PriceModel, tmpEntry);
+      }
+    }
+
+    return tmpEntry;
+  }
+
 // -----------------------------------------------------------------------------
 // ------------------ Start of inherited Plug In functions ---------------------
 // -----------------------------------------------------------------------------
@@ -505,12 +542,28 @@ public class RateCache
     throw new InitializationException("Not implemented yet", getSymbolicName());
   }
 
+  /**
+   * Take over the data of a shadow copy of this cache. The price models are
+   * swapped before the compiled price models, so that a compiled model can
+   * never be built from the old data into the new compiled cache.
+   *
+   * @param shadowCache The loaded shadow copy
+   */
+  @Override
+  public void publishShadowCache(AbstractSyncLoaderCache shadowCache) {
+    RateCache shadow = (RateCache) shadowCache;
+
+    PriceModelCache = shadow.PriceModelCache;
+    CompiledPriceModelCache = shadow.CompiledPriceModelCache;
+  }
+
   /**
    * Clear down the cache contents in the case that we are ordered to reload
    */
   @Override
   public void clearCacheObjects() {
     PriceModelCache.clear();
+    CompiledPriceModelCache.clear();
   }
 
   /**
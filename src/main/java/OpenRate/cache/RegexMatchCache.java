@@ -67,9 +67,13 @@ import java.io.IOException;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -82,6 +86,20 @@ import java.util.regex.PatternSyntaxException;
  * pattern will be read from the first row of the data that is read from the
  * input source. Thereafter, all rows must have the same form, which will be
  * defined as the form factor of the data.
+ *
+ * By default each search runs through the entries of the group in turn. With
+ * the "MatchMode" property set to "Compiled", each group is compiled on the
+ * first search after loading:
+ *  - the column with the most exact literal values (regexes without any
+ *    special characters) is indexed in a hash, so that only the entries with
+ *    the searched value, or a non literal value, in that column are checked
+ *  - literal values are compared as strings, not with a regex
+ *  - numeric parameters are parsed at most once per search
+ *  - the regex matchers are kept per thread and reused
+ *  - the results of the most recent searches are kept per thread, the number
+ *    being set by the "MatchCacheSize" property (default 1000, 0 to disable)
+ * The entries are still checked in the order they were defined, so the first
+ * match returned is the same in both modes.
  */
 public class RegexMatchCache
         extends AbstractSyncLoaderCache {
@@ -99,6 +117,14 @@ public class RegexMatchCache
   private final static String SERVICE_GROUP_COUNT = "GroupCount";
   private final static String SERVICE_DUMP_MAP = "DumpMap";
 
+  // The configuration items for the compiled mode
+  private final static String SERVICE_MATCH_MODE = "MatchMode";
+  private final static String SERVICE_MATCH_CACHE_SIZE = "MatchCacheSize";
+
+  // if we are using the compiled mode, and the size of the per thread result cache
+  private boolean compiledMode = false;
+  private int matchCacheSize = 1000;
+
   /* The SearchMap is the regular map that we will have to search through. This 
    * is a single entry that is grouped into a search group. The match value is
    * one of [RegularExpression|Numerical|RegexExclude], driven by the match type.
@@ -124,6 +150,9 @@ public class RegexMatchCache
     // Or this if we are dealing with a real regex
     Pattern[] matchPattern;
 
+    // If the regex has no special characters, the literal value it matches
+    String[] matchLiteral;
+
     // The results list
     ArrayList<String> Results = null;
   }
@@ -134,6 +163,415 @@ public class RegexMatchCache
   private class SearchGroup {
 
     ArrayList<SearchMap> SearchGroup;
+
+    // The compiled form of the group, built on the first search after loading
+    volatile CompiledGroup compiledGroup = null;
+
+    /**
+     * Get the compiled form of the group, compiling it if needed. This is
+     * synchronized so that only one thread compiles a group.
+     *
+     * @return The compiled group
+     */
+    synchronized CompiledGroup getCompiledGroup() {
+      if (compiledGroup == null) {
+        compiledGroup = new CompiledGroup(SearchGroup);
+      }
+
+      return compiledGroup;
+    }
+  }
+
+  /* The CompiledGroup is the search structure used in compiled mode. The
+   * entries are held in an array in the order they were defined. The column
+   * with the most literal values is indexed: the entries with a literal value
+   * in this column are listed under that value, the rest are listed as
+   * "others". A search merges the list for the parameter value with the
+   * others, keeping the defined order, so the first match is the same as for
+   * a search through all of the entries.
+   */
+  private class CompiledGroup {
+
+    // the entries in the group, in order
+    private final SearchMap[] maps;
+
+    // the number of columns in the widest entry
+    private final int width;
+
+    // the indexed column, or -1 if no column has literal values
+    private final int indexColumn;
+
+    // the entries with each literal value in the indexed column
+    private final HashMap<String, int[]> literalIndex = new HashMap<>();
+
+    // the entries without a literal value in the indexed column
+    private final int[] otherMaps;
+
+    // all of the entries, used if the search does not reach the indexed column
+    private final int[] allMaps;
+
+    // the per thread search state
+    private final ThreadLocal<MatchContext> contexts = new ThreadLocal<MatchContext>() {
+      @Override
+      protected MatchContext initialValue() {
+        return new MatchContext(maps.length * width, width);
+      }
+    };
+
+    // stored in the result cache for a search which found nothing
+    private final SearchMap noMatch = new SearchMap();
+
+    /**
+     * Compile the group.
+     *
+     * @param searchMaps The entries of the group in order
+     */
+    CompiledGroup(ArrayList<SearchMap> searchMaps) {
+      maps = searchMaps.toArray(new SearchMap[searchMaps.size()]);
+
+      int maxWidth = 0;
+      for (SearchMap tmpSearchMap : maps) {
+        maxWidth = Math.max(maxWidth, tmpSearchMap.matchType.length);
+      }
+      width = maxWidth;
+
+      // Find the column with the most literals
+      int bestColumn = -1;
+      int bestCount = 0;
+      for (int column = 0; column < width; column++) {
+        int count = 0;
+        for (SearchMap tmpSearchMap : maps) {
+          if (getLiteral(tmpSearchMap, column) != null) {
+            count++;
+          }
+        }
+
+        if (count > bestCount) {
+          bestColumn = column;
+          bestCount = count;
+        }
+      }
+      indexColumn = bestColumn;
+
+      // Build the index, keeping the order of the entries in each list
+      HashMap<String, ArrayList<Integer>> tmpIndex = new HashMap<>();
+      ArrayList<Integer> tmpOthers = new ArrayList<>();
+      for (int map = 0; map < maps.length; map++) {
+        String literal = getLiteral(maps[map], indexColumn);
+
+        if (literal == null) {
+          tmpOthers.add(map);
+        } else {
+          ArrayList<Integer> tmpList = tmpIndex.get(literal);
+          if (tmpList == null) {
+            tmpList = new ArrayList<>();
+            tmpIndex.put(literal, tmpList);
+          }
+          tmpList.add(map);
+        }
+      }
+
+      for (Map.Entry<String, ArrayList<Integer>> entry : tmpIndex.entrySet()) {
+        literalIndex.put(entry.getKey(), toIntArray(entry.getValue()));
+      }
+      otherMaps = toIntArray(tmpOthers);
+
+      allMaps = new int[maps.length];
+      for (int map = 0; map < maps.length; map++) {
+        allMaps[map] = map;
+      }
+    }
+
+    /**
+     * Find the first entry matching the parameters.
+     *
+     * @param Parameters The parameters, none of which may be null
+     * @return The matching entry, or null if there is none
+     */
+    SearchMap findFirst(String[] Parameters) {
+      MatchContext context = contexts.get();
+
+      // see if we did this search recently
+      if (context.recentResults != null) {
+        context.probeKey.set(Parameters);
+        SearchMap recent = context.recentResults.get(context.probeKey);
+        if (recent != null) {
+          return (recent == noMatch) ? null : recent;
+        }
+      }
+
+      context.startSearch();
+
+      SearchMap result = null;
+      boolean useIndex = (indexColumn >= 0 && indexColumn < Parameters.length);
+      int[] indexed = useIndex ? getIndexedMaps(Parameters[indexColumn]) : EMPTY_INDEX;
+      int[] others = useIndex ? otherMaps : allMaps;
+      int indexedPos = 0;
+      int otherPos = 0;
+
+      // merge the two lists, keeping the defined order
+      while (indexedPos < indexed.length || otherPos < others.length) {
+        int map;
+        if (otherPos == others.length
+                || (indexedPos < indexed.length && indexed[indexedPos] < others[otherPos])) {
+          map = indexed[indexedPos++];
+        } else {
+          map = others[otherPos++];
+        }
+
+        if (matches(context, map, Parameters)) {
+          result = maps[map];
+          break;
+        }
+      }
+
+      if (context.recentResults != null) {
+        context.recentResults.put(new ParameterKey(Parameters.clone()), (result == null) ? noMatch : result);
+      }
+
+      return result;
+    }
+
+    /**
+     * Find all of the entries matching the parameters, in order.
+     *
+     * @param Parameters The parameters, none of which may be null
+     * @param matches The list to add the first result of each match to
+     */
+    void findAll(String[] Parameters, ArrayList<String> matches) {
+      MatchContext context = contexts.get();
+      context.startSearch();
+
+      boolean useIndex = (indexColumn >= 0 && indexColumn < Parameters.length);
+      int[] indexed = useIndex ? getIndexedMaps(Parameters[indexColumn]) : EMPTY_INDEX;
+      int[] others = useIndex ? otherMaps : allMaps;
+      int indexedPos = 0;
+      int otherPos = 0;
+
+      while (indexedPos < indexed.length || otherPos < others.length) {
+        int map;
+        if (otherPos == others.length
+                || (indexedPos < indexed.length && indexed[indexedPos] < others[otherPos])) {
+          map = indexed[indexedPos++];
+        } else {
+          map = others[otherPos++];
+        }
+
+        if (matches(context, map, Parameters)) {
+          matches.add(maps[map].Results.get(0));
+        }
+      }
+    }
+
+    /**
+     * Get the entries with the parameter value as the literal value in the
+     * indexed column.
+     */
+    private int[] getIndexedMaps(String parameter) {
+      int[] indexed = literalIndex.get(parameter);
+      return (indexed == null) ? EMPTY_INDEX : indexed;
+    }
+
+    /**
+     * Check one entry against the parameters. This is the same check as in the
+     * search through all of the entries, but literals are compared as strings,
+     * matchers are reused and numeric parameters are parsed only once.
+     */
+    private boolean matches(MatchContext context, int map, String[] Parameters) {
+      SearchMap tmpSearchMap = maps[map];
+
+      for (int i = 0; i < Parameters.length; i++) {
+        switch (tmpSearchMap.matchType[i]) {
+          // Regex inclusion case
+          case 0: {
+            String literal = tmpSearchMap.matchLiteral[i];
+            if (literal != null) {
+              if (!literal.equals(Parameters[i])) {
+                return false;
+              }
+            } else if (!context.getMatcher(map * width + i, tmpSearchMap.matchPattern[i], Parameters[i]).matches()) {
+              return false;
+            }
+            break;
+          }
+
+          // Regex exclusion case
+          case 6: {
+            if (context.getMatcher(map * width + i, tmpSearchMap.matchPattern[i], Parameters[i]).matches()) {
+              return false;
+            }
+            break;
+          }
+
+          // "=" case
+          case 1: {
+            if (tmpSearchMap.matchValue[i] != context.getValue(i, Parameters[i])) {
+              return false;
+            }
+            break;
+          }
+
+          // ">" case
+          case 2: {
+            if (context.getValue(i, Parameters[i]) <= tmpSearchMap.matchValue[i]) {
+              return false;
+            }
+            break;
+          }
+
+          // "<" case
+          case 3: {
+            if (context.getValue(i, Parameters[i]) >= tmpSearchMap.matchValue[i]) {
+              return false;
+            }
+            break;
+          }
+
+          // ">=" case
+          case 4: {
+            if (context.getValue(i, Parameters[i]) < tmpSearchMap.matchValue[i]) {
+              return false;
+            }
+            break;
+          }
+
+          // "<=" case
+          case 5: {
+            if (context.getValue(i, Parameters[i]) > tmpSearchMap.matchValue[i]) {
+              return false;
+            }
+            break;
+          }
+        }
+      }
+
+      return true;
+    }
+
+    /**
+     * Get the literal value of a column of an entry, or null if it is not a
+     * literal.
+     */
+    private String getLiteral(SearchMap tmpSearchMap, int column) {
+      if (column < 0 || column >= tmpSearchMap.matchType.length || tmpSearchMap.matchType[column] != 0) {
+        return null;
+      }
+
+      return tmpSearchMap.matchLiteral[column];
+    }
+
+    /* The state of the searches of one thread on the group: the reusable
+     * matchers, the numeric values of the parameters of the current search,
+     * and the recent results.
+     */
+    private class MatchContext {
+
+      private final Matcher[] matchers;
+      private final double[] values;
+      private final int[] valueSearch;
+      private int search = 0;
+      private final ParameterKey probeKey = new ParameterKey(null);
+      private final LinkedHashMap<ParameterKey, SearchMap> recentResults;
+
+      MatchContext(int matcherCount, int valueCount) {
+        matchers = new Matcher[matcherCount];
+        values = new double[valueCount];
+        valueSearch = new int[valueCount];
+
+        if (matchCacheSize > 0) {
+          recentResults = new LinkedHashMap<ParameterKey, SearchMap>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ParameterKey, SearchMap> eldest) {
+              return size() > matchCacheSize;
+            }
+          };
+        } else {
+          recentResults = null;
+        }
+      }
+
+      /**
+       * Start a new search, forgetting the parsed values of the last one.
+       */
+      void startSearch() {
+        search++;
+      }
+
+      /**
+       * Get the numeric value of a parameter, parsing it if this is the first
+       * time in this search.
+       */
+      double getValue(int column, String parameter) {
+        if (valueSearch[column] != search) {
+          values[column] = Double.parseDouble(parameter);
+          valueSearch[column] = search;
+        }
+
+        return values[column];
+      }
+
+      /**
+       * Get the matcher for an entry column, reset to the parameter.
+       */
+      Matcher getMatcher(int slot, Pattern pattern, String parameter) {
+        Matcher matcher = matchers[slot];
+
+        if (matcher == null) {
+          matcher = pattern.matcher(parameter);
+          matchers[slot] = matcher;
+        } else {
+          matcher.reset(parameter);
+        }
+
+        return matcher;
+      }
+    }
+  }
+
+  /* The key for the recent results: the search parameters, with the hash code
+   * calculated once. The probe key used for the lookups is reused, and a copy
+   * of the parameters is only made when a result is stored.
+   */
+  private static class ParameterKey {
+
+    private String[] values;
+    private int hash;
+
+    ParameterKey(String[] newValues) {
+      if (newValues != null) {
+        set(newValues);
+      }
+    }
+
+    final void set(String[] newValues) {
+      values = newValues;
+      hash = Arrays.hashCode(newValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return (other instanceof ParameterKey)
+              && Arrays.equals(values, ((ParameterKey) other).values);
+    }
+  }
+
+  // an empty list of entries
+  private static final int[] EMPTY_INDEX = new int[0];
+
+  /**
+   * Convert a list of entry numbers into an array.
+   */
+  private static int[] toIntArray(ArrayList<Integer> list) {
+    int[] result = new int[list.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = list.get(i);
+    }
+    return result;
   }
 
   /**
@@ -220,6 +658,34 @@ public class RegexMatchCache
       }
     }
 
+    // Get the match mode
+    tmpValue = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
+            CacheName,
+            SERVICE_MATCH_MODE,
+            "Linear");
+    if (tmpValue.equalsIgnoreCase("Compiled")) {
+      compiledMode = true;
+    } else if (tmpValue.equalsIgnoreCase("Linear")) {
+      compiledMode = false;
+    } else {
+      message = "Value provided for property <" + SERVICE_MATCH_MODE
+              + "> must be Linear or Compiled. Received value <" + tmpValue + ">";
+      throw new InitializationException(message, CacheName);
+    }
+
+    // Get the size of the recent results cache used in compiled mode
+    tmpValue = PropertyUtils.getPropertyUtils().getDataCachePropertyValueDef(ResourceName,
+            CacheName,
+            SERVICE_MATCH_CACHE_SIZE,
+            "1000");
+    try {
+      matchCacheSize = Integer.parseInt(tmpValue);
+    } catch (NumberFormatException nfe) {
+      message = "Value provided for property <" + SERVICE_MATCH_CACHE_SIZE
+              + "> was not numeric. Received value <" + tmpValue + ">";
+      throw new InitializationException(message, CacheName);
+    }
+
     // Now perform the base initialisation
     super.loadCache(ResourceName, CacheName);
   }
@@ -271,6 +737,7 @@ public class RegexMatchCache
     tmpSearchMap.matchPattern = new Pattern[checkedFields.length];
     tmpSearchMap.matchType = new int[checkedFields.length];
     tmpSearchMap.matchValue = new double[checkedFields.length];
+    tmpSearchMap.matchLiteral = new String[checkedFields.length];
 
     for (i = 0; i < fields.length; i++) {
       // get the short version of the string for understanding what it is
@@ -362,12 +829,65 @@ public class RegexMatchCache
           }
 
           tmpSearchMap.matchType[i] = 0;
+
+          // remember plain values, so that they can be indexed
+          if (isLiteral(fields[i])) {
+            tmpSearchMap.matchLiteral[i] = fields[i];
+          }
         }
       }
     }
 
     tmpSearchMap.Results = checkedResultList;
     tmpSearchGroup.SearchGroup.add(tmpSearchMap);
+
+    // The group must be compiled again
+    tmpSearchGroup.compiledGroup = null;
+  }
+
+  /**
+   * Check if a regex matches only the exact value written, because it has no
+   * characters with a special meaning.
+   *
+   * @param regex The regex to check
+   * @return true if the regex is a plain value
+   */
+  private static boolean isLiteral(String regex) {
+    for (int i = 0; i < regex.length(); i++) {
+      if ("\\^$.|?*+()[]{}".indexOf(regex.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the compiled form of the group for the search, if we are in compiled
+   * mode. Searches with a null parameter are not compiled, so that they
+   * behave exactly as they do when searching through all of the entries.
+   *
+   * @param tmpSearchGroup The group to search
+   * @param Parameters The search parameters
+   * @return The compiled group, or null to search through all the entries
+   */
+  private CompiledGroup getCompiledGroup(SearchGroup tmpSearchGroup, String[] Parameters) {
+    if (!compiledMode) {
+      return null;
+    }
+
+    for (String parameter : Parameters) {
+      if (parameter == null) {
+        return null;
+      }
+    }
+
+    CompiledGroup tmpCompiledGroup = tmpSearchGroup.compiledGroup;
+    if (tmpCompiledGroup == null) {
+      tmpCompiledGroup = tmpSearchGroup.getCompiledGroup();
+    }
+
+    return tmpCompiledGroup;
   }
 
   /**
@@ -448,6 +968,12 @@ public class RegexMatchCache
       // Return a default value
       return null;
     } else {
+      // Use the compiled form if we have it
+      CompiledGroup tmpCompiledGroup = getCompiledGroup(tmpSearchGroup, Parameters);
+      if (tmpCompiledGroup != null) {
+        return tmpCompiledGroup.findFirst(Parameters);
+      }
+
       // Iterate thorough the entries in the group
       Iterator<SearchMap> GroupIter = tmpSearchGroup.SearchGroup.listIterator();
 
@@ -584,6 +1110,13 @@ public class RegexMatchCache
       // Return a default value, we did not find the group
       return matches;
     } else {
+      // Use the compiled form if we have it
+      CompiledGroup tmpCompiledGroup = getCompiledGroup(tmpSearchGroup, Parameters);
+      if (tmpCompiledGroup != null) {
+        tmpCompiledGroup.findAll(Parameters, matches);
+        return matches;
+      }
+
       // Iterate thorough the entries in the group
       Iterator<SearchMap> GroupIter = tmpSearchGroup.SearchGroup.listIterator();
 
@@ -61,6 +61,7 @@ import OpenRate.exception.InitializationException;
 import OpenRate.logging.LogUtil;
 import OpenRate.record.TimePacket;
 import OpenRate.utils.PropertyUtils;
+import OpenRate.utils.ZoneOffsetCache;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -90,6 +91,13 @@ import java.util.*;
  * NOTE: that the end times should be defined EXCLUSIVE so that the last minute
  * of the day is 23:59 NOT 00:00
  *
+ * For the lookups, each model is compiled (on first use after loading) into a
+ * table holding the interval to use for each minute of the week, so that a
+ * lookup is an array access and splitting an event over the intervals walks
+ * the table by index. The day boundaries, day of week and time of day of the
+ * event are calculated using the cached day offsets of the time zone, so that
+ * the calendar is only needed for days close to a daylight savings change.
+ *
  * @author i.sparkes
  */
 public class TimeModelCache
@@ -153,8 +161,100 @@ public class TimeModelCache
 
     // The vectors for the individual days
     TimeIntervalNode[] Intervals;
+
+    // The lookup table, built on first use and discarded when we change
+    volatile CompiledTimeMap compiled = null;
+
+    /**
+     * Get the lookup table for the map, building it if needed.
+     *
+     * @return The lookup table
+     */
+    synchronized CompiledTimeMap getCompiled() {
+      if (compiled == null) {
+        compiled = new CompiledTimeMap(Intervals);
+      }
+
+      return compiled;
+    }
+  }
+
+  /**
+   * The lookup table of a TimeMap. For each minute of the week (day * 1440 +
+   * minute) we hold the index of the interval which applies, which is the
+   * first interval in the list for the day that covers the minute, or -1. For
+   * each interval we hold the last minute it covers and its result, so that
+   * splitting an event gives the same packets as walking the lists.
+   */
+  private static class CompiledTimeMap {
+
+    // The interval for each minute of the week, or -1
+    final int[] slotInterval = new int[7 * MINUTES_PER_DAY];
+
+    // The last minute covered by each interval
+    final int[] intervalEnd;
+
+    // The result of each interval
+    final String[] intervalResult;
+
+    // Days which have no intervals at all
+    final boolean[] emptyDay = new boolean[7];
+
+    CompiledTimeMap(TimeIntervalNode[] Intervals) {
+      int intervalCount = 0;
+      for (TimeIntervalNode dayNode : Intervals) {
+        for (TimeIntervalNode node = dayNode; node != null; node = node.child) {
+          intervalCount++;
+        }
+      }
+
+      intervalEnd = new int[intervalCount];
+      intervalResult = new String[intervalCount];
+      Arrays.fill(slotInterval, -1);
+
+      int index = 0;
+      for (int day = 0; day < 7; day++) {
+        emptyDay[day] = (Intervals[day] == null);
+
+        for (TimeIntervalNode node = Intervals[day]; node != null; node = node.child) {
+          intervalEnd[index] = node.TimeTo;
+          intervalResult[index] = node.Result;
+
+          // earlier intervals take precedence where they overlap
+          int from = Math.max(node.TimeFrom, 0);
+          int to = Math.min(node.TimeTo, MINUTES_PER_DAY - 1);
+          for (int minute = from; minute <= to; minute++) {
+            if (slotInterval[day * MINUTES_PER_DAY + minute] < 0) {
+              slotInterval[day * MINUTES_PER_DAY + minute] = index;
+            }
+          }
+
+          index++;
+        }
+      }
+    }
+  }
+
+  /**
+   * The zone of the calendar last passed to us, with its day offsets
+   */
+  private static class ZoneBinding {
+
+    final TimeZone zone;
+    final ZoneOffsetCache zoneOffsets;
+
+    ZoneBinding(TimeZone zone) {
+      this.zone = zone;
+      this.zoneOffsets = ZoneOffsetCache.getInstance(zone);
+    }
   }
 
+  // The number of minutes in a day
+  private static final int MINUTES_PER_DAY = 24 * 60;
+
+  // The zone we are working in
+  private volatile ZoneBinding zoneBinding = null;
+
   /**
    * This holds all of the configurations that make up a time model.
    */
@@ -306,6 +406,9 @@ public class TimeModelCache
       throw new InitializationException(message, getSymbolicName());
     }
     tmpIntervalNode.Result = ZoneResult;
+
+    // the lookup table must be rebuilt
+    tmpTimeMap.compiled = null;
   }
 
   /**
@@ -319,61 +422,19 @@ public class TimeModelCache
    * @return The return value
    */
   public String getEntry(String Plan, int Day, int Time) {
-    TimeIntervalNode tmpIntervalNode;
-    String Model;
-    int CDRMinute;
-    TimeMap tmpTimeMap;
-    boolean finished;
-
-    // Find the correct Time Model for the plan
-    Model = ModelCache.get(Plan);
+    CompiledTimeMap compiled = getCompiledTimeMap(Plan, Day);
 
-    if (Model == null) {
+    if (compiled == null || Time < 0 || Time >= MINUTES_PER_DAY) {
       return NO_TIME_MATCH;
     }
 
-    // Get the interval
-    tmpTimeMap = TimeModelCache.get(Model);
-
-    if (tmpTimeMap == null) {
-      OpenRate.getOpenRateFrameworkLog().warning("TimeMap for model <" + Plan + "> and day <" + Day + "> is empty in <" + getSymbolicName() + ">");
-      return NO_TIME_MATCH;
-    }
+    int interval = compiled.slotInterval[Day * MINUTES_PER_DAY + Time];
 
-    // Get the root node for the day
-    if (Day < 0 | Day > 6) {
-      OpenRate.getOpenRateFrameworkLog().warning("Day <" + Day + "> is outside of the valid range of 0 (Sunday) to 6 (Saturday)");
+    if (interval < 0) {
       return NO_TIME_MATCH;
     }
 
-    tmpIntervalNode = tmpTimeMap.Intervals[Day];
-
-    // Search through the Day Segments
-    CDRMinute = (Time);
-    finished = false;
-
-    // search the nodes
-    while (!finished) {
-      if (tmpIntervalNode == null) {
-        OpenRate.getOpenRateFrameworkLog().warning("TimeMap for model <" + Plan + "> and day <" + Day + "> is empty in <" + getSymbolicName() + ">");
-        return NO_TIME_MATCH;
-      }
-
-      if (CDRMinute >= tmpIntervalNode.TimeFrom) {
-        if (CDRMinute <= tmpIntervalNode.TimeTo) {
-          return tmpIntervalNode.Result;
-        }
-      }
-
-      if (tmpIntervalNode.child != null) {
-        tmpIntervalNode = tmpIntervalNode.child;
-      } else {
-        // run out of segments
-        finished = true;
-      }
-    }
-
-    return NO_TIME_MATCH;
+    return compiled.intervalResult[interval];
   }
 
   /**
@@ -395,6 +456,7 @@ public class TimeModelCache
     int TMStartSecond;
     int TMEndSecond;
     int TotalDuration;
+    int secondOfDay;
 
     // get the total duration, used for calculating the splitting factor
     TotalDuration = (int) (CDREndDate - CDRStartDate);
@@ -410,14 +472,19 @@ public class TimeModelCache
     long tmpStartDateCounter = CDRStartDate;
     long tmpEndDateCounter;
     ArrayList<TimePacket> packets = new ArrayList<>(1);
-    ArrayList<TimePacket> dayPackets;
+    ZoneOffsetCache zoneOffsets = getZoneOffsets(gCal);
 
     // get the first start of day period
-    gCal.setTimeInMillis(CDRStartDate * 1000);
-    gCal.set(Calendar.HOUR_OF_DAY, 0);
-    gCal.set(Calendar.MINUTE, 0);
-    gCal.set(Calendar.SECOND, 0);
-    tmpEndDateCounter = gCal.getTimeInMillis() / 1000;
+    tmpEndDateCounter = zoneOffsets.getDayStart(CDRStartDate);
+
+    if (tmpEndDateCounter == Long.MIN_VALUE) {
+      // close to a daylight savings change, so let the calendar decide
+      gCal.setTimeInMillis(CDRStartDate * 1000);
+      gCal.set(Calendar.HOUR_OF_DAY, 0);
+      gCal.set(Calendar.MINUTE, 0);
+      gCal.set(Calendar.SECOND, 0);
+      tmpEndDateCounter = gCal.getTimeInMillis() / 1000;
+    }
 
     // loop until we have covered the whole period
     while (tmpStartDateCounter < CDREndDate) {
@@ -430,29 +497,23 @@ public class TimeModelCache
         tmpEndDateCounter = CDREndDate;
 
         // Get the prepared end date
-        gCal.setTimeInMillis(tmpEndDateCounter * 1000);
-        TMEndTime = gCal.get(Calendar.HOUR_OF_DAY) * 60;
-        TMEndTime += gCal.get(Calendar.MINUTE);
-        TMEndSecond = gCal.get(Calendar.SECOND);
+        secondOfDay = zoneOffsets.getSecondOfDay(tmpEndDateCounter);
+        TMEndTime = secondOfDay / 60;
+        TMEndSecond = secondOfDay % 60;
       } else {
         // Get the default end of day prepared information
-        TMEndTime = 24 * 60 - 1;
+        TMEndTime = MINUTES_PER_DAY - 1;
         TMEndSecond = 60;
       }
 
       // prepare the information for zoning
-      gCal.setTimeInMillis(tmpStartDateCounter * 1000);
-      TMStartDayOfWeek = gCal.get(Calendar.DAY_OF_WEEK) - 1;
-      TMStartTime = gCal.get(Calendar.HOUR_OF_DAY) * 60;
-      TMStartTime += gCal.get(Calendar.MINUTE);
-      TMStartSecond = gCal.get(Calendar.SECOND);
+      secondOfDay = zoneOffsets.getSecondOfDay(tmpStartDateCounter);
+      TMStartDayOfWeek = zoneOffsets.getDayOfWeek(tmpStartDateCounter) - 1;
+      TMStartTime = secondOfDay / 60;
+      TMStartSecond = secondOfDay % 60;
 
       // Calculate the day based on the parameters
-      dayPackets = getDayEntry(TimeModel, TMStartDayOfWeek, TMStartTime, TMStartSecond, TMEndTime, TMEndSecond, TotalDuration);
-
-      // add to the current list
-      packets.addAll(dayPackets);
-      dayPackets.clear();
+      addDayPackets(packets, TimeModel, TMStartDayOfWeek, TMStartTime, TMStartSecond, TMEndTime, TMEndSecond, TotalDuration);
 
       // move on
       tmpStartDateCounter = tmpEndDateCounter;
@@ -463,8 +524,9 @@ public class TimeModelCache
   }
 
   /**
-   * Get the time packets for the given day
+   * Get the time packets for the given day, and add them to the list
    *
+   * @param packets The list to add the packets to
    * @param TimeModel The time model to evaluate for
    * @param DayofWeek The day of the week we are working on
    * @param StartTime The start time to evaluate for
@@ -472,58 +534,41 @@ public class TimeModelCache
    * @param EndTime The end time to evaluate for
    * @param EndSecond The end second to evaluate for
    * @param TotalDuration The original duration of the call
-   * @return The time packets in the the given day
    */
-  private ArrayList<TimePacket> getDayEntry(String TimeModel, int DayofWeek, int StartTime, int StartSecond, int EndTime, int EndSecond, int TotalDuration) {
-    TimeIntervalNode tmpNode;
-    ArrayList<TimePacket> packets = new ArrayList<>(1);
-    int tmpStartTime;
-    int tmpEndTime;
-    int tmpStartSecond;
-
-    tmpStartTime = StartTime;
-    tmpStartSecond = StartSecond;
-    tmpEndTime = EndTime;
-
-    do {
-      tmpNode = getEntryWithNode(TimeModel, DayofWeek, tmpStartTime);
-
-      if (tmpNode != null) {
-        if (tmpNode.TimeTo == 24 * 60 - 1) {
-          if (EndTime <= tmpNode.TimeTo) {
-            // last packet for the day - create and we have finished
-            tmpEndTime = EndTime;
-            CreateTimePacket(packets, DayofWeek, tmpStartTime, tmpStartSecond, tmpEndTime, EndSecond, TimeModel, tmpNode.Result, TotalDuration);
-            break;
-          } else {
-            // normal packet
-            tmpEndTime = tmpNode.TimeTo;
-            CreateTimePacket(packets, DayofWeek, tmpStartTime, tmpStartSecond, tmpEndTime, EndSecond, TimeModel, tmpNode.Result, TotalDuration);
-
-            // update the temp variables
-            tmpStartTime = tmpNode.TimeTo;
-            tmpEndTime = EndTime;
-            tmpStartSecond = 0;
-          }
-        } else {
-          if (tmpEndTime <= tmpNode.TimeTo) {
-            // this covers the remaining time
-            CreateTimePacket(packets, DayofWeek, tmpStartTime, tmpStartSecond, tmpEndTime, EndSecond, TimeModel, tmpNode.Result, TotalDuration);
-            break;
-          } else {
-            // normal packet, and there is more to do
-            CreateTimePacket(packets, DayofWeek, tmpStartTime, tmpStartSecond, tmpNode.TimeTo, 60, TimeModel, tmpNode.Result, TotalDuration);
-
-            // Update the variables
-            tmpStartTime = tmpNode.TimeTo + 1;
-            tmpEndTime = EndTime;
-            tmpStartSecond = 0;
-          }
-        }
+  private void addDayPackets(ArrayList<TimePacket> packets, String TimeModel, int DayofWeek, int StartTime, int StartSecond, int EndTime, int EndSecond, int TotalDuration) {
+    CompiledTimeMap compiled = getCompiledTimeMap(TimeModel, DayofWeek);
+
+    if (compiled == null) {
+      return;
+    }
+
+    int tmpStartTime = StartTime;
+    int tmpStartSecond = StartSecond;
+    int dayBase = DayofWeek * MINUTES_PER_DAY;
+
+    while (tmpStartTime >= 0 && tmpStartTime < MINUTES_PER_DAY) {
+      int interval = compiled.slotInterval[dayBase + tmpStartTime];
+
+      if (interval < 0) {
+        // not covered by the model
+        break;
       }
-    } while (tmpNode != null);
 
-    return packets;
+      int intervalEnd = compiled.intervalEnd[interval];
+
+      if (EndTime <= intervalEnd) {
+        // this covers the remaining time
+        CreateTimePacket(packets, DayofWeek, tmpStartTime, tmpStartSecond, EndTime, EndSecond, TimeModel, compiled.intervalResult[interval], TotalDuration);
+        break;
+      }
+
+      // normal packet, and there is more to do
+      CreateTimePacket(packets, DayofWeek, tmpStartTime, tmpStartSecond, intervalEnd, 60, TimeModel, compiled.intervalResult[interval], TotalDuration);
+
+      // Update the variables
+      tmpStartTime = intervalEnd + 1;
+      tmpStartSecond = 0;
+    }
   }
 
   /**
@@ -567,14 +612,15 @@ public class TimeModelCache
   }
 
   /**
-   * Get a value from the TimeModelCache
+   * Get the lookup table for the model of a plan, checking the day.
+   *
+   * @param Plan The time model name
+   * @param Day The day to check
+   * @return The lookup table, or null if there is none
    */
-  private TimeIntervalNode getEntryWithNode(String Plan, int Day, int Time) {
-    TimeIntervalNode tmpIntervalNode;
+  private CompiledTimeMap getCompiledTimeMap(String Plan, int Day) {
     String Model;
-    int CDRMinute;
     TimeMap tmpTimeMap;
-    boolean finished;
 
     // Find the correct Time Model for the plan
     Model = ModelCache.get(Plan);
@@ -597,34 +643,33 @@ public class TimeModelCache
       return null;
     }
 
-    tmpIntervalNode = tmpTimeMap.Intervals[Day];
+    CompiledTimeMap compiled = tmpTimeMap.getCompiled();
 
-    // Search through the Day Segments
-    CDRMinute = (Time);
-    finished = false;
+    if (compiled.emptyDay[Day]) {
+      OpenRate.getOpenRateFrameworkLog().warning("TimeMap for model <" + Plan + "> and day <" + Day + "> is empty in <" + getSymbolicName() + ">");
+      return null;
+    }
 
-    // search the nodes
-    while (!finished) {
-      if (tmpIntervalNode == null) {
-        OpenRate.getOpenRateFrameworkLog().warning("TimeMap for model <" + Plan + "> and day <" + Day + "> is empty in <" + getSymbolicName() + ">");
-        return null;
-      }
+    return compiled;
+  }
 
-      if (CDRMinute >= tmpIntervalNode.TimeFrom) {
-        if (CDRMinute <= tmpIntervalNode.TimeTo) {
-          return tmpIntervalNode;
-        }
-      }
+  /**
+   * Get the day offsets for the time zone of the calendar we were given.
+   * Callers normally pass the same calendar each time, so we keep the last.
+   *
+   * @param gCal The calendar
+   * @return The day offsets of the calendar time zone
+   */
+  private ZoneOffsetCache getZoneOffsets(GregorianCalendar gCal) {
+    TimeZone zone = gCal.getTimeZone();
+    ZoneBinding binding = zoneBinding;
 
-      if (tmpIntervalNode.child != null) {
-        tmpIntervalNode = tmpIntervalNode.child;
-      } else {
-        // run out of segments
-        finished = true;
-      }
+    if (binding == null || binding.zone != zone) {
+      binding = new ZoneBinding(zone);
+      zoneBinding = binding;
     }
 
-    return null;
+    return binding.zoneOffsets;
   }
 
 // -----------------------------------------------------------------------------
@@ -67,6 +67,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -118,19 +119,97 @@ public class ValiditySegmentCache
      extends AbstractSyncLoaderCache
 {
   // This stores the index to all the groups.
-  private HashMap<String, HashMap<String, ValidityNode>> GroupCache;
+  private HashMap<String, HashMap<String, ValiditySegments>> GroupCache;
 
  /**
-  * A ValidityNode is a segment of validity of a resource. These are chained
-  * together in a sorted linked list. The sorting is done at insertion time
-  * into the list, meaning that lookups at run time can be optimised.
+  * The segments of validity of a resource. These are held in arrays sorted
+  * by start time. The sorting is done at insertion time, and because the
+  * segments may not overlap, the lookup at run time is a binary search.
   */
-  private class ValidityNode
+  private static class ValiditySegments
   {
-    long           TimeFrom;
-    long           TimeTo;
-    ArrayList<String> Results = null;
-    ValidityNode   child = null;
+    private long[] timeFrom = new long[2];
+    private long[] timeTo = new long[2];
+    private ArrayList<?>[] results = new ArrayList<?>[2];
+    private int count = 0;
+
+   /**
+    * Insert a segment in its place, if it does not overlap the segments
+    * before and after it.
+    *
+    * @return true if the segment was inserted, false if it overlaps
+    */
+    private boolean insert(long startTime, long endTime, ArrayList<String> newResults)
+    {
+      // The position is after all the segments starting before us
+      int position = Arrays.binarySearch(timeFrom, 0, count, startTime);
+      if (position >= 0)
+      {
+        // Starts at the same time as an existing segment
+        return false;
+      }
+      position = -position - 1;
+
+      // We must start after the previous one ends, and end before the next
+      // one starts
+      if (position > 0)
+      {
+        if (startTime <= timeTo[position - 1])
+        {
+          return false;
+        }
+      }
+      else if (count > 0 && startTime <= CommonConfig.LOW_DATE)
+      {
+        return false;
+      }
+
+      if (position < count && endTime > timeFrom[position])
+      {
+        return false;
+      }
+
+      if (count == timeFrom.length)
+      {
+        int newSize = count * 2;
+        timeFrom = Arrays.copyOf(timeFrom, newSize);
+        timeTo = Arrays.copyOf(timeTo, newSize);
+        results = Arrays.copyOf(results, newSize);
+      }
+
+      System.arraycopy(timeFrom, position, timeFrom, position + 1, count - position);
+      System.arraycopy(timeTo, position, timeTo, position + 1, count - position);
+      System.arraycopy(results, position, results, position + 1, count - position);
+      timeFrom[position] = startTime;
+      timeTo[position] = endTime;
+      results[position] = newResults;
+      count++;
+
+      return true;
+    }
+
+   /**
+    * Find the segment valid at the time.
+    *
+    * @return The results of the segment, or null if there is none
+    */
+    @SuppressWarnings("unchecked")
+    private ArrayList<String> find(long time)
+    {
+      // Find the last segment starting at or before the time
+      int position = Arrays.binarySearch(timeFrom, 0, count, time);
+      if (position < 0)
+      {
+        position = -position - 2;
+      }
+
+      if (position >= 0 && timeTo[position] > time)
+      {
+        return (ArrayList<String>) results[position];
+      }
+
+      return null;
+    }
   }
 
   // List of Services that this Client supports
@@ -158,8 +237,8 @@ public class ValiditySegmentCache
  /**
   * Add a value into the Validity Segment Cache, defining the result
   * value that should be returned in the case of a match.
-  * The entries are ordered during the loading in a linked list sorted by
-  * validity date. This makes the search at run time easier.
+  * The entries are ordered during the loading in arrays sorted by validity
+  * date. This makes the search at run time a binary search.
   *
   * @param Group The data group to add the entry to
   * @param ResourceID The resourceID of the entry to add
@@ -170,12 +249,8 @@ public class ValiditySegmentCache
   public void addEntry(String Group, String ResourceID, long StartTime,
                        long EndTime, ArrayList<String> Results)
   {
-    long         tmpTimeFrom;
-    long         lastValidTo;
-    HashMap<String, ValidityNode>      tmpResourceCache;
-    ValidityNode tmpValidityNode;
-    ValidityNode tmpValidityNextNode;
-    ValidityNode newNode;
+    HashMap<String, ValiditySegments> tmpResourceCache;
+    ValiditySegments tmpSegments;
 
     // See if we already have the group cache for this Group
     if (!GroupCache.containsKey(Group))
@@ -193,93 +268,16 @@ public class ValiditySegmentCache
     }
 
     // Now add the validity segment into the list
-    if (!tmpResourceCache.containsKey(ResourceID))
+    tmpSegments = tmpResourceCache.get(ResourceID);
+    if (tmpSegments == null)
     {
-      // Create the new list
-      tmpValidityNode = new ValidityNode();
-      tmpValidityNode.TimeFrom = StartTime;
-      tmpValidityNode.TimeTo = EndTime;
-      tmpValidityNode.Results = Results;
-      tmpValidityNode.child = null;
-
-      // Add in the new node
-      tmpResourceCache.put(ResourceID, tmpValidityNode);
+      tmpSegments = new ValiditySegments();
+      tmpResourceCache.put(ResourceID, tmpSegments);
     }
-    else
-    {
-      // Recover the validity map that there is
-      tmpValidityNode = tmpResourceCache.get(ResourceID);
 
-      // preset our valid to date
-      lastValidTo = CommonConfig.LOW_DATE;
-
-      // now run down the validity periods until we find the right position
-      while (tmpValidityNode != null)
-      {
-        tmpValidityNextNode = tmpValidityNode.child;
-
-        if (tmpValidityNextNode != null)
-        {
-          tmpTimeFrom = tmpValidityNextNode.TimeFrom;
-        }
-        else
-        {
-          tmpTimeFrom = CommonConfig.HIGH_DATE;
-        }
-
-        if ((StartTime > tmpValidityNode.TimeTo) &
-            (tmpValidityNextNode == null))
-        {
-          // insert at the tail of the list if we are able
-          newNode = new ValidityNode();
-          tmpValidityNode.child = newNode;
-          newNode.TimeFrom = StartTime;
-          newNode.TimeTo = EndTime;
-          newNode.Results = Results;
-
-          // done
-          return;
-        }
-        else if ((StartTime > lastValidTo) &
-            (EndTime <= tmpValidityNode.TimeFrom))
-        {
-          // insert at the head of the list
-          newNode = new ValidityNode();
-
-          // move the information over
-          newNode.TimeFrom = tmpValidityNode.TimeFrom;
-          newNode.TimeTo = tmpValidityNode.TimeTo;
-          newNode.Results = tmpValidityNode.Results;
-          newNode.child = tmpValidityNode.child;
-
-          // add the new information
-          tmpValidityNode.TimeFrom = StartTime;
-          tmpValidityNode.TimeTo = EndTime;
-          tmpValidityNode.Results = Results;
-          tmpValidityNode.child = newNode;
-
-          // done
-          return;
-        }
-        else if ((StartTime > tmpValidityNode.TimeTo) & (EndTime <= tmpTimeFrom))
-        {
-          // insert in the middle of the list
-          newNode = new ValidityNode();
-          newNode.child = tmpValidityNode.child;
-          tmpValidityNode.child = newNode;
-          newNode.TimeFrom = StartTime;
-          newNode.TimeTo = EndTime;
-          newNode.Results = Results;
-
-          return;
-        }
-
-        // Move down the map
-        lastValidTo = tmpValidityNode.TimeTo;
-        tmpValidityNode = tmpValidityNode.child;
-      }
-
-      // If we get here, we could not insert the period
+    if (!tmpSegments.insert(StartTime, EndTime, Results))
+    {
+      // We could not insert the period
       OpenRate.getOpenRateFrameworkLog().error("Cache <" + getSymbolicName() +
             "> could not insert <" + Group + ":" + ResourceID + ":" +
             StartTime + ":" + EndTime + "> without overlap.");
@@ -297,31 +295,18 @@ public class ValiditySegmentCache
   */
   public String getValiditySegmentMatch(String Group, String ResourceID, long Time)
   {
-    HashMap<String, ValidityNode>        tmpResourceCache;
-    ValidityNode   tmpValidityNode;
+    ArrayList<String> tmpResults;
 
-    // Get the service if we know it
-    tmpResourceCache = GroupCache.get(Group);
+    tmpResults = getValiditySegmentMatchWithChildData(Group, ResourceID, Time);
 
-    if (tmpResourceCache != null)
+    if (tmpResults == null)
     {
-      tmpValidityNode = tmpResourceCache.get(ResourceID);
-
-      // Now that we have the Validity Map, get the entry
-      while (tmpValidityNode != null)
-      {
-        if ((tmpValidityNode.TimeFrom <= Time) &
-            (tmpValidityNode.TimeTo > Time))
-        {
-          return tmpValidityNode.Results.get(0);
-        }
-
-        // Move down the map
-        tmpValidityNode = tmpValidityNode.child;
-      }
+      return NO_VALIDITY_MATCH;
+    }
+    else
+    {
+      return tmpResults.get(0);
     }
-
-    return NO_VALIDITY_MATCH;
   }
 
  /**
@@ -335,32 +320,23 @@ public class ValiditySegmentCache
   */
   public ArrayList<String> getValiditySegmentMatchWithChildData(String Group, String ResourceID, long Time)
   {
-    HashMap<String, ValidityNode>        tmpResourceCache;
-    ValidityNode   tmpValidityNode;
-    ArrayList<String> Value = null;
+    HashMap<String, ValiditySegments> tmpResourceCache;
+    ValiditySegments tmpSegments;
 
     // Get the service if we know it
     tmpResourceCache = GroupCache.get(Group);
 
     if (tmpResourceCache != null)
     {
-      tmpValidityNode = tmpResourceCache.get(ResourceID);
+      tmpSegments = tmpResourceCache.get(ResourceID);
 
-      // Now that we have the Validity Map, get the entry
-      while (tmpValidityNode != null)
+      if (tmpSegments != null)
       {
-        if ((tmpValidityNode.TimeFrom <= Time) &
-            (tmpValidityNode.TimeTo > Time))
-        {
-          return tmpValidityNode.Results;
-        }
-
-        // Move down the map
-        tmpValidityNode = tmpValidityNode.child;
+        return tmpSegments.find(Time);
       }
     }
 
-    return Value;
+    return null;
   }
 
 // -----------------------------------------------------------------------------
@@ -733,7 +709,7 @@ public class ValiditySegmentCache
   public String processControlEvent(String Command, boolean Init,
                                     String Parameter)
   {
-    HashMap<String, ValidityNode> tmpResource;
+    HashMap<String, ValiditySegments> tmpResource;
     Collection<String> tmpGroups;
     Iterator<String> GroupIter;
     String tmpGroupName;
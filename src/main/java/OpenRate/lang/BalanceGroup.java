@@ -82,7 +82,9 @@ public class BalanceGroup
   private long currentRecId = 0;
 
  /**
-  * Used for locking
+  * Used for locking. Set by the balance cache to the lock stripe of the
+  * balance group, so that all the updates to the counters of the group can
+  * be made under it.
   */
   public Object balanceLock;
 
@@ -101,7 +103,7 @@ public class BalanceGroup
   * @param currentBal The current balance
   * @return The added counter
   */
-  public Counter addCounter(int counterId, long validFrom, long validTo, double currentBal)
+  public synchronized Counter addCounter(int counterId, long validFrom, long validTo, double currentBal)
   {
     CounterGroup tmpCounterGroup;
 
@@ -130,7 +132,7 @@ public class BalanceGroup
   * @param validTo The validity end date of the counter
   * @param currentBal The current balance
   */
-  public void addCounter(int counterId, long recId, long validFrom, long validTo, double currentBal)
+  public synchronized void addCounter(int counterId, long recId, long validFrom, long validTo, double currentBal)
   {
     CounterGroup tmpCounterGroup;
 
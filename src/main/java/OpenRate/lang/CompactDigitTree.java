@@ -0,0 +1,477 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compact alternative to the DigitTree for large prefix tables.
+ *
+ * The tree is path compressed: a chain of nodes with a single child is stored
+ * as one node whose edge label holds all the characters of the chain. The
+ * nodes are not objects, but fixed size slots in a single int array, so that
+ * all the fields of a node share a cache line, and the edge labels are ranges
+ * of a single shared char array. Children are held as a sibling list ordered
+ * by their first character. Equal result lists are stored only once.
+ *
+ * Any character may be used in a prefix, not only the digits 0-9, so that
+ * prefixes such as "+44" or "*21#" can be stored.
+ *
+ * Lookups walk the String directly and do not allocate. Lookups may run in
+ * parallel, but not at the same time as a prefix is being added.
+ */
+public class CompactDigitTree
+  implements IDigitTree
+{
+  // the value we use for "no node" and "no result"
+  private static final int NONE = -1;
+
+  // the fields of a node, as offsets in its slot
+  private static final int FIRST_CHAR   = 0;
+  private static final int LABEL_START  = 1;
+  private static final int LABEL_LENGTH = 2;
+  private static final int FIRST_CHILD  = 3;
+  private static final int NEXT_SIBLING = 4;
+  private static final int RESULT       = 5;
+  private static final int NODE_SIZE    = 6;
+
+  // the root node is the first slot
+  private static final int ROOT = 0;
+
+  // the initial sizes of the node and label storage
+  private static final int INITIAL_NODES = 64;
+  private static final int INITIAL_LABEL = 256;
+
+  // node storage. Nodes are referenced by the offset of their slot.
+  private int[]  nodes;
+  private int    nodeCount = 1;
+
+  // edge label storage, shared by all nodes
+  private char[] labels;
+  private int    labelCount = 0;
+
+  // the distinct result lists, and the index to find them when loading
+  private final ArrayList<ArrayList<String>>         results = new ArrayList<>();
+  private final HashMap<ArrayList<String>, Integer>  resultLookup = new HashMap<>();
+
+  // the result list when there is no match
+  private final ArrayList<String> nullResultList;
+
+ /**
+  * Default constructor - sets up the root node
+  */
+  public CompactDigitTree()
+  {
+    nodes  = new int[INITIAL_NODES * NODE_SIZE];
+    labels = new char[INITIAL_LABEL];
+
+    // The root has no label, no children and no result
+    nodes[ROOT + FIRST_CHILD]  = NONE;
+    nodes[ROOT + NEXT_SIBLING] = NONE;
+    nodes[ROOT + RESULT]       = NONE;
+
+    // Set up the null node return result
+    nullResultList = new ArrayList<>();
+    nullResultList.add(DigitTree.NO_DIGIT_TREE_MATCH);
+  }
+
+ /**
+  * Add a prefix to the tree. If the prefix shares only part of the label of
+  * an existing node, that node is split at the point where they differ.
+  *
+  * @param prefix The prefix to add to the tree
+  * @param resultList The results to return for this prefix
+  */
+  @Override
+  public void addPrefix(String prefix, ArrayList<String> resultList)
+  {
+    int node = ROOT;
+    int pos = 0;
+    int length = prefix.length();
+
+    while (pos < length)
+    {
+      char c = prefix.charAt(pos);
+
+      // Find the child starting with this character, or the place to put it
+      int previous = NONE;
+      int child = nodes[node + FIRST_CHILD];
+      while (child != NONE && nodes[child + FIRST_CHAR] < c)
+      {
+        previous = child;
+        child = nodes[child + NEXT_SIBLING];
+      }
+
+      if (child == NONE || nodes[child + FIRST_CHAR] != c)
+      {
+        // No child for this character - the rest of the prefix is a new leaf
+        int leaf = newNode(prefix, pos, length - pos);
+        linkChild(node, previous, leaf, child);
+        node = leaf;
+        break;
+      }
+
+      // See how much of the child label we share
+      int start = nodes[child + LABEL_START];
+      int childLength = nodes[child + LABEL_LENGTH];
+      int common = 1;
+      while (common < childLength && pos + common < length &&
+             labels[start + common] == prefix.charAt(pos + common))
+      {
+        common++;
+      }
+
+      if (common < childLength)
+      {
+        // Split the child: the shared part becomes a new node above it
+        int split = allocateNode();
+        nodes[split + FIRST_CHAR] = c;
+        nodes[split + LABEL_START] = start;
+        nodes[split + LABEL_LENGTH] = common;
+        nodes[split + FIRST_CHILD] = child;
+        linkChild(node, previous, split, nodes[child + NEXT_SIBLING]);
+
+        nodes[child + FIRST_CHAR] = labels[start + common];
+        nodes[child + LABEL_START] = start + common;
+        nodes[child + LABEL_LENGTH] = childLength - common;
+        nodes[child + NEXT_SIBLING] = NONE;
+
+        child = split;
+      }
+
+      node = child;
+      pos += common;
+    }
+
+    if (resultList == null)
+    {
+      nodes[node + RESULT] = NONE;
+    }
+    else
+    {
+      nodes[node + RESULT] = internResult(resultList);
+    }
+  }
+
+ /**
+  * Work down the tree to find the best match. We remember the previous
+  * best result as we go.
+  *
+  * @param prefix The prefix to match
+  * @return The short result to return in the case of a match
+  */
+  @Override
+  public String match(String prefix)
+  {
+    int best = findBestResult(prefix);
+
+    if (best == NONE)
+    {
+      return DigitTree.NO_DIGIT_TREE_MATCH;
+    }
+    else
+    {
+      return results.get(best).get(0);
+    }
+  }
+
+ /**
+  * Work down the tree to find the best match. We remember the previous
+  * best result as we go.
+  *
+  * @param prefix The prefix to match
+  * @return The results list to return in the case of a match
+  */
+  @Override
+  public ArrayList<String> matchWithChildData(String prefix)
+  {
+    int best = findBestResult(prefix);
+
+    if (best == NONE)
+    {
+      return nullResultList;
+    }
+    else
+    {
+      return results.get(best);
+    }
+  }
+
+ /**
+  * Get the number of nodes in the tree. Because chains of nodes are stored
+  * as one, this is normally much lower than for a DigitTree holding the same
+  * prefixes.
+  *
+  * @return The number of nodes
+  */
+  @Override
+  public int size()
+  {
+    return nodeCount - 1;
+  }
+
+ /**
+  * Get the number of distinct result lists held by the tree.
+  *
+  * @return The number of result lists
+  */
+  public int getResultCount()
+  {
+    return results.size();
+  }
+
+ /**
+  * Release the spare capacity in the node and label storage, and lay the
+  * nodes out again in breadth first order, so that the children of each node
+  * are next to each other and a lookup scanning them stays in the same cache
+  * lines. This should be called once loading is complete, but prefixes may
+  * still be added later.
+  */
+  public void trimToSize()
+  {
+    int[] newNodes = new int[nodeCount * NODE_SIZE];
+    int[] newOffset = new int[nodeCount];
+
+    // Give the nodes their new places, taking the children of each node in
+    // turn. The new array is its own breadth first queue: until the fields
+    // are copied, the first field of each placed slot holds the old offset of
+    // the node placed there (the root stays in the first slot).
+    int placed = 1;
+    for (int next = 0; next < placed; next++)
+    {
+      int oldNode = newNodes[next * NODE_SIZE + FIRST_CHAR];
+      for (int child = nodes[oldNode + FIRST_CHILD]; child != NONE; child = nodes[child + NEXT_SIBLING])
+      {
+        newOffset[child / NODE_SIZE] = placed * NODE_SIZE;
+        newNodes[placed * NODE_SIZE + FIRST_CHAR] = child;
+        placed++;
+      }
+    }
+
+    // Now copy the node fields, translating the links
+    for (int oldIndex = 0; oldIndex < nodeCount; oldIndex++)
+    {
+      int oldNode = oldIndex * NODE_SIZE;
+      int newNode = newOffset[oldIndex];
+      int child = nodes[oldNode + FIRST_CHILD];
+      int sibling = nodes[oldNode + NEXT_SIBLING];
+
+      newNodes[newNode + FIRST_CHAR] = nodes[oldNode + FIRST_CHAR];
+      newNodes[newNode + LABEL_START] = nodes[oldNode + LABEL_START];
+      newNodes[newNode + LABEL_LENGTH] = nodes[oldNode + LABEL_LENGTH];
+      newNodes[newNode + FIRST_CHILD] = (child == NONE) ? NONE : newOffset[child / NODE_SIZE];
+      newNodes[newNode + NEXT_SIBLING] = (sibling == NONE) ? NONE : newOffset[sibling / NODE_SIZE];
+      newNodes[newNode + RESULT] = nodes[oldNode + RESULT];
+    }
+
+    nodes  = newNodes;
+    labels = Arrays.copyOf(labels, Math.max(labelCount, 1));
+    results.trimToSize();
+  }
+
+ /**
+  * Walk the tree along the value, and return the index of the result of the
+  * deepest node passed which has a result.
+  *
+  * @param prefix The value to match
+  * @return The result index, or NONE if no node matched
+  */
+  private int findBestResult(String prefix)
+  {
+    int[]  tree = nodes;
+    char[] label = labels;
+    int    node = ROOT;
+    int    best = tree[ROOT + RESULT];
+    int    pos = 0;
+    int    length = prefix.length();
+
+    while (pos < length)
+    {
+      char c = prefix.charAt(pos);
+
+      int child = tree[node + FIRST_CHILD];
+      while (child != NONE && tree[child + FIRST_CHAR] < c)
+      {
+        child = tree[child + NEXT_SIBLING];
+      }
+
+      if (child == NONE || tree[child + FIRST_CHAR] != c)
+      {
+        // No more children - return what we have got so far
+        break;
+      }
+
+      // The whole label must match, results are only held at nodes
+      int start = tree[child + LABEL_START];
+      int childLength = tree[child + LABEL_LENGTH];
+      if (pos + childLength > length)
+      {
+        break;
+      }
+
+      int i = 1;
+      while (i < childLength && label[start + i] == prefix.charAt(pos + i))
+      {
+        i++;
+      }
+
+      if (i < childLength)
+      {
+        break;
+      }
+
+      node = child;
+      pos += childLength;
+
+      if (tree[node + RESULT] != NONE)
+      {
+        best = tree[node + RESULT];
+      }
+    }
+
+    return best;
+  }
+
+ /**
+  * Create a node without children or result, labelled with a part of the
+  * prefix.
+  *
+  * @param prefix The prefix holding the label
+  * @param start The start of the label in the prefix
+  * @param length The length of the label
+  * @return The new node
+  */
+  private int newNode(String prefix, int start, int length)
+  {
+    int node = allocateNode();
+
+    if (labelCount + length > labels.length)
+    {
+      labels = Arrays.copyOf(labels, Math.max(labels.length * 2, labelCount + length));
+    }
+
+    prefix.getChars(start, start + length, labels, labelCount);
+    nodes[node + FIRST_CHAR] = prefix.charAt(start);
+    nodes[node + LABEL_START] = labelCount;
+    nodes[node + LABEL_LENGTH] = length;
+    labelCount += length;
+
+    return node;
+  }
+
+ /**
+  * Get the next free node slot, growing the node storage if needed.
+  *
+  * @return The new node
+  */
+  private int allocateNode()
+  {
+    int node = nodeCount * NODE_SIZE;
+
+    if (node == nodes.length)
+    {
+      nodes = Arrays.copyOf(nodes, nodes.length * 2);
+    }
+
+    nodeCount++;
+    nodes[node + FIRST_CHILD] = NONE;
+    nodes[node + NEXT_SIBLING] = NONE;
+    nodes[node + RESULT] = NONE;
+
+    return node;
+  }
+
+ /**
+  * Link a node into the sibling list of the parent, after the previous
+  * sibling (or at the head of the list) and before the next sibling.
+  */
+  private void linkChild(int parent, int previous, int node, int next)
+  {
+    nodes[node + NEXT_SIBLING] = next;
+
+    if (previous == NONE)
+    {
+      nodes[parent + FIRST_CHILD] = node;
+    }
+    else
+    {
+      nodes[previous + NEXT_SIBLING] = node;
+    }
+  }
+
+ /**
+  * Get the index of the result list, storing it if we have not seen an equal
+  * list before.
+  *
+  * @param resultList The result list
+  * @return The index of the stored list
+  */
+  private int internResult(ArrayList<String> resultList)
+  {
+    Integer index = resultLookup.get(resultList);
+
+    if (index == null)
+    {
+      index = results.size();
+      results.add(resultList);
+      resultLookup.put(resultList, index);
+    }
+
+    return index;
+  }
+}
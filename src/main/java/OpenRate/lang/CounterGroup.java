@@ -56,6 +56,8 @@
 package OpenRate.lang;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * A counter group is a grouping of all the counters with the same counter id.
@@ -64,6 +66,11 @@ import java.util.ArrayList;
  * which can be used to locate it for update it or access it. The RecID is
  * managed at balance group level.
  *
+ * Small groups are searched in turn. Larger groups are searched using an index
+ * of the counters ordered by validity start, which is rebuilt when the number
+ * of counters changes. If the validity of a counter is changed after it has
+ * been added, reindex() must be called.
+ *
  * @author ian
  */
 public class CounterGroup
@@ -73,6 +80,20 @@ public class CounterGroup
   */
   public ArrayList<Counter> counters;
 
+  // Groups up to this size are searched in turn
+  private static final int INDEX_THRESHOLD = 8;
+
+  // The counters ordered by validity start, with the list position of each
+  private Counter[] indexCounters;
+  private int[]     indexPosition;
+  private long[]    indexValidFrom;
+
+  // The latest validity end of the counters up to each index position
+  private long[]    indexMaxValidTo;
+
+  // The size of the counter list when the index was built, -1 if not built
+  private int       indexedSize = -1;
+
  /** Creates a new instance of BalanceGroup */
   public CounterGroup()
   {
@@ -88,7 +109,7 @@ public class CounterGroup
   * @param currentBal The initial value of the counter
   * @return The created counter
   */
-  public Counter addCounter(long recId, long validFrom, long validTo, double currentBal)
+  public synchronized Counter addCounter(long recId, long validFrom, long validTo, double currentBal)
   {
     Counter tmpCounter;
 
@@ -103,26 +124,132 @@ public class CounterGroup
   }
 
  /**
-  * Get an individual counter as referenced by a date in long format
+  * Get an individual counter as referenced by a date in long format. Where
+  * counters overlap, the first one added is returned.
   *
   * @param counterDate The date of the counter to get from the group
   * @return The recovered counter
   */
-  public Counter getCounterByUTCDate(long counterDate)
+  public synchronized Counter getCounterByUTCDate(long counterDate)
   {
     int i;
     Counter tmpCounter;
+    int size = counters.size();
 
-    for(i = 0 ; i < counters.size() ; i++ )
+    if (size <= INDEX_THRESHOLD)
     {
-      tmpCounter = counters.get(i);
-      if ((tmpCounter.validFrom <= counterDate) & (tmpCounter.validTo > counterDate))
+      for(i = 0 ; i < size ; i++ )
       {
-        return tmpCounter;
+        tmpCounter = counters.get(i);
+        if ((tmpCounter.validFrom <= counterDate) & (tmpCounter.validTo > counterDate))
+        {
+          return tmpCounter;
+        }
       }
+
+      return null;
     }
 
-    return null;
+    if (indexedSize != size)
+    {
+      buildIndex();
+    }
+
+    // Walk back from the last counter starting at or before the date, for as
+    // long as an earlier counter could still cover the date
+    Counter found = null;
+    int foundPosition = Integer.MAX_VALUE;
+
+    for (i = lastStartingBefore(counterDate) ; (i >= 0) && (indexMaxValidTo[i] > counterDate) ; i--)
+    {
+      tmpCounter = indexCounters[i];
+      if ((tmpCounter.validTo > counterDate) && (indexPosition[i] < foundPosition))
+      {
+        found = tmpCounter;
+        foundPosition = indexPosition[i];
+      }
+    }
+
+    return found;
+  }
+
+ /**
+  * Find the last index position with a validity start at or before the date.
+  *
+  * @param counterDate The date
+  * @return The index position, or -1 if there is none
+  */
+  private int lastStartingBefore(long counterDate)
+  {
+    int low = 0;
+    int high = indexedSize - 1;
+
+    while (low <= high)
+    {
+      int mid = (low + high) >>> 1;
+      if (indexValidFrom[mid] <= counterDate)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid - 1;
+      }
+    }
+
+    return high;
+  }
+
+ /**
+  * Build the date index over the counters.
+  */
+  private void buildIndex()
+  {
+    int size = counters.size();
+    Integer[] order = new Integer[size];
+
+    for (int i = 0 ; i < size ; i++)
+    {
+      order[i] = i;
+    }
+
+    Arrays.sort(order, new Comparator<Integer>()
+    {
+      @Override
+      public int compare(Integer o1, Integer o2)
+      {
+        long from1 = counters.get(o1).validFrom;
+        long from2 = counters.get(o2).validFrom;
+        return (from1 < from2) ? -1 : ((from1 == from2) ? 0 : 1);
+      }
+    });
+
+    indexCounters = new Counter[size];
+    indexPosition = new int[size];
+    indexValidFrom = new long[size];
+    indexMaxValidTo = new long[size];
+
+    long maxValidTo = Long.MIN_VALUE;
+    for (int i = 0 ; i < size ; i++)
+    {
+      Counter tmpCounter = counters.get(order[i]);
+      indexCounters[i] = tmpCounter;
+      indexPosition[i] = order[i];
+      indexValidFrom[i] = tmpCounter.validFrom;
+      maxValidTo = Math.max(maxValidTo, tmpCounter.validTo);
+      indexMaxValidTo[i] = maxValidTo;
+    }
+
+    indexedSize = size;
+  }
+
+ /**
+  * Rebuild the date index at the next look up. Needed only if the validity of
+  * counters in the list has been changed directly.
+  */
+  public synchronized void reindex()
+  {
+    indexedSize = -1;
   }
 
  /**
@@ -131,7 +258,7 @@ public class CounterGroup
   * @param recId The record ID of the counter to get
   * @return The recovered counter
   */
-  public Counter getCounterById(int recId)
+  public synchronized Counter getCounterById(int recId)
   {
     int i;
     Counter tmpCounter;
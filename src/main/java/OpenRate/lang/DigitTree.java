@@ -61,6 +61,7 @@ import java.util.ArrayList;
  * Class to build and search a tree list, for example in best match searches
  */
 public class DigitTree
+  implements IDigitTree
 {
   /**
    * The default return when there is no digit tree match
@@ -90,6 +91,7 @@ public class DigitTree
   * @param prefix The prefix to add to the digit tree
   * @param resultList The results to return for this tag
   */
+  @Override
   public void addPrefix(String prefix, ArrayList<String> resultList)
   {
    char[] numberChars = prefix.toCharArray();
@@ -119,6 +121,7 @@ public class DigitTree
   * @param prefix The prefix to match
   * @return The short result to return in the case of a match
   */
+  @Override
   public String match(String prefix)
   {
     char[] numberChars = prefix.toCharArray();
@@ -161,6 +164,7 @@ public class DigitTree
   * @param prefix The prefix to match
   * @return The results list to return in the case of a match
   */
+  @Override
   public ArrayList<String> matchWithChildData(String prefix)
   {
     char[] numberChars = prefix.toCharArray();
@@ -211,6 +215,7 @@ public class DigitTree
    *
    * @return The number of elements
    */
+  @Override
   public int size()
   {
     return nodeCount;
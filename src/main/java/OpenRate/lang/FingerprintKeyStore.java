@@ -0,0 +1,505 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.lang;
+
+/**
+ * Compact store for the keys of the duplicate check.
+ *
+ * The keys are not stored, only a 128 bit fingerprint of each, made of two
+ * independent 64 bit hashes of the characters. The fingerprints are held in
+ * primitive open addressing tables, one table (segment) per period of the
+ * record dates, usually a day. This takes about a tenth of the memory of a
+ * map of String keys, and old keys are expired by dropping whole segments,
+ * instead of by walking all the keys.
+ *
+ * A key is looked for in every segment, newest first. Optionally each segment
+ * has a Bloom filter in front of it, so that a key that is not in the segment
+ * usually costs one word read, not a probe of the table.
+ *
+ * Lookups do not allocate and may run in parallel with each other and with
+ * adds. Adds and purges are serialised. A lookup running at the same time as
+ * the add of the same key may or may not see it, as with a concurrent map.
+ */
+public final class FingerprintKeyStore
+{
+  // the seconds in a day
+  private static final long SECONDS_PER_DAY = 86400;
+
+  // the initial number of slots in a segment, a power of two
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // we grow the table when it is this full, as a fraction of 1024
+  private static final int MAX_LOAD_1024 = 716;
+
+  // the number of Bloom filter bits per table slot, and bits set per key
+  private static final int BLOOM_BITS_PER_SLOT = 16;
+  private static final int BLOOM_HASHES = 4;
+
+  // the length of a segment in seconds
+  private final long segmentSeconds;
+
+  // whether the segments have Bloom filters
+  private final boolean useBloomFilter;
+
+  // the segments, in ascending order of their period. Replaced, not changed.
+  private volatile Segment[] segments = new Segment[0];
+
+  // the number of keys held
+  private volatile long keyCount = 0;
+
+ /**
+  * One period of the store: an open addressing table of fingerprints, two
+  * longs per slot, with (0,0) meaning an empty slot.
+  */
+  private static final class Segment
+  {
+    // the period number of the segment: the record date / segmentSeconds
+    final long period;
+
+    // the slots, and the Bloom filter, replaced when we grow
+    volatile long[] table;
+    volatile long[] bloom;
+
+    // the number of keys in the segment
+    int count = 0;
+
+    Segment(long period, boolean useBloomFilter)
+    {
+      this.period = period;
+      table = new long[INITIAL_CAPACITY * 2];
+      bloom = useBloomFilter ? new long[INITIAL_CAPACITY * BLOOM_BITS_PER_SLOT / 64] : null;
+    }
+  }
+
+ /**
+  * Create a store with one segment per day.
+  *
+  * @param useBloomFilter true to put a Bloom filter in front of each segment
+  */
+  public FingerprintKeyStore(boolean useBloomFilter)
+  {
+    this(1, useBloomFilter);
+  }
+
+ /**
+  * Create a store.
+  *
+  * @param segmentDays The number of days of record dates each segment holds
+  * @param useBloomFilter true to put a Bloom filter in front of each segment
+  */
+  public FingerprintKeyStore(int segmentDays, boolean useBloomFilter)
+  {
+    if (segmentDays < 1)
+    {
+      throw new IllegalArgumentException("segmentDays must be at least 1, was <" + segmentDays + ">");
+    }
+
+    this.segmentSeconds = segmentDays * SECONDS_PER_DAY;
+    this.useBloomFilter = useBloomFilter;
+  }
+
+ /**
+  * See if a key is in the store.
+  *
+  * @param key The key to look for
+  * @return true if the key (or a key with the same fingerprint) is held
+  */
+  public boolean contains(String key)
+  {
+    long hash1 = hash1(key);
+    long hash2 = hash2(key, hash1);
+    Segment[] current = segments;
+
+    // newest first, duplicates are most likely to be recent
+    for (int idx = current.length - 1; idx >= 0; idx--)
+    {
+      if (segmentContains(current[idx], hash1, hash2))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+ /**
+  * Add a key to the store, in the segment of the date given. If the key is
+  * already held, in any segment, nothing is changed.
+  *
+  * @param key The key to add
+  * @param utcDate The date of the record, in UTC seconds
+  * @return true if the key was added, false if it was already held
+  */
+  public synchronized boolean add(String key, long utcDate)
+  {
+    long hash1 = hash1(key);
+    long hash2 = hash2(key, hash1);
+    Segment[] current = segments;
+
+    for (int idx = current.length - 1; idx >= 0; idx--)
+    {
+      if (segmentContains(current[idx], hash1, hash2))
+      {
+        return false;
+      }
+    }
+
+    Segment segment = getOrCreateSegment(getPeriod(utcDate));
+    if (segment.count * 1024L >= (long) (segment.table.length / 2) * MAX_LOAD_1024)
+    {
+      grow(segment);
+    }
+
+    insert(segment.table, hash1, hash2);
+    if (segment.bloom != null)
+    {
+      addToBloom(segment.bloom, hash2);
+    }
+
+    segment.count++;
+    keyCount++;
+    return true;
+  }
+
+ /**
+  * Drop all the segments that only hold dates before the cutoff date. Keys in
+  * the segment which holds the cutoff date are kept until a later purge.
+  *
+  * @param cutoffDate The oldest date to keep, in UTC seconds
+  * @return The number of keys dropped
+  */
+  public synchronized long purge(long cutoffDate)
+  {
+    long cutoffPeriod = getPeriod(cutoffDate);
+    Segment[] current = segments;
+    int firstKept = 0;
+    long dropped = 0;
+
+    while (firstKept < current.length && current[firstKept].period < cutoffPeriod)
+    {
+      dropped += current[firstKept].count;
+      firstKept++;
+    }
+
+    if (firstKept > 0)
+    {
+      Segment[] kept = new Segment[current.length - firstKept];
+      System.arraycopy(current, firstKept, kept, 0, kept.length);
+      segments = kept;
+      keyCount -= dropped;
+    }
+
+    return dropped;
+  }
+
+ /**
+  * Remove all the keys.
+  */
+  public synchronized void clear()
+  {
+    segments = new Segment[0];
+    keyCount = 0;
+  }
+
+ /**
+  * @return The number of keys held
+  */
+  public long size()
+  {
+    return keyCount;
+  }
+
+ /**
+  * @return The number of segments held
+  */
+  public int getSegmentCount()
+  {
+    return segments.length;
+  }
+
+ /**
+  * @return The approximate number of bytes used by the tables and filters
+  */
+  public long getMemoryUsage()
+  {
+    long bytes = 0;
+
+    for (Segment segment : segments)
+    {
+      bytes += segment.table.length * 8L;
+      if (segment.bloom != null)
+      {
+        bytes += segment.bloom.length * 8L;
+      }
+    }
+
+    return bytes;
+  }
+
+  // -----------------------------------------------------------------------------
+  // ----------------------------- Segment handling ------------------------------
+  // -----------------------------------------------------------------------------
+
+ /**
+  * Get the period number of a date.
+  */
+  private long getPeriod(long utcDate)
+  {
+    long period = utcDate / segmentSeconds;
+
+    // round down for dates before 1970
+    if (utcDate < 0 && period * segmentSeconds != utcDate)
+    {
+      period--;
+    }
+
+    return period;
+  }
+
+ /**
+  * Get the segment for a period, adding it if we do not have it yet. Called
+  * only under the lock.
+  */
+  private Segment getOrCreateSegment(long period)
+  {
+    Segment[] current = segments;
+    int position = current.length;
+
+    // records mostly arrive for recent periods, so search from the end
+    while (position > 0 && current[position - 1].period >= period)
+    {
+      if (current[position - 1].period == period)
+      {
+        return current[position - 1];
+      }
+      position--;
+    }
+
+    Segment segment = new Segment(period, useBloomFilter);
+    Segment[] extended = new Segment[current.length + 1];
+    System.arraycopy(current, 0, extended, 0, position);
+    extended[position] = segment;
+    System.arraycopy(current, position, extended, position + 1, current.length - position);
+    segments = extended;
+
+    return segment;
+  }
+
+ /**
+  * See if a segment holds a fingerprint.
+  */
+  private static boolean segmentContains(Segment segment, long hash1, long hash2)
+  {
+    long[] bloom = segment.bloom;
+    if (bloom != null && !bloomContains(bloom, hash2))
+    {
+      return false;
+    }
+
+    long[] table = segment.table;
+    int mask = (table.length >> 1) - 1;
+    int slot = (int) hash1 & mask;
+
+    while (true)
+    {
+      long slotHash1 = table[slot << 1];
+      long slotHash2 = table[(slot << 1) + 1];
+
+      if (slotHash1 == hash1 && slotHash2 == hash2)
+      {
+        return true;
+      }
+
+      if (slotHash1 == 0 && slotHash2 == 0)
+      {
+        return false;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+  }
+
+ /**
+  * Put a fingerprint in a table which is known not to hold it.
+  */
+  private static void insert(long[] table, long hash1, long hash2)
+  {
+    int mask = (table.length >> 1) - 1;
+    int slot = (int) hash1 & mask;
+
+    while (table[slot << 1] != 0 || table[(slot << 1) + 1] != 0)
+    {
+      slot = (slot + 1) & mask;
+    }
+
+    // the second half first, so that a reader never matches a half written slot
+    table[(slot << 1) + 1] = hash2;
+    table[slot << 1] = hash1;
+  }
+
+ /**
+  * Double the size of a segment, building the new table and filter before
+  * publishing them, so that readers see either the old or the new.
+  */
+  private static void grow(Segment segment)
+  {
+    long[] oldTable = segment.table;
+    long[] newTable = new long[oldTable.length * 2];
+    long[] newBloom = (segment.bloom == null) ? null : new long[segment.bloom.length * 2];
+
+    for (int idx = 0; idx < oldTable.length; idx += 2)
+    {
+      if (oldTable[idx] != 0 || oldTable[idx + 1] != 0)
+      {
+        insert(newTable, oldTable[idx], oldTable[idx + 1]);
+        if (newBloom != null)
+        {
+          addToBloom(newBloom, oldTable[idx + 1]);
+        }
+      }
+    }
+
+    segment.bloom = newBloom;
+    segment.table = newTable;
+  }
+
+ /**
+  * Set the bits of a fingerprint in a blocked Bloom filter. All the bits of a
+  * key are in the same word, so a check costs a single memory read.
+  */
+  private static void addToBloom(long[] bloom, long hash2)
+  {
+    int word = (int) (hash2 >>> 32) & (bloom.length - 1);
+    bloom[word] |= bloomMask(hash2);
+  }
+
+ /**
+  * See if the bits of a fingerprint are set in a Bloom filter.
+  */
+  private static boolean bloomContains(long[] bloom, long hash2)
+  {
+    int word = (int) (hash2 >>> 32) & (bloom.length - 1);
+    long mask = bloomMask(hash2);
+    return (bloom[word] & mask) == mask;
+  }
+
+ /**
+  * The bits of a fingerprint in its Bloom filter word, taken from the low
+  * bits of the second hash (the high bits choose the word).
+  */
+  private static long bloomMask(long hash2)
+  {
+    long mask = 0;
+    for (int idx = 0; idx < BLOOM_HASHES; idx++)
+    {
+      mask |= 1L << ((hash2 >>> (idx * 6)) & 63);
+    }
+    return mask;
+  }
+
+  // -----------------------------------------------------------------------------
+  // ------------------------------- Fingerprints --------------------------------
+  // -----------------------------------------------------------------------------
+
+ /**
+  * The first half of the fingerprint: FNV-1a over the characters, mixed.
+  */
+  private static long hash1(String key)
+  {
+    long hash = 0xcbf29ce484222325L;
+    int length = key.length();
+
+    for (int idx = 0; idx < length; idx++)
+    {
+      hash ^= key.charAt(idx);
+      hash *= 0x100000001b3L;
+    }
+
+    return mix(hash ^ length);
+  }
+
+ /**
+  * The second half of the fingerprint: a multiply and rotate hash over the
+  * characters with a different seed, mixed. Never 0, so that a fingerprint is
+  * never taken for an empty slot.
+  */
+  private static long hash2(String key, long hash1)
+  {
+    long hash = 0x9e3779b97f4a7c15L;
+    int length = key.length();
+
+    for (int idx = 0; idx < length; idx++)
+    {
+      hash = Long.rotateLeft(hash + key.charAt(idx), 23) * 0xc2b2ae3d27d4eb4fL;
+    }
+
+    hash = mix(hash + length);
+    return (hash == 0) ? hash1 | 1 : hash;
+  }
+
+ /**
+  * The 64 bit finaliser of MurmurHash3.
+  */
+  private static long mix(long hash)
+  {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
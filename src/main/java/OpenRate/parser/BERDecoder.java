@@ -0,0 +1,731 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.parser;
+
+import OpenRate.exception.ASN1Exception;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Cursor style BER decoder. In contrast to the ASN1Parser, which copies each
+ * element into an Asn1Class and a new byte array, the decoder walks the data
+ * in place: next() reads the header of the next element, and the tag, length
+ * and offset of the value are available from the decoder until the following
+ * call. Values are only decoded when they are asked for, so fields which are
+ * not used cost only the header decoding.
+ *
+ * Constructed elements are entered by next(), so the element after a
+ * constructed header is its first child, as with ASN1Parser. skipContents()
+ * steps over the contents instead.
+ *
+ * If the definition implements IASN1SkipDef, nextField() steps over the
+ * elements the definition names as skipped, without decoding them.
+ *
+ * Tag paths are built as "prefix;tag" with the tag in lower case hex, as for
+ * ASN1Parser raw tags. The paths of single byte tags are kept, so that walking
+ * a record does not build a new String for each element.
+ */
+public class BERDecoder implements IBinaryParser
+{
+  // Masks of the tag and length octets
+  private static final int TAG_MASK = 0x1F;
+  private static final int LEN_XTND = 0x80;
+  private static final int LEN_MASK = 0x7F;
+  private static final int FORM_MASK = 0x20;
+
+  // The hex digits for formatting the values
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  // The hex names of the single byte tags
+  private static final String[] HEX_BYTES = new String[256];
+
+  static
+  {
+    for (int i = 0; i < 256; i++)
+    {
+      HEX_BYTES[i] = new String(new char[]{HEX_DIGITS[i >> 4], HEX_DIGITS[i & 0x0F]});
+    }
+  }
+
+  // The definition file we are using
+  private final IASN1Def ASN1Def;
+
+  // The definition as a skip definition, null if it does not skip
+  private final IASN1SkipDef skipDef;
+
+  // The data we are decoding, only read with absolute gets
+  private ByteBuffer data;
+  private int limit;
+
+  // The offset of the next element header
+  private int position;
+
+  // The current element
+  private int elementOffset;
+  private int rawTag;
+  private int rawTagLength;
+  private int tag;
+  private int id;
+  private int length;
+  private int valueOffset;
+  private boolean nullTag;
+  private boolean indefiniteLength;
+
+  // The tag paths of the single byte tags, by prefix
+  private final HashMap<String, String[]> tagPaths = new HashMap<>();
+
+  /**
+   * Create a new BER decoder using the supplied specification
+   *
+   * @param ASN1Specification The specification to use
+   */
+  public BERDecoder(IASN1Def ASN1Specification)
+  {
+    ASN1Def = ASN1Specification;
+
+    if (ASN1Specification instanceof IASN1SkipDef)
+    {
+      skipDef = (IASN1SkipDef) ASN1Specification;
+    }
+    else
+    {
+      skipDef = null;
+    }
+  }
+
+  /**
+   * Set the data to be parsed.
+   *
+   * @param data The data to be parsed
+   */
+  @Override
+  public void setDataToParse(byte[] data)
+  {
+    setData(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * Set the data to be parsed. The bytes between the position and the limit of
+   * the buffer are decoded. The buffer itself is not changed.
+   *
+   * @param buffer The data to be parsed
+   */
+  public void setData(ByteBuffer buffer)
+  {
+    data = buffer;
+    position = buffer.position();
+    limit = buffer.limit();
+    elementOffset = position;
+    valueOffset = position;
+    length = 0;
+  }
+
+  /**
+   * Find out whether there are more elements to read
+   *
+   * @return true if ready, otherwise false
+   */
+  public boolean ready()
+  {
+    return position < limit;
+  }
+
+  /**
+   * Get the offset in the data of the next element header.
+   *
+   * @return The offset
+   */
+  public int getPosition()
+  {
+    return position;
+  }
+
+  /**
+   * Read the header of the next element. A 0x00 byte is taken as a filler
+   * byte, as used by some formats to pad to a block boundary, and gives a null
+   * tag of no length.
+   *
+   * @return true if an element was read, false if there is no more data
+   * @throws ASN1Exception If the header is not valid
+   */
+  public boolean next() throws ASN1Exception
+  {
+    if (position >= limit)
+    {
+      return false;
+    }
+
+    elementOffset = position;
+    int offset = position;
+    int first = data.get(offset++) & 0xFF;
+
+    if (first == 0x00)
+    {
+      setFiller(offset);
+      return true;
+    }
+
+    nullTag = false;
+    id = first & ~TAG_MASK;
+    rawTag = first;
+    rawTagLength = 1;
+
+    if ((first & TAG_MASK) == TAG_MASK)
+    {
+      // Long tag encoded as sequence of 7-bit values
+      int value;
+      tag = 0;
+      do
+      {
+        if (rawTagLength == 4)
+        {
+          throw new ASN1Exception("Tag at offset <" + elementOffset + "> is too long");
+        }
+        value = getHeaderByte(offset++);
+        rawTag = (rawTag << 8) | value;
+        rawTagLength++;
+        tag = (tag << 7) | (value & LEN_MASK);
+      } while ((value & LEN_XTND) != 0);
+    }
+    else
+    {
+      tag = first & TAG_MASK;
+    }
+
+    // Parse the length
+    int lengthByte = getHeaderByte(offset++);
+    indefiniteLength = false;
+    if ((lengthByte & LEN_XTND) == 0)
+    {
+      length = lengthByte;
+    }
+    else
+    {
+      int numLengthBytes = lengthByte & LEN_MASK;
+      if (numLengthBytes == 0)
+      {
+        // the contents end with an end of contents marker
+        indefiniteLength = true;
+      }
+      else if (numLengthBytes > 4)
+      {
+        throw new ASN1Exception("Length at offset <" + elementOffset + "> cannot be represented as a Java int");
+      }
+
+      length = 0;
+      for (int idx = 0; idx < numLengthBytes; idx++)
+      {
+        length = (length << 8) | getHeaderByte(offset++);
+      }
+
+      if (length < 0)
+      {
+        throw new ASN1Exception("Length at offset <" + elementOffset + "> cannot be represented as a Java int");
+      }
+    }
+
+    valueOffset = offset;
+
+    if (isConstructed())
+    {
+      // the next element is the first child
+      position = valueOffset;
+    }
+    else
+    {
+      if (length > limit - valueOffset)
+      {
+        throw new ASN1Exception("Element at offset <" + elementOffset + "> runs past the end of the data");
+      }
+      position = valueOffset + length;
+    }
+
+    return true;
+  }
+
+  /**
+   * Read the header of the next element which is not skipped by the
+   * definition. Skipped elements, and the contents of skipped constructed
+   * elements, are stepped over without being decoded.
+   *
+   * @param prefix The prefix of the tag path, for example the record type
+   * @return true if an element was read, false if there is no more data
+   * @throws ASN1Exception If a header is not valid
+   */
+  public boolean nextField(String prefix) throws ASN1Exception
+  {
+    while (next())
+    {
+      if ((skipDef == null) || nullTag || (skipDef.isTagSkipped(getTagPath(prefix)) == false))
+      {
+        return true;
+      }
+
+      skipContents();
+    }
+
+    return false;
+  }
+
+  /**
+   * Step over the contents of the current element if it is constructed, so
+   * that the next element read is the one after it. This has no effect on
+   * primitive elements, whose value is always stepped over.
+   *
+   * @throws ASN1Exception If the contents run past the end of the data
+   */
+  public void skipContents() throws ASN1Exception
+  {
+    if (isConstructed() && (indefiniteLength == false))
+    {
+      if (length > limit - valueOffset)
+      {
+        throw new ASN1Exception("Element at offset <" + elementOffset + "> runs past the end of the data");
+      }
+      position = valueOffset + length;
+    }
+  }
+
+  // -----------------------------------------------------------------------------
+  // ------------------------- Current element functions -------------------------
+  // -----------------------------------------------------------------------------
+
+  /**
+   * Tells us if the element is a filler byte.
+   *
+   * @return true if the element is a filler byte
+   */
+  public boolean isNullTag()
+  {
+    return nullTag;
+  }
+
+  /**
+   * Tells us if the element is constructed.
+   *
+   * @return true if the element is constructed
+   */
+  public boolean isConstructed()
+  {
+    return (nullTag == false) && ((id & FORM_MASK) != 0);
+  }
+
+  /**
+   * Tells us if the element has an indefinite length. The length of such an
+   * element is given as 0.
+   *
+   * @return true if the length is indefinite
+   */
+  public boolean isIndefiniteLength()
+  {
+    return indefiniteLength;
+  }
+
+  /**
+   * Get the tag number of the element.
+   *
+   * @return The tag number
+   */
+  public int getTag()
+  {
+    return tag;
+  }
+
+  /**
+   * Get the class and form bits of the first tag octet.
+   *
+   * @return The class and form bits
+   */
+  public int getId()
+  {
+    return id;
+  }
+
+  /**
+   * Get the raw tag octets, the first octet being the most significant.
+   *
+   * @return The raw tag
+   */
+  public int getRawTag()
+  {
+    return rawTag;
+  }
+
+  /**
+   * Get the raw tag as a lower case hex string, as ASN1Parser does.
+   *
+   * @return The raw tag in hex
+   */
+  public String getRawTagHex()
+  {
+    if (rawTagLength == 1)
+    {
+      return HEX_BYTES[rawTag];
+    }
+
+    char[] hex = new char[rawTagLength * 2];
+    for (int idx = 0; idx < rawTagLength; idx++)
+    {
+      int octet = (rawTag >> (8 * (rawTagLength - idx - 1))) & 0xFF;
+      hex[idx * 2] = HEX_DIGITS[octet >> 4];
+      hex[idx * 2 + 1] = HEX_DIGITS[octet & 0x0F];
+    }
+    return new String(hex);
+  }
+
+  /**
+   * Get the path of the element tag, "prefix;tag". The paths of single byte
+   * tags are kept, so the same String is returned each time.
+   *
+   * @param prefix The prefix of the path
+   * @return The tag path
+   */
+  public String getTagPath(String prefix)
+  {
+    if (rawTagLength != 1)
+    {
+      return prefix + ";" + getRawTagHex();
+    }
+
+    String[] paths = tagPaths.get(prefix);
+    if (paths == null)
+    {
+      paths = new String[256];
+      tagPaths.put(prefix, paths);
+    }
+
+    String path = paths[rawTag];
+    if (path == null)
+    {
+      path = prefix + ";" + HEX_BYTES[rawTag];
+      paths[rawTag] = path;
+    }
+
+    return path;
+  }
+
+  /**
+   * Get the name of the element from the definition.
+   *
+   * @param prefix The prefix of the path
+   * @return The tag name
+   */
+  public String getTagName(String prefix)
+  {
+    return ASN1Def.getTagName(getTagPath(prefix));
+  }
+
+  /**
+   * Get the type of the element from the definition.
+   *
+   * @param prefix The prefix of the path
+   * @return The tag type, or -1 if the tag is not known
+   */
+  public int getTagType(String prefix)
+  {
+    return ASN1Def.getTagType(getTagPath(prefix));
+  }
+
+  /**
+   * Get the length of the element value.
+   *
+   * @return The length
+   */
+  public int getLength()
+  {
+    return length;
+  }
+
+  /**
+   * Get the offset in the data of the element header.
+   *
+   * @return The offset
+   */
+  public int getElementOffset()
+  {
+    return elementOffset;
+  }
+
+  /**
+   * Get the offset in the data of the element value.
+   *
+   * @return The offset
+   */
+  public int getValueOffset()
+  {
+    return valueOffset;
+  }
+
+  /**
+   * Get a byte of the element value.
+   *
+   * @param index The index of the byte in the value
+   * @return The byte
+   */
+  public byte getValueByte(int index)
+  {
+    return data.get(valueOffset + index);
+  }
+
+  /**
+   * Copy the element value into a new array.
+   *
+   * @return The value
+   */
+  public byte[] getValueBytes()
+  {
+    byte[] value = new byte[length];
+    for (int idx = 0; idx < length; idx++)
+    {
+      value[idx] = data.get(valueOffset + idx);
+    }
+    return value;
+  }
+
+  // -----------------------------------------------------------------------------
+  // --------------------------- Value decoding functions ------------------------
+  // -----------------------------------------------------------------------------
+
+  /**
+   * Decode the value as a two's complement integer.
+   *
+   * @return The value
+   */
+  public long getValueAsLong()
+  {
+    if (length == 0)
+    {
+      return 0;
+    }
+
+    long value = data.get(valueOffset);
+    for (int idx = 1; idx < length; idx++)
+    {
+      value = (value << 8) | (data.get(valueOffset + idx) & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Decode the value as a two's complement integer.
+   *
+   * @return The value
+   */
+  public int getValueAsInt()
+  {
+    return (int) getValueAsLong();
+  }
+
+  /**
+   * Decode the value according to the type, in the same way as
+   * ASN1Parser.parseASN1().
+   *
+   * @param tagType The type of the tag
+   * @return The decoded value
+   */
+  public String getValue(int tagType)
+  {
+    if (tagType == ASN1Parser.INTEGER)
+    {
+      return Long.toString(getValueAsLong());
+    }
+
+    StringBuilder buf = new StringBuilder(length * 2);
+    appendValue(tagType, buf);
+    return buf.toString();
+  }
+
+  /**
+   * Decode the value according to the type, in the same way as
+   * ASN1Parser.parseASN1(), and append it to the buffer. This allows the
+   * record to be built up without an intermediate String for each value.
+   *
+   * @param tagType The type of the tag
+   * @param buf The buffer to append to
+   */
+  public void appendValue(int tagType, StringBuilder buf)
+  {
+    switch (tagType)
+    {
+      case ASN1Parser.INTEGER:
+        buf.append(getValueAsLong());
+        break;
+      case ASN1Parser.PRINTABLESTRING:
+      case ASN1Parser.OCTETSTRING:
+        appendChars(buf);
+        break;
+      case ASN1Parser.IA5STRING:
+        // as ASN1Parser, the value is empty if it is not ASCII
+        for (int idx = 0; idx < length; idx++)
+        {
+          if (data.get(valueOffset + idx) < 0)
+          {
+            return;
+          }
+        }
+        appendChars(buf);
+        break;
+      case ASN1Parser.BCDString:
+        appendBCD(buf, false);
+        break;
+      case ASN1Parser.BCDStringLE:
+        appendBCD(buf, true);
+        break;
+      default:
+        appendHex(buf);
+        break;
+    }
+  }
+
+  /**
+   * Decode the value as a BCD string, dropping the padding.
+   *
+   * @return The decoded value
+   */
+  public String getValueAsBCDString()
+  {
+    return getValue(ASN1Parser.BCDString);
+  }
+
+  /**
+   * Decode the value as a BCD string with the nibbles reversed, dropping the
+   * padding.
+   *
+   * @return The decoded value
+   */
+  public String getValueAsBCDStringLE()
+  {
+    return getValue(ASN1Parser.BCDStringLE);
+  }
+
+  /**
+   * Decode the value as hex.
+   *
+   * @return The decoded value
+   */
+  public String getValueAsHex()
+  {
+    if (length == 1)
+    {
+      return HEX_BYTES[data.get(valueOffset) & 0xFF];
+    }
+
+    return getValue(-1);
+  }
+
+  // Append the value bytes as characters
+  private void appendChars(StringBuilder buf)
+  {
+    for (int idx = 0; idx < length; idx++)
+    {
+      buf.append((char) (data.get(valueOffset + idx) & 0xFF));
+    }
+  }
+
+  // Append the value as BCD digits, skipping the 0xF padding nibbles
+  private void appendBCD(StringBuilder buf, boolean littleEndian)
+  {
+    for (int idx = 0; idx < length; idx++)
+    {
+      int value = data.get(valueOffset + idx);
+      int first = littleEndian ? (value & 0x0F) : ((value & 0xF0) >> 4);
+      int second = littleEndian ? ((value & 0xF0) >> 4) : (value & 0x0F);
+
+      if (first != 0x0F)
+      {
+        buf.append((char) (first + '0'));
+      }
+      if (second != 0x0F)
+      {
+        buf.append((char) (second + '0'));
+      }
+    }
+  }
+
+  // Append the value bytes as hex
+  private void appendHex(StringBuilder buf)
+  {
+    for (int idx = 0; idx < length; idx++)
+    {
+      int value = data.get(valueOffset + idx) & 0xFF;
+      buf.append(HEX_DIGITS[value >> 4]).append(HEX_DIGITS[value & 0x0F]);
+    }
+  }
+
+  // Set the current element to a filler byte
+  private void setFiller(int offset)
+  {
+    nullTag = true;
+    id = 0;
+    tag = 0;
+    rawTag = 0;
+    rawTagLength = 1;
+    length = 0;
+    indefiniteLength = false;
+    valueOffset = offset;
+    position = offset;
+  }
+
+  // Get a header byte, checking that it is in the data
+  private int getHeaderByte(int offset) throws ASN1Exception
+  {
+    if (offset >= limit)
+    {
+      throw new ASN1Exception("Element header at offset <" + elementOffset + "> runs past the end of the data");
+    }
+    return data.get(offset) & 0xFF;
+  }
+}
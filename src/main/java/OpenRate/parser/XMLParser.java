@@ -58,18 +58,21 @@
  */
 package OpenRate.parser;
 
-import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 
 /**
- * An XML parser
+ * An XML parser. The parser can be reused for any number of records, and the
+ * underlying SAX parser is kept for each thread, so parsing a record does not
+ * create a new parser.
  *
  * @author afzaal
  */
@@ -84,6 +87,9 @@ public class XMLParser extends DefaultHandler
 
 	private static SAXParserFactory factory = SAXParserFactory.newInstance();
 
+  // The SAX parser of each thread, reset between records
+  private static final ThreadLocal<SAXParser> threadParser = new ThreadLocal<>();
+
   //	Used to store xml tag names
   private ArrayList<String> tmpQNames = new ArrayList<>(5);
   private StringBuffer tmpValue;
@@ -119,9 +125,21 @@ public void parseXML(String xmlToParse, String headerIdentifier) throws Exceptio
     }
 
 		this.headerIdentifier = headerIdentifier;
-		SAXParser parser;
-		parser = factory.newSAXParser();
-		parser.parse(new ByteArrayInputStream(xmlToParse.getBytes()), this);
+    tmpQNames.clear();
+
+    SAXParser parser = threadParser.get();
+    if (parser == null)
+    {
+      parser = factory.newSAXParser();
+      threadParser.set(parser);
+    }
+    else
+    {
+      parser.reset();
+    }
+
+    // read the characters directly, without encoding them again
+		parser.parse(new InputSource(new StringReader(xmlToParse)), this);
 	}
 
 /**
@@ -0,0 +1,227 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.parser;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A streaming XML parser, which pulls the records out of an XML stream one at
+ * a time with StAX. Only the record being parsed is held in memory, so files
+ * of any size can be read, and the XML does not need to have line breaks in
+ * any particular place.
+ *
+ * The values of the record are given to the client in the same way as the
+ * XMLParser does: the name of each element is the path of element names from
+ * the record element, separated by ".", and the value is the text of the
+ * element.
+ *
+ * The input factory is kept for each thread. DTDs and external entities are
+ * not processed.
+ */
+public class XMLStreamParser
+{
+  // The input factory of each thread
+  private static final ThreadLocal<XMLInputFactory> threadFactory = new ThreadLocal<>();
+
+  // This is the client that needs attributes from xml
+  private final IXmlParser client;
+
+  // The reader of the stream we are parsing
+  private XMLStreamReader reader = null;
+
+  // The paths of the elements we are in, and the text of the current element
+  private final ArrayList<String> paths = new ArrayList<>(10);
+  private final StringBuilder value = new StringBuilder();
+
+ /**
+  * Constructor
+  *
+  * @param client The client to give the values of the records to
+  */
+  public XMLStreamParser(IXmlParser client)
+  {
+    this.client = client;
+  }
+
+ /**
+  * Start parsing a stream. The encoding is taken from the XML declaration.
+  *
+  * @param xmlStream The stream to parse
+  * @throws XMLStreamException If the stream could not be read
+  */
+  public void open(InputStream xmlStream) throws XMLStreamException
+  {
+    close();
+    reader = getFactory().createXMLStreamReader(xmlStream);
+  }
+
+ /**
+  * Get the input factory for this thread.
+  */
+  private static XMLInputFactory getFactory()
+  {
+    XMLInputFactory factory = threadFactory.get();
+    if (factory == null)
+    {
+      factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      threadFactory.set(factory);
+    }
+
+    return factory;
+  }
+
+ /**
+  * Parse the next record in the stream, giving its values to the client.
+  * Anything outside of the record elements is skipped.
+  *
+  * @param recordIdentifier The name of the record element
+  * @return true if a record was parsed, false at the end of the stream
+  * @throws XMLStreamException If the XML is not well formed
+  */
+  public boolean nextRecord(String recordIdentifier) throws XMLStreamException
+  {
+    if (reader == null)
+    {
+      return false;
+    }
+
+    // find the start of the record
+    while (true)
+    {
+      if (reader.hasNext() == false)
+      {
+        return false;
+      }
+
+      if ((reader.next() == XMLStreamConstants.START_ELEMENT) && reader.getLocalName().equals(recordIdentifier))
+      {
+        break;
+      }
+    }
+
+    paths.clear();
+    paths.add(recordIdentifier);
+    value.setLength(0);
+
+    // read the elements of the record, until the end of the record
+    while (paths.isEmpty() == false)
+    {
+      switch (reader.next())
+      {
+        case XMLStreamConstants.START_ELEMENT:
+          paths.add(paths.get(paths.size() - 1) + "." + reader.getLocalName());
+          value.setLength(0);
+          break;
+
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          value.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          break;
+
+        case XMLStreamConstants.END_ELEMENT:
+          String path = paths.remove(paths.size() - 1);
+
+          // the record element itself is not a value
+          if (paths.isEmpty() == false)
+          {
+            client.setAttribute(path, value.toString());
+          }
+          value.setLength(0);
+          break;
+
+        case XMLStreamConstants.END_DOCUMENT:
+          throw new XMLStreamException("End of the stream inside record <" + recordIdentifier + ">");
+
+        default:
+          // comments and processing instructions
+      }
+    }
+
+    return true;
+  }
+
+ /**
+  * Get the line we have reached in the stream, for error messages.
+  *
+  * @return The line number, or -1 if it is not known
+  */
+  public int getLineNumber()
+  {
+    return (reader == null) ? -1 : reader.getLocation().getLineNumber();
+  }
+
+ /**
+  * Stop parsing the stream. This does not close the stream itself.
+  *
+  * @throws XMLStreamException
+  */
+  public void close() throws XMLStreamException
+  {
+    if (reader != null)
+    {
+      XMLStreamReader oldReader = reader;
+      reader = null;
+      oldReader.close();
+    }
+  }
+}
@@ -66,7 +66,7 @@ import OpenRate.record.IRecord;
 import OpenRate.resource.CacheFactory;
 import OpenRate.utils.PropertyUtils;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class provides the abstract base for an aggregation plugin, matching an
@@ -110,8 +110,9 @@ public abstract class AbstractAggregation
   }
 
   // This holds the file names for the files that are in processing at any
-  // given moment
-  private HashMap <Integer, TransControlStructure> currentFileNames;
+  // given moment. The header is processed in the pipeline thread, the commit
+  // in the transaction manager thread.
+  private ConcurrentHashMap <Integer, TransControlStructure> currentFileNames;
 
   // List of Services that this Client supports
   private final static String SERVICE_WRITE_EVERY_N_TRANS  = "WriteResultFrequency";
@@ -163,7 +164,7 @@ public abstract class AbstractAggregation
     aggCache = (AggregationCache)CMAggCache.get(CacheObjectName);
 
     // initialise the file name object
-    currentFileNames = new HashMap <>(10);
+    currentFileNames = new ConcurrentHashMap <>(10);
 
     // see if we want to initialise the write result frequency
     helper = PropertyUtils.getPropertyUtils().getPluginPropertyValueDef(PipelineName,
@@ -63,6 +63,7 @@ import OpenRate.lang.Counter;
 import OpenRate.lang.DiscountInformation;
 import OpenRate.record.BalanceImpact;
 import OpenRate.record.IRatingRecord;
+import OpenRate.record.RUMRegistry;
 import OpenRate.resource.CacheFactory;
 import OpenRate.utils.PropertyUtils;
 
@@ -71,6 +72,12 @@ import OpenRate.utils.PropertyUtils;
  * work out the consuming of the balances that there might be, before we pass
  * into rating the values of what is left after consumption. This will decrement
  * balances, passing the results on for rating.
+ *
+ * The discounting methods hold the balance cache lock of the balance group
+ * while they read and update its counters, so the module can run with more
+ * than one thread. To also keep the order in which the records of a balance
+ * group are discounted, switch on record hashing and return the balance group
+ * from getPartitionKey().
  */
 public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactionalPlugIn
 {
@@ -322,15 +329,19 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
   public double getCounterBalance(long balanceGroup, int counterId, long utcEventDate, double initialValue)
   {
     Counter tmpCounterReq;
-    tmpCounterReq = BC.getCounter(balanceGroup, counterId, utcEventDate);
 
-    if (tmpCounterReq == null)
-    {
-      return initialValue;
-    }
-    else
+    synchronized (BC.getBalanceLock(balanceGroup))
     {
-      return tmpCounterReq.CurrentBalance;
+      tmpCounterReq = BC.getCounter(balanceGroup, counterId, utcEventDate);
+
+      if (tmpCounterReq == null)
+      {
+        return initialValue;
+      }
+      else
+      {
+        return tmpCounterReq.CurrentBalance;
+      }
     }
   }
 
@@ -377,139 +388,164 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
   */
   public DiscountInformation discountConsumeRUM(IRatingRecord currentRecord, String discountName, long balanceGroupId, String rumToUse, int counterId, double initialBalance, long utcBalanceStartValidity, long UTCBalanceEndValidity)
   {
-    BalanceImpact tmpBalImpact;
-    double tmpRUMValue;
-    double tmpDiscount;
-
-    DiscountInformation tmpReturnInfo = new DiscountInformation();
+    return discountConsumeRUM(currentRecord, discountName, balanceGroupId, RUMRegistry.getId(rumToUse), counterId, initialBalance, utcBalanceStartValidity, UTCBalanceEndValidity);
+  }
 
-    tmpRUMValue = currentRecord.getRUMValue(rumToUse);
-    Counter tmpCounter = checkCounterExists(balanceGroupId, counterId, currentRecord.getUTCEventDate());
+ /**
+  * As discountConsumeRUM(), with the RUM given by its RUMRegistry ID.
+  * Plug-ins which discount every record should look up the ID once at init,
+  * with RUMRegistry.getId(), and use this method.
+  *
+  * @param currentRecord The record to be discounted, inherited from IRatingRecord
+  * @param discountName The name of the discount
+  * @param balanceGroupId The ID of the balance group
+  * @param rumId The ID of the RUM to use
+  * @param counterId The ID of the counter to impact
+  * @param initialBalance The initial value of the counter (*)
+  * @param utcBalanceStartValidity The start of bucket validity (*)
+  * @param UTCBalanceEndValidity The end of bucket validity (*)
+  * @return The DiscountInformation summary object
+  */
+  public DiscountInformation discountConsumeRUM(IRatingRecord currentRecord, String discountName, long balanceGroupId, int rumId, int counterId, double initialBalance, long utcBalanceStartValidity, long UTCBalanceEndValidity)
+  {
+    String rumToUse = RUMRegistry.getName(rumId);
 
-    if (tmpCounter == null)
+    synchronized (BC.getBalanceLock(balanceGroupId))
     {
-      tmpCounter = addCounter(balanceGroupId,counterId,utcBalanceStartValidity,UTCBalanceEndValidity,initialBalance);
-
-      // Add the balance impact
-      tmpBalImpact = new BalanceImpact();
-      tmpBalImpact.type = "D";
-      tmpBalImpact.balanceGroup = balanceGroupId;
-      tmpBalImpact.cpiName = discountName;
-      tmpBalImpact.ruleName = "CREATION";
-      tmpBalImpact.rumUsed = rumToUse;
-      tmpBalImpact.counterID = counterId;
-      tmpBalImpact.recID = tmpCounter.RecId;
-      tmpBalImpact.rumValueAfter = 0.0;
-      tmpBalImpact.rumValueUsed = 0;
-      tmpBalImpact.balanceAfter = initialBalance;
-      tmpBalImpact.balanceDelta = initialBalance;
-      tmpBalImpact.startDate = utcBalanceStartValidity;
-      tmpBalImpact.endDate = UTCBalanceEndValidity;
+      BalanceImpact tmpBalImpact;
+      double tmpRUMValue;
+      double tmpDiscount;
 
-      if (tmpBalImpact.balanceDelta != 0)
-      {
-        currentRecord.addBalanceImpact(tmpBalImpact);
+      DiscountInformation tmpReturnInfo = new DiscountInformation();
 
-        tmpReturnInfo.setBalanceCreated(true);
-      }
-    }
+      tmpRUMValue = currentRecord.getRUMValue(rumId);
+      Counter tmpCounter = checkCounterExists(balanceGroupId, counterId, currentRecord.getUTCEventDate());
 
-    // see if we have used up all of the counter
-    if (tmpRUMValue > tmpCounter.CurrentBalance)
-    {
-      if (tmpCounter.CurrentBalance <= 0)
-      {
-        // we have used up the counter, leave cost alone
-      }
-      else
+      if (tmpCounter == null)
       {
-        // we are crossing a threshold
-        tmpDiscount = tmpCounter.CurrentBalance;
-        currentRecord.updateRUMValue(rumToUse,-tmpCounter.CurrentBalance);
-        double oldBal = tmpCounter.CurrentBalance;
-        tmpCounter.CurrentBalance = 0;
+        tmpCounter = addCounter(balanceGroupId,counterId,utcBalanceStartValidity,UTCBalanceEndValidity,initialBalance);
 
         // Add the balance impact
         tmpBalImpact = new BalanceImpact();
         tmpBalImpact.type = "D";
         tmpBalImpact.balanceGroup = balanceGroupId;
         tmpBalImpact.cpiName = discountName;
-        tmpBalImpact.ruleName = "Consume" + rumToUse;
+        tmpBalImpact.ruleName = "CREATION";
         tmpBalImpact.rumUsed = rumToUse;
         tmpBalImpact.counterID = counterId;
         tmpBalImpact.recID = tmpCounter.RecId;
-        tmpBalImpact.rumValueAfter = currentRecord.getRUMValue(rumToUse);
-        tmpBalImpact.rumValueUsed = tmpDiscount;
-        tmpBalImpact.balanceAfter = 0;
-        tmpBalImpact.balanceDelta = tmpBalImpact.balanceAfter - oldBal;
-        tmpBalImpact.startDate = tmpCounter.validFrom;
-        tmpBalImpact.endDate = tmpCounter.validTo;
+        tmpBalImpact.rumValueAfter = 0.0;
+        tmpBalImpact.rumValueUsed = 0;
+        tmpBalImpact.balanceAfter = initialBalance;
+        tmpBalImpact.balanceDelta = initialBalance;
+        tmpBalImpact.startDate = utcBalanceStartValidity;
+        tmpBalImpact.endDate = UTCBalanceEndValidity;
 
         if (tmpBalImpact.balanceDelta != 0)
         {
           currentRecord.addBalanceImpact(tmpBalImpact);
 
-          // Prepare the return value
-          tmpReturnInfo.setDiscountApplied(true);
-          tmpReturnInfo.setCounterId(counterId);
-          tmpReturnInfo.setRecId(tmpCounter.RecId);
-          tmpReturnInfo.setDiscountedValue(tmpDiscount);
-          tmpReturnInfo.setNewBalanceValue(0);            // was implicitly 0, now explicit
-
-          // Set the discount flag to "threshold crossing"
-          tmpReturnInfo.setDiscountFlag(DISCOUNT_FLAG_PARTIALLY_DISCOUNTED);
+          tmpReturnInfo.setBalanceCreated(true);
         }
       }
-    }
-    else
-    {
-      if (tmpCounter.CurrentBalance <= 0)
+
+      // see if we have used up all of the counter
+      if (tmpRUMValue > tmpCounter.CurrentBalance)
       {
-        // we have used up the counter, leave Volume alone
+        if (tmpCounter.CurrentBalance <= 0)
+        {
+          // we have used up the counter, leave cost alone
+        }
+        else
+        {
+          // we are crossing a threshold
+          tmpDiscount = tmpCounter.CurrentBalance;
+          currentRecord.updateRUMValue(rumId,-tmpCounter.CurrentBalance);
+          double oldBal = tmpCounter.CurrentBalance;
+          tmpCounter.CurrentBalance = 0;
+
+          // Add the balance impact
+          tmpBalImpact = new BalanceImpact();
+          tmpBalImpact.type = "D";
+          tmpBalImpact.balanceGroup = balanceGroupId;
+          tmpBalImpact.cpiName = discountName;
+          tmpBalImpact.ruleName = "Consume" + rumToUse;
+          tmpBalImpact.rumUsed = rumToUse;
+          tmpBalImpact.counterID = counterId;
+          tmpBalImpact.recID = tmpCounter.RecId;
+          tmpBalImpact.rumValueAfter = currentRecord.getRUMValue(rumId);
+          tmpBalImpact.rumValueUsed = tmpDiscount;
+          tmpBalImpact.balanceAfter = 0;
+          tmpBalImpact.balanceDelta = tmpBalImpact.balanceAfter - oldBal;
+          tmpBalImpact.startDate = tmpCounter.validFrom;
+          tmpBalImpact.endDate = tmpCounter.validTo;
+
+          if (tmpBalImpact.balanceDelta != 0)
+          {
+            currentRecord.addBalanceImpact(tmpBalImpact);
+
+            // Prepare the return value
+            tmpReturnInfo.setDiscountApplied(true);
+            tmpReturnInfo.setCounterId(counterId);
+            tmpReturnInfo.setRecId(tmpCounter.RecId);
+            tmpReturnInfo.setDiscountedValue(tmpDiscount);
+            tmpReturnInfo.setNewBalanceValue(0);            // was implicitly 0, now explicit
+
+            // Set the discount flag to "threshold crossing"
+            tmpReturnInfo.setDiscountFlag(DISCOUNT_FLAG_PARTIALLY_DISCOUNTED);
+          }
+        }
       }
       else
       {
-        // we are just decrementing the counter, using all of the impact
-        double oldBal = tmpCounter.CurrentBalance;
-        tmpCounter.CurrentBalance -= tmpRUMValue;
-        tmpDiscount = tmpRUMValue;
-        currentRecord.updateRUMValue(rumToUse,-currentRecord.getRUMValue(rumToUse));
-        tmpReturnInfo.setDiscountApplied(true);
-
-        // Add the balance impact
-        tmpBalImpact = new BalanceImpact();
-        tmpBalImpact.type = "D";
-        tmpBalImpact.balanceGroup = balanceGroupId;
-        tmpBalImpact.cpiName = discountName;
-        tmpBalImpact.ruleName = "Consume" + rumToUse;
-        tmpBalImpact.rumUsed = rumToUse;
-        tmpBalImpact.counterID = counterId;
-        tmpBalImpact.recID = tmpCounter.RecId;
-        tmpBalImpact.rumValueAfter = 0.0;
-        tmpBalImpact.rumValueUsed = tmpDiscount;
-        tmpBalImpact.balanceAfter = tmpCounter.CurrentBalance;
-        tmpBalImpact.balanceDelta = tmpBalImpact.balanceAfter - oldBal;
-        tmpBalImpact.startDate = tmpCounter.validFrom;
-        tmpBalImpact.endDate = tmpCounter.validTo;
-
-        if (tmpBalImpact.balanceDelta != 0)
+        if (tmpCounter.CurrentBalance <= 0)
         {
-          currentRecord.addBalanceImpact(tmpBalImpact);
-
-          // Prepare the return value
+          // we have used up the counter, leave Volume alone
+        }
+        else
+        {
+          // we are just decrementing the counter, using all of the impact
+          double oldBal = tmpCounter.CurrentBalance;
+          tmpCounter.CurrentBalance -= tmpRUMValue;
+          tmpDiscount = tmpRUMValue;
+          currentRecord.updateRUMValue(rumId,-currentRecord.getRUMValue(rumId));
           tmpReturnInfo.setDiscountApplied(true);
-          tmpReturnInfo.setCounterId(counterId);
-          tmpReturnInfo.setRecId(tmpCounter.RecId);
-          tmpReturnInfo.setDiscountedValue(tmpDiscount);
-          tmpReturnInfo.setNewBalanceValue(tmpCounter.CurrentBalance);
 
-          // Set the discount flag to "fully discounted"
-          tmpReturnInfo.setDiscountFlag(DISCOUNT_FLAG_FULLY_DISCOUNTED);
+          // Add the balance impact
+          tmpBalImpact = new BalanceImpact();
+          tmpBalImpact.type = "D";
+          tmpBalImpact.balanceGroup = balanceGroupId;
+          tmpBalImpact.cpiName = discountName;
+          tmpBalImpact.ruleName = "Consume" + rumToUse;
+          tmpBalImpact.rumUsed = rumToUse;
+          tmpBalImpact.counterID = counterId;
+          tmpBalImpact.recID = tmpCounter.RecId;
+          tmpBalImpact.rumValueAfter = 0.0;
+          tmpBalImpact.rumValueUsed = tmpDiscount;
+          tmpBalImpact.balanceAfter = tmpCounter.CurrentBalance;
+          tmpBalImpact.balanceDelta = tmpBalImpact.balanceAfter - oldBal;
+          tmpBalImpact.startDate = tmpCounter.validFrom;
+          tmpBalImpact.endDate = tmpCounter.validTo;
+
+          if (tmpBalImpact.balanceDelta != 0)
+          {
+            currentRecord.addBalanceImpact(tmpBalImpact);
+
+            // Prepare the return value
+            tmpReturnInfo.setDiscountApplied(true);
+            tmpReturnInfo.setCounterId(counterId);
+            tmpReturnInfo.setRecId(tmpCounter.RecId);
+            tmpReturnInfo.setDiscountedValue(tmpDiscount);
+            tmpReturnInfo.setNewBalanceValue(tmpCounter.CurrentBalance);
+
+            // Set the discount flag to "fully discounted"
+            tmpReturnInfo.setDiscountFlag(DISCOUNT_FLAG_FULLY_DISCOUNTED);
+          }
         }
       }
-    }
 
-    return tmpReturnInfo;
+      return tmpReturnInfo;
+    }
   }
 
  /**
@@ -541,65 +577,88 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
   */
   public DiscountInformation refundConsumeRUM(IRatingRecord currentRecord, String discountName, long balanceGroupId, String rumToUse, int counterId, double initialBalance)
   {
-    BalanceImpact tmpBalImpact;
-    double tmpRUMValue;
-    double tmpDiscount;
-
-    DiscountInformation tmpReturnInfo = new DiscountInformation();
+    return refundConsumeRUM(currentRecord, discountName, balanceGroupId, RUMRegistry.getId(rumToUse), counterId, initialBalance);
+  }
 
-    tmpRUMValue = currentRecord.getRUMValue(rumToUse);
-    Counter tmpCounter = checkCounterExists(balanceGroupId, counterId, currentRecord.getUTCEventDate());
+ /**
+  * As refundConsumeRUM(), with the RUM given by its RUMRegistry ID.
+  * Plug-ins which discount every record should look up the ID once at init,
+  * with RUMRegistry.getId(), and use this method.
+  *
+  * @param currentRecord The record to be discounted, inherited from IRatingRecord
+  * @param discountName The name of the discount
+  * @param balanceGroupId The ID of the balance group
+  * @param rumId The ID of the RUM to use
+  * @param counterId The ID of the counter to impact
+  * @param initialBalance The initial balance the counter had, serves as a maximum limit in refunds
+  * @return The DiscountInformation summary object
+  */
+  public DiscountInformation refundConsumeRUM(IRatingRecord currentRecord, String discountName, long balanceGroupId, int rumId, int counterId, double initialBalance)
+  {
+    String rumToUse = RUMRegistry.getName(rumId);
 
-    if (tmpCounter == null)
+    synchronized (BC.getBalanceLock(balanceGroupId))
     {
-      // can't refund onto a non-existent counter
-      return null;
-    }
+      BalanceImpact tmpBalImpact;
+      double tmpRUMValue;
+      double tmpDiscount;
 
-    // we give the value back
-    if ((tmpCounter.CurrentBalance + tmpRUMValue) > initialBalance)
-    {
-      // we can't go over the initial value, so limit what we refund
-      tmpRUMValue = initialBalance - tmpCounter.CurrentBalance;
-    }
+      DiscountInformation tmpReturnInfo = new DiscountInformation();
 
-    tmpCounter.CurrentBalance += tmpRUMValue;
-    tmpDiscount = tmpRUMValue;
-
-    // Add the balance impact
-    tmpBalImpact = new BalanceImpact();
-    tmpBalImpact.type = "D";
-    tmpBalImpact.balanceGroup = balanceGroupId;
-    tmpBalImpact.cpiName = discountName;
-    tmpBalImpact.ruleName = "Refund" + rumToUse;
-    tmpBalImpact.rumUsed = rumToUse;
-    tmpBalImpact.counterID = counterId;
-    tmpBalImpact.recID = tmpCounter.RecId;
-    tmpBalImpact.rumValueAfter = tmpCounter.CurrentBalance;
-    tmpBalImpact.rumValueUsed = currentRecord.getRUMValue(rumToUse);
-    tmpBalImpact.balanceAfter = tmpCounter.CurrentBalance;
-    tmpBalImpact.balanceDelta = tmpDiscount;
-    tmpBalImpact.startDate = tmpCounter.validFrom;
-    tmpBalImpact.endDate = tmpCounter.validTo;
-
-    if (tmpBalImpact.balanceDelta != 0)
-    {
-      tmpReturnInfo.setDiscountApplied(true);
+      tmpRUMValue = currentRecord.getRUMValue(rumId);
+      Counter tmpCounter = checkCounterExists(balanceGroupId, counterId, currentRecord.getUTCEventDate());
+
+      if (tmpCounter == null)
+      {
+        // can't refund onto a non-existent counter
+        return null;
+      }
 
-      currentRecord.addBalanceImpact(tmpBalImpact);
+      // we give the value back
+      if ((tmpCounter.CurrentBalance + tmpRUMValue) > initialBalance)
+      {
+        // we can't go over the initial value, so limit what we refund
+        tmpRUMValue = initialBalance - tmpCounter.CurrentBalance;
+      }
 
-      // Prepare the return value
-      tmpReturnInfo.setDiscountApplied(true);
-      tmpReturnInfo.setCounterId(counterId);
-      tmpReturnInfo.setRecId(tmpCounter.RecId);
-      tmpReturnInfo.setDiscountedValue(tmpDiscount);
-      tmpReturnInfo.setNewBalanceValue(tmpCounter.CurrentBalance);
+      tmpCounter.CurrentBalance += tmpRUMValue;
+      tmpDiscount = tmpRUMValue;
 
-      // Set the discount flag to "refund"
-      tmpReturnInfo.setDiscountFlag(DISCOUNT_FLAG_REFUNDED);
-    }
+      // Add the balance impact
+      tmpBalImpact = new BalanceImpact();
+      tmpBalImpact.type = "D";
+      tmpBalImpact.balanceGroup = balanceGroupId;
+      tmpBalImpact.cpiName = discountName;
+      tmpBalImpact.ruleName = "Refund" + rumToUse;
+      tmpBalImpact.rumUsed = rumToUse;
+      tmpBalImpact.counterID = counterId;
+      tmpBalImpact.recID = tmpCounter.RecId;
+      tmpBalImpact.rumValueAfter = tmpCounter.CurrentBalance;
+      tmpBalImpact.rumValueUsed = currentRecord.getRUMValue(rumId);
+      tmpBalImpact.balanceAfter = tmpCounter.CurrentBalance;
+      tmpBalImpact.balanceDelta = tmpDiscount;
+      tmpBalImpact.startDate = tmpCounter.validFrom;
+      tmpBalImpact.endDate = tmpCounter.validTo;
+
+      if (tmpBalImpact.balanceDelta != 0)
+      {
+        tmpReturnInfo.setDiscountApplied(true);
+
+        currentRecord.addBalanceImpact(tmpBalImpact);
+
+        // Prepare the return value
+        tmpReturnInfo.setDiscountApplied(true);
+        tmpReturnInfo.setCounterId(counterId);
+        tmpReturnInfo.setRecId(tmpCounter.RecId);
+        tmpReturnInfo.setDiscountedValue(tmpDiscount);
+        tmpReturnInfo.setNewBalanceValue(tmpCounter.CurrentBalance);
+
+        // Set the discount flag to "refund"
+        tmpReturnInfo.setDiscountFlag(DISCOUNT_FLAG_REFUNDED);
+      }
 
-    return tmpReturnInfo;
+      return tmpReturnInfo;
+    }
   }
 
  /**
@@ -638,76 +697,101 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
   */
   public DiscountInformation discountAggregateRUM(IRatingRecord currentRecord, String discountName, long balanceGroupId, String rumToUse, int counterId, double initialBalance, long utcBalanceStartValidity, long UTCBalanceEndValidity)
   {
-    BalanceImpact tmpBalImpact;
-    double tmpRUMValue;
-    double tmpDiscount;
-
-    DiscountInformation tmpReturnInfo = new DiscountInformation();
+    return discountAggregateRUM(currentRecord, discountName, balanceGroupId, RUMRegistry.getId(rumToUse), counterId, initialBalance, utcBalanceStartValidity, UTCBalanceEndValidity);
+  }
 
-    tmpRUMValue = currentRecord.getRUMValue(rumToUse);
-    Counter tmpCounter = checkCounterExists(balanceGroupId, counterId, currentRecord.getUTCEventDate());
+ /**
+  * As discountAggregateRUM(), with the RUM given by its RUMRegistry ID.
+  * Plug-ins which discount every record should look up the ID once at init,
+  * with RUMRegistry.getId(), and use this method.
+  *
+  * @param currentRecord The record to be discounted, inherited from IRatingRecord
+  * @param discountName The name of the discount
+  * @param balanceGroupId The ID of the balance group
+  * @param rumId The ID of the RUM to use
+  * @param counterId The ID of the counter to impact
+  * @param initialBalance The initial value of the counter (*)
+  * @param utcBalanceStartValidity The start of bucket validity (*)
+  * @param UTCBalanceEndValidity The end of bucket validity (*)
+  * @return The DiscountInformation summary object
+  */
+  public DiscountInformation discountAggregateRUM(IRatingRecord currentRecord, String discountName, long balanceGroupId, int rumId, int counterId, double initialBalance, long utcBalanceStartValidity, long UTCBalanceEndValidity)
+  {
+    String rumToUse = RUMRegistry.getName(rumId);
 
-    if (tmpCounter == null)
+    synchronized (BC.getBalanceLock(balanceGroupId))
     {
-      tmpCounter = addCounter(balanceGroupId,counterId,utcBalanceStartValidity,UTCBalanceEndValidity,initialBalance);
+      BalanceImpact tmpBalImpact;
+      double tmpRUMValue;
+      double tmpDiscount;
+
+      DiscountInformation tmpReturnInfo = new DiscountInformation();
+
+      tmpRUMValue = currentRecord.getRUMValue(rumId);
+      Counter tmpCounter = checkCounterExists(balanceGroupId, counterId, currentRecord.getUTCEventDate());
+
+      if (tmpCounter == null)
+      {
+        tmpCounter = addCounter(balanceGroupId,counterId,utcBalanceStartValidity,UTCBalanceEndValidity,initialBalance);
+
+        // Add the balance impact
+        tmpBalImpact = new BalanceImpact();
+        tmpBalImpact.type = "D";
+        tmpBalImpact.balanceGroup = balanceGroupId;
+        tmpBalImpact.cpiName = discountName;
+        tmpBalImpact.ruleName = "CREATION";
+        tmpBalImpact.rumUsed = rumToUse;
+        tmpBalImpact.counterID = counterId;
+        tmpBalImpact.recID = tmpCounter.RecId;
+        tmpBalImpact.rumValueAfter = 0.0;
+        tmpBalImpact.rumValueUsed = 0;
+        tmpBalImpact.balanceAfter = initialBalance;
+        tmpBalImpact.balanceDelta = initialBalance;
+        tmpBalImpact.startDate = utcBalanceStartValidity;
+        tmpBalImpact.endDate = UTCBalanceEndValidity;
+
+        currentRecord.addBalanceImpact(tmpBalImpact);
+
+        tmpReturnInfo.setBalanceCreated(true);
+      }
+
+      // now that we are sure we have a balance, update it
+      tmpCounter.CurrentBalance += tmpRUMValue;
+      tmpDiscount = tmpRUMValue;
+      tmpReturnInfo.setDiscountApplied(true);
 
       // Add the balance impact
       tmpBalImpact = new BalanceImpact();
       tmpBalImpact.type = "D";
       tmpBalImpact.balanceGroup = balanceGroupId;
       tmpBalImpact.cpiName = discountName;
-      tmpBalImpact.ruleName = "CREATION";
+      tmpBalImpact.ruleName = "Aggregate" + rumToUse;
       tmpBalImpact.rumUsed = rumToUse;
       tmpBalImpact.counterID = counterId;
       tmpBalImpact.recID = tmpCounter.RecId;
-      tmpBalImpact.rumValueAfter = 0.0;
-      tmpBalImpact.rumValueUsed = 0;
-      tmpBalImpact.balanceAfter = initialBalance;
-      tmpBalImpact.balanceDelta = initialBalance;
-      tmpBalImpact.startDate = utcBalanceStartValidity;
-      tmpBalImpact.endDate = UTCBalanceEndValidity;
-
-      currentRecord.addBalanceImpact(tmpBalImpact);
+      tmpBalImpact.rumValueAfter = tmpRUMValue;
+      tmpBalImpact.rumValueUsed = tmpRUMValue;
+      tmpBalImpact.balanceAfter = tmpCounter.CurrentBalance;
+      tmpBalImpact.balanceDelta = tmpDiscount;
+      tmpBalImpact.startDate = tmpCounter.validFrom;
+      tmpBalImpact.endDate = tmpCounter.validTo;
 
-      tmpReturnInfo.setBalanceCreated(true);
-    }
+      if (tmpBalImpact.balanceDelta != 0)
+      {
+        currentRecord.addBalanceImpact(tmpBalImpact);
 
-    // now that we are sure we have a balance, update it
-    tmpCounter.CurrentBalance += tmpRUMValue;
-    tmpDiscount = tmpRUMValue;
-    tmpReturnInfo.setDiscountApplied(true);
-
-    // Add the balance impact
-    tmpBalImpact = new BalanceImpact();
-    tmpBalImpact.type = "D";
-    tmpBalImpact.balanceGroup = balanceGroupId;
-    tmpBalImpact.cpiName = discountName;
-    tmpBalImpact.ruleName = "Aggregate" + rumToUse;
-    tmpBalImpact.rumUsed = rumToUse;
-    tmpBalImpact.counterID = counterId;
-    tmpBalImpact.recID = tmpCounter.RecId;
-    tmpBalImpact.rumValueAfter = tmpRUMValue;
-    tmpBalImpact.rumValueUsed = tmpRUMValue;
-    tmpBalImpact.balanceAfter = tmpCounter.CurrentBalance;
-    tmpBalImpact.balanceDelta = tmpDiscount;
-    tmpBalImpact.startDate = tmpCounter.validFrom;
-    tmpBalImpact.endDate = tmpCounter.validTo;
-
-    if (tmpBalImpact.balanceDelta != 0)
-    {
-      currentRecord.addBalanceImpact(tmpBalImpact);
+        // Prepare the return value
+        tmpReturnInfo.setDiscountApplied(true);
+        tmpReturnInfo.setCounterId(counterId);
+        tmpReturnInfo.setRecId(tmpCounter.RecId);
+        tmpReturnInfo.setDiscountedValue(tmpDiscount);
+        tmpReturnInfo.setNewBalanceValue(tmpCounter.CurrentBalance);
 
-      // Prepare the return value
-      tmpReturnInfo.setDiscountApplied(true);
-      tmpReturnInfo.setCounterId(counterId);
-      tmpReturnInfo.setRecId(tmpCounter.RecId);
-      tmpReturnInfo.setDiscountedValue(tmpDiscount);
-      tmpReturnInfo.setNewBalanceValue(tmpCounter.CurrentBalance);
+        // Set the discount flag to "aggregate"
+        tmpReturnInfo.setDiscountFlag(DISCOUNT_FLAG_AGGREGATED);
+      }
 
-      // Set the discount flag to "aggregate"
-      tmpReturnInfo.setDiscountFlag(DISCOUNT_FLAG_AGGREGATED);
+      return tmpReturnInfo;
     }
-
-    return tmpReturnInfo;
   }
 }
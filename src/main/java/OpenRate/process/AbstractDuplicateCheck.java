@@ -201,6 +201,24 @@ public abstract class AbstractDuplicateCheck
     }
   }
 
+  /**
+   * Check a block of records for duplicates. The results are the same as
+   * checking each record in turn, but records older than the buffer limit are
+   * checked against the database in one batch instead of one insert each.
+   *
+   * @param UTCDates The dates of the CDRs in UTC format
+   * @param IDData The Call Reference IDs
+   * @return for each record, false if the call is not a duplicate
+   * @throws ProcessingException
+   */
+  public boolean[] CheckDuplicates(long[] UTCDates, String[] IDData) throws ProcessingException {
+    if (Active) {
+      return DupCache.DuplicateCheck(IDData, UTCDates, getTransactionNumber());
+    } else {
+      return new boolean[IDData.length];
+    }
+  }
+
   // -----------------------------------------------------------------------------
   // ------------------ Start of transaction layer functions ---------------------
   // -----------------------------------------------------------------------------
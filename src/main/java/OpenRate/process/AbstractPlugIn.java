@@ -73,9 +73,12 @@ import OpenRate.record.HeaderRecord;
 import OpenRate.record.IRecord;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The AbstractPlugIn provides a partially implemented PlugIn allowing simpler
@@ -128,6 +131,7 @@ public abstract class AbstractPlugIn
   private final static String DEFAULT_BUFFERSIZE = CommonConfig.DEFAULT_BUFFER_SIZE;
   private final static String DEFAULT_NUMTHREAD  = CommonConfig.NUM_PROCESSING_THREADS_DEFAULT;
   private final static String DEFAULT_ACTIVE     = CommonConfig.DEFAULT_ACTIVE;
+  private final static String RECORD_HASHING     = "RecordHashing";
 
   //performance counters
   private long processingTime = 0;
@@ -136,9 +140,29 @@ public abstract class AbstractPlugIn
   private int  outBufferCapacity = 0;
   private int  bufferHits = 0;
 
+  // time (ns) spent blocked on the outbound buffer and waiting on the inbound
+  // buffer, summed over all the threads of the plug in
+  private final AtomicLong outboundBlockedTime = new AtomicLong(0);
+  private final AtomicLong inboundWaitTime = new AtomicLong(0);
+
+  // set by the inbound buffer when records arrive, cleared before each pull,
+  // so that a notification between an empty pull and the wait is not lost
+  private volatile boolean recordsAvailable = false;
+
+  // the number of our threads parked waiting for records, changed only while
+  // holding our monitor, read by the inbound buffer without locking
+  private volatile int waitingThreads = 0;
+
   // this is used to control the active status
   private boolean active = true;
 
+  // If record hashing is on, the number of the next batch each partition may
+  // process, otherwise null
+  private long[] partitionTurns = null;
+
+  // The number of the next batch pulled, if record hashing is on
+  private long nextBatchSequence = 0;
+
   /**
    * This is used for managing exceptions. Defined here to keep the messages
    * as short and as in line as possible in the modules.
@@ -181,6 +205,7 @@ public abstract class AbstractPlugIn
     processControlEvent(SERVICE_NUMTHREAD, true, ConfigHelper);
     ConfigHelper = initGetActive();
     processControlEvent(SERVICE_ACTIVE, true, ConfigHelper);
+    initRecordHashing();
 
     // register us with the client manager
     registerClientManager();
@@ -223,7 +248,6 @@ public abstract class AbstractPlugIn
   @Override
   public void process()
   {
-    Iterator<IRecord> iter;
     long startTime;
     long endTime;
     long BatchTime;
@@ -231,6 +255,9 @@ public abstract class AbstractPlugIn
     // processing list for batch events
     Collection<IRecord> in;
 
+    // the number of the batch if the records are partitioned, otherwise -1
+    long batchSequence;
+
     // Print the thread startup message
     OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() +
                    "> started, pulling from buffer <" + getBatchInbound().toString() +
@@ -254,8 +281,24 @@ public abstract class AbstractPlugIn
       // each thread wake up
       startTime = System.currentTimeMillis();
 
-      // get the batch records to process
-      in = getBatchInbound().pull(getBatchSize());
+      // get the batch records to process. If the records are partitioned, the
+      // batch is numbered so that each partition is processed in batch order
+      batchSequence = -1;
+      if (partitionTurns == null)
+      {
+        in = pullInbound();
+      }
+      else
+      {
+        synchronized (partitionTurns)
+        {
+          in = pullInbound();
+          if (in.size() > 0)
+          {
+            batchSequence = nextBatchSequence++;
+          }
+        }
+      }
 
       int ThisBatchRecordCount = in.size();
 
@@ -263,190 +306,28 @@ public abstract class AbstractPlugIn
       {
         // If the active flag is set, we do the processing for real
         // if it is not set, we only manage the transaction
-        if (    isActive())
+        if (batchSequence >= 0)
         {
-          // Active loop
-          iter = in.iterator();
-
-          // Process each of the block of records and trigger the processing
-          // functions for each type (header, trailer, valid and error)
-          while (iter.hasNext())
-          {
-            try
-            {
-              // Get the formatted information from the record
-              IRecord r = iter.next();
-
-              // Trigger the correct user level functions according to the state of
-              // the record
-              if (r.isValid())
-              {
-                procValidRecord(r);
-              }
-              else
-              {
-                if (r.isErrored())
-                {
-                  procErrorRecord(r);
-                }
-                else
-                {
-                  if (r instanceof HeaderRecord)
-                  {
-                    r = procHeader(r);
-                    streamsProcessed++;
-                  }
-
-                  if (r instanceof TrailerRecord)
-                  {
-                    procTrailer(r);
-                  }
-                }
-              }
-            } // try
-            catch (ProcessingException pe)
-            {
-              getPipeLog().error("Processing exception caught in Plug In <" +
-                          getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-              getExceptionHandler().reportException(pe);
-            }
-            catch (ClassCastException cce)
-            {
-              getPipeLog().error("Record Class Cast exception caught in Plug In <" +
-                          getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-              getExceptionHandler().reportException(new ProcessingException(cce,getSymbolicName()));
-            }
-            catch (NullPointerException npe)
-            {
-              getPipeLog().error("Null pointer exception caught in Plug In <" +
-                          getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-              getExceptionHandler().reportException(new ProcessingException(npe,getSymbolicName()));
-            }
-            catch (ArrayIndexOutOfBoundsException aiob)
-            {
-              getPipeLog().error("Array Index Out of Bounds exception caught in Plug In <" +
-                          getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-              getExceptionHandler().reportException(new ProcessingException(aiob,getSymbolicName()));
-            }
-            catch (Exception ge)
-            {
-                getPipeLog().fatal("General exception caught in Plug In <" +
-                          getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-                getExceptionHandler().reportException(new ProcessingException(ge,getSymbolicName()));
-            }
-            catch (Throwable t)
-            {
-              getPipeLog().fatal("Unexpected exception caught in Plug In <" +
-                        getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-              getExceptionHandler().reportException(new ProcessingException(t,getSymbolicName()));
-              }
-            }
-          }
-          else
-          {
-            if (this instanceof AbstractTransactionalPlugIn)
-            {
-              // Inactive loop - we only need to do this for transactional modules
-              // if the module is non transactional, we need do nothing
-              iter = in.iterator();
-
-              // Process each of the block of records and trigger the processing
-              // functions for each type (header, trailer, valid and error)
-              while (iter.hasNext())
-              {
-                try
-                {
-                  // Get the formatted information from the record
-                  IRecord r = iter.next();
-
-                  // Trigger the correct user level functions according to the state of
-                  // the record
-                  if (r.isValid())
-                  {
-                    // nothing
-                  }
-                  else
-                  {
-                    if (r.isErrored())
-                    {
-                      // nothing
-                    }
-                    else
-                    {
-                      if (r instanceof HeaderRecord)
-                      {
-                        r = procHeader(r);
-                        streamsProcessed++;
-                      }
-
-                      if (r instanceof TrailerRecord)
-                      {
-                        procTrailer(r);
-                      }
-                    }
-                  } // else
-              } // try
-              catch (ClassCastException cce)
-              {
-                getPipeLog().error("Record Class Cast exception caught in Plug In <" +
-                            getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-                getExceptionHandler().reportException(new ProcessingException(cce,getSymbolicName()));
-              }
-              catch (NullPointerException npe)
-              {
-                getPipeLog().error("Null pointer exception caught in Plug In <" +
-                            getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-                getExceptionHandler().reportException(new ProcessingException(npe,getSymbolicName()));
-              }
-              catch (ArrayIndexOutOfBoundsException aiob)
-              {
-                getPipeLog().error("Array Index Out of Bounds exception caught in Plug In <" +
-                            getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-                getExceptionHandler().reportException(new ProcessingException(aiob,getSymbolicName()));
-              }
-              catch (Throwable t)
-              {
-                getPipeLog().fatal("Unexpected exception caught in Plug In <" +
-                          getSymbolicName() + ">. See Error Log for the Stack Trace.");
-
-                getExceptionHandler().reportException(new ProcessingException(t,getSymbolicName()));
-                }
-              } // while
-            }
-          }
-
-          getBatchOutbound().push(in);
-          OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() + "> pushed <" + String.valueOf(ThisBatchRecordCount) + "> batch records to buffer <" + getBatchOutbound().toString() + ">");
-
-          outBufferCapacity = getBatchOutbound().getEventCount();
+          processPartitionedRecords(in, batchSequence);
+        }
+        else if (isActive())
+        {
+          processRecords(in.iterator());
+        }
+        else if (this instanceof AbstractTransactionalPlugIn)
+        {
+          // Inactive loop - we only need to do this for transactional modules
+          // if the module is non transactional, we need do nothing
+          processInactiveRecords(in.iterator());
+        }
 
           endTime = System.currentTimeMillis();
           BatchTime = (endTime - startTime);
                 setProcessingTime(getProcessingTime() + BatchTime);
 
-          while (outBufferCapacity > getBufferSize())
-          {
-                    setBufferHits(getBufferHits() + 1);
-            OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() + "> buffer high water mark! Buffer max = <" + getBufferSize() + "> current count = <" + outBufferCapacity + ">");
-            try
-            {
-              Thread.sleep(100);
-            }
-            catch (InterruptedException ex)
-            {
-              // Nothing
-            }
-            outBufferCapacity = getBatchOutbound().getEventCount();
-          }
+          // pass the records on, blocking if the downstream buffer is full
+          pushOutbound(in);
+          OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() + "> pushed <" + String.valueOf(ThisBatchRecordCount) + "> batch records to buffer <" + getBatchOutbound().toString() + ">");
 
           OpenRate.getOpenRateStatsLog().info(
             "Plugin <" + Thread.currentThread().getName() + "> processed <" +
@@ -468,19 +349,345 @@ public abstract class AbstractPlugIn
 
           // If not marked for shutdown, wait for notification from the
           // suppler that new records are available for processing.
-          try
+          waitForInboundRecords();
+        } // else
+      } // while loop
+  }
+
+ /**
+  * Process a batch of records when record hashing is on. The valid and error
+  * records are split into partitions by the hash of their partition key, and
+  * each partition is processed once the same partition of the previous batch
+  * has been processed. Records with the same key are therefore never processed
+  * by two threads at once, and are processed in the order they arrived.
+  *
+  * Batches containing headers or trailers, and batches pulled while the plug
+  * in is inactive, wait for all of the partitions and are processed in turn.
+  *
+  * @param in The batch of records
+  * @param batchSequence The number of the batch
+  */
+  private void processPartitionedRecords(Collection<IRecord> in, long batchSequence)
+  {
+    int partitionCount = partitionTurns.length;
+    boolean serial = !isActive();
+    ArrayList<ArrayList<IRecord>> partitions = new ArrayList<>(partitionCount);
+
+    for (int partition = 0; partition < partitionCount; partition++)
+    {
+      partitions.add(new ArrayList<IRecord>());
+    }
+
+    Iterator<IRecord> iter = in.iterator();
+    while ((!serial) && iter.hasNext())
+    {
+      IRecord r = iter.next();
+
+      if ((r instanceof HeaderRecord) || (r instanceof TrailerRecord))
+      {
+        serial = true;
+      }
+      else
+      {
+        partitions.get(getPartition(r, partitionCount)).add(r);
+      }
+    }
+
+    if (serial)
+    {
+      for (int partition = 0; partition < partitionCount; partition++)
+      {
+        waitForPartitionTurn(partition, batchSequence);
+      }
+
+      try
+      {
+        if (isActive())
+        {
+          processRecords(in.iterator());
+        }
+        else if (this instanceof AbstractTransactionalPlugIn)
+        {
+          processInactiveRecords(in.iterator());
+        }
+      }
+      finally
+      {
+        for (int partition = 0; partition < partitionCount; partition++)
+        {
+          endPartitionTurn(partition);
+        }
+      }
+    }
+    else
+    {
+      for (int partition = 0; partition < partitionCount; partition++)
+      {
+        waitForPartitionTurn(partition, batchSequence);
+
+        try
+        {
+          processRecords(partitions.get(partition).iterator());
+        }
+        finally
+        {
+          endPartitionTurn(partition);
+        }
+      }
+    }
+  }
+
+ /**
+  * Get the partition of a record from the hash of its partition key.
+  *
+  * @param r The record
+  * @param partitionCount The number of partitions, a power of 2
+  * @return The partition
+  */
+  private int getPartition(IRecord r, int partitionCount)
+  {
+    long key;
+
+    try
+    {
+      key = getPartitionKey(r);
+    }
+    catch (RuntimeException ex)
+    {
+      // the processing of the record will report the problem
+      key = 0;
+    }
+
+    long hash = key * 0x9E3779B97F4A7C15L;
+
+    return (int) (hash >>> 32) & (partitionCount - 1);
+  }
+
+ /**
+  * Wait until a partition may process the given batch.
+  *
+  * @param partition The partition
+  * @param batchSequence The number of the batch
+  */
+  private void waitForPartitionTurn(int partition, long batchSequence)
+  {
+    boolean interrupted = false;
+
+    synchronized (partitionTurns)
+    {
+      while (partitionTurns[partition] != batchSequence)
+      {
+        try
+        {
+          partitionTurns.wait();
+        }
+        catch (InterruptedException e)
+        {
+          // we must still wait, to keep the order
+          interrupted = true;
+        }
+      }
+    }
+
+    if (interrupted)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+ /**
+  * Let the next batch process the partition.
+  *
+  * @param partition The partition
+  */
+  private void endPartitionTurn(int partition)
+  {
+    synchronized (partitionTurns)
+    {
+      partitionTurns[partition]++;
+      partitionTurns.notifyAll();
+    }
+  }
+
+ /**
+  * Get the key that decides the partition of a record when record hashing is
+  * on. Records with the same key are processed in the order they arrived, and
+  * never by two threads at once. For example a balance handler would return
+  * the balance group of the record.
+  *
+  * The default puts all the records into one partition, which processes them
+  * in turn.
+  *
+  * @param r The record, valid or errored
+  * @return The partition key
+  */
+  protected long getPartitionKey(IRecord r)
+  {
+    return 0;
+  }
+
+ /**
+  * Process a block of records, triggering the processing function for the
+  * type of each record (header, trailer, valid and error).
+  *
+  * @param iter The records to process
+  */
+  private void processRecords(Iterator<IRecord> iter)
+  {
+    // Process each of the block of records and trigger the processing
+    // functions for each type (header, trailer, valid and error)
+    while (iter.hasNext())
+    {
+      try
+      {
+        // Get the formatted information from the record
+        IRecord r = iter.next();
+
+        // Trigger the correct user level functions according to the state of
+        // the record
+        if (r.isValid())
+        {
+          procValidRecord(r);
+        }
+        else
+        {
+          if (r.isErrored())
+          {
+            procErrorRecord(r);
+          }
+          else
           {
-            synchronized (this)
+            if (r instanceof HeaderRecord)
+            {
+              r = procHeader(r);
+              streamsProcessed++;
+            }
+
+            if (r instanceof TrailerRecord)
             {
-              wait();
+              procTrailer(r);
             }
           }
-          catch (InterruptedException e)
+        }
+      } // try
+      catch (ProcessingException pe)
+      {
+        getPipeLog().error("Processing exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(pe);
+      }
+      catch (ClassCastException cce)
+      {
+        getPipeLog().error("Record Class Cast exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(new ProcessingException(cce,getSymbolicName()));
+      }
+      catch (NullPointerException npe)
+      {
+        getPipeLog().error("Null pointer exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(new ProcessingException(npe,getSymbolicName()));
+      }
+      catch (ArrayIndexOutOfBoundsException aiob)
+      {
+        getPipeLog().error("Array Index Out of Bounds exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(new ProcessingException(aiob,getSymbolicName()));
+      }
+      catch (Exception ge)
+      {
+          getPipeLog().fatal("General exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+          getExceptionHandler().reportException(new ProcessingException(ge,getSymbolicName()));
+      }
+      catch (Throwable t)
+      {
+        getPipeLog().fatal("Unexpected exception caught in Plug In <" +
+                  getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(new ProcessingException(t,getSymbolicName()));
+      }
+    }
+  }
+
+ /**
+  * Process a block of records while the plug in is inactive. Only the headers
+  * and trailers are processed, to manage the transactions.
+  *
+  * @param iter The records to process
+  */
+  private void processInactiveRecords(Iterator<IRecord> iter)
+  {
+    // Process each of the block of records and trigger the processing
+    // functions for each type (header, trailer, valid and error)
+    while (iter.hasNext())
+    {
+      try
+      {
+        // Get the formatted information from the record
+        IRecord r = iter.next();
+
+        // Trigger the correct user level functions according to the state of
+        // the record
+        if (r.isValid())
+        {
+          // nothing
+        }
+        else
+        {
+          if (r.isErrored())
+          {
+            // nothing
+          }
+          else
           {
-            // ignore interrupt exceptions
+            if (r instanceof HeaderRecord)
+            {
+              r = procHeader(r);
+              streamsProcessed++;
+            }
+
+            if (r instanceof TrailerRecord)
+            {
+              procTrailer(r);
+            }
           }
         } // else
-      } // while loop
+      } // try
+      catch (ClassCastException cce)
+      {
+        getPipeLog().error("Record Class Cast exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(new ProcessingException(cce,getSymbolicName()));
+      }
+      catch (NullPointerException npe)
+      {
+        getPipeLog().error("Null pointer exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(new ProcessingException(npe,getSymbolicName()));
+      }
+      catch (ArrayIndexOutOfBoundsException aiob)
+      {
+        getPipeLog().error("Array Index Out of Bounds exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(new ProcessingException(aiob,getSymbolicName()));
+      }
+      catch (Throwable t)
+      {
+        getPipeLog().fatal("Unexpected exception caught in Plug In <" +
+                  getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(new ProcessingException(t,getSymbolicName()));
+      }
+    } // while
   }
 
   /**
@@ -576,6 +783,42 @@ public abstract class AbstractPlugIn
     return tmpValue;
   }
 
+ /**
+  * Read the record hashing property. If it is on and the plug in has more
+  * than one thread, the records are partitioned by getPartitionKey().
+  *
+  * @throws InitializationException
+  */
+  private void initRecordHashing() throws InitializationException
+  {
+    String tmpValue;
+
+    tmpValue = PropertyUtils.getPropertyUtils().getPluginPropertyValueDef(getPipeName(),symbolicName,RECORD_HASHING, "False");
+
+    if (!tmpValue.equalsIgnoreCase("true") && !tmpValue.equalsIgnoreCase("false"))
+    {
+      message = "RecordHashing must be True or False in plug in <" + symbolicName + ">, found <" + tmpValue + ">";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    if (tmpValue.equalsIgnoreCase("true") && (numThreads > 1))
+    {
+      // a few partitions per thread, so that the threads can overlap
+      int partitionCount = 1;
+      while (partitionCount < numThreads * 4)
+      {
+        partitionCount <<= 1;
+      }
+
+      partitionTurns = new long[partitionCount];
+      nextBatchSequence = 0;
+    }
+    else
+    {
+      partitionTurns = null;
+    }
+  }
+
  /**
   * return the symbolic name
   *
@@ -627,10 +870,98 @@ public abstract class AbstractPlugIn
   {
     synchronized (this)
     {
+      recordsAvailable = true;
       notifyAll();
     }
   }
 
+ /**
+  * Tells the inbound buffer if any of our threads are waiting for records.
+  *
+  * @return true if at least one thread is waiting
+  */
+  @Override
+  public boolean isWaiting()
+  {
+    return waitingThreads > 0;
+  }
+
+ /**
+  * Pull the next batch of records from the inbound buffer. The records
+  * available flag is cleared before the pull, so that any notification that
+  * arrives afterwards will stop waitForInboundRecords() from sleeping.
+  *
+  * @return The records pulled
+  */
+  protected Collection<IRecord> pullInbound()
+  {
+    recordsAvailable = false;
+
+    return getBatchInbound().pull(getBatchSize());
+  }
+
+ /**
+  * Wait until the inbound buffer notifies us that records are available, or
+  * until we are marked for shutdown. The time spent waiting is added to the
+  * inbound wait statistics.
+  */
+  protected void waitForInboundRecords()
+  {
+    long waitStart = System.nanoTime();
+
+    try
+    {
+      synchronized (this)
+      {
+        waitingThreads++;
+
+        try
+        {
+          while (!recordsAvailable && !shutdownFlag)
+          {
+            wait();
+          }
+        }
+        finally
+        {
+          waitingThreads--;
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      // ignore interrupt exceptions
+    }
+
+    inboundWaitTime.addAndGet(System.nanoTime() - waitStart);
+  }
+
+ /**
+  * Push a batch of records to the outbound buffer, and then block until the
+  * buffer is back below our buffer size. The time spent in the push and the
+  * wait is added to the outbound blocked statistics.
+  *
+  * @param out The records to push
+  */
+  protected void pushOutbound(Collection<IRecord> out)
+  {
+    long pushStart = System.nanoTime();
+
+    getBatchOutbound().push(out);
+
+    outBufferCapacity = getBatchOutbound().getEventCount();
+
+    if (outBufferCapacity > getBufferSize())
+    {
+      incBufferHits();
+      OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() + "> buffer high water mark! Buffer max = <" + getBufferSize() + "> current count = <" + outBufferCapacity + ">");
+
+      getBatchOutbound().waitForSpace(getBufferSize());
+    }
+
+    outboundBlockedTime.addAndGet(System.nanoTime() - pushStart);
+  }
+
 // -----------------------------------------------------------------------------
 // ----------------- Start of published hookable functions ---------------------
 // -----------------------------------------------------------------------------
@@ -897,6 +1228,8 @@ public abstract class AbstractPlugIn
                 setBatchRecordsProcessed(0);
         streamsProcessed = 0;
         setBufferHits(0);
+        outboundBlockedTime.set(0);
+        inboundWaitTime.set(0);
         ResultCode = 0;
       }
       else
@@ -923,7 +1256,9 @@ public abstract class AbstractPlugIn
              Double.toString(CDRsPerSec) + ":" +
              Long.toString(outBufferCapacity) + ":" +
              Long.toString(getBufferHits()) + ":" +
-             Long.toString(getBatchInbound().getEventCount());
+             Long.toString(getBatchInbound().getEventCount()) + ":" +
+             Long.toString(getOutboundBlockedTime()) + ":" +
+             Long.toString(getInboundWaitTime());
     }
 
     if (Command.equalsIgnoreCase(SERVICE_NUMTHREAD))
@@ -1033,6 +1368,20 @@ public abstract class AbstractPlugIn
         this.setBufferHits(this.getBufferHits() + 1);
     }
 
+    /**
+     * @return the time in ms spent blocked pushing to the outbound buffer
+     */
+    public long getOutboundBlockedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(outboundBlockedTime.get());
+    }
+
+    /**
+     * @return the time in ms spent waiting for records on the inbound buffer
+     */
+    public long getInboundWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(inboundWaitTime.get());
+    }
+
     /**
      * @return the processingTime
      */
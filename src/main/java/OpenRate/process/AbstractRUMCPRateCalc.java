@@ -173,7 +173,7 @@ public abstract class AbstractRUMCPRateCalc extends AbstractRateCalc {
         if (tmpCP.previousChargePacket == null) {
 
           // get the RUM quantity
-          double RUMValue = CurrentRecord.getRUMValue(tmpCP.rumName);
+          double RUMValue = CurrentRecord.getRUMValue(tmpCP.getRUMId());
 
           // variables that we use to be able to manage beat rollover between time packets
           double rumExpectedCumulative = 0;
@@ -226,7 +226,7 @@ public abstract class AbstractRUMCPRateCalc extends AbstractRateCalc {
                   }
 
                   if (cpToRate.consumeRUM) {
-                    CurrentRecord.updateRUMValue(cpToRate.rumName, -tmpRatingResult.RUMUsed);
+                    CurrentRecord.updateRUMValue(cpToRate.getRUMId(), -tmpRatingResult.RUMUsed);
                   }
 
                   // Maintain a track of what we 
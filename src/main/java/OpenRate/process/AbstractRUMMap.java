@@ -229,10 +229,10 @@ public abstract class AbstractRUMMap extends AbstractPlugIn {
 
             // Get the value of the RUM
             tmpTZNew.priceModel = tmpRUMMapEntry.PriceModel;
-            tmpCPNew.rumName = tmpRUMMapEntry.RUM;
-            tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCP.rumName);
+            tmpCPNew.setRUM(tmpRUMMapEntry.RUM, tmpRUMMapEntry.RUMId);
+            tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCP.getRUMId());
 
-            tmpCPNew.resource = tmpRUMMapEntry.Resource;
+            tmpCPNew.setResource(tmpRUMMapEntry.Resource, tmpRUMMapEntry.ResourceId);
             tmpCPNew.resCounter = tmpRUMMapEntry.ResourceCounter;
             tmpCPNew.ratingType = tmpRUMMapEntry.RUMType;
             tmpCPNew.consumeRUM = tmpRUMMapEntry.ConsumeRUM;
@@ -284,9 +284,9 @@ public abstract class AbstractRUMMap extends AbstractPlugIn {
 
               // Get the value of the RUM
               tmpTZNew.priceModel = tmpRUMMapEntry.PriceModel;
-              tmpCPNew.rumName = tmpRUMMapEntry.RUM;
-              tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCP.rumName);
-              tmpCPNew.resource = tmpRUMMapEntry.Resource;
+              tmpCPNew.setRUM(tmpRUMMapEntry.RUM, tmpRUMMapEntry.RUMId);
+              tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCP.getRUMId());
+              tmpCPNew.setResource(tmpRUMMapEntry.Resource, tmpRUMMapEntry.ResourceId);
               tmpCPNew.resCounter = tmpRUMMapEntry.ResourceCounter;
               tmpCPNew.ratingType = tmpRUMMapEntry.RUMType;
               tmpCPNew.addTimeZone(tmpTZNew);
@@ -183,6 +183,10 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
     ArrayList<RUMRateCache.RUMMapEntry> tmpRUMMap;
     ArrayList<ChargePacket> tmpCPList = new ArrayList<>();
 
+    // read the cache data once, so that the whole record is rated with the
+    // same data even if a shadow reload is published meanwhile
+    RUMRateCache.RateData tmpRateData = RRC.getRateData();
+
     // ****************************** RUM Expansion ****************************
     for (ChargePacket tmpCP : CurrentRecord.getChargePackets()) {
       // Used for building rating chains
@@ -201,7 +205,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
 
           // create a charge packet for each RUM/Resource/price model tuple as located
           // in the RUM Map
-          tmpRUMMap = RRC.getRUMMap(tmpTZ.priceGroup);
+          tmpRUMMap = tmpRateData.getRUMMap(tmpTZ.priceGroup);
 
           if (tmpRUMMap == null) {
             tmpError = new RecordError("ERR_PRICE_GROUP_MAP_NOT_FOUND", ErrorType.DATA_NOT_FOUND, getSymbolicName());
@@ -237,10 +241,10 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
 
             // Get the value of the RUM
             tmpTZNew.priceModel = tmpRUMMapEntry.PriceModel;
-            tmpCPNew.rumName = tmpRUMMapEntry.RUM;
-            tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCP.rumName);
+            tmpCPNew.setRUM(tmpRUMMapEntry.RUM, tmpRUMMapEntry.RUMId);
+            tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCP.getRUMId());
 
-            tmpCPNew.resource = tmpRUMMapEntry.Resource;
+            tmpCPNew.setResource(tmpRUMMapEntry.Resource, tmpRUMMapEntry.ResourceId);
             tmpCPNew.resCounter = tmpRUMMapEntry.ResourceCounter;
             tmpCPNew.ratingType = tmpRUMMapEntry.RUMType;
             tmpCPNew.consumeRUM = tmpRUMMapEntry.ConsumeRUM;
@@ -292,9 +296,9 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
 
               // Get the value of the RUM
               tmpTZNew.priceModel = tmpRUMMapEntry.PriceModel;
-              tmpCPNew.rumName = tmpRUMMapEntry.RUM;
-              tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCP.rumName);
-              tmpCPNew.resource = tmpRUMMapEntry.Resource;
+              tmpCPNew.setRUM(tmpRUMMapEntry.RUM, tmpRUMMapEntry.RUMId);
+              tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCP.getRUMId());
+              tmpCPNew.setResource(tmpRUMMapEntry.Resource, tmpRUMMapEntry.ResourceId);
               tmpCPNew.resCounter = tmpRUMMapEntry.ResourceCounter;
               tmpCPNew.ratingType = tmpRUMMapEntry.RUMType;
               tmpCPNew.addTimeZone(tmpTZNew);
@@ -336,6 +340,9 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
     // ***************************** Rating Evaluation**************************
     // Rate all of the charge packets that are to be rated - loop through the
     // charge packets and apply the time zone results
+    // Without a breakdown, the same result object is filled for each evaluation
+    RatingResult reusableResult = new RatingResult();
+
     for (ChargePacket tmpCP : CurrentRecord.getChargePackets()) {
       if (tmpCP.Valid) {
 
@@ -343,7 +350,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
         if (tmpCP.previousChargePacket == null) {
 
           // get the RUM quantity
-          double RUMValue = CurrentRecord.getRUMValue(tmpCP.rumName);
+          double RUMValue = CurrentRecord.getRUMValue(tmpCP.getRUMId());
 
           // variables that we use to be able to manage beat rollover between time packets
           double rumExpectedCumulative = 0;
@@ -366,7 +373,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
                   switch (cpToRate.ratingType) {
                     case ChargePacket.RATING_TYPE_FLAT: {
                       // Flat Rating
-                      tmpRatingResult = rateCalculateFlat(tmpTZ.priceModel, thisZoneRUM, CurrentRecord.utcEventDate, CurrentRecord.createBreakdown);
+                      tmpRatingResult = rateCalculateFlat(tmpRateData, tmpTZ.priceModel, thisZoneRUM, CurrentRecord.utcEventDate, CurrentRecord.createBreakdown, reusableResult);
                       cpToRate.chargedValue += tmpRatingResult.RatedValue;
                       cpToRate.addBreakdown(tmpRatingResult.breakdown);
                       break;
@@ -374,21 +381,21 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
                     case ChargePacket.RATING_TYPE_TIERED:
                     default: {
                       // Tiered Rating
-                      tmpRatingResult = rateCalculateTiered(tmpTZ.priceModel, thisZoneRUM, rumRoundedCumulative, CurrentRecord.utcEventDate, CurrentRecord.createBreakdown);
+                      tmpRatingResult = rateCalculateTiered(tmpRateData, tmpTZ.priceModel, thisZoneRUM, rumRoundedCumulative, CurrentRecord.utcEventDate, CurrentRecord.createBreakdown, reusableResult);
                       cpToRate.chargedValue += tmpRatingResult.RatedValue;
                       cpToRate.addBreakdown(tmpRatingResult.breakdown);
                       break;
                     }
                     case ChargePacket.RATING_TYPE_THRESHOLD: {
                       // Threshold Rating
-                      tmpRatingResult = rateCalculateThreshold(tmpTZ.priceModel, thisZoneRUM, rumRoundedCumulative, CurrentRecord.utcEventDate, CurrentRecord.createBreakdown);
+                      tmpRatingResult = rateCalculateThreshold(tmpRateData, tmpTZ.priceModel, thisZoneRUM, rumRoundedCumulative, CurrentRecord.utcEventDate, CurrentRecord.createBreakdown, reusableResult);
                       cpToRate.chargedValue += tmpRatingResult.RatedValue;
                       cpToRate.addBreakdown(tmpRatingResult.breakdown);
                       break;
                     }
                     case ChargePacket.RATING_TYPE_EVENT: {
                       // Event Rating
-                      tmpRatingResult = rateCalculateEvent(tmpTZ.priceModel, thisZoneRUM, CurrentRecord.utcEventDate, CurrentRecord.createBreakdown);
+                      tmpRatingResult = rateCalculateEvent(tmpRateData, tmpTZ.priceModel, thisZoneRUM, CurrentRecord.utcEventDate, CurrentRecord.createBreakdown, reusableResult);
                       cpToRate.chargedValue += tmpRatingResult.RatedValue;
                       cpToRate.addBreakdown(tmpRatingResult.breakdown);
                       break;
@@ -396,7 +403,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
                   }
 
                   if (cpToRate.consumeRUM) {
-                    CurrentRecord.updateRUMValue(cpToRate.rumName, -tmpRatingResult.RUMUsed);
+                    CurrentRecord.updateRUMValue(cpToRate.getRUMId(), -tmpRatingResult.RUMUsed);
                   }
 
                   // Maintain a track of what we 
@@ -492,18 +499,26 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
    * tier costs. This is different to the "threshold" mode where all of the RUM
    * is used from the tier that is reached.
    *
+   * @param rateData The cache data to rate with
    * @param priceModel The price model to use
    * @param valueToRate the duration that should be rated in seconds
+   * @param reusableResult The result to fill when no breakdown is wanted
    * @return the price for the rated record
    * @throws OpenRate.exception.ProcessingException
    */
-  RatingResult rateCalculateTiered(String priceModel, double valueToRate, double valueOffset, long CDRDate, boolean BreakDown)
+  RatingResult rateCalculateTiered(RUMRateCache.RateData rateData, String priceModel, double valueToRate, double valueOffset, long CDRDate, boolean BreakDown, RatingResult reusableResult)
           throws ProcessingException {
+    if (BreakDown == false) {
+      // perform the rating using the compiled rate model, filling the result we were given
+      performRateEvaluationTiered(priceModel, rateData.getCompiledPriceModel(priceModel), valueToRate, valueOffset, CDRDate, reusableResult);
+      return reusableResult;
+    }
+
     ArrayList<RateMapEntry> tmpRateModel;
     RatingResult tmpRatingResult;
 
     // Look up the rate model to use
-    tmpRateModel = RRC.getPriceModel(priceModel);
+    tmpRateModel = rateData.getPriceModel(priceModel);
 
     // perform the rating using the selected rate model
     tmpRatingResult = performRateEvaluationTiered(priceModel, tmpRateModel, valueToRate, valueOffset, CDRDate, BreakDown);
@@ -519,18 +534,26 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
    * the "tiered" mode, where the individual contributing tier costs are
    * calculated and then summed.
    *
+   * @param rateData The cache data to rate with
    * @param priceModel The price model to use
    * @param valueToRate the duration that should be rated in seconds
+   * @param reusableResult The result to fill when no breakdown is wanted
    * @return the price for the rated record
    * @throws OpenRate.exception.ProcessingException
    */
-  RatingResult rateCalculateThreshold(String priceModel, double valueToRate, double valueOffset, long CDRDate, boolean BreakDown)
+  RatingResult rateCalculateThreshold(RUMRateCache.RateData rateData, String priceModel, double valueToRate, double valueOffset, long CDRDate, boolean BreakDown, RatingResult reusableResult)
           throws ProcessingException {
+    if (BreakDown == false) {
+      // perform the rating using the compiled rate model, filling the result we were given
+      performRateEvaluationThreshold(priceModel, rateData.getCompiledPriceModel(priceModel), valueToRate, valueOffset, CDRDate, reusableResult);
+      return reusableResult;
+    }
+
     ArrayList<RateMapEntry> tmpRateModel;
     RatingResult tmpRatingResult;
 
     // Look up the rate model to use
-    tmpRateModel = RRC.getPriceModel(priceModel);
+    tmpRateModel = rateData.getPriceModel(priceModel);
 
     // perform the rating using the selected rate model
     tmpRatingResult = performRateEvaluationThreshold(priceModel, tmpRateModel, valueToRate, valueOffset, CDRDate, BreakDown);
@@ -545,18 +568,26 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
    * model that just does a multiplication of valueToRate*Rate, without having
    * to calculate tiers and beats.
    *
+   * @param rateData The cache data to rate with
    * @param priceModel The price model to use
    * @param valueToRate the value that we are rating
+   * @param reusableResult The result to fill when no breakdown is wanted
    * @return the price for the rated record
    * @throws OpenRate.exception.ProcessingException
    */
-  RatingResult rateCalculateFlat(String priceModel, double valueToRate, long CDRDate, boolean BreakDown)
+  RatingResult rateCalculateFlat(RUMRateCache.RateData rateData, String priceModel, double valueToRate, long CDRDate, boolean BreakDown, RatingResult reusableResult)
           throws ProcessingException {
+    if (BreakDown == false) {
+      // perform the rating using the compiled rate model, filling the result we were given
+      performRateEvaluationFlat(priceModel, rateData.getCompiledPriceModel(priceModel), valueToRate, CDRDate, reusableResult);
+      return reusableResult;
+    }
+
     ArrayList<RateMapEntry> tmpRateModel;
     RatingResult tmpRatingResult;
 
     // Look up the rate model to use
-    tmpRateModel = RRC.getPriceModel(priceModel);
+    tmpRateModel = rateData.getPriceModel(priceModel);
 
     // perform the rating using the selected rate model
     tmpRatingResult = performRateEvaluationFlat(priceModel, tmpRateModel, valueToRate, CDRDate, BreakDown);
@@ -570,17 +601,25 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc {
    * (Rateable Usage Metric) value. It is a simplified version of the "tiered"
    * model that just returns the event price.
    *
+   * @param rateData The cache data to rate with
    * @param priceModel The price model to use
+   * @param reusableResult The result to fill when no breakdown is wanted
    * @return the price for the rated record
    * @throws OpenRate.exception.ProcessingException
    */
-  RatingResult rateCalculateEvent(String priceModel, double valueToRate, long CDRDate, boolean BreakDown)
+  RatingResult rateCalculateEvent(RUMRateCache.RateData rateData, String priceModel, double valueToRate, long CDRDate, boolean BreakDown, RatingResult reusableResult)
           throws ProcessingException {
+    if (BreakDown == false) {
+      // perform the rating using the compiled rate model, filling the result we were given
+      performRateEvaluationEvent(priceModel, rateData.getCompiledPriceModel(priceModel), (long) valueToRate, CDRDate, reusableResult);
+      return reusableResult;
+    }
+
     ArrayList<RateMapEntry> tmpRateModel;
     RatingResult tmpRatingResult;
 
     // Look up the rate model to use
-    tmpRateModel = RRC.getPriceModel(priceModel);
+    tmpRateModel = rateData.getPriceModel(priceModel);
 
     // perform the rating using the selected rate model
     tmpRatingResult = performRateEvaluationEvent(priceModel, tmpRateModel, (long) valueToRate, CDRDate, BreakDown);
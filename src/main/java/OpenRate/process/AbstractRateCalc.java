@@ -58,6 +58,7 @@ import OpenRate.cache.ICacheManager;
 import OpenRate.cache.RateCache;
 import OpenRate.exception.InitializationException;
 import OpenRate.exception.ProcessingException;
+import OpenRate.record.CompiledPriceModel;
 import OpenRate.record.IRecord;
 import OpenRate.record.RateMapEntry;
 import OpenRate.record.RatingBreakdown;
@@ -173,17 +174,13 @@ public abstract class AbstractRateCalc extends AbstractPlugIn {
    */
   public double rateCalculateTiered(String priceModel, double valueToRate, double valueOffset, long cdrDate)
           throws ProcessingException {
-    ArrayList<RateMapEntry> tmpRateModel;
-    RatingResult tmpRatingResult;
+    CompiledPriceModel tmpRateModel;
 
     // Look up the rate model to use
-    tmpRateModel = RC.getPriceModel(priceModel);
-
-    // perform the rating using the selected rate model
-    tmpRatingResult = performRateEvaluationTiered(priceModel, tmpRateModel, valueToRate, valueOffset, cdrDate, false);
+    tmpRateModel = RC.getCompiledPriceModel(priceModel);
 
-    // return the rated value
-    return tmpRatingResult.RatedValue;
+    // perform the rating using the selected rate model, and return the rated value
+    return performRateEvaluationTiered(priceModel, tmpRateModel, valueToRate, valueOffset, cdrDate, null);
   }
 
   /**
@@ -202,17 +199,13 @@ public abstract class AbstractRateCalc extends AbstractPlugIn {
    */
   public double rateCalculateThreshold(String priceModel, double valueToRate, double valueOffset, long CDRDate)
           throws ProcessingException {
-    ArrayList<RateMapEntry> tmpRateModel;
-    RatingResult tmpRatingResult;
+    CompiledPriceModel tmpRateModel;
 
     // Look up the rate model to use
-    tmpRateModel = RC.getPriceModel(priceModel);
+    tmpRateModel = RC.getCompiledPriceModel(priceModel);
 
-    // perform the rating using the selected rate model
-    tmpRatingResult = performRateEvaluationThreshold(priceModel, tmpRateModel, valueToRate, valueOffset, CDRDate, false);
-
-    // return the rated value
-    return tmpRatingResult.RatedValue;
+    // perform the rating using the selected rate model, and return the rated value
+    return performRateEvaluationThreshold(priceModel, tmpRateModel, valueToRate, valueOffset, CDRDate, null);
   }
 
   /**
@@ -229,17 +222,13 @@ public abstract class AbstractRateCalc extends AbstractPlugIn {
    */
   public double rateCalculateFlat(String priceModel, double valueToRate, long CDRDate)
           throws ProcessingException {
-    ArrayList<RateMapEntry> tmpRateModel;
-    RatingResult tmpRatingResult;
+    CompiledPriceModel tmpRateModel;
 
     // Look up the rate model to use
-    tmpRateModel = RC.getPriceModel(priceModel);
+    tmpRateModel = RC.getCompiledPriceModel(priceModel);
 
-    // perform the rating using the selected rate model
-    tmpRatingResult = performRateEvaluationFlat(priceModel, tmpRateModel, valueToRate, CDRDate, false);
-
-    // return the rated value
-    return tmpRatingResult.RatedValue;
+    // perform the rating using the selected rate model, and return the rated value
+    return performRateEvaluationFlat(priceModel, tmpRateModel, valueToRate, CDRDate, null);
   }
 
   /**
@@ -255,17 +244,13 @@ public abstract class AbstractRateCalc extends AbstractPlugIn {
    */
   public double rateCalculateEvent(String priceModel, long valueToRate, long CDRDate)
           throws ProcessingException {
-    ArrayList<RateMapEntry> tmpRateModel;
-    RatingResult tmpRatingResult;
+    CompiledPriceModel tmpRateModel;
 
     // Look up the rate model to use
-    tmpRateModel = RC.getPriceModel(priceModel);
-
-    // perform the rating using the selected rate model
-    tmpRatingResult = performRateEvaluationEvent(priceModel, tmpRateModel, valueToRate, CDRDate, false);
+    tmpRateModel = RC.getCompiledPriceModel(priceModel);
 
-    // return the rated value
-    return tmpRatingResult.RatedValue;
+    // perform the rating using the selected rate model, and return the rated value
+    return performRateEvaluationEvent(priceModel, tmpRateModel, valueToRate, CDRDate, null);
   }
 
   /**
@@ -980,6 +965,279 @@ public abstract class AbstractRateCalc extends AbstractPlugIn {
     return tmpRatingResult;
   }
 
+  /**
+   * Performs the tiered rating calculation using the compiled form of the
+   * price model. This gives the same results as
+   * performRateEvaluationTiered, but does not produce a breakdown, and does
+   * not allocate anything.
+   *
+   * @param PriceModel The price model name we are using
+   * @param tmpRateModel The compiled price model definition
+   * @param valueToRate The value to rate
+   * @param valueOffset The offset for the start of the tier, if there is one
+   * @param CDRDate The date to rate at
+   * @param tmpRatingResult The result to fill, or null if only the rated value is needed
+   * @return The rated value
+   * @throws OpenRate.exception.ProcessingException
+   */
+  protected double performRateEvaluationTiered(String PriceModel, CompiledPriceModel tmpRateModel, double valueToRate, double valueOffset, long CDRDate, RatingResult tmpRatingResult) throws ProcessingException {
+    double AllTiersValue = 0;
+
+    // check that we have something to work on
+    if (tmpRateModel == null) {
+      throw new ProcessingException("Price Model <" + PriceModel + "> not defined", getSymbolicName());
+    }
+
+    // For multi-packet rating, we have to apply the offset
+    double effectiveValueToRate = valueToRate + valueOffset;
+
+    double rumValueUsed = 0;
+    double rumValueUsedOffset = 0;
+    double roundedRUMUsed = 0;
+
+    for (int tier = 0; tier < tmpRateModel.getTierCount(); tier++) {
+      // Get the validty for this cdr
+      int entry = tmpRateModel.getEntryForTime(tier, CDRDate);
+      if (entry == CompiledPriceModel.NO_VALIDITY) {
+        throw new ProcessingException(getValidityCoverageMessage(PriceModel, CDRDate), getSymbolicName());
+      }
+
+      double from = tmpRateModel.getFrom(entry);
+      double to = tmpRateModel.getTo(entry);
+      double beat = tmpRateModel.getBeat(entry);
+      long thisTierBeatCount = 0;
+      long thisTierOffsetBeatCount = 0;
+
+      // See if this event crosses the lower tier threshold
+      if (effectiveValueToRate > from) {
+        double thisTierRUMUsed = (effectiveValueToRate >= to) ? (to - from) : (effectiveValueToRate - from);
+        rumValueUsed += thisTierRUMUsed;
+        thisTierBeatCount = getBeatCount(thisTierRUMUsed, beat);
+      }
+
+      // Deal with the offset
+      if (valueOffset != 0 && valueOffset > from) {
+        double thisTierOffsetRUMUsed = (valueOffset >= to) ? (to - from) : (valueOffset - from);
+        rumValueUsedOffset += thisTierOffsetRUMUsed;
+        thisTierOffsetBeatCount = getBeatCount(thisTierOffsetRUMUsed, beat);
+      }
+
+      // Now roll up the rating values
+      double thisTierRoundedRUM = (thisTierBeatCount - thisTierOffsetBeatCount) * beat;
+      AllTiersValue += (thisTierRoundedRUM * tmpRateModel.getFactor(entry)) / tmpRateModel.getChargeBase(entry);
+
+      // Only count rounded RUM used for non-singularity steps
+      if (from != to) {
+        roundedRUMUsed += thisTierRoundedRUM;
+      }
+    }
+
+    if (tmpRatingResult != null) {
+      tmpRatingResult.RatedValue = AllTiersValue;
+      tmpRatingResult.RUMUsed = rumValueUsed - rumValueUsedOffset;
+      tmpRatingResult.RUMUsedRounded = roundedRUMUsed;
+      tmpRatingResult.breakdown = null;
+    }
+
+    return AllTiersValue;
+  }
+
+  /**
+   * Performs the threshold rating calculation using the compiled form of the
+   * price model. This gives the same results as
+   * performRateEvaluationThreshold, but does not produce a breakdown, and
+   * does not allocate anything.
+   *
+   * @param PriceModel The price model name we are using
+   * @param tmpRateModel The compiled price model definition
+   * @param valueToRate The value to rate
+   * @param valueOffset The offset for the start of the tier, if there is one
+   * @param CDRDate The date to rate at
+   * @param tmpRatingResult The result to fill, or null if only the rated value is needed
+   * @return The rated value
+   * @throws OpenRate.exception.ProcessingException
+   */
+  protected double performRateEvaluationThreshold(String PriceModel, CompiledPriceModel tmpRateModel, double valueToRate, double valueOffset, long CDRDate, RatingResult tmpRatingResult) throws ProcessingException {
+    double AllTiersValue = 0;
+
+    // check that we have something to work on
+    if (tmpRateModel == null) {
+      throw new ProcessingException("Price Model <" + PriceModel + "> not defined", getSymbolicName());
+    }
+
+    // For multi-packet rating, we have to apply the offset
+    double effectiveValueToRate = valueToRate + valueOffset;
+    double rumValueUsed = 0;
+
+    for (int tier = 0; tier < tmpRateModel.getTierCount(); tier++) {
+      // Get the validty for this cdr
+      int entry = tmpRateModel.getEntryForTime(tier, CDRDate);
+      if (entry == CompiledPriceModel.NO_VALIDITY) {
+        throw new ProcessingException(getValidityCoverageMessage(PriceModel, CDRDate), getSymbolicName());
+      }
+
+      double from = tmpRateModel.getFrom(entry);
+      double to = tmpRateModel.getTo(entry);
+      long thisTierBeatCount = 0;
+
+      // See if this event crosses the lower tier threshold
+      if (effectiveValueToRate > from) {
+        if (effectiveValueToRate <= to) {
+          // we use the offset to locate the tier, but rate the original amount
+          rumValueUsed += valueToRate;
+          thisTierBeatCount = getBeatCount(valueToRate, tmpRateModel.getBeat(entry));
+        } else if (from == to) {
+          // Singularity rate
+          thisTierBeatCount = 1;
+        }
+      }
+
+      AllTiersValue += (thisTierBeatCount * tmpRateModel.getFactor(entry)) * tmpRateModel.getBeat(entry) / tmpRateModel.getChargeBase(entry);
+    }
+
+    if (tmpRatingResult != null) {
+      tmpRatingResult.RatedValue = AllTiersValue;
+      tmpRatingResult.RUMUsed = rumValueUsed;
+      tmpRatingResult.RUMUsedRounded = 0;
+      tmpRatingResult.breakdown = null;
+    }
+
+    return AllTiersValue;
+  }
+
+  /**
+   * Performs the flat rating calculation using the compiled form of the price
+   * model. This gives the same results as performRateEvaluationFlat, but does
+   * not produce a breakdown, and does not allocate anything.
+   *
+   * @param PriceModel The price model name we are using
+   * @param tmpRateModel The compiled price model definition
+   * @param valueToRate The value to rate
+   * @param CDRDate The date to rate at
+   * @param tmpRatingResult The result to fill, or null if only the rated value is needed
+   * @return The rated value
+   * @throws OpenRate.exception.ProcessingException
+   */
+  protected double performRateEvaluationFlat(String PriceModel, CompiledPriceModel tmpRateModel, double valueToRate, long CDRDate, RatingResult tmpRatingResult) throws ProcessingException {
+    // check that we have something to work on
+    if (tmpRateModel == null) {
+      throw new ProcessingException("Price Model <" + PriceModel + "> not defined", getSymbolicName());
+    }
+
+    // Get the validty of just the first tier for this cdr
+    int entry = tmpRateModel.getEntryForTime(0, CDRDate);
+    if (entry == CompiledPriceModel.NO_VALIDITY) {
+      throw new ProcessingException(getValidityCoverageMessage(PriceModel, CDRDate), getSymbolicName());
+    }
+
+    double AllTiersValue = (valueToRate * tmpRateModel.getFactor(entry)) / tmpRateModel.getChargeBase(entry);
+
+    if (tmpRatingResult != null) {
+      tmpRatingResult.RatedValue = AllTiersValue;
+      tmpRatingResult.RUMUsed = valueToRate;
+      tmpRatingResult.RUMUsedRounded = 0;
+      tmpRatingResult.breakdown = null;
+    }
+
+    return AllTiersValue;
+  }
+
+  /**
+   * Performs the event rating calculation using the compiled form of the
+   * price model. This gives the same results as performRateEvaluationEvent,
+   * but does not produce a breakdown, and does not allocate anything.
+   *
+   * @param PriceModel The price model name we are using
+   * @param tmpRateModel The compiled price model definition
+   * @param valueToRate The value to rate for
+   * @param CDRDate The date to rate at
+   * @param tmpRatingResult The result to fill, or null if only the rated value is needed
+   * @return The rated value
+   * @throws OpenRate.exception.ProcessingException
+   */
+  protected double performRateEvaluationEvent(String PriceModel, CompiledPriceModel tmpRateModel, long valueToRate, long CDRDate, RatingResult tmpRatingResult) throws ProcessingException {
+    double AllTiersValue = 0;
+    double RUMValueUsed = 0;
+
+    // check that we have something to work on
+    if (tmpRateModel == null) {
+      throw new ProcessingException("Price Model <" + PriceModel + "> not defined", getSymbolicName());
+    }
+
+    for (int tier = 0; tier < tmpRateModel.getTierCount(); tier++) {
+      // The tier is located using the root entry, as in the list evaluation
+      if (valueToRate > tmpRateModel.getFrom(tier)) {
+        boolean wholeTier = (valueToRate >= tmpRateModel.getTo(tier));
+
+        // Get the validty for this cdr
+        int entry = tmpRateModel.getEntryForTime(tier, CDRDate);
+        if (entry == CompiledPriceModel.NO_VALIDITY) {
+          throw new ProcessingException(getValidityCoverageMessage(PriceModel, CDRDate), getSymbolicName());
+        }
+
+        double ThisTierRUMUsed;
+        if (wholeTier) {
+          ThisTierRUMUsed = (tmpRateModel.getTo(entry) - tmpRateModel.getFrom(entry));
+        } else {
+          ThisTierRUMUsed = (valueToRate - tmpRateModel.getFrom(entry));
+        }
+
+        // Deal with the case that we have the empty beat
+        if (ThisTierRUMUsed == 0) {
+          ThisTierRUMUsed++;
+        }
+
+        RUMValueUsed += ThisTierRUMUsed;
+        AllTiersValue += ThisTierRUMUsed * tmpRateModel.getFactor(entry);
+      }
+    }
+
+    if (tmpRatingResult != null) {
+      tmpRatingResult.RatedValue = AllTiersValue;
+      tmpRatingResult.RUMUsed = RUMValueUsed;
+      tmpRatingResult.RUMUsedRounded = 0;
+      tmpRatingResult.breakdown = null;
+    }
+
+    return AllTiersValue;
+  }
+
+  /**
+   * Get the number of beats needed to cover the RUM used in a tier, rounding
+   * unfinished beats up, and charging at least one beat.
+   *
+   * @param tierRUMUsed The RUM used in the tier
+   * @param beat The beat of the tier
+   * @return The number of beats
+   */
+  private static long getBeatCount(double tierRUMUsed, double beat) {
+    long beatCount = Math.round(tierRUMUsed / beat);
+
+    // Deal with unfinished beats
+    if ((tierRUMUsed - beatCount * beat) > 0) {
+      beatCount++;
+    }
+
+    // Deal with the empty beat
+    if (beatCount == 0) {
+      beatCount = 1;
+    }
+
+    return beatCount;
+  }
+
+  /**
+   * Build the error message for a date which is not covered by the price model.
+   *
+   * @param PriceModel The price model name we are using
+   * @param CDRDate The date to rate at
+   * @return The message
+   */
+  private String getValidityCoverageMessage(String PriceModel, long CDRDate) {
+    return "CDR with <" + CDRDate + "> date not rated by model <"
+            + PriceModel + "> because of missing validity coverage";
+  }
+
   /**
    * Performs the authorisation calculation of the value given at the CDR date.
    * Evaluates all the tiers in the model one at a time, and accumulates the
@@ -135,7 +135,7 @@ public abstract class AbstractRecordInsertPlugIn extends AbstractPlugIn
       startTime = System.currentTimeMillis();
 
       // get the batch records to process
-      in = (ArrayList<IRecord>) getBatchInbound().pull(getBatchSize());
+      in = (ArrayList<IRecord>) pullInbound();
 
       int ThisBatchRecordCount = in.size();
 
@@ -192,31 +192,15 @@ public abstract class AbstractRecordInsertPlugIn extends AbstractPlugIn
           }
         }
 
-        // Push the list we constructed, not the original batch
-        getBatchOutbound().push(outTemp);
-
-        OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() + "> pushed <" + String.valueOf(ThisBatchRecordCount) + "> batch records to buffer <" + getBatchOutbound().toString() + ">");
-
-        int outBufferCapacity = getBatchOutbound().getEventCount();
-
         endTime = System.currentTimeMillis();
         BatchTime = (endTime - startTime);
         updateProcessingTime(BatchTime);
 
-        while (outBufferCapacity > getBufferSize())
-        {
-          incBufferHits();
-          OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() + "> buffer high water mark! Buffer max = <" + getBufferSize() + "> current count = <" + outBufferCapacity + ">");
-          try
-          {
-            Thread.sleep(100);
-          }
-          catch (InterruptedException ex)
-          {
-            // Nothing
-          }
-          outBufferCapacity = getBatchOutbound().getEventCount();
-        }
+        // Push the list we constructed, not the original batch, blocking if
+        // the downstream buffer is full
+        pushOutbound(outTemp);
+
+        OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() + "> pushed <" + String.valueOf(ThisBatchRecordCount) + "> batch records to buffer <" + getBatchOutbound().toString() + ">");
 
         OpenRate.getOpenRateStatsLog().info(
           "Plugin <" + Thread.currentThread().getName() + "> processed <" +
@@ -239,17 +223,7 @@ public abstract class AbstractRecordInsertPlugIn extends AbstractPlugIn
 
         // If not marked for shutdown, wait for notification from the
         // suppler that new records are available for processing.
-        try
-        {
-          synchronized (this)
-          {
-            wait();
-          }
-        }
-        catch (InterruptedException e)
-        {
-          // ignore interrupt exceptions
-        }
+        waitForInboundRecords();
       } // else
     } // while loop
   }
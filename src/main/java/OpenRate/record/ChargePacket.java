@@ -201,6 +201,13 @@ public class ChargePacket {
   // Whether we are to consume the RUM or not
   public boolean consumeRUM;
 
+  // The RUMRegistry IDs of the RUM and the resource, and the names they were
+  // looked up for. The names are public, so they are checked on each get.
+  private int rumId = -1;
+  private String rumIdName = null;
+  private int resourceId = -1;
+  private String resourceIdName = null;
+
   /**
    * Creates a new instance of ChargePacket
    */
@@ -220,8 +227,12 @@ public class ChargePacket {
     this.timeModel = toClone.timeModel;
     this.service = toClone.service;
     this.rumName = toClone.rumName;
+    this.rumId = toClone.rumId;
+    this.rumIdName = toClone.rumIdName;
     this.rumQuantity = toClone.rumQuantity;
     this.resource = toClone.resource;
+    this.resourceId = toClone.resourceId;
+    this.resourceIdName = toClone.resourceIdName;
     this.chargedValue = toClone.chargedValue;
     this.priority = toClone.priority;
     this.zoneResult = toClone.zoneResult;
@@ -257,6 +268,62 @@ public class ChargePacket {
     }
   }
 
+  /**
+   * Set the RUM of this packet, with its RUMRegistry ID, as held by the RUM
+   * map caches.
+   *
+   * @param rumName The name of the RUM
+   * @param rumId The RUMRegistry ID of the RUM
+   */
+  public void setRUM(String rumName, int rumId) {
+    this.rumName = rumName;
+    this.rumId = rumId;
+    this.rumIdName = rumName;
+  }
+
+  /**
+   * Get the RUMRegistry ID of the RUM of this packet. The ID is looked up
+   * only if the RUM name was changed without setRUM.
+   *
+   * @return The RUM ID, or -1 if the RUM is not registered
+   */
+  public int getRUMId() {
+    if (rumName != rumIdName || rumId < 0) {
+      rumId = RUMRegistry.findId(rumName);
+      rumIdName = rumName;
+    }
+
+    return rumId;
+  }
+
+  /**
+   * Set the resource of this packet, with its RUMRegistry ID, as held by the
+   * RUM map caches.
+   *
+   * @param resource The name of the resource
+   * @param resourceId The RUMRegistry ID of the resource
+   */
+  public void setResource(String resource, int resourceId) {
+    this.resource = resource;
+    this.resourceId = resourceId;
+    this.resourceIdName = resource;
+  }
+
+  /**
+   * Get the RUMRegistry ID of the resource of this packet. The ID is looked up
+   * only if the resource name was changed without setResource.
+   *
+   * @return The resource ID, or -1 if the resource is not registered
+   */
+  public int getResourceId() {
+    if (resource != resourceIdName || resourceId < 0) {
+      resourceId = RUMRegistry.findId(resource);
+      resourceIdName = resource;
+    }
+
+    return resourceId;
+  }
+
   /**
    * Create a clone of this charge packet, copying all Time Packet and 
    * Rating Breakdown information.
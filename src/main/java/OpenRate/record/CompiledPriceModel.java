@@ -0,0 +1,236 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import java.util.ArrayList;
+
+/**
+ * The compiled form of a price model, used for rating when no rating
+ * breakdown is needed. The tiers of the model are held in primitive arrays
+ * instead of a list of linked RateMapEntry objects, so that the evaluation
+ * does not need to follow references or allocate anything.
+ *
+ * Entry i (for i below the tier count) is the root entry of tier i, that is
+ * the entry in the list held by the rate cache. If the root entry has a
+ * child, this is held in a further entry, given by the validity index. The
+ * version for a date is selected in the same way as in
+ * AbstractRateCalc.getRateModelEntryForTime: the root entry if it has
+ * started, otherwise its child, otherwise there is no coverage.
+ *
+ * Instances are immutable once compiled. The rate caches compile a model the
+ * first time it is used, and discard the compiled form when the model
+ * changes.
+ *
+ * @author ian
+ */
+public final class CompiledPriceModel
+{
+  /**
+   * Returned by getEntryForTime when no version of the tier covers the date
+   */
+  public static final int NO_VALIDITY = -1;
+
+  // the number of tiers
+  private final int tierCount;
+
+  // the entries, roots first then children
+  private final double[] from;
+  private final double[] to;
+  private final double[] beat;
+  private final double[] factor;
+  private final double[] chargeBase;
+  private final long[]   startTime;
+
+  // the validity index: the entry to use for tier i if the root has not started
+  private final int[]    validityFallback;
+
+ /**
+  * Compile the price model from the list held in the rate cache.
+  *
+  * @param priceModel The tiers of the price model
+  */
+  public CompiledPriceModel(ArrayList<RateMapEntry> priceModel)
+  {
+    tierCount = priceModel.size();
+
+    int entryCount = tierCount;
+    for (RateMapEntry tmpEntry : priceModel)
+    {
+      if (tmpEntry.getChild() != null)
+      {
+        entryCount++;
+      }
+    }
+
+    from = new double[entryCount];
+    to = new double[entryCount];
+    beat = new double[entryCount];
+    factor = new double[entryCount];
+    chargeBase = new double[entryCount];
+    startTime = new long[entryCount];
+    validityFallback = new int[tierCount];
+
+    int nextChild = tierCount;
+    for (int tier = 0; tier < tierCount; tier++)
+    {
+      RateMapEntry tmpEntry = priceModel.get(tier);
+      setEntry(tier, tmpEntry);
+
+      if (tmpEntry.getChild() == null)
+      {
+        validityFallback[tier] = NO_VALIDITY;
+      }
+      else
+      {
+        setEntry(nextChild, tmpEntry.getChild());
+        validityFallback[tier] = nextChild;
+        nextChild++;
+      }
+    }
+  }
+
+ /**
+  * Copy the values of a rate map entry into the arrays.
+  */
+  private void setEntry(int entry, RateMapEntry tmpEntry)
+  {
+    from[entry] = tmpEntry.getFrom();
+    to[entry] = tmpEntry.getTo();
+    beat[entry] = tmpEntry.getBeat();
+    factor[entry] = tmpEntry.getFactor();
+    chargeBase[entry] = tmpEntry.getChargeBase();
+    startTime[entry] = tmpEntry.getStartTime();
+  }
+
+ /**
+  * @return the number of tiers in the model
+  */
+  public int getTierCount()
+  {
+    return tierCount;
+  }
+
+ /**
+  * Get the entry to use for a tier at a date.
+  *
+  * @param tier The tier, starting from 0
+  * @param CDRDate The long UTC date to rate at
+  * @return The entry, or NO_VALIDITY if the tier does not cover the date
+  */
+  public int getEntryForTime(int tier, long CDRDate)
+  {
+    if (startTime[tier] > CDRDate)
+    {
+      return validityFallback[tier];
+    }
+
+    return tier;
+  }
+
+ /**
+  * @param entry The entry
+  * @return the from of the entry
+  */
+  public double getFrom(int entry)
+  {
+    return from[entry];
+  }
+
+ /**
+  * @param entry The entry
+  * @return the to of the entry
+  */
+  public double getTo(int entry)
+  {
+    return to[entry];
+  }
+
+ /**
+  * @param entry The entry
+  * @return the beat of the entry
+  */
+  public double getBeat(int entry)
+  {
+    return beat[entry];
+  }
+
+ /**
+  * @param entry The entry
+  * @return the factor of the entry
+  */
+  public double getFactor(int entry)
+  {
+    return factor[entry];
+  }
+
+ /**
+  * @param entry The entry
+  * @return the charge base of the entry
+  */
+  public double getChargeBase(int entry)
+  {
+    return chargeBase[entry];
+  }
+
+ /**
+  * @param entry The entry
+  * @return the start time of the entry
+  */
+  public long getStartTime(int entry)
+  {
+    return startTime[entry];
+  }
+}
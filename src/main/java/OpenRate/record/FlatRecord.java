@@ -55,6 +55,9 @@
 
 package OpenRate.record;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 
 /**
@@ -69,6 +72,11 @@ public class FlatRecord extends AbstractRecord
   // the original data we received
   private String originalData;
 
+  // the undecoded data, if we were created from bytes and have not yet been
+  // asked for the data as a string
+  private transient byte[] rawData;
+  private transient Charset rawCharset;
+
   /**
    * Creates a new instance of FlatRecord
    *
@@ -94,6 +102,23 @@ public class FlatRecord extends AbstractRecord
     this.originalData   = data;
   }
 
+  /**
+   * Creates a new instance of FlatRecord from undecoded bytes. The bytes are
+   * only decoded into a string when the data is asked for.
+   *
+   * @param rawData The bytes of the record
+   * @param charset The character set to decode the bytes with
+   * @param RecordNumber The record number
+   */
+  public FlatRecord(byte[] rawData, Charset charset, int RecordNumber)
+  {
+    super();
+
+    this.rawData        = rawData;
+    this.rawCharset     = charset;
+    this.recordNumber   = RecordNumber;
+  }
+
   /** Overloaded contructor for derived classes */
   public FlatRecord()
   {
@@ -107,9 +132,43 @@ public class FlatRecord extends AbstractRecord
    */
   public String getData()
   {
+    if (rawData != null)
+    {
+      originalData = new String(rawData, rawCharset);
+      rawData = null;
+    }
+
     return this.originalData;
   }
 
+  /**
+   * Get the undecoded bytes of the record, if the record was created from
+   * bytes and the data has not yet been decoded. This allows records to be
+   * inspected or skipped without decoding them.
+   *
+   * @return The bytes of the record, or null if the data has been decoded
+   */
+  public byte[] getRawData()
+  {
+    return this.rawData;
+  }
+
+  /**
+   * Get the length of the data in bytes if it has not yet been decoded,
+   * otherwise in characters. A zero length means an empty record either way.
+   *
+   * @return The length of the data
+   */
+  public int getDataLength()
+  {
+    if (rawData != null)
+    {
+      return rawData.length;
+    }
+
+    return (originalData == null) ? 0 : originalData.length();
+  }
+
   /**
    * Set the original data
    *
@@ -118,6 +177,16 @@ public class FlatRecord extends AbstractRecord
   public void setData(String DataToSet)
   {
     this.originalData = DataToSet;
+    this.rawData = null;
+  }
+
+ /**
+  * Decode the data before serialising, as the undecoded bytes are not kept.
+  */
+  private void writeObject(ObjectOutputStream out) throws IOException
+  {
+    getData();
+    out.defaultWriteObject();
   }
 
  /**
@@ -139,7 +208,7 @@ public class FlatRecord extends AbstractRecord
 
     // Format the fields
     tmpDumpList.add("============== FLAT RECORD ============");
-    tmpDumpList.add("  original record = <" + this.originalData + ">");
+    tmpDumpList.add("  original record = <" + getData() + ">");
 
     tmpDumpList.add("  Errors          = <" + this.getErrors().size() + ">");
     if (tmpErrorCount>0)
@@ -73,6 +73,14 @@ public interface IRatingRecord extends Serializable
   */
   public double getRUMValue(String RUM);
 
+ /**
+  * Get the value of an existing RUM, or 0 if not found
+  *
+  * @param rumId The ID of the RUM to get, see RUMRegistry
+  * @return The current value of the RUM
+  */
+  public double getRUMValue(int rumId);
+
  /**
   * Get the existing RUM values
   *
@@ -88,6 +96,14 @@ public interface IRatingRecord extends Serializable
   */
   public void setRUMValue(String RUM, double newValue);
 
+ /**
+  * Set the value of a RUM overwriting any existing value.
+  *
+  * @param rumId The ID of the RUM to set, see RUMRegistry
+  * @param newValue The new value to set
+  */
+  public void setRUMValue(int rumId, double newValue);
+
  /**
   * Set the value of a RUM, return true if OK, false if not OK (e.g. overwrite
   * existing value)
@@ -98,6 +114,16 @@ public interface IRatingRecord extends Serializable
   */
   public boolean updateRUMValue(String RUM, double valueDelta);
 
+ /**
+  * Apply a delta to the value of a RUM, return true if OK, false if the RUM
+  * does not exist
+  *
+  * @param rumId The ID of the RUM to update, see RUMRegistry
+  * @param valueDelta The delta to apply to the RUM value
+  * @return true if the delta was applied, otherwise false
+  */
+  public boolean updateRUMValue(int rumId, double valueDelta);
+
  /**
   * Get the UTC event date of the rating record
   *
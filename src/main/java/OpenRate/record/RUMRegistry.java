@@ -0,0 +1,183 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+
+package OpenRate.record;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns RUM and resource names to small integer IDs, so that a rating record
+ * can hold its RUMs in an array indexed by ID. The IDs are allocated in the
+ * order the names are first seen, normally when the caches which define the
+ * RUMs and resources are loaded, and are never reused. The same ID is used for
+ * a name whether it is used as a RUM or as a resource.
+ *
+ * Plug-ins which use a RUM on every record can look up its ID once, and then
+ * use the ID based methods of the RatingRecord.
+ */
+public final class RUMRegistry
+{
+  // The IDs of the registered names
+  private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+  // The names of the registered IDs
+  private static volatile String[] names = new String[16];
+
+  // The number of registered names
+  private static volatile int count = 0;
+
+ /**
+  * Not instantiable
+  */
+  private RUMRegistry()
+  {
+  }
+
+ /**
+  * Get the ID of a name, registering it if it is not yet known.
+  *
+  * @param name The RUM or resource name
+  * @return The ID, or -1 if the name is null
+  */
+  public static int getId(String name)
+  {
+    if (name == null)
+    {
+      return -1;
+    }
+
+    Integer id = ids.get(name);
+
+    if (id == null)
+    {
+      return register(name);
+    }
+
+    return id;
+  }
+
+ /**
+  * Get the ID of a name, without registering it.
+  *
+  * @param name The RUM or resource name
+  * @return The ID, or -1 if the name is not known
+  */
+  public static int findId(String name)
+  {
+    if (name == null)
+    {
+      return -1;
+    }
+
+    Integer id = ids.get(name);
+
+    return (id == null) ? -1 : id;
+  }
+
+ /**
+  * Get the name of an ID.
+  *
+  * @param id The ID
+  * @return The name, or null if the ID is not known
+  */
+  public static String getName(int id)
+  {
+    // read the count before the names. register() stores the name, growing
+    // the array if needed, before it raises the count, so the array we read
+    // afterwards always holds every ID below the count we read
+    int currentCount = count;
+    String[] currentNames = names;
+
+    return (id >= 0 && id < currentCount) ? currentNames[id] : null;
+  }
+
+ /**
+  * Get the number of registered names. All IDs are smaller than this.
+  *
+  * @return The number of names
+  */
+  public static int size()
+  {
+    return count;
+  }
+
+ /**
+  * Register a new name.
+  */
+  private static synchronized int register(String name)
+  {
+    Integer id = ids.get(name);
+
+    if (id == null)
+    {
+      if (count == names.length)
+      {
+        String[] newNames = new String[count * 2];
+        System.arraycopy(names, 0, newNames, 0, count);
+        names = newNames;
+      }
+
+      names[count] = name;
+      id = count;
+
+      // publish the name before the ID can be seen
+      count = count + 1;
+      ids.put(name, id);
+    }
+
+    return id;
+  }
+}
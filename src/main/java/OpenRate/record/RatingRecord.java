@@ -128,10 +128,16 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   // Rating information for updating the DB
   private final ArrayList<BalanceImpact> balanceImpacts = new ArrayList<>();
 
-  /**
-   * RUM information - holds the list of RUMs and their values
-   */
-  public ArrayList<RUMInfo> RUMs = new ArrayList<>();
+  // RUM information - the current and original values of the RUMs, indexed
+  // by their RUMRegistry ID, and which IDs the record has. Allocated when the
+  // first RUM is set.
+  private double[] rumValues = null;
+  private double[] origRUMValues = null;
+  private boolean[] rumPresent = null;
+
+  // RUMs set by a name that is not registered. These do not get an ID, so that
+  // names coming from record data cannot grow the registry.
+  private ArrayList<RUMInfo> otherRUMs = null;
 
   /**
    * This is the counter index for monthly counters, usually filled with YYYYMM
@@ -362,30 +368,71 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public double getRUMValue(String RUM)
   {
-    RUMInfo tmpRUM;
-    int Index;
+    int rumId = RUMRegistry.findId(RUM);
 
-    for (Index = 0 ; Index < RUMs.size() ; Index++)
+    if (hasRUM(rumId))
     {
-      tmpRUM = RUMs.get(Index);
+      return rumValues[rumId];
+    }
 
-      if (tmpRUM.RUMName.equals(RUM))
-      {
-        return tmpRUM.RUMQuantity;
-      }
+    RUMInfo tmpRUM = getOtherRUM(RUM);
+
+    return (tmpRUM == null) ? 0 : tmpRUM.RUMQuantity;
+  }
+
+ /**
+  * Get the value of an existing RUM, or 0 if not found
+  *
+  * @param rumId The ID of the RUM to get, see RUMRegistry
+  * @return The current value of the RUM
+  */
+  @Override
+  public double getRUMValue(int rumId)
+  {
+    if (hasRUM(rumId))
+    {
+      return rumValues[rumId];
     }
 
-    return 0;
+    RUMInfo tmpRUM = getOtherRUM(rumId);
+
+    return (tmpRUM == null) ? 0 : tmpRUM.RUMQuantity;
   }
 
  /**
-  * Get the existing RUM values
+  * Get the existing RUM values. The list is built on each call, in the order
+  * of the RUM IDs, so changes to it do not change the record.
   *
   * @return The current RUM list
   */
   @Override
   public List<RUMInfo> getRUMs() {
-    return RUMs;
+    ArrayList<RUMInfo> tmpRUMs = new ArrayList<>();
+
+    if (rumPresent != null)
+    {
+      for (int rumId = 0 ; rumId < rumPresent.length ; rumId++)
+      {
+        if (rumPresent[rumId])
+        {
+          RUMInfo tmpRUM = new RUMInfo(RUMRegistry.getName(rumId),origRUMValues[rumId]);
+          tmpRUM.RUMQuantity = rumValues[rumId];
+          tmpRUMs.add(tmpRUM);
+        }
+      }
+    }
+
+    if (otherRUMs != null)
+    {
+      for (RUMInfo otherRUM : otherRUMs)
+      {
+        RUMInfo tmpRUM = new RUMInfo(otherRUM.RUMName,otherRUM.OrigQuantity);
+        tmpRUM.RUMQuantity = otherRUM.RUMQuantity;
+        tmpRUMs.add(tmpRUM);
+      }
+    }
+
+    return tmpRUMs;
   }
 
  /**
@@ -396,24 +443,39 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   */
   public double getOriginalRUMValue(String RUM)
   {
-    RUMInfo tmpRUM;
-    int Index;
+    int rumId = RUMRegistry.findId(RUM);
 
-    for (Index = 0 ; Index < RUMs.size() ; Index++)
+    if (hasRUM(rumId))
     {
-      tmpRUM = RUMs.get(Index);
+      return origRUMValues[rumId];
+    }
 
-      if (tmpRUM.RUMName.equals(RUM))
-      {
-        return tmpRUM.OrigQuantity;
-      }
+    RUMInfo tmpRUM = getOtherRUM(RUM);
+
+    return (tmpRUM == null) ? 0 : tmpRUM.OrigQuantity;
+  }
+
+ /**
+  * Get the original value of an existing RUM, or 0 if not found
+  *
+  * @param rumId The ID of the RUM to get, see RUMRegistry
+  * @return The current value of the RUM
+  */
+  public double getOriginalRUMValue(int rumId)
+  {
+    if (hasRUM(rumId))
+    {
+      return origRUMValues[rumId];
     }
 
-    return 0;
+    RUMInfo tmpRUM = getOtherRUM(rumId);
+
+    return (tmpRUM == null) ? 0 : tmpRUM.OrigQuantity;
   }
 
  /**
-  * Set the value of a RUM, overwrites existing value
+  * Set the value of a RUM, overwrites existing value. A RUM whose name is not
+  * registered is kept by name, and is not given an ID.
   *
   * @param RUM The RUM value to set
   * @param newValue The new value to set
@@ -421,23 +483,67 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public void setRUMValue(String RUM, double newValue)
   {
-    RUMInfo tmpRUM;
-    int Index;
+    RUMInfo tmpRUM = getOtherRUM(RUM);
 
-    for (Index = 0 ; Index < RUMs.size() ; Index++)
+    if (tmpRUM != null)
     {
-      tmpRUM = RUMs.get(Index);
+      tmpRUM.RUMQuantity = newValue;
+      return;
+    }
+
+    int rumId = RUMRegistry.findId(RUM);
 
-      if (tmpRUM.RUMName.equals(RUM))
+    if (rumId < 0)
+    {
+      if (otherRUMs == null)
       {
-        tmpRUM.RUMQuantity = newValue;
-        return;
+        otherRUMs = new ArrayList<>();
       }
+
+      otherRUMs.add(new RUMInfo(RUM,newValue));
+    }
+    else
+    {
+      setRUMValue(rumId, newValue);
+    }
+  }
+
+ /**
+  * Set the value of a RUM, overwrites existing value
+  *
+  * @param rumId The ID of the RUM to set, see RUMRegistry
+  * @param newValue The new value to set
+  */
+  @Override
+  public void setRUMValue(int rumId, double newValue)
+  {
+    if (hasRUM(rumId))
+    {
+      rumValues[rumId] = newValue;
+      return;
+    }
+
+    RUMInfo tmpRUM = getOtherRUM(rumId);
+
+    if (tmpRUM != null)
+    {
+      tmpRUM.RUMQuantity = newValue;
+      return;
     }
 
-    tmpRUM = new RUMInfo(RUM,newValue);
+    if (rumId < 0 || rumId >= RUMRegistry.size())
+    {
+      throw new IllegalArgumentException("Unknown RUM ID <" + rumId + ">");
+    }
+
+    if (rumPresent == null || rumId >= rumPresent.length)
+    {
+      growRUMs(Math.max(RUMRegistry.size(), rumId + 1));
+    }
 
-    RUMs.add(tmpRUM);
+    rumValues[rumId] = newValue;
+    origRUMValues[rumId] = newValue;
+    rumPresent[rumId] = true;
   }
 
  /**
@@ -451,21 +557,107 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public boolean updateRUMValue(String RUM, double ValueDelta)
   {
-    RUMInfo tmpRUM;
-    int Index;
+    int rumId = RUMRegistry.findId(RUM);
+
+    if (hasRUM(rumId))
+    {
+      rumValues[rumId] += ValueDelta;
+      return true;
+    }
+
+    RUMInfo tmpRUM = getOtherRUM(RUM);
+
+    if (tmpRUM == null)
+    {
+      return false;
+    }
+
+    tmpRUM.RUMQuantity += ValueDelta;
+    return true;
+  }
 
-    for (Index = 0 ; Index < RUMs.size() ; Index++)
+ /**
+  * Set the value of a RUM, return true if OK, false if the RUM does not
+  * exist
+  *
+  * @param rumId The ID of the RUM to update, see RUMRegistry
+  * @param ValueDelta The delta to apply to the RUM value
+  * @return true if the delta was applied, otherwise false
+  */
+  @Override
+  public boolean updateRUMValue(int rumId, double ValueDelta)
+  {
+    if (hasRUM(rumId))
+    {
+      rumValues[rumId] += ValueDelta;
+      return true;
+    }
+
+    RUMInfo tmpRUM = getOtherRUM(rumId);
+
+    if (tmpRUM == null)
     {
-      tmpRUM = RUMs.get(Index);
+      return false;
+    }
+
+    tmpRUM.RUMQuantity += ValueDelta;
+    return true;
+  }
 
-      if (tmpRUM.RUMName.equals(RUM))
+ /**
+  * See if the record has a value for the RUM with the given ID.
+  */
+  private boolean hasRUM(int rumId)
+  {
+    return rumPresent != null && rumId >= 0 && rumId < rumPresent.length && rumPresent[rumId];
+  }
+
+ /**
+  * Get a RUM that was set by name before its name was registered, or null.
+  */
+  private RUMInfo getOtherRUM(int rumId)
+  {
+    return (otherRUMs == null) ? null : getOtherRUM(RUMRegistry.getName(rumId));
+  }
+
+ /**
+  * Get a RUM that was set by a name that was not registered, or null.
+  */
+  private RUMInfo getOtherRUM(String RUM)
+  {
+    if (otherRUMs != null && RUM != null)
+    {
+      for (RUMInfo tmpRUM : otherRUMs)
       {
-        tmpRUM.RUMQuantity += ValueDelta;
-        return true;
+        if (RUM.equals(tmpRUM.RUMName))
+        {
+          return tmpRUM;
+        }
       }
     }
 
-    return false;
+    return null;
+  }
+
+ /**
+  * Make the RUM arrays large enough to hold the given number of IDs.
+  */
+  private void growRUMs(int newSize)
+  {
+    double[] newValues = new double[newSize];
+    double[] newOrigValues = new double[newSize];
+    boolean[] newPresent = new boolean[newSize];
+
+    if (rumPresent != null)
+    {
+      System.arraycopy(rumValues, 0, newValues, 0, rumPresent.length);
+      System.arraycopy(origRUMValues, 0, newOrigValues, 0, rumPresent.length);
+      System.arraycopy(rumPresent, 0, newPresent, 0, rumPresent.length);
+    }
+
+    rumValues = newValues;
+    origRUMValues = newOrigValues;
+    rumPresent = newPresent;
   }
 
  /**
@@ -547,6 +739,65 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
     return Total;
   }
 
+ /**
+  * Get the total impacts for a given resource. Excludes invalid charge
+  * packets
+  *
+  * @param resourceId The ID of the resource to recover the total for, see
+  *                   RUMRegistry
+  * @return The total value of the all impacts for the defined resource
+  */
+  public double getTotalImpact(int resourceId)
+  {
+    int Index;
+    ChargePacket tmpCP;
+    double Total = 0;
+
+    for (Index = 0 ; Index < chargePackets.size() ; Index++)
+    {
+      tmpCP = chargePackets.get(Index);
+
+      if (tmpCP.Valid)
+      {
+        if (tmpCP.getResourceId() == resourceId)
+        {
+          Total += tmpCP.chargedValue;
+        }
+      }
+    }
+
+    return Total;
+  }
+
+ /**
+  * Get the total impacts for all resources in one pass over the charge
+  * packets. Excludes invalid charge packets. The totals are added into the
+  * given array, indexed by the RUMRegistry ID of the resource. Resources with
+  * an ID outside the array are skipped.
+  *
+  * @param totals The array to add the totals to
+  */
+  public void getTotalImpacts(double[] totals)
+  {
+    int Index;
+    ChargePacket tmpCP;
+
+    for (Index = 0 ; Index < chargePackets.size() ; Index++)
+    {
+      tmpCP = chargePackets.get(Index);
+
+      if (tmpCP.Valid)
+      {
+        int resourceId = tmpCP.getResourceId();
+
+        if (resourceId >= 0 && resourceId < totals.length)
+        {
+          totals[resourceId] += tmpCP.chargedValue;
+        }
+      }
+    }
+  }
+
  /**
   * Get the resources that have been impacted in this record
   *
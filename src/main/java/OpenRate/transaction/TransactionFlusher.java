@@ -57,6 +57,17 @@ package OpenRate.transaction;
 
 import OpenRate.logging.ILogger;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -65,16 +76,71 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * final commit and closing done on them. This is externalised into a separate
  * thread for performance reasons.
  *
+ * By default the clients are informed of each phase (flush, commit or
+ * rollback, close) one after another, and the transactions are finished in
+ * the order they were flushed. The commit scheduling can be changed with
+ * setCommitScheduling():
+ *
+ * - With more than one commit thread, the clients are informed of each phase
+ *   in parallel. The phases themselves still follow each other, so no client
+ *   sees the commit before every client has flushed.
+ * - With a phase timeout, a client which does not finish a phase in time is
+ *   treated as failed. The flusher gives the client one more timeout to
+ *   return, so that normally a client never works on two phases of the same
+ *   transaction at once. A client which is still busy after that is
+ *   interrupted and left behind: the flusher goes on without it, and the
+ *   client may get the next phase while it is still in the late one. A hung
+ *   client holds on to its commit thread, so the commit threads should be
+ *   more than the clients which can hang.
+ * - If ordered commit is switched off, each transaction is finished
+ *   independently as soon as it is flushed, so a slow transaction does not
+ *   hold up the ones behind it. This must only be used where the clients keep
+ *   their state per transaction and the output does not depend on the order
+ *   of the commits (for example sequenced output file names). The commit
+ *   threads are shared by all the transactions being finished.
+ *
+ * The time each client spends in each phase is measured, and can be retrieved
+ * with getPhaseStatistics().
+ *
  * @author tgdspia1
  */
 public class TransactionFlusher implements Runnable
 {
+  /**
+   * The flush phase
+   */
+  public static final int PHASE_FLUSH    = 0;
+
+  /**
+   * The commit phase
+   */
+  public static final int PHASE_COMMIT   = 1;
+
+  /**
+   * The rollback phase
+   */
+  public static final int PHASE_ROLLBACK = 2;
+
+  /**
+   * The close phase
+   */
+  public static final int PHASE_CLOSE    = 3;
+
+  // The names of the phases for the statistics
+  private static final String[] PHASE_NAMES = {"Flush", "Commit", "Rollback", "Close"};
+
+  // The maximum number of clients, as in the transaction manager
+  private static final int MAX_CLIENTS = 50;
+
   // used for managing overlaid transactions
   private ReentrantReadWriteLock clientLock = new ReentrantReadWriteLock();
 
   // The list of the transactions we are closing
   private ArrayList<TransactionInfo>transFlushedList   = new ArrayList<>();
 
+  // The transactions in the list that are already being finished
+  private HashSet<TransactionInfo> transInProgress = new HashSet<>();
+
   // Common Definitions for the transaction manager
   private TMDefs TMD = new TMDefs();
 
@@ -87,38 +153,32 @@ public class TransactionFlusher implements Runnable
   // Our logger
   private ILogger pipeLog;
 
-  // Scheduler
-  private int sleepTime;
+  // Runs the client callbacks of a phase in parallel, null if they run in turn
+  private ExecutorService clientExecutor = null;
+
+  // Finishes transactions independently, null if they are finished in order
+  private ExecutorService transactionExecutor = null;
+
+  // The time in ms each phase may take, 0 for no limit
+  private long phaseTimeout = 0;
+
+  // The phase latency statistics per phase and client
+  private final long[][] phaseCalls      = new long[PHASE_NAMES.length][MAX_CLIENTS + 1];
+  private final long[][] phaseTotalNanos = new long[PHASE_NAMES.length][MAX_CLIENTS + 1];
+  private final long[][] phaseMaxNanos   = new long[PHASE_NAMES.length][MAX_CLIENTS + 1];
 
   @Override
   public void run()
   {
     while(true)
     {
-      if (getFlushedTransactionCount() > 0)
-      {
-        updateTransactionStatus();
-        sleepTime = 0;
-      }
-      else
-      {
-        sleepTime = 1000;
-      }
-      /*try {
-        Thread.sleep(sleepTime);
-      } catch (InterruptedException ex)
-      {
-        // Ignore
-      }*/
+      updateTransactionStatus();
 
-      // If not marked for shutdown, wait for notification from the
-      // suppler that new records are available for processing.
+      // wait for notification from the transaction manager that new
+      // transactions have been flushed
       try
       {
-        synchronized (this)
-        {
-          wait();
-        }
+        waitForTransactions();
       }
       catch (InterruptedException e)
       {
@@ -127,6 +187,20 @@ public class TransactionFlusher implements Runnable
     }
   }
 
+ /**
+  * Wait until there is a transaction in the flush list which has not yet been
+  * started.
+  *
+  * @throws InterruptedException
+  */
+  private synchronized void waitForTransactions() throws InterruptedException
+  {
+    while (transFlushedList.size() == transInProgress.size())
+    {
+      wait();
+    }
+  }
+
  /**
   * Put a transaction into the flush list
   *
@@ -136,21 +210,18 @@ public class TransactionFlusher implements Runnable
   {
     transFlushedList.add(trans);
     pipeLog.debug("Added transaction <"+trans.getTransactionNumber()+"> to flusher for pipe <"+pipelineName+">");
-    this.notify();
+    this.notifyAll();
   }
 
  /**
   * Update the overall status and in the case that we have a state change (for
   * example during the asynchronous closing portion of the transaction) deal
-  * with the state change. In the future we might put this into a separate
-  * thread.
+  * with the state change. With ordered commit the transactions are finished
+  * here in turn, otherwise they are handed to the transaction executor.
   */
   public void updateTransactionStatus()
-  {	  
-    int     i;
-    int     NewOverallStatus;
+  {
     TransactionInfo cachedTrans;
-    Integer transNumber;
 
     if (clientLock.isWriteLocked())
     {
@@ -163,100 +234,448 @@ public class TransactionFlusher implements Runnable
       clientLock.writeLock().lock();
 
       // Check the status of the transactions
-      while (transFlushedList.size() > 0)
+      while ((cachedTrans = getNextTransaction()) != null)
       {
-        cachedTrans = transFlushedList.get(0);
-        transNumber = cachedTrans.getTransactionNumber();
-
-        // Calculate the new status
-        NewOverallStatus = TM.getOverallStatus(transNumber,cachedTrans);
-
-        // If we had a state change, inform the clients if there was an overall state change
-        while (transNumber > 0)
+        if (transactionExecutor == null)
+        {
+          finishTransaction(cachedTrans);
+        }
+        else
         {
-          if (NewOverallStatus == TMD.TM_FLUSHED)
+          final TransactionInfo independentTrans = cachedTrans;
+
+          transactionExecutor.execute(new Runnable()
           {
-            // inform each of the clients in turn
-            for (i = 1; i <= TM.getClientCount(); i++)
+            @Override
+            public void run()
             {
-              if (TM.getClient(i).updateTransactionStatusFlush(transNumber))
-              {
-                // Set the overall status for this client to OK
-                cachedTrans.setClientStatus(i, TMD.TM_FINISHED_OK);
-              }
-              else
-              {
-                // Set the overall status for this client to OK
-                cachedTrans.setClientStatus(i, TMD.TM_FINISHED_ERR);
-              }
-
-              // Update the status
-              NewOverallStatus = TM.getOverallStatus(transNumber,cachedTrans);
+              finishTransaction(independentTrans);
             }
-          }
-          else if (NewOverallStatus == TMD.TM_FINISHED_OK)
-          {
-            // inform each of the clients in turn
-            for (i = 1; i <= TM.getClientCount(); i++)
-            {
-              TM.getClient(i).updateTransactionStatusCommit(transNumber);
+          });
+        }
+      }
+    }
+    finally
+    {
+      // Release the lock
+      clientLock.writeLock().unlock();
+    }
+  }
 
-              // Set the overall status for this client to OK
-              cachedTrans.setClientStatus(i, TMD.TM_CLOSING);
+ /**
+  * Get the oldest transaction in the flush list which has not yet been
+  * started, and mark it as started.
+  *
+  * @return The transaction, or null if there is none
+  */
+  private synchronized TransactionInfo getNextTransaction()
+  {
+    for (TransactionInfo trans : transFlushedList)
+    {
+      if (transInProgress.add(trans))
+      {
+        return trans;
+      }
+    }
 
-              // Update the status
-              NewOverallStatus = TM.getOverallStatus(transNumber,cachedTrans);
-            }
-          }
-          else if (NewOverallStatus == TMD.TM_FINISHED_ERR)
-          {
-            // inform each of the clients in turn
-            for (i = 1; i <= TM.getClientCount(); i++)
-            {
-              TM.getClient(i).updateTransactionStatusRollback(transNumber);
+    return null;
+  }
 
-              // Set the overall status for this client to closing
-              cachedTrans.setClientStatus(i, TMD.TM_CLOSING);
+ /**
+  * Take a finished transaction out of the flush list.
+  *
+  * @param trans The transaction
+  */
+  private synchronized void removeTransaction(TransactionInfo trans)
+  {
+    transFlushedList.remove(trans);
+    transInProgress.remove(trans);
+    pipeLog.debug(transFlushedList.size() + " transactions to flush for pipe <"+pipelineName+">");
+    this.notifyAll();
+  }
 
-              // Update the status
-              NewOverallStatus = TM.getOverallStatus(transNumber,cachedTrans);
-            }
-          }
-          else if (NewOverallStatus == TMD.TM_CLOSING)
-          {
-            // inform each of the clients in turn
-            for (i = 1; i <= TM.getClientCount(); i++)
-            {
-              TM.getClient(i).updateTransactionStatusClose(transNumber);
+ /**
+  * Wait until all the transactions in the flush list have been finished.
+  *
+  * @param timeout The longest time to wait in ms
+  * @return true if the flush list is empty, false if the time ran out
+  * @throws InterruptedException
+  */
+  synchronized boolean waitForFlushedTransactions(long timeout) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + timeout;
+    long remaining = timeout;
 
-              // Set the overall status for this client to all done
-              cachedTrans.setClientStatus(i, TMD.TM_CLOSED);
+    while (!transFlushedList.isEmpty() && (remaining > 0))
+    {
+      wait(remaining);
+      remaining = deadline - System.currentTimeMillis();
+    }
 
-              // Update the status
-              NewOverallStatus = TM.getOverallStatus(transNumber,cachedTrans);
-            }
-          }
-          else if (NewOverallStatus == TMD.TM_CLOSED)
+    return transFlushedList.isEmpty();
+  }
+
+ /**
+  * Take a flushed transaction through the flush, commit or rollback and close
+  * phases until it is closed.
+  *
+  * @param cachedTrans The transaction
+  */
+  private void finishTransaction(TransactionInfo cachedTrans)
+  {
+    int     i;
+    int     newOverallStatus;
+    int     transNumber = cachedTrans.getTransactionNumber();
+    boolean[] results;
+
+    // Calculate the new status
+    newOverallStatus = TM.getOverallStatus(transNumber,cachedTrans);
+
+    // Inform the clients of each overall state change
+    while (newOverallStatus != TMD.TM_CLOSED)
+    {
+      if (newOverallStatus == TMD.TM_FLUSHED)
+      {
+        results = runPhase(PHASE_FLUSH, transNumber);
+
+        for (i = 1; i < results.length; i++)
+        {
+          cachedTrans.setClientStatus(i, results[i] ? TMD.TM_FINISHED_OK : TMD.TM_FINISHED_ERR);
+        }
+      }
+      else if (newOverallStatus == TMD.TM_FINISHED_OK)
+      {
+        results = runPhase(PHASE_COMMIT, transNumber);
+
+        for (i = 1; i < results.length; i++)
+        {
+          cachedTrans.setClientStatus(i, TMD.TM_CLOSING);
+        }
+      }
+      else if (newOverallStatus == TMD.TM_FINISHED_ERR)
+      {
+        results = runPhase(PHASE_ROLLBACK, transNumber);
+
+        for (i = 1; i < results.length; i++)
+        {
+          cachedTrans.setClientStatus(i, TMD.TM_CLOSING);
+        }
+      }
+      else if (newOverallStatus == TMD.TM_CLOSING)
+      {
+        results = runPhase(PHASE_CLOSE, transNumber);
+
+        for (i = 1; i < results.length; i++)
+        {
+          cachedTrans.setClientStatus(i, TMD.TM_CLOSED);
+        }
+      }
+
+      // Update the status
+      newOverallStatus = TM.getOverallStatus(transNumber,cachedTrans);
+    }
+
+    // Finish up and remove the transaction
+    TM.closeTransaction(transNumber);
+    removeTransaction(cachedTrans);
+  }
+
+ /**
+  * Inform all the clients of a phase of the transaction, in turn or in
+  * parallel.
+  *
+  * @param phase The phase
+  * @param transNumber The transaction number
+  * @return The result for each client, indexed by client number
+  */
+  private boolean[] runPhase(final int phase, final int transNumber)
+  {
+    int clientCount = TM.getClientCount();
+    boolean[] results = new boolean[clientCount + 1];
+
+    if (clientExecutor == null)
+    {
+      for (int i = 1; i <= clientCount; i++)
+      {
+        results[i] = callClient(phase, i, transNumber);
+      }
+
+      return results;
+    }
+
+    List<Future<Boolean>> futures = new ArrayList<>(clientCount);
+    for (int i = 1; i <= clientCount; i++)
+    {
+      final int clientNumber = i;
+
+      futures.add(clientExecutor.submit(new Callable<Boolean>()
+      {
+        @Override
+        public Boolean call()
+        {
+          return callClient(phase, clientNumber, transNumber);
+        }
+      }));
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(phaseTimeout);
+    for (int i = 1; i <= clientCount; i++)
+    {
+      results[i] = waitForClient(futures.get(i - 1), deadline, phase, i, transNumber);
+    }
+
+    return results;
+  }
+
+ /**
+  * Wait for a client to finish a phase. A client which does not finish in the
+  * phase timeout, or which throws an exception, is reported as failed. A late
+  * client gets one more timeout to return, so that the next phase does not
+  * overlap with this one. After that it is interrupted and we stop waiting,
+  * so that a hung client cannot block the flusher.
+  *
+  * @param future The client call
+  * @param deadline The nano time the phase must be finished by
+  * @param phase The phase
+  * @param clientNumber The client number
+  * @param transNumber The transaction number
+  * @return The client result, false if it failed
+  */
+  private boolean waitForClient(Future<Boolean> future, long deadline, int phase, int clientNumber, int transNumber)
+  {
+    try
+    {
+      if (phaseTimeout > 0)
+      {
+        try
+        {
+          return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException ex)
+        {
+          pipeLog.error("Client <" + clientNumber + "> did not finish phase <" + PHASE_NAMES[phase] +
+                        "> of transaction <" + transNumber + "> within <" + phaseTimeout +
+                        "> ms in pipe <" + pipelineName + ">");
+          try
           {
-            // Finish up and remove the transaction
-            TM.closeTransaction(transNumber);
-            transFlushedList.remove(0);
-            pipeLog.debug(transFlushedList.size() + " transactions to flush for pipe <"+pipelineName+">");
-            transNumber = 0;
+            future.get(phaseTimeout, TimeUnit.MILLISECONDS);
           }
-          else
+          catch (TimeoutException ex2)
           {
-            // Update the status
-            NewOverallStatus = TM.getOverallStatus(transNumber,cachedTrans);
+            future.cancel(true);
+            pipeLog.error("Client <" + clientNumber + "> is still in phase <" + PHASE_NAMES[phase] +
+                          "> of transaction <" + transNumber + "> after twice the timeout in pipe <" +
+                          pipelineName + ">. Interrupted it and going on without it.");
           }
+          return false;
         }
       }
+
+      return future.get();
+    }
+    catch (InterruptedException | ExecutionException ex)
+    {
+      pipeLog.error("Client <" + clientNumber + "> failed in phase <" + PHASE_NAMES[phase] +
+                    "> of transaction <" + transNumber + "> in pipe <" + pipelineName + ">", ex);
+      return false;
+    }
+  }
+
+ /**
+  * Inform a client of a phase and record how long it took.
+  *
+  * @param phase The phase
+  * @param clientNumber The client number
+  * @param transNumber The transaction number
+  * @return The client result, always true except for the flush phase
+  */
+  private boolean callClient(int phase, int clientNumber, int transNumber)
+  {
+    ITMClient client = TM.getClient(clientNumber);
+    boolean result = true;
+    long start = System.nanoTime();
+
+    try
+    {
+      switch (phase)
+      {
+        case PHASE_FLUSH:
+          result = client.updateTransactionStatusFlush(transNumber);
+          break;
+        case PHASE_COMMIT:
+          client.updateTransactionStatusCommit(transNumber);
+          break;
+        case PHASE_ROLLBACK:
+          client.updateTransactionStatusRollback(transNumber);
+          break;
+        default:
+          client.updateTransactionStatusClose(transNumber);
+          break;
+      }
     }
     finally
     {
-      // Release the lock
-      clientLock.writeLock().unlock();
+      recordPhaseTime(phase, clientNumber, System.nanoTime() - start);
+    }
+
+    return result;
+  }
+
+ /**
+  * Add the time of a client call to the statistics.
+  *
+  * @param phase The phase
+  * @param clientNumber The client number
+  * @param nanos The time the call took
+  */
+  private void recordPhaseTime(int phase, int clientNumber, long nanos)
+  {
+    synchronized (phaseCalls)
+    {
+      phaseCalls[phase][clientNumber]++;
+      phaseTotalNanos[phase][clientNumber] += nanos;
+      if (nanos > phaseMaxNanos[phase][clientNumber])
+      {
+        phaseMaxNanos[phase][clientNumber] = nanos;
+      }
+    }
+  }
+
+ /**
+  * Set how the transactions are committed. See the class description.
+  *
+  * @param commitThreads The number of threads informing the clients of a phase
+  * @param orderedCommit True if the transactions must be finished in order
+  * @param newPhaseTimeout The time in ms each phase may take, 0 for no limit
+  */
+  synchronized void setCommitScheduling(int commitThreads, boolean orderedCommit, long newPhaseTimeout)
+  {
+    phaseTimeout = newPhaseTimeout;
+
+    if (clientExecutor != null)
+    {
+      clientExecutor.shutdown();
+      clientExecutor = null;
     }
+
+    if (transactionExecutor != null)
+    {
+      transactionExecutor.shutdown();
+      transactionExecutor = null;
+    }
+
+    // The timeout needs a thread of its own to be able to give up waiting
+    if ((commitThreads > 1) || (phaseTimeout > 0))
+    {
+      clientExecutor = Executors.newFixedThreadPool(Math.max(commitThreads, 1), getThreadFactory("TransCommit"));
+    }
+
+    // The number of transactions is limited by the transaction manager
+    if (!orderedCommit)
+    {
+      transactionExecutor = Executors.newCachedThreadPool(getThreadFactory("TransFinish"));
+    }
+  }
+
+ /**
+  * Get a factory for the daemon threads of the flusher.
+  *
+  * @param prefix The prefix of the thread names
+  * @return The thread factory
+  */
+  private ThreadFactory getThreadFactory(final String prefix)
+  {
+    return new ThreadFactory()
+    {
+      private final AtomicInteger instance = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r)
+      {
+        Thread commitThread = new Thread(r, prefix + "." + pipelineName + "-Inst-" + instance.getAndIncrement());
+        commitThread.setDaemon(true);
+        return commitThread;
+      }
+    };
+  }
+
+ /**
+  * Get the number of times a client has been informed of a phase.
+  *
+  * @param phase The phase
+  * @param clientNumber The client number
+  * @return The number of calls
+  */
+  public long getPhaseCalls(int phase, int clientNumber)
+  {
+    synchronized (phaseCalls)
+    {
+      return phaseCalls[phase][clientNumber];
+    }
+  }
+
+ /**
+  * Get the total time a client has spent in a phase.
+  *
+  * @param phase The phase
+  * @param clientNumber The client number
+  * @return The total time in nanoseconds
+  */
+  public long getPhaseTotalNanos(int phase, int clientNumber)
+  {
+    synchronized (phaseCalls)
+    {
+      return phaseTotalNanos[phase][clientNumber];
+    }
+  }
+
+ /**
+  * Get the longest time a client has spent in a phase.
+  *
+  * @param phase The phase
+  * @param clientNumber The client number
+  * @return The maximum time in nanoseconds
+  */
+  public long getPhaseMaxNanos(int phase, int clientNumber)
+  {
+    synchronized (phaseCalls)
+    {
+      return phaseMaxNanos[phase][clientNumber];
+    }
+  }
+
+ /**
+  * Get the phase latency statistics of all the clients, one line for each
+  * client and phase it has been informed of.
+  *
+  * @return The statistics
+  */
+  public String getPhaseStatistics()
+  {
+    StringBuilder result = new StringBuilder();
+
+    synchronized (phaseCalls)
+    {
+      for (int i = 1; i <= TM.getClientCount(); i++)
+      {
+        for (int phase = 0; phase < PHASE_NAMES.length; phase++)
+        {
+          long calls = phaseCalls[phase][i];
+
+          if (calls > 0)
+          {
+            result.append("Client <").append(i).append("> (")
+                  .append(TM.getClient(i).getClass().getSimpleName()).append(") ")
+                  .append(PHASE_NAMES[phase]).append(": calls <").append(calls)
+                  .append("> avg <").append(phaseTotalNanos[phase][i] / calls / 1000)
+                  .append("> us max <").append(phaseMaxNanos[phase][i] / 1000)
+                  .append("> us\n");
+          }
+        }
+      }
+    }
+
+    return result.toString();
   }
 
  /**
@@ -265,7 +684,7 @@ public class TransactionFlusher implements Runnable
   *
   * @return the count.
   */
-  public int getFlushedTransactionCount()
+  public synchronized int getFlushedTransactionCount()
   {
     return transFlushedList.size();
   }
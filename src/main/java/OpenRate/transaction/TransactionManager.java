@@ -141,6 +141,7 @@ public class TransactionManager implements ITransactionManager, IEventInterface
   private final static String SERVICE_FLUSH_STATUS = "FlushStatus";
   private final static String SERVICE_MAX_TRANSACTIONS = "MaxTransactions";
   private final static String SERVICE_ABORT_HARD = "AbortHard";
+  private final static String SERVICE_COMMIT_STATISTICS = "CommitStatistics";
 
   // module symbolic name: set during initialisation
   private String symbolicName = "TransactionManager";
@@ -728,6 +729,20 @@ public class TransactionManager implements ITransactionManager, IEventInterface
     maxTransactions = newMaxValue;
   }
 
+  /**
+   * Set how the flusher commits the transactions. By default the clients are
+   * informed of each phase in turn, and the transactions are finished in the
+   * order they were flushed.
+   *
+   * @param commitThreads The number of threads informing the clients of a phase
+   * @param orderedCommit True if the transactions must be finished in order
+   * @param phaseTimeout The time in ms each phase may take, 0 for no limit
+   */
+  public void setCommitScheduling(int commitThreads, boolean orderedCommit, long phaseTimeout)
+  {
+    tmf.setCommitScheduling(commitThreads, orderedCommit, phaseTimeout);
+  }
+
   /**
   * Perform any close down activities that are needed, the inverse of the
   * init() procedure
@@ -764,6 +779,7 @@ public class TransactionManager implements ITransactionManager, IEventInterface
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_MAX_TRANSACTIONS, ClientManager.PARAM_DYNAMIC);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_ABORT_CONCURRENT_TRANS, ClientManager.PARAM_DYNAMIC);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_ABORT_HARD, ClientManager.PARAM_DYNAMIC);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMMIT_STATISTICS, ClientManager.PARAM_DYNAMIC);
   }
 
   /**
@@ -903,6 +919,11 @@ public class TransactionManager implements ITransactionManager, IEventInterface
       return result;
     }
 
+    if (Command.equalsIgnoreCase(SERVICE_COMMIT_STATISTICS))
+    {
+      return tmf.getPhaseStatistics();
+    }
+
     // Set the maximum number of transactions
     if (Command.equalsIgnoreCase(SERVICE_MAX_TRANSACTIONS))
     {
@@ -60,7 +60,6 @@ import OpenRate.resource.ConversionCache;
 import OpenRate.resource.ResourceContext;
 import java.math.BigDecimal;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -70,6 +69,12 @@ import java.util.TimeZone;
  * This class offers conversion and formatting methods (primarily for dates), so
  * that we have a simple single set conversion handling methods.
  *
+ * The date methods are thread safe. Parsing and formatting are done by a
+ * DateConversionEngine, which handles fixed width numeric formats such as
+ * "yyyyMMddHHmmss" without creating a calendar, and the day of week and minute
+ * of day are calculated from the cached day offsets of the time zone. The
+ * remaining calendar methods use a calendar for each thread.
+ *
  * @author ian
  */
 public class ConversionUtils
@@ -81,10 +86,10 @@ public class ConversionUtils
   private String OutputDateFormat = CommonConfig.OR_DEFAULT_DATE_FORMAT;
 
   // format used for input
-  private SimpleDateFormat sdfIn = null;
+  private DateConversionEngine sdfIn = null;
 
   // format used for output
-  private SimpleDateFormat sdfOut = null;
+  private DateConversionEngine sdfOut = null;
 
   // set that we are using integer (UTC) format
   private boolean integerFormat = false;
@@ -95,8 +100,11 @@ public class ConversionUtils
   // set that we are using long format (UTC + ms)
   private boolean stringFormat = true;
 
-  // used for general date manipulation
-  private final Calendar cal;
+  // used for general date manipulation, one calendar for each thread
+  private volatile ThreadLocal<Calendar> calendars;
+
+  // used for the day of week and minute of day calculations
+  private volatile ZoneOffsetCache zoneOffsets;
 
   // Used to cache access to the conversion objects
   private static ConversionCache tmpConvCache = null;
@@ -110,15 +118,23 @@ public class ConversionUtils
   public ConversionUtils()
   {
     // This is the date format we are using for the output
-    sdfOut = new SimpleDateFormat(OutputDateFormat);
-    sdfOut.setLenient(false);
+    sdfOut = new DateConversionEngine(OutputDateFormat, false);
 
     // This is the date format we are using for the input
-    sdfIn = new SimpleDateFormat(InputDateFormat);
-    sdfIn.setLenient(false);
+    sdfIn = new DateConversionEngine(InputDateFormat, false);
 
     // used for date manipulation
-    cal = new GregorianCalendar();
+    setTimeZone(TimeZone.getDefault());
+  }
+
+ /**
+  * Get the calendar of the current thread
+  *
+  * @return The calendar
+  */
+  private Calendar getCalendar()
+  {
+    return calendars.get();
   }
 
  /**
@@ -186,7 +202,7 @@ public class ConversionUtils
       }
       else
       {
-        tmpUTCDate = sdfIn.parse(amorphicDate).getTime() / 1000;
+        tmpUTCDate = sdfIn.parseToUTC(amorphicDate);
       }
     }
 
@@ -201,8 +217,7 @@ public class ConversionUtils
   */
   public int getDayOfWeek(long UTCDateValue)
   {
-    cal.setTimeInMillis(UTCDateValue*1000);
-    return cal.get(Calendar.DAY_OF_WEEK);
+    return zoneOffsets.getDayOfWeek(UTCDateValue);
   }
 
  /**
@@ -213,8 +228,7 @@ public class ConversionUtils
   */
   public int getMinuteOfDay(long UTCDateValue)
   {
-    cal.setTimeInMillis(UTCDateValue*1000);
-    return cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+    return zoneOffsets.getMinuteOfDay(UTCDateValue);
   }
 
  /**
@@ -246,7 +260,7 @@ public class ConversionUtils
     }
     else
     {
-      sdfIn = new SimpleDateFormat(newFormat);
+      sdfIn = new DateConversionEngine(newFormat, true);
 
       // set a string format
       integerFormat = false;
@@ -299,7 +313,7 @@ public class ConversionUtils
     }
     else
     {
-      sdfOut = new SimpleDateFormat(newFormat);
+      sdfOut = new DateConversionEngine(newFormat, true);
 
       // set a string format
       integerFormat = false;
@@ -331,7 +345,7 @@ public class ConversionUtils
   */
   public String formatLongDate(long dateToFormat)
   {
-    return sdfOut.format(new Date(dateToFormat*1000));
+    return sdfOut.format(dateToFormat*1000);
   }
 
  /**
@@ -348,7 +362,7 @@ public class ConversionUtils
     }
     else
     {
-      return sdfOut.format(dateToFormat);
+      return sdfOut.format(dateToFormat.getTime());
     }
   }
 
@@ -419,8 +433,7 @@ public class ConversionUtils
   public long getUTCMonthStart(Date EventStartDate)
   {
     Date roundedDate = getMonthStart(EventStartDate);
-    cal.setTime(roundedDate);
-    long validityMonthStart = cal.getTimeInMillis() / 1000;
+    long validityMonthStart = roundedDate.getTime() / 1000;
 
     return validityMonthStart;
   }
@@ -434,8 +447,7 @@ public class ConversionUtils
   public long getUTCMonthEnd(Date EventStartDate)
   {
     Date roundedDate = getMonthEnd(EventStartDate);
-    cal.setTime(roundedDate);
-    long validityMonthEnd = cal.getTimeInMillis() / 1000;
+    long validityMonthEnd = roundedDate.getTime() / 1000;
 
     return validityMonthEnd;
   }
@@ -448,6 +460,8 @@ public class ConversionUtils
   */
   public Date getMonthStart(Date EventStartDate)
   {
+    Calendar cal = getCalendar();
+
     // Get the montly counter validity periods for this CDR
     cal.setTime(EventStartDate);
     cal.set(Calendar.HOUR_OF_DAY,0);
@@ -468,6 +482,8 @@ public class ConversionUtils
   */
   public Date getMonthEnd(Date EventStartDate)
   {
+    Calendar cal = getCalendar();
+
     // Get the montly counter validity periods for this CDR
     cal.setTime(EventStartDate);
     cal.set(Calendar.HOUR_OF_DAY,0);
@@ -490,8 +506,7 @@ public class ConversionUtils
 	 */
 	public long getUTCYearStart(Date EventStartDate) {
 		Date roundedDate = getYearStart(EventStartDate);
-		cal.setTime(roundedDate);
-		long validityYearStart = cal.getTimeInMillis() / 1000;
+		long validityYearStart = roundedDate.getTime() / 1000;
 
 		return validityYearStart;
 	}
@@ -505,8 +520,7 @@ public class ConversionUtils
 	 */
 	public long getUTCYearEnd(Date EventStartDate) {
 		Date roundedDate = getYearEnd(EventStartDate);
-		cal.setTime(roundedDate);
-		long validityYearEnd = cal.getTimeInMillis() / 1000;
+		long validityYearEnd = roundedDate.getTime() / 1000;
 
 		return validityYearEnd;
 	}
@@ -519,6 +533,8 @@ public class ConversionUtils
 	 * @return The year start date
 	 */
 	public Date getYearStart(Date EventStartDate) {
+		Calendar cal = getCalendar();
+
 		// Get the yearly counter validity periods for this CDR
 		cal.setTime(EventStartDate);
 		cal.set(Calendar.DAY_OF_YEAR, 1);
@@ -538,6 +554,8 @@ public class ConversionUtils
 	 * @return The year end date
 	 */
 	public Date getYearEnd(Date EventStartDate) {
+		Calendar cal = getCalendar();
+
 		// Get the yearly counter validity periods for this CDR
 		cal.setTime(EventStartDate);
 		cal.set(Calendar.DAY_OF_YEAR, 366); // 366 for leap year
@@ -559,8 +577,7 @@ public class ConversionUtils
   public long getUTCDayStart(Date EventStartDate)
   {
     Date roundedDate = getDayStart(EventStartDate);
-    cal.setTime(roundedDate);
-    long validityDayStart = cal.getTimeInMillis() / 1000;
+    long validityDayStart = roundedDate.getTime() / 1000;
 
     return validityDayStart;
   }
@@ -575,8 +592,7 @@ public class ConversionUtils
   public long getUTCDayStart(Date EventStartDate, int offset)
   {
     Date roundedDate = getDayEnd(EventStartDate,offset);
-    cal.setTime(roundedDate);
-    long validityDayStart = cal.getTimeInMillis() / 1000;
+    long validityDayStart = roundedDate.getTime() / 1000;
 
     return validityDayStart;
   }
@@ -589,9 +605,7 @@ public class ConversionUtils
   */
   public long getUTCDate(Date EventStartDate)
   {
-    // Get the montly counter validity periods for this CDR
-    cal.setTime(EventStartDate);
-    long validityDayStart = cal.getTimeInMillis() / 1000;
+    long validityDayStart = EventStartDate.getTime() / 1000;
 
     return validityDayStart;
   }
@@ -604,10 +618,7 @@ public class ConversionUtils
   */
   public Date getDateFromUTC(long EventStartDate)
   {
-    // Get the montly counter validity periods for this CDR
-    cal.setTimeInMillis(EventStartDate*1000);
-
-    return cal.getTime();
+    return new Date(EventStartDate*1000);
   }
 
  /**
@@ -619,9 +630,7 @@ public class ConversionUtils
   public long getUTCDayEnd(Date EventStartDate)
   {
     Date roundedDate = getDayEnd(EventStartDate);
-    cal.setTime(roundedDate);
-
-    long validityDayEnd = cal.getTimeInMillis() / 1000;
+    long validityDayEnd = roundedDate.getTime() / 1000;
 
     return validityDayEnd;
   }
@@ -636,9 +645,7 @@ public class ConversionUtils
   public long getUTCDayEnd(Date EventStartDate, int offset)
   {
     Date roundedDate = getDayEnd(EventStartDate,offset);
-    cal.setTime(roundedDate);
-
-    long validityDayEnd = cal.getTimeInMillis() / 1000;
+    long validityDayEnd = roundedDate.getTime() / 1000;
 
     return validityDayEnd;
   }
@@ -652,6 +659,8 @@ public class ConversionUtils
   */
   public Date getDayStart(Date EventStartDate , int offset)
   {
+    Calendar cal = getCalendar();
+
     // Get the montly counter validity periods for this CDR
     cal.setTime(EventStartDate);
     cal.set(Calendar.HOUR_OF_DAY,0);
@@ -672,6 +681,8 @@ public class ConversionUtils
   */
   public Date getDayEnd(Date EventStartDate, int offset)
   {
+    Calendar cal = getCalendar();
+
     // Get the montly counter validity periods for this CDR
     cal.setTime(EventStartDate);
     cal.set(Calendar.HOUR_OF_DAY,0);
@@ -693,6 +704,8 @@ public class ConversionUtils
   */
   public Date getDayStart(Date EventStartDate )
   {
+    Calendar cal = getCalendar();
+
     // Get the montly counter validity periods for this CDR
     cal.setTime(EventStartDate);
     cal.set(Calendar.HOUR_OF_DAY,0);
@@ -711,6 +724,8 @@ public class ConversionUtils
   */
   public Date getDayEnd(Date EventStartDate)
   {
+    Calendar cal = getCalendar();
+
     // Get the montly counter validity periods for this CDR
     cal.setTime(EventStartDate);
     cal.set(Calendar.HOUR_OF_DAY,0);
@@ -752,6 +767,8 @@ public class ConversionUtils
    */
   public Date addDateSeconds(Date inputDate, int duration)
   {
+    Calendar cal = getCalendar();
+
     cal.setTime(inputDate);
     cal.add(Calendar.SECOND, duration);
 
@@ -767,6 +784,8 @@ public class ConversionUtils
    */
   public Date addDateSeconds(Date inputDate, long duration)
   {
+    Calendar cal = getCalendar();
+
     cal.setTime(inputDate);
     cal.add(Calendar.SECOND, (int) duration);
 
@@ -782,6 +801,8 @@ public class ConversionUtils
    */
   public Date addDateSeconds(Date inputDate, double duration)
   {
+    Calendar cal = getCalendar();
+
     cal.setTime(inputDate);
     cal.add(Calendar.SECOND, (int) duration);
 
@@ -865,7 +886,18 @@ public class ConversionUtils
    * @param newTimeZone The tome zone to set
    */
   public void setTimeZone(TimeZone newTimeZone) {
-    cal.setTimeZone(newTimeZone);
+    final TimeZone zone = (TimeZone) newTimeZone.clone();
+
+    calendars = new ThreadLocal<Calendar>()
+    {
+      @Override
+      protected Calendar initialValue()
+      {
+        return new GregorianCalendar(zone);
+      }
+    };
+
+    zoneOffsets = ZoneOffsetCache.getInstance(zone);
   }
   
 }
@@ -0,0 +1,409 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+
+package OpenRate.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Thread safe date parser and formatter for a single SimpleDateFormat pattern.
+ *
+ * Patterns which are made up only of the fixed width numeric fields yyyy, MM,
+ * dd, HH, mm, ss and SSS, and of separator characters (for example
+ * "yyyyMMddHHmmss" or "yyyy-MM-dd HH:mm:ss") are handled directly: the digits
+ * are read from the string and the date is calculated using the day offsets
+ * held in the ZoneOffsetCache, without creating any objects. Anything else -
+ * other patterns, values which are not exactly in the fixed width form, dates
+ * outside the cached range or near a daylight savings change - is passed to a
+ * SimpleDateFormat held for each thread, so the results are always the same
+ * as those of the SimpleDateFormat.
+ */
+public class DateConversionEngine
+{
+  // the fields handled by the fast path, in pattern letter order
+  private static final String FIELD_LETTERS = "yMdHmsS";
+  private static final int[] FIELD_WIDTHS = {4, 2, 2, 2, 2, 2, 3};
+  private static final int YEAR = 0;
+  private static final int MONTH = 1;
+  private static final int DAY = 2;
+  private static final int HOUR = 3;
+  private static final int MINUTE = 4;
+  private static final int SECOND = 5;
+  private static final int MILLI = 6;
+
+  // the pattern we were created with
+  private final String pattern;
+
+  // the offsets of the time zone we work in
+  private final ZoneOffsetCache zoneCache;
+
+  // the start position of each field in the fixed width form, -1 if absent
+  private final int[] fieldStart = new int[FIELD_LETTERS.length()];
+
+  // the fixed width form: separators are held as they are, fields are 0
+  private final char[] template;
+
+  // true if the pattern can be handled by the fast path
+  private final boolean fixedWidth;
+
+  // the formatter for everything outside the fast path, one per thread
+  private final ThreadLocal<SimpleDateFormat> formats;
+
+ /**
+  * Create an engine for the pattern in the default time zone.
+  *
+  * @param pattern The SimpleDateFormat pattern
+  * @param lenient The lenient setting for the SimpleDateFormat
+  */
+  public DateConversionEngine(String pattern, boolean lenient)
+  {
+    this(pattern, TimeZone.getDefault(), lenient);
+  }
+
+ /**
+  * Create an engine for the pattern in the given time zone.
+  *
+  * @param pattern The SimpleDateFormat pattern
+  * @param zone The time zone dates are given in
+  * @param lenient The lenient setting for the SimpleDateFormat
+  */
+  public DateConversionEngine(String pattern, TimeZone zone, boolean lenient)
+  {
+    // this checks the pattern, and is the prototype for the thread copies
+    final SimpleDateFormat prototype = new SimpleDateFormat(pattern);
+    prototype.setTimeZone(zone);
+    prototype.setLenient(lenient);
+
+    formats = new ThreadLocal<SimpleDateFormat>()
+    {
+      @Override
+      protected SimpleDateFormat initialValue()
+      {
+        return (SimpleDateFormat) prototype.clone();
+      }
+    };
+
+    this.pattern = pattern;
+    zoneCache = ZoneOffsetCache.getInstance(zone);
+    template = new char[pattern.length()];
+    fixedWidth = compilePattern();
+  }
+
+ /**
+  * Work out the fixed width form of the pattern.
+  *
+  * @return true if the pattern is fixed width, otherwise false
+  */
+  private boolean compilePattern()
+  {
+    Arrays.fill(fieldStart, -1);
+
+    int position = 0;
+    while (position < pattern.length())
+    {
+      char patternChar = pattern.charAt(position);
+
+      if ((patternChar >= 'a' && patternChar <= 'z') || (patternChar >= 'A' && patternChar <= 'Z'))
+      {
+        int field = FIELD_LETTERS.indexOf(patternChar);
+        int end = position;
+        while (end < pattern.length() && pattern.charAt(end) == patternChar)
+        {
+          end++;
+        }
+
+        if (field < 0 || fieldStart[field] >= 0 || end - position != FIELD_WIDTHS[field])
+        {
+          return false;
+        }
+
+        fieldStart[field] = position;
+        position = end;
+      }
+      else if (patternChar == '\'')
+      {
+        // quoted text is not worth the complication
+        return false;
+      }
+      else
+      {
+        template[position++] = patternChar;
+      }
+    }
+
+    return true;
+  }
+
+ /**
+  * Get the pattern of this engine.
+  *
+  * @return The pattern
+  */
+  public String getPattern()
+  {
+    return pattern;
+  }
+
+ /**
+  * Parse a date string to a UTC date in seconds.
+  *
+  * @param dateString The date string
+  * @return The UTC date in seconds
+  * @throws ParseException If the string is not a valid date
+  */
+  public long parseToUTC(String dateString) throws ParseException
+  {
+    long utcMillis = parseFixedWidth(dateString);
+
+    if (utcMillis == Long.MIN_VALUE)
+    {
+      utcMillis = formats.get().parse(dateString).getTime();
+    }
+
+    return utcMillis / 1000;
+  }
+
+ /**
+  * Parse a date string to a Date.
+  *
+  * @param dateString The date string
+  * @return The date
+  * @throws ParseException If the string is not a valid date
+  */
+  public Date parse(String dateString) throws ParseException
+  {
+    long utcMillis = parseFixedWidth(dateString);
+
+    if (utcMillis == Long.MIN_VALUE)
+    {
+      return formats.get().parse(dateString);
+    }
+
+    return new Date(utcMillis);
+  }
+
+ /**
+  * Format a UTC date given in milliseconds.
+  *
+  * @param utcMillis The UTC date in milliseconds
+  * @return The formatted date
+  */
+  public String format(long utcMillis)
+  {
+    if (fixedWidth)
+    {
+      long utcSeconds = ZoneOffsetCache.floorDiv(utcMillis, 1000);
+      long localSeconds = utcSeconds + zoneCache.getOffsetForUTC(utcSeconds);
+      long localDay = ZoneOffsetCache.floorDiv(localSeconds, ZoneOffsetCache.SECONDS_PER_DAY);
+
+      // only inside the range covered by the day cache
+      if (localDay >= 0 && localDay < ZoneOffsetCache.DAY_COUNT)
+      {
+        char[] result = template.clone();
+        int secondOfDay = (int) (localSeconds - localDay * ZoneOffsetCache.SECONDS_PER_DAY);
+
+        // civil date from days, see days_from_civil / civil_from_days
+        long z = localDay + 719468;
+        long era = z / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        putDigits(result, YEAR, year);
+        putDigits(result, MONTH, month);
+        putDigits(result, DAY, day);
+        putDigits(result, HOUR, secondOfDay / 3600);
+        putDigits(result, MINUTE, (secondOfDay / 60) % 60);
+        putDigits(result, SECOND, secondOfDay % 60);
+        putDigits(result, MILLI, (int) ZoneOffsetCache.floorMod(utcMillis, 1000));
+
+        return new String(result);
+      }
+    }
+
+    return formats.get().format(new Date(utcMillis));
+  }
+
+ /**
+  * Write the digits of a field into the fixed width form, if the field is
+  * present.
+  */
+  private void putDigits(char[] result, int field, int value)
+  {
+    int start = fieldStart[field];
+
+    if (start >= 0)
+    {
+      for (int position = start + FIELD_WIDTHS[field] - 1; position >= start; position--)
+      {
+        result[position] = (char) ('0' + value % 10);
+        value /= 10;
+      }
+    }
+  }
+
+ /**
+  * Parse the date string using the fixed width form.
+  *
+  * @param dateString The date string
+  * @return The UTC date in milliseconds, or Long.MIN_VALUE if the fast path
+  *         cannot be used for this value
+  */
+  private long parseFixedWidth(String dateString)
+  {
+    if (!fixedWidth || dateString == null || dateString.length() != template.length)
+    {
+      return Long.MIN_VALUE;
+    }
+
+    // check the separators
+    for (int position = 0; position < template.length; position++)
+    {
+      if (template[position] != 0 && template[position] != dateString.charAt(position))
+      {
+        return Long.MIN_VALUE;
+      }
+    }
+
+    int year = readDigits(dateString, YEAR, 1970);
+    int month = readDigits(dateString, MONTH, 1);
+    int day = readDigits(dateString, DAY, 1);
+    int hour = readDigits(dateString, HOUR, 0);
+    int minute = readDigits(dateString, MINUTE, 0);
+    int second = readDigits(dateString, SECOND, 0);
+    int milli = readDigits(dateString, MILLI, 0);
+
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) ||
+        hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || milli < 0)
+    {
+      return Long.MIN_VALUE;
+    }
+
+    long localSeconds = daysFromCivil(year, month, day) * ZoneOffsetCache.SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+    int offset = zoneCache.getOffsetForLocal(localSeconds);
+
+    if (offset == ZoneOffsetCache.MIXED)
+    {
+      return Long.MIN_VALUE;
+    }
+
+    return (localSeconds - offset) * 1000 + milli;
+  }
+
+ /**
+  * Read the digits of a field.
+  *
+  * @return The value, the default if the field is absent or -1 if it is not
+  *         numeric
+  */
+  private int readDigits(String dateString, int field, int defaultValue)
+  {
+    int start = fieldStart[field];
+
+    if (start < 0)
+    {
+      return defaultValue;
+    }
+
+    int value = 0;
+    for (int position = start; position < start + FIELD_WIDTHS[field]; position++)
+    {
+      int digit = dateString.charAt(position) - '0';
+      if (digit < 0 || digit > 9)
+      {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+
+    return value;
+  }
+
+ /**
+  * The number of days in a month of the Gregorian calendar.
+  */
+  private static int daysInMonth(int year, int month)
+  {
+    if (month == 2)
+    {
+      boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+      return leap ? 29 : 28;
+    }
+
+    return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+  }
+
+ /**
+  * The number of days since 1970-01-01 of a date in the Gregorian calendar.
+  */
+  private static long daysFromCivil(int year, int month, int day)
+  {
+    long y = (month <= 2) ? year - 1 : year;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yoe = y - era * 400;
+    long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097 + doe - 719468;
+  }
+}
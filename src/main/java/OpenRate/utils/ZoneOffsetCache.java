@@ -0,0 +1,320 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+
+package OpenRate.utils;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the offset of a time zone for each day, so that converting between
+ * UTC seconds and local date fields becomes simple arithmetic.
+ *
+ * Two tables are held, both indexed by the day since 1970-01-01 and covering
+ * the years 1970 to 2099:
+ *  - the offset in force for the whole of a UTC day, used when converting a
+ *    UTC date to local fields (day of week, minute of day, formatting)
+ *  - the offset in force for the whole of a local day, used when converting
+ *    local date fields to UTC (parsing)
+ *
+ * A day on which the offset changes (or, for local days, which is close to a
+ * change, so that a local time might be ambiguous) is marked as mixed. For a
+ * UTC day the offset is then read from the time zone, and for a local day
+ * the caller must fall back to a calendar. Entries are filled the first time
+ * a day is used. As the value written for a day never changes, the tables can
+ * be read and filled by many threads without locking.
+ *
+ * The instances are shared between all users of the same time zone.
+ */
+public final class ZoneOffsetCache
+{
+  /**
+   * The value returned for a local day on which the offset is not constant
+   */
+  public static final int MIXED = Integer.MIN_VALUE + 1;
+
+  // marks a day which has not been looked at yet
+  private static final int UNKNOWN = Integer.MIN_VALUE;
+
+  // the number of seconds and milliseconds in a day
+  static final long SECONDS_PER_DAY = 86400;
+  private static final long MS_PER_DAY = SECONDS_PER_DAY * 1000;
+
+  // the number of days covered: 1970-01-01 to 2099-12-31
+  static final int DAY_COUNT = 47482;
+
+  // the shared instances, by time zone ID
+  private static final ConcurrentHashMap<String, ZoneOffsetCache> instances = new ConcurrentHashMap<>();
+
+  // the zone we are caching
+  private final TimeZone zone;
+
+  // the offset in seconds for each UTC day
+  private final int[] utcDayOffset = new int[DAY_COUNT];
+
+  // the offset in seconds for each local day
+  private final int[] localDayOffset = new int[DAY_COUNT];
+
+ /**
+  * Create the cache for a zone. Use getInstance() to get a shared instance.
+  *
+  * @param zone The time zone to cache
+  */
+  private ZoneOffsetCache(TimeZone zone)
+  {
+    this.zone = (TimeZone) zone.clone();
+    Arrays.fill(utcDayOffset, UNKNOWN);
+    Arrays.fill(localDayOffset, UNKNOWN);
+  }
+
+ /**
+  * Get the shared cache for a time zone.
+  *
+  * @param zone The time zone
+  * @return The cache for the zone
+  */
+  public static ZoneOffsetCache getInstance(TimeZone zone)
+  {
+    ZoneOffsetCache cache = instances.get(zone.getID());
+
+    if (cache == null)
+    {
+      cache = new ZoneOffsetCache(zone);
+      ZoneOffsetCache existing = instances.putIfAbsent(zone.getID(), cache);
+      if (existing != null)
+      {
+        cache = existing;
+      }
+    }
+
+    // a custom zone may reuse the ID of a zone with other rules
+    if (!cache.zone.hasSameRules(zone))
+    {
+      cache = new ZoneOffsetCache(zone);
+    }
+
+    return cache;
+  }
+
+ /**
+  * Get the time zone this cache is for.
+  *
+  * @return A copy of the time zone
+  */
+  public TimeZone getTimeZone()
+  {
+    return (TimeZone) zone.clone();
+  }
+
+ /**
+  * Get the offset from UTC in seconds at the given UTC date.
+  *
+  * @param utcSeconds The UTC date in seconds
+  * @return The offset in seconds
+  */
+  public int getOffsetForUTC(long utcSeconds)
+  {
+    long day = floorDiv(utcSeconds, SECONDS_PER_DAY);
+
+    if (day >= 0 && day < DAY_COUNT)
+    {
+      int offset = utcDayOffset[(int) day];
+
+      if (offset == UNKNOWN)
+      {
+        long dayStart = day * MS_PER_DAY;
+        int startOffset = zone.getOffset(dayStart);
+        offset = (startOffset == zone.getOffset(dayStart + MS_PER_DAY - 1)) ? startOffset / 1000 : MIXED;
+        utcDayOffset[(int) day] = offset;
+      }
+
+      if (offset != MIXED)
+      {
+        return offset;
+      }
+    }
+
+    return zone.getOffset(utcSeconds * 1000) / 1000;
+  }
+
+ /**
+  * Get the offset from UTC in seconds for a local date, if this can be done
+  * without ambiguity. If the local day is outside the cached range, or the
+  * offset changes on or near this day, MIXED is returned, and the conversion
+  * must be done using a calendar.
+  *
+  * @param localSeconds The local date as seconds since 1970-01-01 00:00:00
+  * @return The offset in seconds, or MIXED
+  */
+  public int getOffsetForLocal(long localSeconds)
+  {
+    long day = floorDiv(localSeconds, SECONDS_PER_DAY);
+
+    if (day < 0 || day >= DAY_COUNT)
+    {
+      return MIXED;
+    }
+
+    int offset = localDayOffset[(int) day];
+
+    if (offset == UNKNOWN)
+    {
+      // Take the offset at the start of the local day, and accept it only if
+      // it holds from a day before until a day after, so that no local time
+      // of this day can fall into a gap or an overlap
+      long localStart = day * MS_PER_DAY;
+      int startOffset = zone.getOffset(localStart - zone.getRawOffset());
+      long utcStart = localStart - startOffset;
+
+      if (zone.getOffset(utcStart - MS_PER_DAY) == startOffset &&
+          zone.getOffset(utcStart) == startOffset &&
+          zone.getOffset(utcStart + MS_PER_DAY - 1) == startOffset &&
+          zone.getOffset(utcStart + 2 * MS_PER_DAY - 1) == startOffset)
+      {
+        offset = startOffset / 1000;
+      }
+      else
+      {
+        offset = MIXED;
+      }
+
+      localDayOffset[(int) day] = offset;
+    }
+
+    return offset;
+  }
+
+ /**
+  * Get the local day of the week of a UTC date, as Calendar.SUNDAY (1) to
+  * Calendar.SATURDAY (7).
+  *
+  * @param utcSeconds The UTC date in seconds
+  * @return The day of the week
+  */
+  public int getDayOfWeek(long utcSeconds)
+  {
+    long localDay = floorDiv(utcSeconds + getOffsetForUTC(utcSeconds), SECONDS_PER_DAY);
+
+    // 1970-01-01 was a Thursday
+    return (int) floorMod(localDay + 4, 7) + 1;
+  }
+
+ /**
+  * Get the local minute of the day of a UTC date.
+  *
+  * @param utcSeconds The UTC date in seconds
+  * @return The minute of the day, 0 to 1439
+  */
+  public int getMinuteOfDay(long utcSeconds)
+  {
+    return getSecondOfDay(utcSeconds) / 60;
+  }
+
+ /**
+  * Get the local second of the day of a UTC date.
+  *
+  * @param utcSeconds The UTC date in seconds
+  * @return The second of the day, 0 to 86399
+  */
+  public int getSecondOfDay(long utcSeconds)
+  {
+    return (int) floorMod(utcSeconds + getOffsetForUTC(utcSeconds), SECONDS_PER_DAY);
+  }
+
+ /**
+  * Get the start (local midnight) of the local day of a UTC date. If the
+  * offset changes on or near the day, Long.MIN_VALUE is returned, and the
+  * day start must be found using a calendar.
+  *
+  * @param utcSeconds The UTC date in seconds
+  * @return The UTC date of the start of the day in seconds, or Long.MIN_VALUE
+  */
+  public long getDayStart(long utcSeconds)
+  {
+    long localSeconds = utcSeconds + getOffsetForUTC(utcSeconds);
+    long localMidnight = localSeconds - floorMod(localSeconds, SECONDS_PER_DAY);
+    int offset = getOffsetForLocal(localMidnight);
+
+    return (offset == MIXED) ? Long.MIN_VALUE : localMidnight - offset;
+  }
+
+ /**
+  * Division rounding towards negative infinity.
+  */
+  static long floorDiv(long value, long divisor)
+  {
+    long result = value / divisor;
+    if ((value % divisor) < 0)
+    {
+      result--;
+    }
+    return result;
+  }
+
+ /**
+  * Modulus with the sign of the divisor.
+  */
+  static long floorMod(long value, long divisor)
+  {
+    long result = value % divisor;
+    if (result < 0)
+    {
+      result += divisor;
+    }
+    return result;
+  }
+}
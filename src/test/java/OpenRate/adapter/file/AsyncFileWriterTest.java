@@ -0,0 +1,242 @@
+package OpenRate.adapter.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the asynchronous file writer. Several writers share a pool with
+ * small buffers, so that the buffers are reused many times and the pool has to
+ * grow, and the files are compared with the text which was written.
+ */
+public class AsyncFileWriterTest
+{
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+ /**
+  * Write random text in random pieces to several files at once, and compare
+  * the files with the text.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testWriters() throws IOException
+  {
+    System.out.println("testWriters");
+    Random random = new Random(8642);
+    AsyncFileWriter.Pool pool = new AsyncFileWriter.Pool("AsyncFileWriterTest", 37, 1);
+    File[] files = new File[3];
+
+    try
+    {
+      for (int run = 0; run < 20; run++)
+      {
+        Writer[] writers = new Writer[files.length];
+        StringBuilder[] expected = new StringBuilder[files.length];
+        for (int i = 0; i < files.length; i++)
+        {
+          files[i] = File.createTempFile("AsyncFileWriterTest", ".dat");
+          writers[i] = pool.open(files[i], UTF8, (i == 0));
+          expected[i] = new StringBuilder();
+        }
+
+        for (int piece = 0; piece < 2000; piece++)
+        {
+          int file = random.nextInt(files.length);
+          String text = randomText(random, random.nextInt(piece % 50 == 0 ? 200 : 20));
+          writers[file].write(text);
+          expected[file].append(text);
+
+          if (random.nextInt(100) == 0)
+          {
+            writers[file].flush();
+            Assert.assertEquals(expected[file].toString(), readFile(files[file]));
+          }
+        }
+
+        for (int i = 0; i < files.length; i++)
+        {
+          writers[i].close();
+          Assert.assertEquals(expected[i].toString(), readFile(files[i]));
+          files[i].delete();
+        }
+      }
+    }
+    finally
+    {
+      pool.close();
+      for (File file : files)
+      {
+        if (file != null)
+        {
+          file.delete();
+        }
+      }
+    }
+  }
+
+ /**
+  * Check that a surrogate pair split between two writes is encoded as one
+  * character.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testSplitSurrogate() throws IOException
+  {
+    System.out.println("testSplitSurrogate");
+    AsyncFileWriter.Pool pool = new AsyncFileWriter.Pool("AsyncFileWriterTest", 16, 2);
+    File file = File.createTempFile("AsyncFileWriterTest", ".dat");
+
+    try
+    {
+      try (Writer writer = pool.open(file, UTF8, false))
+      {
+        writer.write("a\ud83d");
+        writer.write("\ude00b");
+      }
+
+      Assert.assertEquals("a\ud83d\ude00b", readFile(file));
+      Assert.assertEquals(6, file.length());
+    }
+    finally
+    {
+      pool.close();
+      file.delete();
+    }
+  }
+
+ /**
+  * Check that the writer cannot be used after it is closed.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testClosed() throws IOException
+  {
+    System.out.println("testClosed");
+    AsyncFileWriter.Pool pool = new AsyncFileWriter.Pool("AsyncFileWriterTest", 16, 2);
+    File file = File.createTempFile("AsyncFileWriterTest", ".dat");
+
+    try
+    {
+      Writer writer = pool.open(file, UTF8, true);
+      writer.write("record");
+      writer.close();
+      writer.close();
+      Assert.assertEquals("record", readFile(file));
+
+      try
+      {
+        writer.write("more");
+        Assert.fail("Expected an exception");
+      }
+      catch (IOException ex)
+      {
+        // expected
+      }
+    }
+    finally
+    {
+      pool.close();
+      file.delete();
+    }
+  }
+
+ /**
+  * Check that the I/O thread stops when there is nothing to write, and starts
+  * again for the next file.
+  *
+  * @throws Exception
+  */
+  @Test
+  public void testIdleStop() throws Exception
+  {
+    System.out.println("testIdleStop");
+    AsyncFileWriter.Pool pool = new AsyncFileWriter.Pool("AsyncFileWriterTestIdle", 16, 2);
+    File file = File.createTempFile("AsyncFileWriterTest", ".dat");
+    ThreadGroup group = new ThreadGroup("AsyncFileWriterTest");
+
+    try
+    {
+      for (int run = 0; run < 2; run++)
+      {
+        final Writer writer = pool.open(file, UTF8, false);
+        final IOException[] error = new IOException[1];
+
+        // write from a thread group of our own, as the output adapters do
+        Thread caller = new Thread(group, new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            try
+            {
+              writer.write("record");
+              writer.close();
+            }
+            catch (IOException ex)
+            {
+              error[0] = ex;
+            }
+          }
+        });
+        caller.start();
+        caller.join();
+
+        Assert.assertNull(error[0]);
+        Assert.assertEquals("record", readFile(file));
+
+        for (int wait = 0; (wait < 50) && (group.activeCount() > 0); wait++)
+        {
+          Thread.sleep(100);
+        }
+        Assert.assertEquals(0, group.activeCount());
+      }
+    }
+    finally
+    {
+      pool.close();
+      file.delete();
+    }
+  }
+
+ /**
+  * Make some text, with some characters which are more than one byte.
+  */
+  private static String randomText(Random random, int length)
+  {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++)
+    {
+      switch (random.nextInt(20))
+      {
+        case 0:
+          text.append('\u00e9');
+          break;
+        case 1:
+          text.append('\u20ac');
+          break;
+        case 2:
+          text.append('\n');
+          break;
+        default:
+          text.append((char) ('a' + random.nextInt(26)));
+      }
+    }
+    return text.toString();
+  }
+
+ /**
+  * Read the file as UTF-8.
+  */
+  private static String readFile(File file) throws IOException
+  {
+    return new String(Files.readAllBytes(file.toPath()), UTF8);
+  }
+}
@@ -0,0 +1,163 @@
+package OpenRate.adapter.file;
+
+import OpenRate.exception.ProcessingException;
+import OpenRate.record.FlatRecord;
+import OpenRate.record.IRecord;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the binary stream reader. Files of length prefixed records are
+ * read through small buffers, so that records cross the buffer boundaries and
+ * are longer than the buffer.
+ */
+public class BinaryStreamReaderTest
+{
+ /**
+  * The parser for the test files: a one byte length and then the record.
+  */
+  private static class LengthPrefixParser implements BinaryStreamReader.RecordParser
+  {
+    int calls = 0;
+
+    @Override
+    public void parseRecords(ByteBuffer buffer, boolean endOfStream, ArrayList<IRecord> records)
+    {
+      calls++;
+      while (buffer.remaining() > 0)
+      {
+        int length = buffer.get(buffer.position()) & 0xFF;
+        if (buffer.remaining() < length + 1)
+        {
+          return;
+        }
+
+        buffer.get();
+        byte[] data = new byte[length];
+        buffer.get(data);
+        records.add(new FlatRecord(new String(data), 0));
+      }
+    }
+  }
+
+ /**
+  * Read random files through buffers of different sizes and check that all of
+  * the records come out in order.
+  *
+  * @throws IOException
+  * @throws ProcessingException
+  */
+  @Test
+  public void testRecords() throws IOException, ProcessingException
+  {
+    System.out.println("testRecords");
+    Random random = new Random(97531);
+
+    for (int run = 0; run < 100; run++)
+    {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      List<String> expected = new ArrayList<>();
+      int records = random.nextInt(300);
+      for (int i = 0; i < records; i++)
+      {
+        int length = (i % 13 == 0) ? random.nextInt(256) : random.nextInt(10);
+        StringBuilder data = new StringBuilder();
+        for (int c = 0; c < length; c++)
+        {
+          data.append((char) ('a' + random.nextInt(26)));
+        }
+        expected.add(data.toString());
+        content.write(length);
+        content.write(data.toString().getBytes(), 0, length);
+      }
+
+      int bufferSize = 1 + random.nextInt(64);
+      List<String> result = new ArrayList<>();
+      LengthPrefixParser parser = new LengthPrefixParser();
+      try (BinaryStreamReader reader = getReader(content.toByteArray(), bufferSize, parser))
+      {
+        while (reader.hasMoreRecords())
+        {
+          result.add(((FlatRecord) reader.nextRecord()).getData());
+        }
+
+        Assert.assertFalse(reader.hasMoreRecords());
+        Assert.assertEquals(0, reader.getUnparsedByteCount());
+        Assert.assertEquals(content.size(), reader.getBytesRead());
+      }
+
+      Assert.assertEquals("buffer " + bufferSize, expected, result);
+    }
+  }
+
+ /**
+  * Check that the records are read a buffer at a time, and not all at once.
+  *
+  * @throws IOException
+  * @throws ProcessingException
+  */
+  @Test
+  public void testBounded() throws IOException, ProcessingException
+  {
+    System.out.println("testBounded");
+    byte[] content = new byte[10000];
+    for (int i = 0; i < content.length; i += 10)
+    {
+      content[i] = 9;
+    }
+
+    LengthPrefixParser parser = new LengthPrefixParser();
+    try (BinaryStreamReader reader = getReader(content, 100, parser))
+    {
+      Assert.assertTrue(reader.hasMoreRecords());
+      reader.nextRecord();
+      Assert.assertTrue(reader.getBytesRead() <= 100);
+
+      int count = 1;
+      while (reader.hasMoreRecords())
+      {
+        reader.nextRecord();
+        count++;
+      }
+      Assert.assertEquals(1000, count);
+      Assert.assertTrue(parser.calls >= 100);
+    }
+  }
+
+ /**
+  * Check that an incomplete record at the end of the stream is reported.
+  *
+  * @throws IOException
+  * @throws ProcessingException
+  */
+  @Test
+  public void testIncompleteRecord() throws IOException, ProcessingException
+  {
+    System.out.println("testIncompleteRecord");
+    byte[] content = {2, 'a', 'b', 5, 'c', 'd'};
+
+    try (BinaryStreamReader reader = getReader(content, 4, new LengthPrefixParser()))
+    {
+      Assert.assertTrue(reader.hasMoreRecords());
+      Assert.assertEquals("ab", ((FlatRecord) reader.nextRecord()).getData());
+      Assert.assertFalse(reader.hasMoreRecords());
+      Assert.assertEquals(3, reader.getUnparsedByteCount());
+    }
+  }
+
+ /**
+  * Create a reader on the content.
+  */
+  private static BinaryStreamReader getReader(byte[] content, int bufferSize, BinaryStreamReader.RecordParser parser)
+  {
+    return new BinaryStreamReader(Channels.newChannel(new ByteArrayInputStream(content)), bufferSize, parser);
+  }
+}
@@ -0,0 +1,227 @@
+package OpenRate.adapter.file;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the gzip file streams, which inflate and deflate on their own
+ * threads. Small blocks are used so that the data crosses many blocks, and the
+ * files are checked against the JDK gzip streams.
+ */
+public class GzipFileStreamTest
+{
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+ /**
+  * Write random data in random pieces with the output stream, and read it
+  * back with GZIPInputStream and the input stream.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testRoundTrip() throws IOException
+  {
+    System.out.println("testRoundTrip");
+    Random random = new Random(2468);
+    File file = File.createTempFile("GzipFileStreamTest", ".gz");
+
+    try
+    {
+      for (int run = 0; run < 20; run++)
+      {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (OutputStream out = new GzipFileOutputStream(file, random.nextInt(10), 1 + random.nextInt(100), 1 + random.nextInt(4), "GzipFileStreamTest"))
+        {
+          int pieces = random.nextInt(500);
+          for (int i = 0; i < pieces; i++)
+          {
+            byte[] piece = new byte[random.nextInt(i % 20 == 0 ? 1000 : 50)];
+            for (int b = 0; b < piece.length; b++)
+            {
+              // compressible, but not too much
+              piece[b] = (byte) ('a' + random.nextInt(4));
+            }
+
+            if (piece.length == 1)
+            {
+              out.write(piece[0]);
+            }
+            else
+            {
+              out.write(piece);
+            }
+            expected.write(piece);
+
+            if (random.nextInt(50) == 0)
+            {
+              out.flush();
+            }
+          }
+        }
+
+        Assert.assertArrayEquals(expected.toByteArray(), readAll(new GZIPInputStream(new FileInputStream(file))));
+        Assert.assertArrayEquals(expected.toByteArray(), readAll(new GzipFileInputStream(file, 1 + random.nextInt(100), 1 + random.nextInt(4), "GzipFileStreamTest")));
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+ /**
+  * Read a file made of two gzip members, line by line as the adapters do,
+  * using ready() to find the end of the file.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testConcatenatedMembers() throws IOException
+  {
+    System.out.println("testConcatenatedMembers");
+    File file = File.createTempFile("GzipFileStreamTest", ".gz");
+
+    try
+    {
+      List<String> expected = new ArrayList<>();
+      try (FileOutputStream out = new FileOutputStream(file))
+      {
+        for (int member = 0; member < 2; member++)
+        {
+          GZIPOutputStream gzip = new GZIPOutputStream(out);
+          for (int i = 0; i < 1000; i++)
+          {
+            String line = "member " + member + " line " + i + " caf\u00e9";
+            expected.add(line);
+            gzip.write((line + "\n").getBytes(UTF8));
+          }
+          gzip.finish();
+        }
+      }
+
+      List<String> result = new ArrayList<>();
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GzipFileInputStream(file, 64, 2, "GzipFileStreamTest"), UTF8), 256))
+      {
+        while (reader.ready())
+        {
+          result.add(reader.readLine());
+        }
+      }
+
+      Assert.assertEquals(expected, result);
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+ /**
+  * Check that a file which is not gzip compressed is reported when it is
+  * read, and that closing a stream part way through stops its thread.
+  *
+  * @throws Exception
+  */
+  @Test
+  public void testErrors() throws Exception
+  {
+    System.out.println("testErrors");
+    File file = File.createTempFile("GzipFileStreamTest", ".gz");
+
+    try
+    {
+      try (FileOutputStream out = new FileOutputStream(file))
+      {
+        out.write("not compressed".getBytes(UTF8));
+      }
+
+      try (InputStream in = new GzipFileInputStream(file, "GzipFileStreamTestError"))
+      {
+        in.read();
+        Assert.fail("Expected an exception");
+      }
+      catch (IOException ex)
+      {
+        // expected
+      }
+
+      // a file larger than the blocks, which we stop reading part way
+      try (OutputStream out = new GzipFileOutputStream(file, 1, "GzipFileStreamTest"))
+      {
+        out.write(new byte[1000000]);
+      }
+
+      InputStream in = new GzipFileInputStream(file, 1000, 2, "GzipFileStreamTestClose");
+      Assert.assertEquals(0, in.read());
+      in.close();
+
+      try
+      {
+        in.read();
+        Assert.fail("Expected an exception");
+      }
+      catch (IOException ex)
+      {
+        // expected
+      }
+
+      for (int wait = 0; (wait < 50) && isThreadRunning("GzipFileStreamTestClose"); wait++)
+      {
+        Thread.sleep(100);
+      }
+      Assert.assertFalse(isThreadRunning("GzipFileStreamTestClose"));
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+ /**
+  * Read the whole of a stream, and close it.
+  */
+  private static byte[] readAll(InputStream in) throws IOException
+  {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    try (InputStream input = in)
+    {
+      byte[] buffer = new byte[333];
+      int count;
+      while ((count = input.read(buffer)) >= 0)
+      {
+        result.write(buffer, 0, count);
+      }
+    }
+    return result.toByteArray();
+  }
+
+ /**
+  * Tell us if a thread with the name is running.
+  */
+  private static boolean isThreadRunning(String name)
+  {
+    for (Thread thread : Thread.getAllStackTraces().keySet())
+    {
+      if (thread.getName().equals(name) && thread.isAlive())
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,129 @@
+package OpenRate.adapter.file;
+
+import OpenRate.adapter.AbstractInputAdapter;
+import OpenRate.exception.ProcessingException;
+import OpenRate.logging.DefaultLogger;
+import OpenRate.record.HeaderRecord;
+import OpenRate.record.IRecord;
+import OpenRate.record.TrailerRecord;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import org.apache.oro.io.GlobFilenameFilter;
+import org.apache.oro.text.GlobCompiler;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the event driven input file discovery.
+ */
+public class InputFileWatcherTest
+{
+  // Lists the directory in name order
+  private static final InputFileWatcher.DirectoryLister SORTED_LISTER = new InputFileWatcher.DirectoryLister()
+  {
+    @Override
+    public String[] list(File dir, FilenameFilter filter)
+    {
+      String[] fileNames = dir.list(filter);
+      Arrays.sort(fileNames);
+      return fileNames;
+    }
+  };
+
+ /**
+  * Test that files already there are found by the first scan, that files
+  * which arrive later are queued in arrival order without a scan, and that
+  * files which do not match the filter are ignored.
+  *
+  * @throws Exception
+  */
+  @Test
+  public void testWatchAndReconcile() throws Exception
+  {
+    System.out.println("testWatchAndReconcile");
+    File dir = Files.createTempDirectory("InputFileWatcherTest").toFile();
+    FilenameFilter filter = new GlobFilenameFilter("in*.dat", GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK);
+
+    createFile(dir, "in_b.dat");
+    createFile(dir, "in_a.dat");
+
+    InputFileWatcher instance = new InputFileWatcher(dir, filter, new StubInputAdapter(), new DefaultLogger(), 3600000);
+    instance.start("FileWatch.Test");
+
+    try
+    {
+      // The initial scan uses the ordering of the lister
+      Assert.assertArrayEquals(new String[]{"in_a.dat", "in_b.dat"}, instance.getPendingFiles(SORTED_LISTER));
+
+      // Files arriving later are queued in arrival order
+      createFile(dir, "other.txt");
+      createFile(dir, "in_d.dat");
+      createFile(dir, "in_c.dat");
+      waitForPending(instance, 4);
+      Assert.assertArrayEquals(new String[]{"in_a.dat", "in_b.dat", "in_d.dat", "in_c.dat"}, instance.getPendingFiles(SORTED_LISTER));
+
+      // Files taken for processing leave the queue
+      instance.remove("in_a.dat");
+      instance.remove("in_d.dat");
+      Assert.assertArrayEquals(new String[]{"in_b.dat", "in_c.dat"}, instance.getPendingFiles(SORTED_LISTER));
+    }
+    finally
+    {
+      instance.close();
+      for (File file : dir.listFiles())
+      {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+ /**
+  * Wait for the watcher to queue the expected number of files.
+  */
+  private static void waitForPending(InputFileWatcher instance, int expected) throws InterruptedException
+  {
+    for (int i = 0; (i < 200) && (instance.getPendingCount() < expected); i++)
+    {
+      Thread.sleep(50);
+    }
+
+    Assert.assertEquals(expected, instance.getPendingCount());
+  }
+
+ /**
+  * Create an empty file.
+  */
+  private static void createFile(File dir, String fileName) throws IOException
+  {
+    Assert.assertTrue(new File(dir, fileName).createNewFile());
+  }
+
+ /**
+  * Input adapter with no pipeline.
+  */
+  private static class StubInputAdapter extends AbstractInputAdapter
+  {
+    @Override
+    protected Collection<IRecord> loadBatch() throws ProcessingException
+    {
+      return null;
+    }
+
+    @Override
+    public HeaderRecord procHeader(HeaderRecord r) throws ProcessingException
+    {
+      return r;
+    }
+
+    @Override
+    public TrailerRecord procTrailer(TrailerRecord r) throws ProcessingException
+    {
+      return r;
+    }
+  }
+}
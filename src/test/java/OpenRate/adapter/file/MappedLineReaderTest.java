@@ -0,0 +1,152 @@
+package OpenRate.adapter.file;
+
+import OpenRate.record.FlatRecord;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the memory mapped line reader. The lines are checked against
+ * BufferedReader.readLine(), using a small window so that lines cross the
+ * window boundaries and are longer than the window.
+ */
+public class MappedLineReaderTest
+{
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+ /**
+  * Read random files with all the line terminators and compare the lines
+  * with BufferedReader.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testSameAsBufferedReader() throws IOException
+  {
+    System.out.println("testSameAsBufferedReader");
+    Random random = new Random(8642);
+    String[] terminators = {"\n", "\r\n", "\r"};
+    File file = File.createTempFile("MappedLineReaderTest", ".dat");
+
+    try
+    {
+      for (int run = 0; run < 50; run++)
+      {
+        StringBuilder content = new StringBuilder();
+        int lines = random.nextInt(200);
+        for (int i = 0; i < lines; i++)
+        {
+          int length = (i % 17 == 0) ? random.nextInt(100) : random.nextInt(20);
+          for (int c = 0; c < length; c++)
+          {
+            content.append((c % 11 == 0) ? '\u00e9' : (char) ('a' + random.nextInt(26)));
+          }
+          if ((i < lines - 1) || random.nextBoolean())
+          {
+            content.append(terminators[random.nextInt(terminators.length)]);
+          }
+        }
+        writeFile(file, content.toString());
+
+        List<String> expected = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8)))
+        {
+          String line;
+          while ((line = reader.readLine()) != null)
+          {
+            expected.add(line);
+          }
+        }
+
+        List<String> result = new ArrayList<>();
+        try (MappedLineReader instance = new MappedLineReader(file, 16))
+        {
+          while (instance.hasMoreData())
+          {
+            result.add(new FlatRecord(instance.readLine(), UTF8, 0).getData());
+          }
+          Assert.assertNull(instance.readLine());
+        }
+
+        Assert.assertEquals(expected, result);
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+ /**
+  * Read a range of the file, starting at the position of a line.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testRange() throws IOException
+  {
+    System.out.println("testRange");
+    File file = File.createTempFile("MappedLineReaderTest", ".dat");
+
+    try
+    {
+      writeFile(file, "first\r\nsecond\nthird\n");
+
+      long position;
+      try (MappedLineReader instance = new MappedLineReader(file, MappedLineReader.DEFAULT_WINDOW_SIZE))
+      {
+        Assert.assertEquals("first", new String(instance.readLine(), UTF8));
+        position = instance.getPosition();
+        Assert.assertEquals(7, position);
+      }
+
+      try (MappedLineReader instance = new MappedLineReader(file, position, 14, MappedLineReader.DEFAULT_WINDOW_SIZE))
+      {
+        Assert.assertEquals("second", new String(instance.readLine(), UTF8));
+        Assert.assertFalse(instance.hasMoreData());
+        Assert.assertNull(instance.readLine());
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+ /**
+  * Test that a record made from bytes is decoded only when asked for.
+  */
+  @Test
+  public void testLazyRecord()
+  {
+    System.out.println("testLazyRecord");
+    FlatRecord instance = new FlatRecord("caf\u00e9".getBytes(UTF8), UTF8, 3);
+
+    Assert.assertEquals(5, instance.getDataLength());
+    Assert.assertNotNull(instance.getRawData());
+    Assert.assertEquals("caf\u00e9", instance.getData());
+    Assert.assertNull(instance.getRawData());
+    Assert.assertEquals(4, instance.getDataLength());
+    Assert.assertEquals(3, instance.recordNumber);
+  }
+
+ /**
+  * Write the content to the file in UTF-8.
+  */
+  private static void writeFile(File file, String content) throws IOException
+  {
+    try (FileOutputStream out = new FileOutputStream(file))
+    {
+      out.write(content.getBytes(UTF8));
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package OpenRate.adapter.file;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the split file reader. The records read by several threads are
+ * checked against BufferedReader.readLine(), using small ranges so that the
+ * files are divided many times.
+ */
+public class SplitFileReaderTest
+{
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+ /**
+  * Read random files with all the line terminators in different numbers of
+  * ranges, and compare the records with BufferedReader.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testSameAsBufferedReader() throws IOException
+  {
+    System.out.println("testSameAsBufferedReader");
+    Random random = new Random(4321);
+    String[] terminators = {"\n", "\r\n", "\r"};
+    File file = File.createTempFile("SplitFileReaderTest", ".dat");
+
+    try
+    {
+      for (int run = 0; run < 50; run++)
+      {
+        StringBuilder content = new StringBuilder();
+        int lines = random.nextInt(3000);
+        for (int i = 0; i < lines; i++)
+        {
+          int length = (i % 17 == 0) ? random.nextInt(100) : random.nextInt(20);
+          for (int c = 0; c < length; c++)
+          {
+            content.append((c % 11 == 0) ? '\u00e9' : (char) ('a' + random.nextInt(26)));
+          }
+          if ((i < lines - 1) || random.nextBoolean())
+          {
+            content.append(terminators[random.nextInt(terminators.length)]);
+          }
+        }
+        writeFile(file, content.toString());
+
+        List<String> expected = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8)))
+        {
+          String line;
+          while ((line = reader.readLine()) != null)
+          {
+            if (line.length() > 0)
+            {
+              expected.add(line);
+            }
+          }
+        }
+
+        int ranges = 1 + random.nextInt(8);
+        List<String> result = new ArrayList<>();
+        try (SplitFileReader instance = new SplitFileReader(file, ranges, 1 + random.nextInt(200), 64, UTF8, "SplitFileReaderTest"))
+        {
+          Assert.assertTrue(instance.getRangeCount() <= ranges);
+          while (instance.hasMoreData())
+          {
+            result.add(instance.readRecord().getData());
+          }
+          Assert.assertFalse(instance.hasMoreData());
+        }
+
+        Assert.assertEquals("ranges " + ranges, expected, result);
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+ /**
+  * Read a file in several ranges, and check the records come in file order.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testRangeOrder() throws IOException
+  {
+    System.out.println("testRangeOrder");
+    File file = File.createTempFile("SplitFileReaderTest", ".dat");
+
+    try
+    {
+      StringBuilder content = new StringBuilder();
+      for (int i = 0; i < 5000; i++)
+      {
+        content.append("record ").append(i).append('\n');
+      }
+      writeFile(file, content.toString());
+
+      try (SplitFileReader instance = new SplitFileReader(file, 4, 100, 1024, UTF8, "SplitFileReaderTest"))
+      {
+        Assert.assertEquals(4, instance.getRangeCount());
+        for (int i = 0; i < 5000; i++)
+        {
+          Assert.assertTrue(instance.hasMoreData());
+          Assert.assertEquals("record " + i, instance.readRecord().getData());
+        }
+        Assert.assertFalse(instance.hasMoreData());
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+ /**
+  * Test finding the line boundaries, including between a CR and an LF.
+  *
+  * @throws IOException
+  */
+  @Test
+  public void testFindLineStart() throws IOException
+  {
+    System.out.println("testFindLineStart");
+    File file = File.createTempFile("SplitFileReaderTest", ".dat");
+
+    try
+    {
+      writeFile(file, "ab\r\ncd\ref\ngh");
+
+      try (RandomAccessFile instance = new RandomAccessFile(file, "r"))
+      {
+        Assert.assertEquals(0, SplitFileReader.findLineStart(instance, 0));
+        Assert.assertEquals(4, SplitFileReader.findLineStart(instance, 1));
+        Assert.assertEquals(4, SplitFileReader.findLineStart(instance, 3));
+        Assert.assertEquals(4, SplitFileReader.findLineStart(instance, 4));
+        Assert.assertEquals(7, SplitFileReader.findLineStart(instance, 5));
+        Assert.assertEquals(7, SplitFileReader.findLineStart(instance, 7));
+        Assert.assertEquals(10, SplitFileReader.findLineStart(instance, 8));
+        Assert.assertEquals(12, SplitFileReader.findLineStart(instance, 11));
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+ /**
+  * Write the content to the file in UTF-8.
+  */
+  private static void writeFile(File file, String content) throws IOException
+  {
+    try (FileOutputStream out = new FileOutputStream(file))
+    {
+      out.write(content.getBytes(UTF8));
+    }
+  }
+}
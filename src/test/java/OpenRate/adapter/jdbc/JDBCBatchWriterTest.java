@@ -0,0 +1,266 @@
+package OpenRate.adapter.jdbc;
+
+import OpenRate.record.DBRecord;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit test for the pool of batch writers. Records are written with several
+ * writers and several rows per insert, and the table is checked afterwards.
+ */
+public class JDBCBatchWriterTest
+{
+  private static final String URL = "jdbc:hsqldb:mem:JDBCBatchWriterTest";
+
+  private static final String INSERT = "INSERT INTO TEST_OUTPUT (ID, NAME, AMOUNT) VALUES (?, ?, ?)";
+
+  private static Connection setupCon;
+
+  private final List<Connection> connections = new ArrayList<>();
+
+ /**
+  * Create the test table.
+  *
+  * @throws SQLException
+  */
+  @BeforeClass
+  public static void setUpClass() throws SQLException
+  {
+    setupCon = DriverManager.getConnection(URL, "SA", "");
+    try (Statement stmt = setupCon.createStatement())
+    {
+      stmt.execute("CREATE TABLE TEST_OUTPUT (ID INTEGER PRIMARY KEY, NAME VARCHAR(20), AMOUNT BIGINT)");
+    }
+  }
+
+ /**
+  * Drop the test table.
+  *
+  * @throws SQLException
+  */
+  @AfterClass
+  public static void tearDownClass() throws SQLException
+  {
+    try (Statement stmt = setupCon.createStatement())
+    {
+      stmt.execute("DROP TABLE TEST_OUTPUT");
+    }
+    setupCon.close();
+  }
+
+ /**
+  * Empty the table and close the connections of the writers.
+  *
+  * @throws SQLException
+  */
+  @After
+  public void tearDown() throws SQLException
+  {
+    for (Connection con : connections)
+    {
+      con.close();
+    }
+    connections.clear();
+
+    try (Statement stmt = setupCon.createStatement())
+    {
+      stmt.execute("DELETE FROM TEST_OUTPUT");
+    }
+  }
+
+ /**
+  * Write records with different numbers of writers and rows per insert, and
+  * check that each record is in the table once.
+  *
+  * @throws SQLException
+  */
+  @Test
+  public void testWrite() throws SQLException
+  {
+    System.out.println("testWrite");
+    int[][] settings = {{1, 1}, {3, 1}, {1, 7}, {4, 10}};
+    int records = 10007;
+
+    for (int[] setting : settings)
+    {
+      JDBCBatchWriter instance = new JDBCBatchWriter(openConnections(setting[0]), INSERT, setting[1], 100, 5000, 1000, "JDBCBatchWriterTest");
+      for (int i = 0; i < records; i++)
+      {
+        instance.write(record(i));
+      }
+      instance.close();
+
+      try (Statement stmt = setupCon.createStatement();
+           ResultSet rs = stmt.executeQuery("SELECT COUNT(*), COUNT(DISTINCT ID), SUM(AMOUNT), MIN(NAME) FROM TEST_OUTPUT"))
+      {
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals(records, rs.getInt(1));
+        Assert.assertEquals(records, rs.getInt(2));
+        Assert.assertEquals(10L * records * (records - 1) / 2, rs.getLong(3));
+        Assert.assertEquals("name 0", rs.getString(4));
+      }
+
+      tearDown();
+    }
+  }
+
+ /**
+  * Check that the rows per commit grow up to the maximum when the commits
+  * are fast.
+  *
+  * @throws SQLException
+  */
+  @Test
+  public void testAdaptiveCommit() throws SQLException
+  {
+    System.out.println("testAdaptiveCommit");
+    JDBCBatchWriter instance = new JDBCBatchWriter(openConnections(1), INSERT, 1, 10, 640, 60000, "JDBCBatchWriterTest");
+    Assert.assertArrayEquals(new int[]{10}, instance.getCommitRows());
+
+    for (int i = 0; i < 5000; i++)
+    {
+      instance.write(record(i));
+    }
+    instance.close();
+
+    Assert.assertArrayEquals(new int[]{640}, instance.getCommitRows());
+  }
+
+ /**
+  * Check that a failed insert is reported, and that the work of the writer
+  * which was not committed is rolled back.
+  *
+  * @throws SQLException
+  */
+  @Test
+  public void testFailure() throws SQLException
+  {
+    System.out.println("testFailure");
+    // nothing is committed before the end, so the duplicate key is always
+    // found in the last chunk and all the rows are rolled back
+    JDBCBatchWriter instance = new JDBCBatchWriter(openConnections(1), INSERT, 5, 100000, 100000, 60000, "JDBCBatchWriterTestFail");
+
+    try
+    {
+      for (int i = 0; i < 3000; i++)
+      {
+        instance.write(record(i));
+      }
+      instance.write(record(0));
+      instance.close();
+      Assert.fail("Expected an exception");
+    }
+    catch (SQLException ex)
+    {
+      // expected
+    }
+
+    Assert.assertFalse(writersAlive("JDBCBatchWriterTestFail"));
+    Assert.assertEquals(0, countRows());
+  }
+
+ /**
+  * Test that abort stops the writers and rolls back what they wrote.
+  *
+  * @throws SQLException
+  */
+  @Test
+  public void testAbort() throws SQLException
+  {
+    System.out.println("testAbort");
+    JDBCBatchWriter instance = new JDBCBatchWriter(openConnections(2), INSERT, 5, 100000, 100000, 60000, "JDBCBatchWriterTestAbort");
+
+    for (int i = 0; i < 3000; i++)
+    {
+      instance.write(record(i));
+    }
+    instance.abort();
+
+    Assert.assertFalse(writersAlive("JDBCBatchWriterTestAbort"));
+    Assert.assertEquals(0, countRows());
+  }
+
+ /**
+  * Test rewriting the insert statement for several rows.
+  */
+  @Test
+  public void testGetMultiRowInsert()
+  {
+    System.out.println("testGetMultiRowInsert");
+    Assert.assertEquals("INSERT INTO T (A, B) VALUES (?, ?),(?, ?),(?, ?)",
+            JDBCBatchWriter.getMultiRowInsert("INSERT INTO T (A, B) VALUES (?, ?)", 3));
+    Assert.assertEquals("insert into T values(?, 'a)', f(?)),(?, 'a)', f(?))",
+            JDBCBatchWriter.getMultiRowInsert(" insert into T values(?, 'a)', f(?)); ", 2));
+    Assert.assertEquals("INSERT INTO T VALUES (?)",
+            JDBCBatchWriter.getMultiRowInsert("INSERT INTO T VALUES (?)", 1));
+    Assert.assertNull(JDBCBatchWriter.getMultiRowInsert("INSERT INTO T (A) SELECT A FROM S WHERE B IN (?)", 2));
+    Assert.assertNull(JDBCBatchWriter.getMultiRowInsert("INSERT INTO T (A) VALUES (?) RETURNING A", 2));
+    Assert.assertNull(JDBCBatchWriter.getMultiRowInsert("INSERT INTO T (A) VALUES (?", 2));
+  }
+
+ /**
+  * Open connections for the writers.
+  */
+  private List<Connection> openConnections(int count) throws SQLException
+  {
+    List<Connection> result = new ArrayList<>();
+    for (int i = 0; i < count; i++)
+    {
+      Connection con = DriverManager.getConnection(URL, "SA", "");
+      connections.add(con);
+      result.add(con);
+    }
+    return result;
+  }
+
+ /**
+  * Make a record with its output columns.
+  */
+  private static DBRecord record(int id)
+  {
+    DBRecord result = new DBRecord();
+    result.setOutputColumnCount(3);
+    result.setOutputColumnInt(0, id);
+    result.setOutputColumnString(1, "name " + id);
+    result.setOutputColumnLong(2, 10L * id);
+    return result;
+  }
+
+ /**
+  * Count the rows committed to the test table.
+  */
+  private int countRows() throws SQLException
+  {
+    try (Statement stmt = setupCon.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM TEST_OUTPUT"))
+    {
+      Assert.assertTrue(rs.next());
+      return rs.getInt(1);
+    }
+  }
+
+ /**
+  * See if any writer thread with the given name is still running.
+  */
+  private static boolean writersAlive(String threadName)
+  {
+    for (Thread thread : Thread.getAllStackTraces().keySet())
+    {
+      if (thread.isAlive() && thread.getName().startsWith(threadName + "-"))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
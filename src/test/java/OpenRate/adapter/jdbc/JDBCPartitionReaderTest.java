@@ -0,0 +1,245 @@
+package OpenRate.adapter.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit test for the partition reader. The rows of a table are read in modulo
+ * and range partitions, each on its own connection, and compared with the rows
+ * of a plain select.
+ */
+public class JDBCPartitionReaderTest
+{
+  private static final String URL = "jdbc:hsqldb:mem:JDBCPartitionReaderTest";
+
+  // The number of rows in the test table
+  private static final int ROWS = 12345;
+
+  private static Connection setupCon;
+
+  private final List<Connection> connections = new ArrayList<>();
+
+ /**
+  * Create the test table.
+  *
+  * @throws SQLException
+  */
+  @BeforeClass
+  public static void setUpClass() throws SQLException
+  {
+    setupCon = DriverManager.getConnection(URL, "SA", "");
+    try (Statement stmt = setupCon.createStatement())
+    {
+      stmt.execute("CREATE TABLE TEST_INPUT (ID INTEGER, NAME VARCHAR(20))");
+    }
+
+    try (PreparedStatement stmt = setupCon.prepareStatement("INSERT INTO TEST_INPUT VALUES (?, ?)"))
+    {
+      for (int i = 0; i < ROWS; i++)
+      {
+        stmt.setInt(1, i);
+        stmt.setString(2, "name " + i);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+ /**
+  * Drop the test table.
+  *
+  * @throws SQLException
+  */
+  @AfterClass
+  public static void tearDownClass() throws SQLException
+  {
+    try (Statement stmt = setupCon.createStatement())
+    {
+      stmt.execute("DROP TABLE TEST_INPUT");
+    }
+    setupCon.close();
+  }
+
+ /**
+  * Read the table in modulo partitions and compare the rows with a plain
+  * select.
+  *
+  * @throws SQLException
+  */
+  @Test
+  public void testModulo() throws SQLException
+  {
+    System.out.println("testModulo");
+    List<String> expected = readAll();
+
+    for (int count = 1; count <= 4; count++)
+    {
+      List<PreparedStatement> statements = new ArrayList<>();
+      for (int i = 0; i < count; i++)
+      {
+        PreparedStatement stmt = prepare("SELECT ID, NAME FROM TEST_INPUT WHERE MOD(ID, ?) = ?");
+        stmt.setLong(1, count);
+        stmt.setLong(2, i);
+        statements.add(stmt);
+      }
+
+      Assert.assertEquals("partitions " + count, expected, read(statements));
+      closeAll();
+    }
+  }
+
+ /**
+  * Read the table in range partitions and compare the rows with a plain
+  * select.
+  *
+  * @throws SQLException
+  */
+  @Test
+  public void testRange() throws SQLException
+  {
+    System.out.println("testRange");
+    List<String> expected = readAll();
+
+    long[] bounds = JDBCPartitionReader.splitRange(0, ROWS - 1, 3);
+    List<PreparedStatement> statements = new ArrayList<>();
+    for (int i = 0; i < 3; i++)
+    {
+      PreparedStatement stmt = prepare("SELECT ID, NAME FROM TEST_INPUT WHERE ID >= ? AND ID < ?");
+      stmt.setLong(1, bounds[i]);
+      stmt.setLong(2, bounds[i + 1]);
+      statements.add(stmt);
+    }
+
+    Assert.assertEquals(expected, read(statements));
+    closeAll();
+  }
+
+ /**
+  * Test dividing a key range.
+  */
+  @Test
+  public void testSplitRange()
+  {
+    System.out.println("testSplitRange");
+    Assert.assertArrayEquals(new long[]{0, 4, 7, 10}, JDBCPartitionReader.splitRange(0, 9, 3));
+    Assert.assertArrayEquals(new long[]{-5, -4, -3, -3}, JDBCPartitionReader.splitRange(-5, -4, 3));
+    Assert.assertArrayEquals(new long[]{7, 8}, JDBCPartitionReader.splitRange(7, 7, 1));
+  }
+
+ /**
+  * Check that a partition which fails is reported, and that closing the reader,
+  * after a failure or part way through, stops its threads before it returns.
+  * The other partition is then waiting on the full queue.
+  *
+  * @throws Exception
+  */
+  @Test
+  public void testErrors() throws Exception
+  {
+    System.out.println("testErrors");
+    List<PreparedStatement> statements = new ArrayList<>();
+    statements.add(prepare("SELECT ID FROM TEST_INPUT"));
+    statements.add(prepare("SELECT 1 / (ID - 5000) FROM TEST_INPUT"));
+
+    JDBCPartitionReader instance = new JDBCPartitionReader(statements, "JDBCPartitionReaderTest");
+    try
+    {
+      while (instance.hasMoreData())
+      {
+        instance.readRow();
+      }
+      Assert.fail("Expected an exception");
+    }
+    catch (SQLException ex)
+    {
+      // expected
+    }
+    instance.close();
+    Assert.assertFalse(instance.threadsAlive());
+    closeAll();
+
+    // stop reading part way through
+    statements.clear();
+    statements.add(prepare("SELECT ID FROM TEST_INPUT"));
+    statements.add(prepare("SELECT ID FROM TEST_INPUT"));
+    instance = new JDBCPartitionReader(statements, "JDBCPartitionReaderTestClose");
+    Assert.assertTrue(instance.hasMoreData());
+    instance.readRow();
+    instance.close();
+    Assert.assertFalse(instance.threadsAlive());
+    closeAll();
+  }
+
+ /**
+  * Prepare a statement on a connection of its own.
+  */
+  private PreparedStatement prepare(String query) throws SQLException
+  {
+    Connection con = DriverManager.getConnection(URL, "SA", "");
+    connections.add(con);
+    PreparedStatement stmt = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    stmt.setFetchSize(100);
+    return stmt;
+  }
+
+ /**
+  * Close the connections of the statements.
+  */
+  private void closeAll() throws SQLException
+  {
+    for (Connection con : connections)
+    {
+      con.close();
+    }
+    connections.clear();
+  }
+
+ /**
+  * Read the rows of the partitions, sorted.
+  */
+  private static List<String> read(List<PreparedStatement> statements) throws SQLException
+  {
+    List<String> result = new ArrayList<>();
+    try (JDBCPartitionReader instance = new JDBCPartitionReader(statements, "JDBCPartitionReaderTest"))
+    {
+      while (instance.hasMoreData())
+      {
+        String[] row = instance.readRow();
+        result.add(row[0] + "," + row[1]);
+      }
+      Assert.assertFalse(instance.hasMoreData());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+ /**
+  * Read the rows of the table with a plain select, sorted.
+  */
+  private static List<String> readAll() throws SQLException
+  {
+    List<String> result = new ArrayList<>();
+    try (Statement stmt = setupCon.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, NAME FROM TEST_INPUT"))
+    {
+      while (rs.next())
+      {
+        result.add(rs.getString(1) + "," + rs.getString(2));
+      }
+    }
+    Assert.assertEquals(ROWS, result.size());
+    Collections.sort(result);
+    return result;
+  }
+}
@@ -0,0 +1,277 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.buffer;
+
+import OpenRate.record.HeaderRecord;
+import OpenRate.record.IRecord;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the ring buffer implementations.
+ */
+public class RingQueueBufferTest {
+
+  /**
+   * Create a batch of records, numbered using the transaction number.
+   */
+  private static ArrayList<IRecord> createBatch(int start, int count) {
+    ArrayList<IRecord> batch = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      HeaderRecord tmpRecord = new HeaderRecord();
+      tmpRecord.setTransactionNumber(start + i);
+      batch.add(tmpRecord);
+    }
+    return batch;
+  }
+
+  /**
+   * Test that the capacity is rounded up to a power of two.
+   */
+  @Test
+  public void testCapacity() {
+    System.out.println("testCapacity");
+    SPSCRingQueueBuffer instance = new SPSCRingQueueBuffer();
+    Assert.assertEquals(AbstractRingQueueBuffer.DEFAULT_CAPACITY, instance.getCapacity());
+
+    instance.setCapacity(1000);
+    Assert.assertEquals(1024, instance.getCapacity());
+  }
+
+  /**
+   * Test that records come out in the order they went in, and that pull
+   * respects the maximum.
+   */
+  @Test
+  public void testOrderingAndBulkPull() {
+    System.out.println("testOrderingAndBulkPull");
+    IBoundedBuffer[] buffers = {new SPSCRingQueueBuffer(), new MPMCRingQueueBuffer()};
+
+    for (IBoundedBuffer instance : buffers) {
+      instance.setCapacity(16);
+
+      // wrap the ring a few times
+      int expected = 0;
+      for (int cycle = 0; cycle < 5; cycle++) {
+        instance.push(createBatch(cycle * 10, 10));
+        Assert.assertEquals(10, instance.getEventCount());
+
+        Collection<IRecord> result = instance.pull(7);
+        Assert.assertEquals(7, result.size());
+        result.addAll(instance.pull(100));
+        Assert.assertEquals(10, result.size());
+        Assert.assertEquals(0, instance.getEventCount());
+
+        Iterator<IRecord> iter = result.iterator();
+        while (iter.hasNext()) {
+          Assert.assertEquals(expected++, ((HeaderRecord) iter.next()).getTransactionNumber());
+        }
+      }
+    }
+  }
+
+  /**
+   * Test that a push of more records than the capacity blocks until the
+   * consumer has made space, and that no records are lost.
+   */
+  @Test(timeout = 20000)
+  public void testBlockingPush() throws InterruptedException {
+    System.out.println("testBlockingPush");
+    IBoundedBuffer[] buffers = {new SPSCRingQueueBuffer(), new MPMCRingQueueBuffer()};
+
+    for (final IBoundedBuffer instance : buffers) {
+      instance.setCapacity(64);
+
+      Thread producer = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 100; i++) {
+            instance.push(createBatch(i * 500, 500));
+          }
+        }
+      };
+      producer.start();
+
+      int expected = 0;
+      while (expected < 50000) {
+        Collection<IRecord> result = instance.pull(100);
+        Assert.assertTrue(instance.getEventCount() <= instance.getCapacity());
+        for (IRecord tmpRecord : result) {
+          Assert.assertEquals(expected++, ((HeaderRecord) tmpRecord).getTransactionNumber());
+        }
+      }
+
+      producer.join();
+      Assert.assertEquals(0, instance.getEventCount());
+    }
+  }
+
+  /**
+   * Test that concurrent suppliers and consumers neither lose nor duplicate
+   * records.
+   */
+  @Test(timeout = 20000)
+  public void testMultipleProducersConsumers() throws InterruptedException {
+    System.out.println("testMultipleProducersConsumers");
+    final MPMCRingQueueBuffer instance = new MPMCRingQueueBuffer();
+    instance.setCapacity(256);
+
+    final int producers = 4;
+    final int batches = 200;
+    final int batchSize = 100;
+    final int total = producers * batches * batchSize;
+    final boolean[] seen = new boolean[total];
+    final int[] pulled = new int[1];
+    final int[] duplicates = new int[1];
+
+    Thread[] threads = new Thread[producers * 2];
+    for (int p = 0; p < producers; p++) {
+      final int producerId = p;
+      threads[p] = new Thread() {
+        @Override
+        public void run() {
+          for (int b = 0; b < batches; b++) {
+            instance.push(createBatch((producerId * batches + b) * batchSize, batchSize));
+          }
+        }
+      };
+    }
+
+    for (int c = 0; c < producers; c++) {
+      threads[producers + c] = new Thread() {
+        @Override
+        public void run() {
+          while (true) {
+            synchronized (seen) {
+              if (pulled[0] == total) {
+                return;
+              }
+            }
+            for (IRecord tmpRecord : instance.pull(50)) {
+              int id = ((HeaderRecord) tmpRecord).getTransactionNumber();
+              synchronized (seen) {
+                if (seen[id]) {
+                  duplicates[0]++;
+                }
+                seen[id] = true;
+                pulled[0]++;
+              }
+            }
+          }
+        }
+      };
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(0, duplicates[0]);
+    Assert.assertEquals(total, pulled[0]);
+    Assert.assertEquals(0, instance.getEventCount());
+  }
+
+  /**
+   * Test that monitors are only notified when a push finds the buffer empty,
+   * or when the monitor has a thread waiting.
+   */
+  @Test
+  public void testEdgeTriggeredNotification() {
+    System.out.println("testEdgeTriggeredNotification");
+    IBuffer[] buffers = {new SPSCRingQueueBuffer(), new MPMCRingQueueBuffer(), new ArrayListQueueBuffer()};
+
+    for (IBuffer instance : buffers) {
+      final int[] notifications = new int[1];
+      final boolean[] waiting = new boolean[1];
+
+      instance.registerMonitor(new IMonitor() {
+        @Override
+        public void notify(IEvent e) {
+          notifications[0]++;
+        }
+
+        @Override
+        public boolean isWaiting() {
+          return waiting[0];
+        }
+      });
+
+      // empty to non-empty notifies
+      instance.push(createBatch(0, 10));
+      Assert.assertEquals(1, notifications[0]);
+
+      // non-empty, nobody waiting, no notification
+      instance.push(createBatch(10, 10));
+      Assert.assertEquals(1, notifications[0]);
+
+      // non-empty, but the monitor is waiting
+      waiting[0] = true;
+      instance.push(createBatch(20, 10));
+      Assert.assertEquals(2, notifications[0]);
+
+      // drain and push again: edge
+      waiting[0] = false;
+      instance.pull(100);
+      instance.push(createBatch(30, 10));
+      Assert.assertEquals(3, notifications[0]);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package OpenRate.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for AggregationTable, checked against a map of the grouping values.
+ */
+public class AggregationTableTest
+{
+  // the grouping fields of the test records, 0 based
+  private static final int[] GROUPING = {0, 2};
+
+ /**
+  * Aggregate random records into several partial tables, merge them, and
+  * compare with the results worked out with a map.
+  */
+  @Test
+  public void testAggregateAndMerge()
+  {
+    System.out.println("testAggregateAndMerge");
+    Random random = new Random(13);
+    AggregationTable[] partials = {new AggregationTable(), new AggregationTable(), new AggregationTable()};
+    HashMap<List<String>, double[]> expected = new HashMap<>();
+
+    for (int i = 0; i < 100000; i++)
+    {
+      // "A"+"BC" and "AB"+"C" must be different groups, and null is a value
+      String first = (i % 1000 == 0) ? null : "A" + random.nextInt(50);
+      String second = random.nextInt(30) + "B";
+      double value = random.nextInt(2001) - 1000;
+      String[] fieldList = {first, Double.toString(value), second};
+
+      AggregationTable table = partials[i % partials.length];
+      int entry = table.getEntry(fieldList, GROUPING);
+      table.count(entry);
+      table.sum(entry, value);
+      table.max(entry, value);
+      table.min(entry, value);
+
+      double[] result = expected.get(Arrays.asList(first, second));
+      if (result == null)
+      {
+        result = new double[4];
+        expected.put(Arrays.asList(first, second), result);
+      }
+      result[0]++;
+      result[1] += value;
+      result[2] = Math.max(result[2], value);
+      result[3] = Math.min(result[3], value);
+    }
+
+    AggregationTable merged = new AggregationTable();
+    for (AggregationTable partial : partials)
+    {
+      merged.merge(partial);
+    }
+
+    Assert.assertEquals(expected.size(), merged.size());
+    for (int entry = 0; entry < merged.size(); entry++)
+    {
+      String[] group = merged.getGroup(entry);
+      double[] result = expected.get(Arrays.asList(group));
+      Assert.assertNotNull(Arrays.toString(group), result);
+      Assert.assertEquals(result[0], merged.getCount(entry), 0);
+      Assert.assertEquals(result[1], merged.getSum(entry), 0.000001);
+      Assert.assertEquals(result[2], merged.getMax(entry), 0);
+      Assert.assertEquals(result[3], merged.getMin(entry), 0);
+      Assert.assertEquals(entry, merged.findEntry(group));
+    }
+
+    Assert.assertEquals(-1, merged.findEntry(new String[] {"A1", "NoSuchGroup"}));
+
+    merged.clear();
+    Assert.assertEquals(0, merged.size());
+  }
+
+ /**
+  * Check that groups whose values join to the same String are kept apart.
+  */
+  @Test
+  public void testGroupsNotJoined()
+  {
+    System.out.println("testGroupsNotJoined");
+    AggregationTable instance = new AggregationTable();
+
+    int first = instance.getEntry(new String[] {"A", "x", "BC"}, GROUPING);
+    int second = instance.getEntry(new String[] {"AB", "x", "C"}, GROUPING);
+    int again = instance.getEntry(new String[] {"A", "y", "BC"}, GROUPING);
+
+    Assert.assertTrue(first != second);
+    Assert.assertEquals(first, again);
+    Assert.assertEquals(2, instance.size());
+  }
+}
@@ -0,0 +1,99 @@
+package OpenRate.cache;
+
+import OpenRate.exception.InitializationException;
+import java.util.ArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the NumberRangeCache range index.
+ */
+public class NumberRangeCacheTest
+{
+ /**
+  * Create a result list
+  */
+  private static ArrayList<String> result(String value)
+  {
+    ArrayList<String> resultList = new ArrayList<>();
+    resultList.add(value);
+    return resultList;
+  }
+
+ /**
+  * Test the matching of ranges and validity periods.
+  *
+  * @throws InitializationException
+  */
+  @Test
+  public void testGetEntry() throws InitializationException
+  {
+    System.out.println("testGetEntry");
+    NumberRangeCache instance = new NumberRangeCache();
+
+    instance.addEntry("Port", 1000, 1999, 100, 200, result("OperatorA"));
+    instance.addEntry("Port", 1000, 1999, 200, 0, result("OperatorB"));
+    instance.addEntry("Port", 3000, 3000, 0, 0, result("Single"));
+    instance.addEntry("Port", 1500, 1599, 0, 0, result("Inner"));
+    instance.addEntry("Other", 0, 0, 0, 0, result("Any"));
+
+    Assert.assertEquals("OperatorA", instance.getEntry("Port", 1000, 150));
+    Assert.assertEquals("OperatorA", instance.getEntry("Port", 1999, 199));
+    Assert.assertEquals("OperatorB", instance.getEntry("Port", 1999, 200));
+    Assert.assertEquals(NumberRangeCache.NO_RANGE_MATCH, instance.getEntry("Port", 1200, 50));
+    Assert.assertEquals(NumberRangeCache.NO_RANGE_MATCH, instance.getEntry("Port", 999, 150));
+    Assert.assertEquals(NumberRangeCache.NO_RANGE_MATCH, instance.getEntry("Port", 2000, 150));
+
+    // The nested range matches where the outer range is not valid, the entry
+    // loaded first wins where both are
+    Assert.assertEquals("Inner", instance.getEntry("Port", 1550, 50));
+    Assert.assertEquals("OperatorA", instance.getEntry("Port", 1550, 150));
+
+    Assert.assertEquals("Single", instance.getEntry("Port", 3000, 150));
+    Assert.assertEquals(NumberRangeCache.NO_RANGE_MATCH, instance.getEntry("Port", 3001, 150));
+    Assert.assertEquals("Any", instance.getEntry("Other", Long.MAX_VALUE, 150));
+    Assert.assertEquals("Any", instance.getEntry("Other", Long.MIN_VALUE, 150));
+    Assert.assertNull(instance.getEntryWithChildData("Unknown", 1000, 150));
+
+    // Adding after a search rebuilds the index
+    instance.addEntry("Port", 2000, 2999, 0, 0, result("Later"));
+    Assert.assertEquals("Later", instance.getEntry("Port", 2500, 150));
+    Assert.assertEquals("OperatorA", instance.getEntry("Port", 1000, 150));
+  }
+
+ /**
+  * Test that a reversed range is refused.
+  */
+  @Test(expected = InitializationException.class)
+  public void testReversedRange() throws InitializationException
+  {
+    System.out.println("testReversedRange");
+    NumberRangeCache instance = new NumberRangeCache();
+
+    instance.addEntry("Port", 2000, 1000, 0, 0, result("Bad"));
+  }
+
+ /**
+  * Test a large group of adjacent ranges against a linear search.
+  *
+  * @throws InitializationException
+  */
+  @Test
+  public void testLargeGroup() throws InitializationException
+  {
+    System.out.println("testLargeGroup");
+    NumberRangeCache instance = new NumberRangeCache();
+
+    // load in reverse order to check that the order does not matter
+    for (int i = 99999; i >= 0; i--)
+    {
+      instance.addEntry("Port", 10000000L + i * 100, 10000000L + i * 100 + 49, 0, 0, result("R" + i));
+    }
+
+    for (int i = 0; i < 100000; i += 7)
+    {
+      Assert.assertEquals("R" + i, instance.getEntry("Port", 10000000L + i * 100 + 25, 150));
+      Assert.assertEquals(NumberRangeCache.NO_RANGE_MATCH, instance.getEntry("Port", 10000000L + i * 100 + 75, 150));
+    }
+  }
+}
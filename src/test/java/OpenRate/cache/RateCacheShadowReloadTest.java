@@ -0,0 +1,160 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2015.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.cache;
+
+import OpenRate.OpenRate;
+import OpenRate.resource.CacheFactory;
+import TestUtils.FrameworkUtils;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.SQLException;
+import org.junit.*;
+
+/**
+ * Tests the shadow reload of the rate cache. The cache is configured with
+ * "ReloadMode" "Shadow" in its own properties file, so that the other rating
+ * tests keep running with the default synchronous reload.
+ */
+public class RateCacheShadowReloadTest {
+
+  private static URL FQConfigFileName;
+
+  // Used for logging and exception handling
+  private static String message;
+  private static OpenRate appl;
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    FQConfigFileName = new URL("File:src/test/resources/TestRatingShadow.properties.xml");
+
+    // Set up the OpenRate internal logger - this is normally done by app startup
+    appl = OpenRate.getApplicationInstance();
+
+    // Load the properties into the OpenRate object
+    FrameworkUtils.loadProperties(FQConfigFileName);
+
+    // Get the loggers
+    FrameworkUtils.startupLoggers();
+
+    // Get the transaction manager
+    FrameworkUtils.startupTransactionManager();
+
+    // Get Data Sources
+    FrameworkUtils.startupDataSources();
+
+    // Get a connection
+    Connection JDBCChcon = FrameworkUtils.getDBConnection("RateTestCache");
+
+    // Set up test data
+    try {
+      JDBCChcon.prepareStatement("DROP TABLE TEST_PRICE_MODEL;").execute();
+    } catch (SQLException ex) {
+      if ((ex.getMessage().startsWith("Unknown table")) || // Mysql
+              (ex.getMessage().startsWith("user lacks"))) // HSQL
+      {
+        // It's OK
+      } else {
+        // Not OK, fail the case
+        message = "Error dropping table TEST_PRICE_MODEL in test <RateCacheShadowReloadTest>.";
+        Assert.fail(message);
+      }
+    }
+
+    // Create the test table
+    JDBCChcon.prepareStatement("CREATE TABLE TEST_PRICE_MODEL (ID int,PRICE_MODEL varchar(64) NOT NULL,STEP int DEFAULT 0 NOT NULL,TIER_FROM int,TIER_TO int,BEAT int,FACTOR double,CHARGE_BASE int,VALID_FROM DATE)").execute();
+
+    // Simplest price model possible - 1 (FACTOR) per minute (CHARGE_BASE), with a charge increment of 1 (BEAT) = "per second rating"
+    JDBCChcon.prepareStatement("INSERT INTO TEST_PRICE_MODEL (ID,PRICE_MODEL,STEP,TIER_FROM,TIER_TO,BEAT,FACTOR,CHARGE_BASE,VALID_FROM) values (1,'TestModel1',1,0,999999,60,1,60,'2000-01-01')").execute();
+
+    // Get the caches that we are using
+    FrameworkUtils.startupCaches();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception {
+    OpenRate.getApplicationInstance().finaliseApplication();
+  }
+
+  /**
+   * Test the shadow reload of the rate cache. A price model added to the
+   * database is only seen once the shadow copy has been published, and the
+   * models which were already loaded stay usable throughout.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testShadowReload() throws Exception {
+    System.out.println("shadowReload");
+    RateCache cache = (RateCache) CacheFactory.getGlobalManager("RateTestCache").get("RateTestCache");
+
+    Assert.assertTrue(cache.getShadowReload());
+
+    // add a new model, which is not visible until we reload
+    Connection JDBCChcon = FrameworkUtils.getDBConnection("RateTestCache");
+    JDBCChcon.prepareStatement("INSERT INTO TEST_PRICE_MODEL (ID,PRICE_MODEL,STEP,TIER_FROM,TIER_TO,BEAT,FACTOR,CHARGE_BASE,VALID_FROM) values (8,'TestModelShadow',1,0,999999,60,3,60,'2000-01-01')").execute();
+
+    Assert.assertNull(cache.getPriceModel("TestModelShadow"));
+    Assert.assertNull(cache.getCompiledPriceModel("TestModelShadow"));
+    Assert.assertNotNull(cache.getCompiledPriceModel("TestModel1"));
+
+    cache.shadowReloadData();
+
+    Assert.assertEquals(1, cache.getPriceModel("TestModelShadow").size());
+    Assert.assertEquals(3.0, cache.getPriceModel("TestModelShadow").get(0).getFactor(), 0.00001);
+    Assert.assertNotNull(cache.getCompiledPriceModel("TestModelShadow"));
+    Assert.assertEquals(1, cache.getPriceModel("TestModel1").size());
+    Assert.assertFalse(cache.isShadowReloadRunning());
+  }
+}
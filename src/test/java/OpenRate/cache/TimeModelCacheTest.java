@@ -0,0 +1,240 @@
+package OpenRate.cache;
+
+import OpenRate.exception.InitializationException;
+import OpenRate.record.TimePacket;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the TimeModelCache lookup tables. The time splitting is
+ * checked against a copy of the list walking, calendar based evaluation which
+ * the lookup tables replaced.
+ */
+public class TimeModelCacheTest
+{
+  // Day, from, to, result. Sunday has an overlap and a gap.
+  private static final String[][] INTERVALS = {
+    {"0", "00:00", "11:59", "WKD"}, {"0", "10:00", "13:00", "OVER"}, {"0", "14:00", "00:00", "WKD"},
+    {"1", "00:00", "07:59", "ECO"}, {"1", "08:00", "17:59", "PEAK"}, {"1", "18:00", "00:00", "ECO"},
+    {"2", "00:00", "07:59", "ECO"}, {"2", "08:00", "17:59", "PEAK"}, {"2", "18:00", "00:00", "ECO"},
+    {"3", "00:00", "07:59", "ECO"}, {"3", "08:00", "17:59", "PEAK"}, {"3", "18:00", "00:00", "ECO"},
+    {"4", "00:00", "07:59", "ECO"}, {"4", "08:00", "17:59", "PEAK"}, {"4", "18:00", "00:00", "ECO"},
+    {"5", "00:00", "07:59", "ECO"}, {"5", "08:00", "17:59", "PEAK"}, {"5", "18:00", "23:59", "ECO"},
+    {"6", "00:00", "00:00", "WKD"}
+  };
+
+ /**
+  * Create the cache with the test model
+  */
+  private static TimeModelCache getInstance() throws InitializationException
+  {
+    TimeModelCache instance = new TimeModelCache();
+
+    for (String[] interval : INTERVALS)
+    {
+      instance.addInterval("Model", interval[0], interval[1], interval[2], interval[3]);
+    }
+    instance.addModel("Plan", "Model");
+
+    return instance;
+  }
+
+ /**
+  * Test the lookup without time splitting.
+  *
+  * @throws InitializationException
+  */
+  @Test
+  public void testGetEntry() throws InitializationException
+  {
+    System.out.println("testGetEntry");
+    TimeModelCache instance = getInstance();
+
+    Assert.assertEquals("ECO", instance.getEntry("Plan", 1, 0));
+    Assert.assertEquals("ECO", instance.getEntry("Plan", 1, 479));
+    Assert.assertEquals("PEAK", instance.getEntry("Plan", 1, 480));
+    Assert.assertEquals("ECO", instance.getEntry("Plan", 1, 1439));
+    Assert.assertEquals("WKD", instance.getEntry("Plan", 0, 660));
+    Assert.assertEquals("OVER", instance.getEntry("Plan", 0, 720));
+    Assert.assertEquals(TimeModelCache.NO_TIME_MATCH, instance.getEntry("Plan", 0, 800));
+    Assert.assertEquals(TimeModelCache.NO_TIME_MATCH, instance.getEntry("Plan", 0, 1440));
+    Assert.assertEquals(TimeModelCache.NO_TIME_MATCH, instance.getEntry("Unknown", 1, 0));
+
+    // Adding after a lookup rebuilds the table
+    instance.addInterval("Model", "0", "13:01", "13:59", "GAP");
+    Assert.assertEquals("GAP", instance.getEntry("Plan", 0, 800));
+  }
+
+ /**
+  * Test the time splitting of random events, including events over the
+  * daylight savings changes, against the list based evaluation.
+  *
+  * @throws InitializationException
+  */
+  @Test
+  public void testGetEntrySplitting() throws InitializationException
+  {
+    System.out.println("testGetEntrySplitting");
+    TimeModelCache instance = getInstance();
+    GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Zurich"));
+    GregorianCalendar refCal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Zurich"));
+    Random random = new Random(2468);
+
+    // 2011-01-01 to 2013-01-01 local time
+    long rangeStart = 1293836400;
+    long rangeLength = 731 * 86400L;
+
+    for (int i = 0; i < 50000; i++)
+    {
+      long start = rangeStart + (long) (random.nextDouble() * rangeLength);
+      long end = start + (i % 10 == 0 ? random.nextInt(3 * 86400) : random.nextInt(7200));
+
+      ArrayList<TimePacket> expected = referenceEntry(start, end, refCal);
+      ArrayList<TimePacket> result = instance.getEntry("Plan", start, end, cal);
+
+      Assert.assertEquals("start " + start + " end " + end, expected.size(), result.size());
+      for (int packet = 0; packet < expected.size(); packet++)
+      {
+        TimePacket exp = expected.get(packet);
+        TimePacket res = result.get(packet);
+        String where = "start " + start + " end " + end + " packet " + packet;
+        Assert.assertEquals(where, exp.dayofWeek, res.dayofWeek);
+        Assert.assertEquals(where, exp.startTime, res.startTime);
+        Assert.assertEquals(where, exp.startSecond, res.startSecond);
+        Assert.assertEquals(where, exp.endTime, res.endTime);
+        Assert.assertEquals(where, exp.endSecond, res.endSecond);
+        Assert.assertEquals(where, exp.duration, res.duration);
+        Assert.assertEquals(where, exp.totalDuration, res.totalDuration);
+        Assert.assertEquals(where, exp.timeResult, res.timeResult);
+      }
+    }
+  }
+
+ /**
+  * The list based, calendar based evaluation of the time splitting.
+  */
+  private static ArrayList<TimePacket> referenceEntry(long CDRStartDate, long CDREndDate, GregorianCalendar gCal)
+  {
+    int TotalDuration = (int) (CDREndDate - CDRStartDate);
+    if (TotalDuration == 0)
+    {
+      TotalDuration = 1;
+      CDREndDate += 1;
+    }
+
+    long tmpStartDateCounter = CDRStartDate;
+    long tmpEndDateCounter;
+    ArrayList<TimePacket> packets = new ArrayList<>();
+
+    gCal.setTimeInMillis(CDRStartDate * 1000);
+    gCal.set(Calendar.HOUR_OF_DAY, 0);
+    gCal.set(Calendar.MINUTE, 0);
+    gCal.set(Calendar.SECOND, 0);
+    tmpEndDateCounter = gCal.getTimeInMillis() / 1000;
+
+    while (tmpStartDateCounter < CDREndDate)
+    {
+      int TMEndTime;
+      int TMEndSecond;
+      tmpEndDateCounter += 86400;
+
+      if (tmpEndDateCounter > CDREndDate)
+      {
+        tmpEndDateCounter = CDREndDate;
+        gCal.setTimeInMillis(tmpEndDateCounter * 1000);
+        TMEndTime = gCal.get(Calendar.HOUR_OF_DAY) * 60 + gCal.get(Calendar.MINUTE);
+        TMEndSecond = gCal.get(Calendar.SECOND);
+      }
+      else
+      {
+        TMEndTime = 24 * 60 - 1;
+        TMEndSecond = 60;
+      }
+
+      gCal.setTimeInMillis(tmpStartDateCounter * 1000);
+      int day = gCal.get(Calendar.DAY_OF_WEEK) - 1;
+      int startTime = gCal.get(Calendar.HOUR_OF_DAY) * 60 + gCal.get(Calendar.MINUTE);
+      int startSecond = gCal.get(Calendar.SECOND);
+
+      // walk the intervals of the day
+      while (true)
+      {
+        String[] node = findInterval(day, startTime);
+        if (node == null)
+        {
+          break;
+        }
+
+        int nodeTo = endMinutes(node[2]);
+        if (TMEndTime <= nodeTo)
+        {
+          packets.add(packet(day, startTime, startSecond, TMEndTime, TMEndSecond, node[3], TotalDuration));
+          break;
+        }
+
+        packets.add(packet(day, startTime, startSecond, nodeTo, 60, node[3], TotalDuration));
+        startTime = nodeTo + 1;
+        startSecond = 0;
+      }
+
+      tmpStartDateCounter = tmpEndDateCounter;
+    }
+
+    return packets;
+  }
+
+ /**
+  * Find the first interval of the day which covers the minute.
+  */
+  private static String[] findInterval(int day, int minute)
+  {
+    for (String[] interval : INTERVALS)
+    {
+      if (Integer.parseInt(interval[0]) == day && minute >= minutes(interval[1]) && minute <= endMinutes(interval[2]))
+      {
+        return interval;
+      }
+    }
+    return null;
+  }
+
+ /**
+  * Convert hh:mm to minutes.
+  */
+  private static int minutes(String time)
+  {
+    String[] bits = time.split(":");
+    return Integer.parseInt(bits[0]) * 60 + Integer.parseInt(bits[1]);
+  }
+
+ /**
+  * Convert an end time hh:mm to minutes, with 00:00 meaning 23:59.
+  */
+  private static int endMinutes(String time)
+  {
+    int result = minutes(time);
+    return (result == 0) ? 24 * 60 - 1 : result;
+  }
+
+ /**
+  * Create an expected time packet.
+  */
+  private static TimePacket packet(int day, int startTime, int startSecond, int endTime, int endSecond, String result, int totalDuration)
+  {
+    TimePacket packet = new TimePacket();
+    packet.dayofWeek = day;
+    packet.startTime = startTime;
+    packet.startSecond = startSecond;
+    packet.endTime = endTime;
+    packet.endSecond = endSecond;
+    packet.timeResult = result;
+    packet.totalDuration = totalDuration;
+    packet.duration = (endTime - startTime) * 60 - startSecond + endSecond;
+    return packet;
+  }
+}
@@ -0,0 +1,47 @@
+package OpenRate.cache;
+
+import java.util.ArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the ValiditySegmentCache segment search.
+ */
+public class ValiditySegmentCacheTest
+{
+ /**
+  * Create a result list
+  */
+  private static ArrayList<String> result(String value)
+  {
+    ArrayList<String> resultList = new ArrayList<>();
+    resultList.add(value);
+    return resultList;
+  }
+
+ /**
+  * Test the matching of segments loaded out of order.
+  */
+  @Test
+  public void testGetValiditySegmentMatch()
+  {
+    System.out.println("testGetValiditySegmentMatch");
+    ValiditySegmentCache instance = new ValiditySegmentCache();
+
+    instance.addEntry("RADIUS", "PORT_1", 300, 400, result("C3"));
+    instance.addEntry("RADIUS", "PORT_1", 100, 200, result("C1"));
+    instance.addEntry("RADIUS", "PORT_1", 201, 300, result("C2"));
+    instance.addEntry("RADIUS", "PORT_2", 100, 200, result("D1"));
+
+    Assert.assertEquals("C1", instance.getValiditySegmentMatch("RADIUS", "PORT_1", 100));
+    Assert.assertEquals("C1", instance.getValiditySegmentMatch("RADIUS", "PORT_1", 199));
+    Assert.assertEquals(ValiditySegmentCache.NO_VALIDITY_MATCH, instance.getValiditySegmentMatch("RADIUS", "PORT_1", 200));
+    Assert.assertEquals("C2", instance.getValiditySegmentMatch("RADIUS", "PORT_1", 250));
+    Assert.assertEquals("C3", instance.getValiditySegmentMatch("RADIUS", "PORT_1", 300));
+    Assert.assertEquals(ValiditySegmentCache.NO_VALIDITY_MATCH, instance.getValiditySegmentMatch("RADIUS", "PORT_1", 400));
+    Assert.assertEquals(ValiditySegmentCache.NO_VALIDITY_MATCH, instance.getValiditySegmentMatch("RADIUS", "PORT_1", 99));
+    Assert.assertEquals("D1", instance.getValiditySegmentMatch("RADIUS", "PORT_2", 150));
+    Assert.assertEquals(ValiditySegmentCache.NO_VALIDITY_MATCH, instance.getValiditySegmentMatch("RADIUS", "PORT_3", 150));
+    Assert.assertNull(instance.getValiditySegmentMatchWithChildData("OTHER", "PORT_1", 150));
+  }
+}
@@ -0,0 +1,139 @@
+package OpenRate.lang;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Benchmark of CompactDigitTree against DigitTree. This takes some seconds,
+ * so it is not named as a unit test and is not part of the normal test run.
+ * Run it on its own with "mvn test -Dtest=CompactDigitTreeBenchmark".
+ */
+public class CompactDigitTreeBenchmark
+{
+  // the size of the table used in the comparison benchmark
+  private static final int BENCHMARK_PREFIXES = 300000;
+  private static final int BENCHMARK_LOOKUPS = 1000000;
+
+ /**
+  * Create a result list
+  */
+  private static ArrayList<String> result(String... values)
+  {
+    ArrayList<String> resultList = new ArrayList<>();
+    for (String value : values)
+    {
+      resultList.add(value);
+    }
+    return resultList;
+  }
+
+ /**
+  * Compare the heap used and the lookup rate of the two trees on a large
+  * table. This reports the figures but only asserts the results are the same,
+  * as the timings depend on the machine.
+  */
+  @Test
+  public void testBenchmarkAgainstDigitTree()
+  {
+    System.out.println("testBenchmarkAgainstDigitTree");
+    String[] prefixes = new String[BENCHMARK_PREFIXES];
+    String[] numbers = new String[BENCHMARK_LOOKUPS];
+    Random random = new Random(5678);
+
+    for (int i = 0; i < prefixes.length; i++)
+    {
+      prefixes[i] = randomNumber(random, 4 + random.nextInt(8));
+    }
+
+    for (int i = 0; i < numbers.length; i++)
+    {
+      numbers[i] = prefixes[random.nextInt(prefixes.length)] + randomNumber(random, 4);
+    }
+
+    long baseHeap = usedHeap();
+    DigitTree digitTree = new DigitTree();
+    for (int i = 0; i < prefixes.length; i++)
+    {
+      digitTree.addPrefix(prefixes[i], result("Z" + (i % 1000)));
+    }
+    long digitHeap = usedHeap() - baseHeap;
+
+    baseHeap = usedHeap();
+    CompactDigitTree compactTree = new CompactDigitTree();
+    for (int i = 0; i < prefixes.length; i++)
+    {
+      compactTree.addPrefix(prefixes[i], result("Z" + (i % 1000)));
+    }
+    compactTree.trimToSize();
+    long compactHeap = usedHeap() - baseHeap;
+
+    // warm up both trees, then time them
+    int digitHash = lookups(digitTree, numbers);
+    int compactHash = lookups(compactTree, numbers);
+    Assert.assertEquals(digitHash, compactHash);
+
+    // take the best of a few runs
+    long digitTime = Long.MAX_VALUE;
+    long compactTime = Long.MAX_VALUE;
+    for (int run = 0; run < 3; run++)
+    {
+      long start = System.nanoTime();
+      lookups(digitTree, numbers);
+      digitTime = Math.min(digitTime, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      lookups(compactTree, numbers);
+      compactTime = Math.min(compactTime, System.nanoTime() - start);
+    }
+
+    System.out.println("  DigitTree:        nodes <" + digitTree.size() + "> heap <" + (digitHeap / 1024) +
+                       " KB> lookups/s <" + (BENCHMARK_LOOKUPS * 1000000000L / Math.max(digitTime, 1)) + ">");
+    System.out.println("  CompactDigitTree: nodes <" + compactTree.size() + "> heap <" + (compactHeap / 1024) +
+                       " KB> lookups/s <" + (BENCHMARK_LOOKUPS * 1000000000L / Math.max(compactTime, 1)) + ">");
+
+    // keep the trees reachable until the heap has been measured
+    Assert.assertTrue(digitTree.size() > compactTree.size());
+  }
+
+ /**
+  * Run the lookups, returning a value depending on the results so that the
+  * work cannot be optimised away.
+  */
+  private static int lookups(IDigitTree tree, String[] numbers)
+  {
+    int hash = 0;
+    for (String number : numbers)
+    {
+      hash = hash * 31 + tree.match(number).hashCode();
+    }
+    return hash;
+  }
+
+ /**
+  * Create a random number of the given length.
+  */
+  private static String randomNumber(Random random, int length)
+  {
+    StringBuilder number = new StringBuilder(length);
+    for (int i = 0; i < length; i++)
+    {
+      number.append((char) ('0' + random.nextInt(10)));
+    }
+    return number.toString();
+  }
+
+ /**
+  * Get the heap in use after a garbage collection.
+  */
+  private static long usedHeap()
+  {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++)
+    {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
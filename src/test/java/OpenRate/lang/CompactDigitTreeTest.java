@@ -0,0 +1,134 @@
+package OpenRate.lang;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for CompactDigitTree, including a comparison against DigitTree.
+ * The timing comparison is in CompactDigitTreeBenchmark.
+ */
+public class CompactDigitTreeTest
+{
+ /**
+  * Create a result list
+  */
+  private static ArrayList<String> result(String... values)
+  {
+    ArrayList<String> resultList = new ArrayList<>();
+    for (String value : values)
+    {
+      resultList.add(value);
+    }
+    return resultList;
+  }
+
+ /**
+  * Test the best match, including prefixes which split existing nodes.
+  */
+  @Test
+  public void testMatch()
+  {
+    System.out.println("testMatch");
+    CompactDigitTree instance = new CompactDigitTree();
+
+    instance.addPrefix("00328165", result("WD2", "Belgium Geographical"));
+    instance.addPrefix("0032", result("WD1", "Belgium"));
+    instance.addPrefix("0044", result("UK", "UK Any"));
+    instance.addPrefix("00", result("INTL", "Rest of the world"));
+    instance.addPrefix("003281", result("WD5", "Belgium Other"));
+
+    Assert.assertEquals("UK", instance.match("0044123"));
+    Assert.assertEquals("INTL", instance.match("004923434"));
+    Assert.assertEquals("WD1", instance.match("00328"));
+    Assert.assertEquals("WD5", instance.match("0032816"));
+    Assert.assertEquals("WD2", instance.match("003281654"));
+    Assert.assertEquals("INTL", instance.match("00"));
+    Assert.assertEquals(DigitTree.NO_DIGIT_TREE_MATCH, instance.match("0"));
+    Assert.assertEquals(DigitTree.NO_DIGIT_TREE_MATCH, instance.match("1234"));
+    Assert.assertEquals(DigitTree.NO_DIGIT_TREE_MATCH, instance.match(""));
+
+    Assert.assertEquals("Belgium Geographical", instance.matchWithChildData("0032816599").get(1));
+    Assert.assertEquals(1, instance.matchWithChildData("99").size());
+    Assert.assertEquals(DigitTree.NO_DIGIT_TREE_MATCH, instance.matchWithChildData("99").get(0));
+
+    // Replace an existing prefix
+    instance.addPrefix("0044", result("UK2"));
+    Assert.assertEquals("UK2", instance.match("00441"));
+
+    // Relaying out the nodes keeps the results, and we can still add
+    instance.trimToSize();
+    Assert.assertEquals("WD5", instance.match("0032816"));
+    instance.addPrefix("00329", result("WD6"));
+    Assert.assertEquals("WD6", instance.match("003291"));
+    Assert.assertEquals("WD2", instance.match("003281654"));
+  }
+
+ /**
+  * Test that non-digit characters can be stored and looked up.
+  */
+  @Test
+  public void testNonDigitPrefixes()
+  {
+    System.out.println("testNonDigitPrefixes");
+    CompactDigitTree instance = new CompactDigitTree();
+
+    instance.addPrefix("+44", result("UK"));
+    instance.addPrefix("*21#", result("Forward"));
+    instance.addPrefix("0044", result("UK"));
+
+    Assert.assertEquals("UK", instance.match("+442071234567"));
+    Assert.assertEquals("Forward", instance.match("*21#"));
+    Assert.assertEquals(DigitTree.NO_DIGIT_TREE_MATCH, instance.match("*21"));
+    Assert.assertEquals(DigitTree.NO_DIGIT_TREE_MATCH, instance.match("#21"));
+
+    // equal result lists are only stored once
+    Assert.assertEquals(2, instance.getResultCount());
+    Assert.assertSame(instance.matchWithChildData("+44"), instance.matchWithChildData("0044"));
+  }
+
+ /**
+  * Test that the compact tree gives the same answers as the digit tree for a
+  * random table.
+  */
+  @Test
+  public void testSameAsDigitTree()
+  {
+    System.out.println("testSameAsDigitTree");
+    Random random = new Random(1234);
+    DigitTree digitTree = new DigitTree();
+    CompactDigitTree compactTree = new CompactDigitTree();
+
+    for (int i = 0; i < 20000; i++)
+    {
+      String prefix = randomNumber(random, 1 + random.nextInt(10));
+      ArrayList<String> resultList = result("Z" + random.nextInt(300));
+      digitTree.addPrefix(prefix, resultList);
+      compactTree.addPrefix(prefix, resultList);
+    }
+
+    compactTree.trimToSize();
+
+    for (int i = 0; i < 100000; i++)
+    {
+      String number = randomNumber(random, random.nextInt(14));
+      Assert.assertEquals(digitTree.match(number), compactTree.match(number));
+    }
+
+    Assert.assertTrue(compactTree.size() < digitTree.size());
+  }
+
+ /**
+  * Create a random number of the given length.
+  */
+  private static String randomNumber(Random random, int length)
+  {
+    StringBuilder number = new StringBuilder(length);
+    for (int i = 0; i < length; i++)
+    {
+      number.append((char) ('0' + random.nextInt(10)));
+    }
+    return number.toString();
+  }
+}
@@ -0,0 +1,113 @@
+package OpenRate.lang;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the CounterGroup date look up. Groups large enough to use the
+ * date index are checked against the list walking look up.
+ */
+public class CounterGroupTest
+{
+ /**
+  * Test the look up in a small group, which walks the list.
+  */
+  @Test
+  public void testSmallGroup()
+  {
+    System.out.println("testSmallGroup");
+    CounterGroup instance = new CounterGroup();
+
+    Counter first = instance.addCounter(1, 100, 200, 0);
+    Counter overlap = instance.addCounter(2, 150, 300, 0);
+
+    Assert.assertNull(instance.getCounterByUTCDate(99));
+    Assert.assertSame(first, instance.getCounterByUTCDate(100));
+    Assert.assertSame(first, instance.getCounterByUTCDate(199));
+    Assert.assertSame(overlap, instance.getCounterByUTCDate(200));
+    Assert.assertNull(instance.getCounterByUTCDate(300));
+    Assert.assertSame(overlap, instance.getCounterById(2));
+  }
+
+ /**
+  * Test the indexed look up of random, overlapping groups against the list
+  * walking look up, including counters added after a look up.
+  */
+  @Test
+  public void testIndexedGroup()
+  {
+    System.out.println("testIndexedGroup");
+    Random random = new Random(1357);
+
+    for (int group = 0; group < 200; group++)
+    {
+      CounterGroup instance = new CounterGroup();
+      int counters = 9 + random.nextInt(60);
+
+      for (int i = 0; i < counters; i++)
+      {
+        long validFrom = random.nextInt(10000);
+        long validTo = validFrom + 1 + random.nextInt(i % 5 == 0 ? 5000 : 200);
+        instance.addCounter(i, validFrom, validTo, 0);
+
+        // check part way through the build as well
+        if (i % 20 == 10)
+        {
+          checkGroup(instance, random);
+        }
+      }
+
+      checkGroup(instance, random);
+    }
+  }
+
+ /**
+  * Test that changing a validity directly is seen after a reindex.
+  */
+  @Test
+  public void testReindex()
+  {
+    System.out.println("testReindex");
+    CounterGroup instance = new CounterGroup();
+
+    for (int i = 0; i < 20; i++)
+    {
+      instance.addCounter(i, i * 100, i * 100 + 100, 0);
+    }
+
+    Assert.assertNull(instance.getCounterByUTCDate(5000));
+
+    Counter changed = instance.getCounterById(19);
+    changed.validTo = 6000;
+    instance.reindex();
+    Assert.assertSame(changed, instance.getCounterByUTCDate(5000));
+  }
+
+ /**
+  * Compare the look up with the list walking look up at random dates.
+  */
+  private static void checkGroup(CounterGroup instance, Random random)
+  {
+    for (int i = 0; i < 500; i++)
+    {
+      long date = random.nextInt(16000) - 500;
+      Assert.assertSame("date " + date, referenceLookup(instance, date), instance.getCounterByUTCDate(date));
+    }
+  }
+
+ /**
+  * The list walking look up, returning the first counter added.
+  */
+  private static Counter referenceLookup(CounterGroup instance, long date)
+  {
+    for (Counter counter : instance.getCounters())
+    {
+      if (counter.validFrom <= date && counter.validTo > date)
+      {
+        return counter;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,180 @@
+package OpenRate.lang;
+
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for FingerprintKeyStore.
+ */
+public class FingerprintKeyStoreTest
+{
+  // 2012-01-01 00:00:00 UTC
+  private static final long START_DATE = 1325376000L;
+
+ /**
+  * Add random keys over several days and check them against a set, with and
+  * without the Bloom filters.
+  */
+  @Test
+  public void testContains()
+  {
+    System.out.println("testContains");
+
+    for (boolean useBloomFilter : new boolean[] {false, true})
+    {
+      FingerprintKeyStore instance = new FingerprintKeyStore(useBloomFilter);
+      HashSet<String> expected = new HashSet<>();
+      Random random = new Random(77);
+
+      for (int i = 0; i < 200000; i++)
+      {
+        String key = Long.toString(random.nextLong() % 100000000L);
+        long date = START_DATE + random.nextInt(10 * 86400);
+        Assert.assertEquals(key, expected.add(key), instance.add(key, date));
+      }
+
+      Assert.assertEquals(expected.size(), instance.size());
+      Assert.assertEquals(10, instance.getSegmentCount());
+
+      for (String key : expected)
+      {
+        Assert.assertTrue(key, instance.contains(key));
+      }
+
+      for (int i = 0; i < 200000; i++)
+      {
+        String key = "X" + random.nextInt();
+        Assert.assertFalse(key, instance.contains(key));
+      }
+
+      // adding again in another day finds the key
+      String key = expected.iterator().next();
+      Assert.assertFalse(instance.add(key, START_DATE + 20 * 86400));
+      Assert.assertEquals(expected.size(), instance.size());
+    }
+  }
+
+ /**
+  * Check that the purge drops whole days only.
+  */
+  @Test
+  public void testPurge()
+  {
+    System.out.println("testPurge");
+    FingerprintKeyStore instance = new FingerprintKeyStore(true);
+
+    for (int day = 0; day < 5; day++)
+    {
+      for (int i = 0; i < 1000; i++)
+      {
+        instance.add("D" + day + "K" + i, START_DATE + day * 86400 + i);
+      }
+    }
+
+    Assert.assertEquals(5000, instance.size());
+
+    // the cutoff is in the middle of day 2, so day 2 is kept
+    Assert.assertEquals(2000, instance.purge(START_DATE + 2 * 86400 + 3600));
+    Assert.assertEquals(3000, instance.size());
+    Assert.assertEquals(3, instance.getSegmentCount());
+    Assert.assertFalse(instance.contains("D1K5"));
+    Assert.assertTrue(instance.contains("D2K5"));
+    Assert.assertTrue(instance.contains("D4K999"));
+
+    // a key of a purged day can be added again
+    Assert.assertTrue(instance.add("D1K5", START_DATE + 86400));
+    Assert.assertEquals(4, instance.getSegmentCount());
+
+    Assert.assertEquals(0, instance.purge(START_DATE));
+    instance.clear();
+    Assert.assertEquals(0, instance.size());
+    Assert.assertFalse(instance.contains("D4K999"));
+  }
+
+ /**
+  * Check lookups from several threads while keys are added and purged.
+  *
+  * @throws InterruptedException
+  */
+  @Test
+  public void testConcurrentUse() throws InterruptedException
+  {
+    System.out.println("testConcurrentUse");
+    final FingerprintKeyStore instance = new FingerprintKeyStore(true);
+    final int[] errors = new int[4];
+
+    // keys which are always there
+    for (int i = 0; i < 10000; i++)
+    {
+      instance.add("Fixed" + i, START_DATE + 100 * 86400);
+    }
+
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++)
+    {
+      final int thread = t;
+      readers[t] = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          for (int loop = 0; loop < 20; loop++)
+          {
+            for (int i = 0; i < 10000; i++)
+            {
+              if (!instance.contains("Fixed" + i) || instance.contains("Never" + i))
+              {
+                errors[thread]++;
+              }
+            }
+          }
+        }
+      };
+      readers[t].start();
+    }
+
+    // grow and drop other days at the same time
+    for (int day = 0; day < 50; day++)
+    {
+      for (int i = 0; i < 5000; i++)
+      {
+        instance.add("Day" + day + "_" + i, START_DATE + day * 86400);
+      }
+      instance.purge(START_DATE + (day - 5) * 86400);
+    }
+
+    for (Thread reader : readers)
+    {
+      reader.join();
+    }
+
+    for (int error : errors)
+    {
+      Assert.assertEquals(0, error);
+    }
+  }
+
+ /**
+  * Report the memory used per key, compared with the String keys alone.
+  */
+  @Test
+  public void testMemoryUsage()
+  {
+    System.out.println("testMemoryUsage");
+    FingerprintKeyStore instance = new FingerprintKeyStore(true);
+    int keys = 500000;
+
+    for (int i = 0; i < keys; i++)
+    {
+      instance.add("4179" + (1000000000L + i * 7919L) + "_" + i, START_DATE + (i % 30) * 86400);
+    }
+
+    double bytesPerKey = (double) instance.getMemoryUsage() / keys;
+    System.out.println("  Fingerprint store bytes per key <" + bytesPerKey + ">");
+
+    // 16 bytes per slot at most 70% full plus the filter, but at most twice that after growing
+    Assert.assertTrue(bytesPerKey < 64);
+  }
+}
@@ -0,0 +1,83 @@
+package OpenRate.parser;
+
+import java.nio.ByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Benchmark of the cursor style BER decoder against the ASN1Parser, using the
+ * captured Huawei CDR of BERDecoderTest. This decodes the CDR some tens of
+ * thousands of times, so it is not named as a unit test and is not part of
+ * the normal test run. Run it on its own with
+ * "mvn test -Dtest=BERDecoderBenchmark".
+ */
+public class BERDecoderBenchmark {
+
+  /**
+   * Compare the time to decode the CDR with the ASN1Parser and the BER decoder.
+   * This reports the times but only asserts the results are the same, as the
+   * timings depend on the machine.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testBenchmarkAgainstASN1Parser() throws Exception {
+    System.out.println("testBenchmarkAgainstASN1Parser");
+    int loops = 20000;
+
+    HuaweiDef asn1Specification = new HuaweiDef();
+    asn1Specification.initTags();
+    ASN1Parser parser = new ASN1Parser(asn1Specification);
+
+    BERDecoderTest.SkippingHuaweiDef skipSpecification = new BERDecoderTest.SkippingHuaweiDef();
+    skipSpecification.initTags();
+    BERDecoder instance = new BERDecoder(skipSpecification);
+    ByteBuffer buffer = ByteBuffer.wrap(BERDecoderTest.TEST_CDR);
+
+    // warm up both
+    for (int i = 0; i < loops / 10; i++) {
+      Assert.assertEquals(BERDecoderTest.EXPECTED_CDR, parseCDR(parser, asn1Specification));
+      Assert.assertEquals(BERDecoderTest.EXPECTED_CDR, BERDecoderTest.decodeCDR(instance, skipSpecification, buffer));
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < loops; i++) {
+      parseCDR(parser, asn1Specification);
+    }
+    long parserTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < loops; i++) {
+      BERDecoderTest.decodeCDR(instance, skipSpecification, buffer);
+    }
+    long decoderTime = System.nanoTime() - start;
+
+    System.out.println("Decoded " + loops + " CDRs: ASN1Parser " + (parserTime / 1000000) + "ms, BERDecoder " + (decoderTime / 1000000) + "ms");
+  }
+
+  /**
+   * Decode the CDR with the ASN1Parser, as ASN1ParserTest does.
+   */
+  private static String parseCDR(ASN1Parser parser, HuaweiDef asn1Specification) throws Exception {
+    StringBuilder recordContents = new StringBuilder();
+    parser.setDataToParse(BERDecoderTest.TEST_CDR);
+
+    Asn1Class output = parser.readNextElement();
+    String cdrType = parser.parseBytes(output.getOrigValue());
+    recordContents.append(asn1Specification.getCDRName(cdrType)).append(";");
+
+    while (parser.ready()) {
+      output = parser.readNextElement();
+      String tagIndex = cdrType + ";" + output.getRawTag();
+      if (output.isConstructed()) {
+        parser.readBlock(output.getLength());
+      }
+
+      if (asn1Specification.getTagType(tagIndex) >= 0) {
+        recordContents.append("{").append(asn1Specification.getTagName(tagIndex)).append("=").append(parser.parseASN1(asn1Specification.getTagType(tagIndex), output.getOrigValue())).append("};");
+      }
+    }
+
+    return recordContents.toString();
+  }
+}
@@ -0,0 +1,197 @@
+package OpenRate.parser;
+
+import OpenRate.exception.ASN1Exception;
+import java.nio.ByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the cursor style BER decoder against the ASN1Parser, using the captured
+ * Huawei CDR and definition of ASN1ParserTest.
+ */
+public class BERDecoderTest {
+
+  // The captured CDR from ASN1ParserTest
+  static final byte[] TEST_CDR = {
+    -128, 1, 7, -127, 7, -111, 50, -107, -103, -103, 25, -16, -126, 8, 38, 2, 3, 17, 70, 9,
+    18, -9, -125, 8, 83, 20, 84, 64, 36, 96, 73, -16, -124, 7, -111, 50, -107, 35, -121, 82,
+    -13, -123, 3, 51, 89, -128, -122, 7, -111, 50, -107, -103, -103, 9, -15, -89, 8, -128, 2, 36,
+    84, -127, 2, 6, -99, -120, 9, 18, 18, 49, 35, 67, 72, 43, 1, 0, -117, 1, 2, -65,
+    -127, 2, 3, -125, 1, 33, -65, -127, 5, 3, -128, 1, 2, -97, -127, 13, 1, 1, -97, -127,
+    39, 2, 43, 9, -97, -127, 40, 2, -104, 8, -97, -127, 60, 7, 38, -14, 48, 36, 84, 6,
+    -99, -97, -127, 62, 1, 10, -97, -127, 64, 3, 38, -14, 48, -97, -127, 67, 1, -1, -97, -127,
+    73, 3, -95, 65, 65, -97, -127, 74, 5, 25, 10, 4, -22, 103, -97, -127, 104, 4, 107, -1,
+    -72, -1
+  };
+
+  // The fields of the captured CDR
+  static final String EXPECTED_CDR = "SMMT;{IMSI=260203114609127};{IMEI=531454402460490};{MSISDN=9132952387523};{Timestamp=1212312343482;0100};";
+
+  /**
+   * The Huawei definition, skipping the tags which it does not map.
+   */
+  static class SkippingHuaweiDef extends HuaweiDef implements IASN1SkipDef {
+
+    @Override
+    public boolean isTagSkipped(String tagId) {
+      return getTagType(tagId) < 0;
+    }
+  }
+
+  /**
+   * Test the headers of each of the elements against ASN1Parser.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testElements() throws Exception {
+    System.out.println("testElements");
+    HuaweiDef asn1Specification = new HuaweiDef();
+    asn1Specification.initTags();
+
+    ASN1Parser parser = new ASN1Parser(asn1Specification);
+    BERDecoder instance = new BERDecoder(asn1Specification);
+    parser.setDataToParse(TEST_CDR);
+    instance.setDataToParse(TEST_CDR);
+
+    while (parser.ready()) {
+      Asn1Class expected = parser.readNextElement();
+      Assert.assertTrue(instance.next());
+
+      Assert.assertEquals(expected.getRawTag(), instance.getRawTagHex());
+      Assert.assertEquals(expected.getLength(), instance.getLength());
+      Assert.assertEquals(expected.isConstructed(), instance.isConstructed());
+      if (expected.isConstructed() == false) {
+        Assert.assertArrayEquals(expected.getOrigValue(), instance.getValueBytes());
+        Assert.assertEquals(parser.parseBytes(expected.getOrigValue()), instance.getValueAsHex());
+      }
+    }
+
+    Assert.assertFalse(instance.ready());
+    Assert.assertFalse(instance.next());
+  }
+
+  /**
+   * Test the decoding of the CDR, with the constructed elements stepped over
+   * by the caller, and skipped by the definition.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testParseCDR() throws Exception {
+    System.out.println("testParseCDR");
+    HuaweiDef asn1Specification = new HuaweiDef();
+    asn1Specification.initTags();
+    Assert.assertEquals(EXPECTED_CDR, decodeCDR(new BERDecoder(asn1Specification), asn1Specification, ByteBuffer.wrap(TEST_CDR)));
+
+    SkippingHuaweiDef skipSpecification = new SkippingHuaweiDef();
+    skipSpecification.initTags();
+    Assert.assertEquals(EXPECTED_CDR, decodeCDR(new BERDecoder(skipSpecification), skipSpecification, ByteBuffer.wrap(TEST_CDR)));
+
+    // the record in the middle of a larger buffer
+    ByteBuffer buffer = ByteBuffer.allocate(TEST_CDR.length + 20);
+    buffer.position(10);
+    buffer.put(TEST_CDR);
+    buffer.position(10);
+    buffer.limit(10 + TEST_CDR.length);
+    Assert.assertEquals(EXPECTED_CDR, decodeCDR(new BERDecoder(skipSpecification), skipSpecification, buffer));
+  }
+
+  /**
+   * Test the decoding of the values.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testValues() throws Exception {
+    System.out.println("testValues");
+    BERDecoder instance = new BERDecoder(new HuaweiDef());
+
+    instance.setDataToParse(new byte[]{0x02, 0x02, 0x01, 0x00, 0x02, 0x01, -1, 0x16, 0x02, 'o', 'k', 0x16, 0x01, -23, 0x00, 0x04, 0x00});
+
+    Assert.assertTrue(instance.next());
+    Assert.assertEquals(256, instance.getValueAsInt());
+    Assert.assertEquals("256", instance.getValue(ASN1Parser.INTEGER));
+    Assert.assertTrue(instance.next());
+    Assert.assertEquals(-1, instance.getValueAsLong());
+    Assert.assertTrue(instance.next());
+    Assert.assertEquals("ok", instance.getValue(ASN1Parser.IA5STRING));
+    Assert.assertTrue(instance.next());
+    Assert.assertEquals("", instance.getValue(ASN1Parser.IA5STRING));
+    Assert.assertTrue(instance.next());
+    Assert.assertTrue(instance.isNullTag());
+    Assert.assertTrue(instance.next());
+    Assert.assertEquals(0, instance.getLength());
+    Assert.assertFalse(instance.next());
+  }
+
+  /**
+   * Test the long tag and length forms.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testHeaders() throws Exception {
+    System.out.println("testHeaders");
+    BERDecoder instance = new BERDecoder(new HuaweiDef());
+
+    // 3 byte tag 130
+    instance.setDataToParse(new byte[]{-65, -127, 2, 0});
+    Assert.assertTrue(instance.next());
+    Assert.assertEquals(130, instance.getTag());
+    Assert.assertEquals("bf8102", instance.getRawTagHex());
+    Assert.assertEquals("07;bf8102", instance.getTagPath("07"));
+    Assert.assertTrue(instance.isConstructed());
+
+    // 3 byte length, stepped over
+    instance.setDataToParse(new byte[]{48, -125, 0, 0, 2, 4, 0, 5, 0});
+    Assert.assertTrue(instance.next());
+    Assert.assertEquals(2, instance.getLength());
+    instance.skipContents();
+    Assert.assertTrue(instance.next());
+    Assert.assertEquals(5, instance.getTag());
+    Assert.assertFalse(instance.next());
+
+    // the paths of the single byte tags are kept
+    instance.setDataToParse(new byte[]{-125, 0, -125, 0});
+    instance.next();
+    String path = instance.getTagPath("07");
+    instance.next();
+    Assert.assertSame(path, instance.getTagPath("07"));
+
+    // a value which runs off the end
+    instance.setDataToParse(new byte[]{4, 5, 1});
+    try {
+      instance.next();
+      Assert.fail("Expected an exception");
+    } catch (ASN1Exception ex) {
+      // expected
+    }
+  }
+
+  /**
+   * Decode the CDR with the BER decoder.
+   */
+  static String decodeCDR(BERDecoder instance, HuaweiDef asn1Specification, ByteBuffer buffer) throws ASN1Exception {
+    StringBuilder recordContents = new StringBuilder();
+    instance.setData(buffer);
+
+    instance.next();
+    String cdrType = instance.getValueAsHex();
+    recordContents.append(asn1Specification.getCDRName(cdrType)).append(";");
+
+    while (instance.nextField(cdrType)) {
+      String tagIndex = instance.getTagPath(cdrType);
+      instance.skipContents();
+
+      int tagType = asn1Specification.getTagType(tagIndex);
+      if (tagType >= 0) {
+        recordContents.append("{").append(asn1Specification.getTagName(tagIndex)).append("=");
+        instance.appendValue(tagType, recordContents);
+        recordContents.append("};");
+      }
+    }
+
+    return recordContents.toString();
+  }
+}
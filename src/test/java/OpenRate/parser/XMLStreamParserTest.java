@@ -0,0 +1,214 @@
+package OpenRate.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.stream.XMLStreamException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the streaming XML parser against the XMLParser, and the reuse of the
+ * XMLParser for many records.
+ */
+public class XMLStreamParserTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // A record in the format of the XMLFileInputAdapter documentation
+  private static final String CUSTOMER = "<customer customerId=\"20978\">\n"
+          + "<account>\n"
+          + "<number>1234</number>\n"
+          + "<pricePlan>Telefoni Bas - 0kr</pricePlan>\n"
+          + "<validFrom>2010-03-22</validFrom>\n"
+          + "<validTo>2010-08-20</validTo>\n"
+          + "</account>\n"
+          + "</customer>\n";
+
+  /**
+   * The client collecting the values of a record.
+   */
+  private static class Client implements IXmlParser {
+
+    Map<String, String> values = new LinkedHashMap<>();
+
+    @Override
+    public void setAttribute(String name, String value) {
+      values.put(name, value);
+    }
+  }
+
+  /**
+   * Check that the values of the records are the same as the XMLParser gives,
+   * with the records formatted on lines and all on one line.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testSameAsXMLParser() throws Exception {
+    System.out.println("testSameAsXMLParser");
+    Client expected = new Client();
+    XMLParser parser = new XMLParser(expected);
+    parser.parseXML(CUSTOMER, "record");
+    Assert.assertEquals("1234", expected.values.get("customer.account.number"));
+    Assert.assertEquals("Telefoni Bas - 0kr", expected.values.get("customer.account.pricePlan"));
+
+    String file = "<?xml version=\"1.0\"?>\n<customers>\n" + CUSTOMER + CUSTOMER.replace("\n", "") + "</customers>\n";
+
+    Client client = new Client();
+    XMLStreamParser instance = new XMLStreamParser(client);
+    instance.open(new ByteArrayInputStream(file.getBytes(UTF8)));
+
+    for (int i = 0; i < 2; i++) {
+      client.values.clear();
+      Assert.assertTrue(instance.nextRecord("customer"));
+      Assert.assertEquals(values(expected, "customer.account."), values(client, "customer.account."));
+      Assert.assertTrue(client.values.containsKey("customer.account"));
+      Assert.assertFalse(client.values.containsKey("customer"));
+    }
+
+    Assert.assertFalse(instance.nextRecord("customer"));
+    Assert.assertFalse(instance.nextRecord("customer"));
+    instance.close();
+  }
+
+  /**
+   * Check the text handling: entities, CDATA, comments, characters outside
+   * ASCII and an encoding given in the XML declaration.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testText() throws Exception {
+    System.out.println("testText");
+    String file = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+            + "<records><!-- first --><record><a>x &amp; y</a><b><![CDATA[<raw>]]></b>"
+            + "<c>caf\u00e9</c><d/></record></records>";
+
+    Client client = new Client();
+    XMLStreamParser instance = new XMLStreamParser(client);
+    instance.open(new ByteArrayInputStream(file.getBytes(Charset.forName("ISO-8859-1"))));
+
+    Assert.assertTrue(instance.nextRecord("record"));
+    Assert.assertEquals("x & y", client.values.get("record.a"));
+    Assert.assertEquals("<raw>", client.values.get("record.b"));
+    Assert.assertEquals("caf\u00e9", client.values.get("record.c"));
+    Assert.assertEquals("", client.values.get("record.d"));
+    Assert.assertFalse(instance.nextRecord("record"));
+  }
+
+  /**
+   * Check that a broken or truncated stream is reported.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testErrors() throws Exception {
+    System.out.println("testErrors");
+    String[] files = {
+      "<records><record><a>1</b></record></records>",
+      "<records><record><a>1</a>"
+    };
+
+    for (String file : files) {
+      XMLStreamParser instance = new XMLStreamParser(new Client());
+      instance.open(new ByteArrayInputStream(file.getBytes(UTF8)));
+
+      try {
+        instance.nextRecord("record");
+        Assert.fail("Expected an exception for " + file);
+      } catch (XMLStreamException ex) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Stream a large number of records without holding the file in memory, and
+   * check that each record is complete.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testLargeStream() throws Exception {
+    System.out.println("testLargeStream");
+    final int records = 100000;
+
+    // build the stream from many small pieces as it is read
+    Enumeration<InputStream> body = new Enumeration<InputStream>() {
+      int next = 0;
+
+      @Override
+      public boolean hasMoreElements() {
+        return next <= records;
+      }
+
+      @Override
+      public InputStream nextElement() {
+        String piece = (next == records) ? "</records>" : "<record><id>" + next + "</id><value>v" + next + "</value></record>\n";
+        next++;
+        return new ByteArrayInputStream(piece.getBytes(UTF8));
+      }
+    };
+
+    Client client = new Client();
+    XMLStreamParser instance = new XMLStreamParser(client);
+    instance.open(new SequenceInputStream(new ByteArrayInputStream("<records>".getBytes(UTF8)), new SequenceInputStream(body)));
+
+    int count = 0;
+    while (instance.nextRecord("record")) {
+      Assert.assertEquals(String.valueOf(count), client.values.get("record.id"));
+      Assert.assertEquals("v" + count, client.values.get("record.value"));
+      count++;
+    }
+    Assert.assertEquals(records, count);
+  }
+
+  /**
+   * Check that the XMLParser gives the same values when it is reused.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testXMLParserReuse() throws Exception {
+    System.out.println("testXMLParserReuse");
+    Client client = new Client();
+    XMLParser parser = new XMLParser(client);
+
+    for (int i = 0; i < 3; i++) {
+      client.values.clear();
+      parser.parseXML("<record><id>" + i + "</id><name>caf\u00e9</name></record>", "record");
+      Assert.assertEquals(String.valueOf(i), client.values.get("record.id"));
+      Assert.assertEquals("caf\u00e9", client.values.get("record.name"));
+    }
+
+    // a broken record does not affect the next one
+    try {
+      parser.parseXML("<record><id>1</name></record>", "record");
+      Assert.fail("Expected an exception");
+    } catch (Exception ex) {
+      // expected
+    }
+
+    client.values.clear();
+    parser.parseXML("<record><id>9</id></record>", "record");
+    Assert.assertEquals("9", client.values.get("record.id"));
+  }
+
+  /**
+   * Get the values of the client with keys starting with the prefix.
+   */
+  private static Map<String, String> values(Client client, String prefix) {
+    Map<String, String> result = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : client.values.entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+}
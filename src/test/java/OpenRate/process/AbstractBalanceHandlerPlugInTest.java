@@ -66,6 +66,7 @@ import OpenRate.lang.Counter;
 import OpenRate.lang.DiscountInformation;
 import OpenRate.record.BalanceImpact;
 import OpenRate.record.IRecord;
+import OpenRate.record.RUMRegistry;
 import OpenRate.transaction.ITransactionManager;
 import OpenRate.transaction.TransactionManagerFactory;
 import OpenRate.utils.ConversionUtils;
@@ -75,6 +76,7 @@ import java.net.URL;
 import java.sql.Connection;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.*;
 import TestUtils.FrameworkUtils;
 
@@ -728,6 +730,55 @@ public class AbstractBalanceHandlerPlugInTest implements IPlugIn
         Assert.assertEquals(rumValue2,balImp4.rumValueAfter,0.000001);
     }
 
+    /**
+     * Test that discountAggregateRUM from several threads on the same balance
+     * groups loses no updates.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testConcurrentDiscountAggregateRUM() throws InterruptedException {
+        System.out.println("concurrentDiscountAggregateRUM");
+
+        final long UTCBalanceStartValidity = ConversionUtils.getConversionUtilsObject().getUTCDayStart(new Date());
+        final long UTCBalanceEndValidity = ConversionUtils.getConversionUtilsObject().getUTCDayEnd(new Date());
+        final int updates = 2000;
+        final int rumId = RUMRegistry.getId("RUM");
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updates; i++) {
+                        TestRatingRecord CurrentRecord = new TestRatingRecord();
+                        CurrentRecord.setRUMValue(rumId, 1.0);
+                        CurrentRecord.utcEventDate = UTCBalanceStartValidity;
+
+                        DiscountInformation result = instance.discountAggregateRUM(CurrentRecord, "TestDiscount", 1100L + (i % 4), rumId, 100000, 0.0, UTCBalanceStartValidity, UTCBalanceEndValidity);
+                        if (!result.isDiscountApplied()) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(0, errors.get());
+
+        for (long BalanceGroupId = 1100L; BalanceGroupId < 1104L; BalanceGroupId++) {
+            BalanceGroup balanceGroup = instance.getBalanceGroup(BalanceGroupId);
+            Assert.assertEquals(1, balanceGroup.getCounterGroup(100000).getCounters().size());
+            Assert.assertEquals(threads.length * updates / 4, instance.getCounterBalance(BalanceGroupId, 100000, UTCBalanceStartValidity, 0.0), 0.000001);
+        }
+    }
+
   // -----------------------------------------------------------------------------
   // ---------------- Start of abstract class stub functions ---------------------
   // -----------------------------------------------------------------------------
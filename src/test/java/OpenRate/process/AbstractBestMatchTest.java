@@ -91,7 +91,20 @@ public class AbstractBestMatchTest
   @BeforeClass
   public static void setUpClass() throws Exception
   {
-    FQConfigFileName = new URL("File:src/test/resources/TestBestMatchDB.properties.xml");
+    setUpEnvironment("TestBestMatchDB.properties.xml");
+  }
+
+ /**
+  * Set up the run time environment and the test data from the given
+  * properties file, so that the same tests can be run against differently
+  * configured caches.
+  *
+  * @param configFileName The properties file in the test resources
+  * @throws Exception
+  */
+  protected static void setUpEnvironment(String configFileName) throws Exception
+  {
+    FQConfigFileName = new URL("File:src/test/resources/" + configFileName);
     
     // Set up the OpenRate internal logger - this is normally done by app startup
     appl = OpenRate.getApplicationInstance();
@@ -68,6 +68,7 @@ import java.net.URL;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import org.junit.*;
@@ -100,7 +101,20 @@ public class AbstractDuplicateCheckTest
   @BeforeClass
   public static void setUpClass() throws Exception
   {
-    FQConfigFileName = new URL("File:src/test/resources/TestDuplicate.properties.xml");
+    setUpEnvironment("TestDuplicate.properties.xml");
+  }
+
+ /**
+  * Set up the run time environment and the test table from the given
+  * properties file, so that the same tests can be run against differently
+  * configured caches.
+  *
+  * @param configFileName The properties file in the test resources
+  * @throws Exception
+  */
+  protected static void setUpEnvironment(String configFileName) throws Exception
+  {
+    FQConfigFileName = new URL("File:src/test/resources/" + configFileName);
     
     // Set up the OpenRate internal logger - this is normally done by app startup
     appl = OpenRate.getApplicationInstance();
@@ -791,6 +805,84 @@ public class AbstractDuplicateCheckTest
     }    
   }
   
+  /**
+   * Test the block check, which checks the records older than the buffer
+   * limit against the database in one batch.
+   */
+  @Test
+  public void testCheckDuplicatesBlock()
+  {
+    boolean[] result = null;
+    int       oldTransNum;
+
+    System.out.println("testCheckDuplicatesBlock");
+
+    // Current date, 100 days ago (buffer limit is 90 days) and 200 days ago (store limit is 180 days)
+    long now = new Date().getTime() / 1000;
+    long old = now - 100 * 86400;
+    long tooOld = now - 200 * 86400;
+
+    String[] keys  = {"12334460", "12334461", "12334460", "12334461", "12334462", "12334463"};
+    long[]   dates = {now,        old,        now,        old,        old,        tooOld};
+
+    // Start a new transaction
+    transNumber = TransactionUtils.startTransactionPlugIn(instance);
+    System.out.println("testCheckDuplicatesBlock: Opened transaction <" + transNumber + ">");
+
+    try
+    {
+      result = instance.CheckDuplicates(dates, keys);
+    }
+    catch (ProcessingException ex)
+    {
+      message = "Unexpected processing exception in test <AbstractDuplicateCheckTest>";
+      Assert.fail(message);
+    }
+
+    Assert.assertEquals(Arrays.toString(new boolean[] {false, false, true, true, false, false}), Arrays.toString(result));
+
+    // Close the transaction
+    oldTransNum = transNumber;
+    transNumber = TransactionUtils.endTransactionPlugIn(instance,transNumber);
+    System.out.println("testCheckDuplicatesBlock: Closed transaction <" + oldTransNum + ">");
+
+    // Each key is stored once, the one older than the store limit not at all
+    Assert.assertEquals(1, getTableRowCount(false, "12334460"));
+    Assert.assertEquals(1, getTableRowCount(false, "12334461"));
+    Assert.assertEquals(1, getTableRowCount(false, "12334462"));
+    Assert.assertEquals(0, getTableRowCount(false, "12334463"));
+
+    // All are now duplicates in a new transaction, except the one too old to check
+    transNumber = TransactionUtils.startTransactionPlugIn(instance);
+    System.out.println("testCheckDuplicatesBlock: Opened transaction <" + transNumber + ">");
+
+    try
+    {
+      result = instance.CheckDuplicates(dates, keys);
+    }
+    catch (ProcessingException ex)
+    {
+      message = "Unexpected processing exception in test <AbstractDuplicateCheckTest>";
+      Assert.fail(message);
+    }
+
+    Assert.assertEquals(Arrays.toString(new boolean[] {true, true, true, true, true, false}), Arrays.toString(result));
+
+    oldTransNum = transNumber;
+    transNumber = TransactionUtils.endTransactionPlugIn(instance,transNumber);
+    System.out.println("testCheckDuplicatesBlock: Closed transaction <" + oldTransNum + ">");
+
+    // We have to wait for all flushing to be finished before we can move onto the next test
+    while (TransactionUtils.getOpenTransactionCount() > 0)
+    {
+      System.out.println("  Sleeping for 100mS to allow <"+TransactionUtils.getOpenTransactionCount()+"> transaction operations to close...");
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException ex) {
+      }
+    }
+  }
+
   /**
    * Stub out the calls to the implementation processing - we don't need these
    * for unit testing.
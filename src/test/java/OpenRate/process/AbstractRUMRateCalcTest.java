@@ -55,11 +55,13 @@
 package OpenRate.process;
 
 import OpenRate.OpenRate;
+import OpenRate.cache.RUMRateCache;
 import OpenRate.exception.InitializationException;
 import OpenRate.exception.ProcessingException;
 import OpenRate.record.ChargePacket;
 import OpenRate.record.IRecord;
 import OpenRate.record.TimePacket;
+import OpenRate.resource.CacheFactory;
 import OpenRate.utils.ConversionUtils;
 import TestUtils.FrameworkUtils;
 import TestUtils.TestRatingRecord;
@@ -725,6 +727,39 @@ public class AbstractRUMRateCalcTest {
     assertEquals(expResult, getRollUp(ratingRecord), 0.00001);
   }
 
+  /**
+   * Test that a shadow reload of the RUM rate cache publishes the RUM map and
+   * the price models together, while the data taken before the reload stays
+   * usable for the record being rated.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testShadowReloadPublishesRateData() throws Exception {
+    System.out.println("testShadowReloadPublishesRateData");
+    RUMRateCache cache = (RUMRateCache) CacheFactory.getGlobalManager("RUMRateTestCache").get("RUMRateTestCache");
+
+    Connection JDBCChcon = FrameworkUtils.getDBConnection("RUMRateTestCache");
+    JDBCChcon.prepareStatement("INSERT INTO TEST_PRICE_MODEL (ID,PRICE_MODEL,STEP,TIER_FROM,TIER_TO,BEAT,FACTOR,CHARGE_BASE,VALID_FROM) values (1,'TestModelShadow',1,0,999999,60,3,60,'2000-01-01')").execute();
+    JDBCChcon.prepareStatement("INSERT INTO TEST_RUM_MAP (ID,PRICE_GROUP,STEP,PRICE_MODEL,RUM,RESOURCE,RESOURCE_ID,RUM_TYPE,CONSUME_FLAG) VALUES (1,'TestModelShadow',1,'TestModelShadow','DUR','EUR',978,'TIERED',0)").execute();
+
+    RUMRateCache.RateData oldData = cache.getRateData();
+    Assert.assertNull(oldData.getRUMMap("TestModelShadow"));
+
+    cache.shadowReloadData();
+
+    RUMRateCache.RateData newData = cache.getRateData();
+    Assert.assertNotSame(oldData, newData);
+    Assert.assertEquals(1, newData.getRUMMap("TestModelShadow").size());
+    Assert.assertEquals(3.0, newData.getPriceModel("TestModelShadow").get(0).getFactor(), 0.00001);
+    Assert.assertNotNull(newData.getCompiledPriceModel("TestModelShadow"));
+
+    // the old data is complete in itself
+    Assert.assertNull(oldData.getRUMMap("TestModelShadow"));
+    Assert.assertNull(oldData.getPriceModel("TestModelShadow"));
+    Assert.assertNotNull(oldData.getCompiledPriceModel("TestModel1"));
+  }
+
   /**
    * Roll up the charged values from each of the charge packets.
    *
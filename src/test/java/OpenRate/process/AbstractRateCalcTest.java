@@ -57,12 +57,17 @@ package OpenRate.process;
 import OpenRate.OpenRate;
 import OpenRate.exception.InitializationException;
 import OpenRate.exception.ProcessingException;
+import OpenRate.record.CompiledPriceModel;
 import OpenRate.record.IRecord;
+import OpenRate.record.RateMapEntry;
+import OpenRate.record.RatingResult;
 import OpenRate.utils.ConversionUtils;
 import TestUtils.FrameworkUtils;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Random;
 import static org.junit.Assert.assertEquals;
 import org.junit.*;
 
@@ -879,6 +884,136 @@ public class AbstractRateCalcTest {
     result = instance.authCalculateEvent(priceModel, availableBalance, CDRDate);
     assertEquals(expResult, result, 0.0);
   }
+
+  /**
+   * Compare the evaluation of compiled price models with the evaluation of
+   * the list form, for random models with several tiers and validity
+   * versions, and random values, offsets and dates.
+   *
+   * @throws java.lang.Exception
+   */
+  @Test
+  public void testCompiledPriceModel() throws Exception {
+    System.out.println("compiledPriceModel");
+    Random random = new Random(1357);
+    RatingResult compiledResult = new RatingResult();
+
+    for (int model = 0; model < 200; model++) {
+      ArrayList<RateMapEntry> priceModel = randomPriceModel(random);
+      CompiledPriceModel compiled = new CompiledPriceModel(priceModel);
+
+      for (int i = 0; i < 500; i++) {
+        double valueToRate = (i % 5 == 0) ? random.nextInt(400) : random.nextDouble() * 400;
+        double valueOffset = (i % 3 == 0) ? 0 : random.nextInt(200);
+        long CDRDate = 1000 + random.nextInt(4000);
+
+        // Tiered
+        RatingResult expected = null;
+        try {
+          expected = instance.performRateEvaluationTiered("Test", priceModel, valueToRate, valueOffset, CDRDate, false);
+        } catch (ProcessingException ex) {
+          // checked below
+        }
+        try {
+          double result = instance.performRateEvaluationTiered("Test", compiled, valueToRate, valueOffset, CDRDate, compiledResult);
+          Assert.assertNotNull(expected);
+          assertEquals(expected.RatedValue, result, 0.0);
+          assertEquals(expected.RatedValue, compiledResult.RatedValue, 0.0);
+          assertEquals(expected.RUMUsed, compiledResult.RUMUsed, 0.0);
+          assertEquals(expected.RUMUsedRounded, compiledResult.RUMUsedRounded, 0.0);
+        } catch (ProcessingException ex) {
+          Assert.assertNull(expected);
+        }
+
+        // Threshold
+        expected = null;
+        try {
+          expected = instance.performRateEvaluationThreshold("Test", priceModel, valueToRate, valueOffset, CDRDate, false);
+        } catch (ProcessingException ex) {
+          // checked below
+        }
+        try {
+          instance.performRateEvaluationThreshold("Test", compiled, valueToRate, valueOffset, CDRDate, compiledResult);
+          Assert.assertNotNull(expected);
+          assertEquals(expected.RatedValue, compiledResult.RatedValue, 0.0);
+          assertEquals(expected.RUMUsed, compiledResult.RUMUsed, 0.0);
+        } catch (ProcessingException ex) {
+          Assert.assertNull(expected);
+        }
+
+        // Flat
+        expected = null;
+        try {
+          expected = instance.performRateEvaluationFlat("Test", priceModel, valueToRate, CDRDate, false);
+        } catch (ProcessingException ex) {
+          // checked below
+        }
+        try {
+          instance.performRateEvaluationFlat("Test", compiled, valueToRate, CDRDate, compiledResult);
+          Assert.assertNotNull(expected);
+          assertEquals(expected.RatedValue, compiledResult.RatedValue, 0.0);
+          assertEquals(expected.RUMUsed, compiledResult.RUMUsed, 0.0);
+        } catch (ProcessingException ex) {
+          Assert.assertNull(expected);
+        }
+
+        // Event
+        expected = null;
+        try {
+          expected = instance.performRateEvaluationEvent("Test", priceModel, (long) valueToRate, CDRDate, false);
+        } catch (ProcessingException ex) {
+          // checked below
+        }
+        try {
+          instance.performRateEvaluationEvent("Test", compiled, (long) valueToRate, CDRDate, compiledResult);
+          Assert.assertNotNull(expected);
+          assertEquals(expected.RatedValue, compiledResult.RatedValue, 0.0);
+          assertEquals(expected.RUMUsed, compiledResult.RUMUsed, 0.0);
+        } catch (ProcessingException ex) {
+          Assert.assertNull(expected);
+        }
+      }
+    }
+  }
+
+  /**
+   * Create a random price model with contiguous tiers, some of them
+   * singularities, and up to three validity versions of each tier.
+   */
+  private static ArrayList<RateMapEntry> randomPriceModel(Random random) {
+    ArrayList<RateMapEntry> priceModel = new ArrayList<>();
+    int tiers = 1 + random.nextInt(4);
+    double from = 0;
+
+    for (int step = 1; step <= tiers; step++) {
+      double to = (random.nextInt(4) == 0) ? from : from + 1 + random.nextInt(150);
+      RateMapEntry parent = null;
+      long startTime = 2000 + random.nextInt(1000);
+
+      for (int version = random.nextInt(3); version >= 0; version--) {
+        RateMapEntry tmpEntry = new RateMapEntry();
+        tmpEntry.setStep(step);
+        tmpEntry.setFrom(from);
+        tmpEntry.setTo(to);
+        tmpEntry.setBeat(1 + random.nextInt(60));
+        tmpEntry.setFactor(random.nextInt(100) / 10.0);
+        tmpEntry.setChargeBase(1 + random.nextInt(60));
+        tmpEntry.setStartTime(startTime);
+        startTime -= 1 + random.nextInt(1000);
+
+        if (parent == null) {
+          priceModel.add(tmpEntry);
+        } else {
+          parent.setChild(tmpEntry);
+        }
+        parent = tmpEntry;
+      }
+
+      from = to;
+    }
+
+    return priceModel;
+  }
   
   public class AbstractRateCalcImpl extends AbstractRateCalc {
 
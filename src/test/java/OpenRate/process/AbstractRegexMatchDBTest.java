@@ -81,7 +81,20 @@ public class AbstractRegexMatchDBTest
   @BeforeClass
   public static void setUpClass() throws Exception
   {
-    FQConfigFileName = new URL("File:src/test/resources/TestRegexDB.properties.xml");
+    setUpEnvironment("TestRegexDB.properties.xml");
+  }
+
+ /**
+  * Set up the run time environment and the test data from the given
+  * properties file, so that the same tests can be run against differently
+  * configured caches.
+  *
+  * @param configFileName The properties file in the test resources
+  * @throws Exception
+  */
+  protected static void setUpEnvironment(String configFileName) throws Exception
+  {
+    FQConfigFileName = new URL("File:src/test/resources/" + configFileName);
     
    // Set up the OpenRate internal logger - this is normally done by app startup
     appl = OpenRate.getApplicationInstance();
@@ -132,6 +145,12 @@ public class AbstractRegexMatchDBTest
     JDBCChcon.prepareStatement("INSERT INTO TEST_REGEX (MAP_GROUP,INPUT_VAL1,INPUT_VAL2,OUTPUT_VAL1,OUTPUT_VAL2,RANK) values ('NumericalMap','<1','=2','OK2','OUT2',2);").execute();
     JDBCChcon.prepareStatement("INSERT INTO TEST_REGEX (MAP_GROUP,INPUT_VAL1,INPUT_VAL2,OUTPUT_VAL1,OUTPUT_VAL2,RANK) values ('NumericalMap','=9.2','=9.2','OK3','OUT3',2);").execute();
 
+    // Create some records in the table for literal matching
+    JDBCChcon.prepareStatement("INSERT INTO TEST_REGEX (MAP_GROUP,INPUT_VAL1,INPUT_VAL2,OUTPUT_VAL1,OUTPUT_VAL2,RANK) values ('LiteralMap','.*','X','ANY_X','OUT1',1);").execute();
+    JDBCChcon.prepareStatement("INSERT INTO TEST_REGEX (MAP_GROUP,INPUT_VAL1,INPUT_VAL2,OUTPUT_VAL1,OUTPUT_VAL2,RANK) values ('LiteralMap','A','.*','LIT_A','OUT2',2);").execute();
+    JDBCChcon.prepareStatement("INSERT INTO TEST_REGEX (MAP_GROUP,INPUT_VAL1,INPUT_VAL2,OUTPUT_VAL1,OUTPUT_VAL2,RANK) values ('LiteralMap','B','Y','LIT_B','OUT3',3);").execute();
+    JDBCChcon.prepareStatement("INSERT INTO TEST_REGEX (MAP_GROUP,INPUT_VAL1,INPUT_VAL2,OUTPUT_VAL1,OUTPUT_VAL2,RANK) values ('LiteralMap','A.','Y','REGEX_A','OUT4',4);").execute();
+
     // Get the caches that we are using
     FrameworkUtils.startupCaches();
   }
@@ -195,6 +214,56 @@ public class AbstractRegexMatchDBTest
     Assert.assertEquals(expResult, result);
   }
 
+  /**
+   * Test of getRegexMatch method with literal values, which the compiled mode
+   * indexes. The first match must be the same as searching the entries in
+   * order, and repeated searches come from the recent results.
+   */
+  @Test
+  public void testGetRegexMatchLiteral()
+  {
+    String result;
+    String Group = "LiteralMap";
+
+    System.out.println("getRegexMatch (Literal) DB");
+
+    String[] searchParameters = new String[2];
+
+    for (int repeat = 0; repeat < 2; repeat++)
+    {
+      // The earlier non-literal entry wins over the literal one
+      searchParameters[0] = "A";
+      searchParameters[1] = "X";
+      result = instance.getRegexMatch(Group, searchParameters);
+      Assert.assertEquals("ANY_X", result);
+
+      searchParameters[1] = "Z";
+      result = instance.getRegexMatch(Group, searchParameters);
+      Assert.assertEquals("LIT_A", result);
+
+      searchParameters[0] = "B";
+      searchParameters[1] = "Y";
+      result = instance.getRegexMatch(Group, searchParameters);
+      Assert.assertEquals("LIT_B", result);
+
+      searchParameters[0] = "AB";
+      result = instance.getRegexMatch(Group, searchParameters);
+      Assert.assertEquals("REGEX_A", result);
+
+      searchParameters[0] = "C";
+      result = instance.getRegexMatch(Group, searchParameters);
+      Assert.assertEquals("NOMATCH", result);
+    }
+
+    // all of the entries, in order
+    searchParameters[0] = "A";
+    searchParameters[1] = "X";
+    ArrayList<String> allResults = instance.getAllEntries(Group, searchParameters);
+    Assert.assertEquals(2, allResults.size());
+    Assert.assertEquals("ANY_X", allResults.get(0));
+    Assert.assertEquals("LIT_A", allResults.get(1));
+  }
+
   /**
    * Test of getRegexMatch method, of class AbstractRegexMatch.
    */
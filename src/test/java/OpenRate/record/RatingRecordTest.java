@@ -0,0 +1,138 @@
+package OpenRate.record;
+
+import TestUtils.TestRatingRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the RUM handling of RatingRecord.
+ */
+public class RatingRecordTest
+{
+ /**
+  * Test the String based RUM methods.
+  */
+  @Test
+  public void testRUMValues()
+  {
+    System.out.println("testRUMValues");
+    RatingRecord instance = new TestRatingRecord();
+
+    Assert.assertEquals(0, instance.getRUMValue("DUR"), 0);
+    Assert.assertFalse(instance.updateRUMValue("DUR", 10));
+
+    instance.setRUMValue("DUR", 120);
+    instance.setRUMValue("EVT", 1);
+    Assert.assertEquals(120, instance.getRUMValue("DUR"), 0);
+    Assert.assertEquals(1, instance.getRUMValue("EVT"), 0);
+    Assert.assertEquals(2, instance.getRUMs().size());
+
+    Assert.assertTrue(instance.updateRUMValue("DUR", -20));
+    instance.setRUMValue("EVT", 5);
+    Assert.assertEquals(100, instance.getRUMValue("DUR"), 0);
+    Assert.assertEquals(120, instance.getOriginalRUMValue("DUR"), 0);
+    Assert.assertEquals(5, instance.getRUMValue("EVT"), 0);
+    Assert.assertEquals(1, instance.getOriginalRUMValue("EVT"), 0);
+    Assert.assertEquals(0, instance.getRUMValue("UnknownRUMName"), 0);
+    Assert.assertEquals(2, instance.getRUMs().size());
+  }
+
+ /**
+  * Test the ID based RUM methods, and that they see the same values as the
+  * String based methods.
+  */
+  @Test
+  public void testRUMValuesById()
+  {
+    System.out.println("testRUMValuesById");
+    RatingRecord instance = new TestRatingRecord();
+    int durId = RUMRegistry.getId("DUR");
+    int volId = RUMRegistry.getId("VOL");
+
+    Assert.assertEquals("DUR", RUMRegistry.getName(durId));
+    Assert.assertEquals(durId, RUMRegistry.findId("DUR"));
+    Assert.assertEquals(-1, RUMRegistry.findId("NeverRegisteredName"));
+
+    instance.setRUMValue(durId, 60);
+    instance.setRUMValue("VOL", 1024);
+    Assert.assertEquals(60, instance.getRUMValue("DUR"), 0);
+    Assert.assertEquals(1024, instance.getRUMValue(volId), 0);
+
+    Assert.assertTrue(instance.updateRUMValue(volId, -24));
+    Assert.assertEquals(1000, instance.getRUMValue("VOL"), 0);
+    Assert.assertEquals(1024, instance.getOriginalRUMValue(volId), 0);
+    Assert.assertFalse(instance.updateRUMValue(RUMRegistry.getId("EVT"), 1));
+  }
+
+ /**
+  * Test that a RUM set by a name that is not registered does not register the
+  * name, and is still found by ID once the name is registered.
+  */
+  @Test
+  public void testUnregisteredRUMName()
+  {
+    System.out.println("testUnregisteredRUMName");
+    RatingRecord instance = new TestRatingRecord();
+    int sizeBefore = RUMRegistry.size();
+
+    instance.setRUMValue("RecordDataRUM", 5);
+    Assert.assertEquals(-1, RUMRegistry.findId("RecordDataRUM"));
+    Assert.assertEquals(sizeBefore, RUMRegistry.size());
+    Assert.assertEquals(5, instance.getRUMValue("RecordDataRUM"), 0);
+    Assert.assertTrue(instance.updateRUMValue("RecordDataRUM", 1));
+    Assert.assertEquals(6, instance.getRUMValue("RecordDataRUM"), 0);
+
+    int rumId = RUMRegistry.getId("RecordDataRUM");
+    Assert.assertEquals(6, instance.getRUMValue(rumId), 0);
+    Assert.assertTrue(instance.updateRUMValue(rumId, -2));
+    Assert.assertEquals(4, instance.getRUMValue("RecordDataRUM"), 0);
+    Assert.assertEquals(5, instance.getOriginalRUMValue(rumId), 0);
+
+    // the RUM list is a copy
+    Assert.assertEquals(1, instance.getRUMs().size());
+    instance.getRUMs().clear();
+    Assert.assertEquals(4, instance.getRUMValue(rumId), 0);
+  }
+
+ /**
+  * Test the impact totals.
+  */
+  @Test
+  public void testTotalImpacts()
+  {
+    System.out.println("testTotalImpacts");
+    RatingRecord instance = new TestRatingRecord();
+    int eurId = RUMRegistry.getId("EUR");
+    int minId = RUMRegistry.getId("MIN");
+
+    addPacket(instance, "EUR", 1.5, true);
+    addPacket(instance, "EUR", 2.0, true);
+    addPacket(instance, "EUR", 100, false);
+    addPacket(instance, "MIN", 3, true);
+
+    ChargePacket tmpCP = instance.newChargePacket();
+    tmpCP.setResource("EUR", eurId);
+    tmpCP.chargedValue = 0.5;
+    instance.addChargePacket(tmpCP);
+
+    Assert.assertEquals(4.0, instance.getTotalImpact("EUR"), 0.000001);
+    Assert.assertEquals(4.0, instance.getTotalImpact(eurId), 0.000001);
+
+    double[] totals = new double[RUMRegistry.size()];
+    instance.getTotalImpacts(totals);
+    Assert.assertEquals(4.0, totals[eurId], 0.000001);
+    Assert.assertEquals(3, totals[minId], 0.000001);
+  }
+
+ /**
+  * Add a charge packet with an impact
+  */
+  private static void addPacket(RatingRecord instance, String resource, double value, boolean valid)
+  {
+    ChargePacket tmpCP = instance.newChargePacket();
+    tmpCP.resource = resource;
+    tmpCP.chargedValue = value;
+    tmpCP.Valid = valid;
+    instance.addChargePacket(tmpCP);
+  }
+}
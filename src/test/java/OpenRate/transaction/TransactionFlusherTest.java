@@ -0,0 +1,320 @@
+package OpenRate.transaction;
+
+import OpenRate.logging.DefaultLogger;
+import OpenRate.logging.ILogger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for the commit scheduling of the TransactionFlusher, using a
+ * transaction manager stub with clients which record the calls they get.
+ */
+public class TransactionFlusherTest
+{
+  private static final TMDefs TMD = TMDefs.getTMDefs();
+
+ /**
+  * Run the phases in parallel, and check that the phases do not overlap.
+  */
+  @Test
+  public void testParallelPhases()
+  {
+    System.out.println("testParallelPhases");
+    StubTM tm = new StubTM(4, 50, -1);
+    TransactionFlusher instance = getInstance(tm, 4, true, 0);
+
+    TransactionInfo trans = addTransaction(instance, tm, 1);
+    instance.updateTransactionStatus();
+
+    Assert.assertEquals("[1]", tm.closed.toString());
+    Assert.assertEquals(0, instance.getFlushedTransactionCount());
+    Assert.assertEquals(TMD.TM_CLOSED, trans.getTransactionStatus());
+    Assert.assertTrue(tm.maxConcurrent.get() > 1);
+
+    // every client sees flush, commit and close, with no overlap of phases
+    List<String> calls = tm.calls;
+    for (int i = 0; i < calls.size(); i++)
+    {
+      String expected = (i < 4) ? "Flush" : (i < 8) ? "Commit" : "Close";
+      Assert.assertTrue(calls.toString(), calls.get(i).startsWith(expected));
+    }
+    Assert.assertEquals(12, calls.size());
+
+    for (int client = 1; client <= 4; client++)
+    {
+      Assert.assertEquals(1, instance.getPhaseCalls(TransactionFlusher.PHASE_FLUSH, client));
+      Assert.assertEquals(1, instance.getPhaseCalls(TransactionFlusher.PHASE_COMMIT, client));
+      Assert.assertEquals(0, instance.getPhaseCalls(TransactionFlusher.PHASE_ROLLBACK, client));
+      Assert.assertTrue(instance.getPhaseMaxNanos(TransactionFlusher.PHASE_FLUSH, client) >= TimeUnit.MILLISECONDS.toNanos(40));
+      Assert.assertTrue(instance.getPhaseTotalNanos(TransactionFlusher.PHASE_FLUSH, client) >=
+                        instance.getPhaseMaxNanos(TransactionFlusher.PHASE_FLUSH, client));
+    }
+    Assert.assertTrue(instance.getPhaseStatistics().contains("Client <4> (StubClient) Commit: calls <1>"));
+  }
+
+ /**
+  * A client which is too slow in the flush phase makes the transaction roll
+  * back.
+  */
+  @Test
+  public void testPhaseTimeout()
+  {
+    System.out.println("testPhaseTimeout");
+    StubTM tm = new StubTM(3, 0, 2);
+    TransactionFlusher instance = getInstance(tm, 3, true, 50);
+
+    addTransaction(instance, tm, 1);
+    instance.updateTransactionStatus();
+
+    Assert.assertEquals("[1]", tm.closed.toString());
+    for (int client = 1; client <= 3; client++)
+    {
+      Assert.assertEquals(0, instance.getPhaseCalls(TransactionFlusher.PHASE_COMMIT, client));
+      Assert.assertEquals(1, instance.getPhaseCalls(TransactionFlusher.PHASE_ROLLBACK, client));
+    }
+  }
+
+ /**
+  * A client which hangs in the flush phase does not block the flusher: the
+  * transaction rolls back and closes without it.
+  *
+  * @throws InterruptedException
+  */
+  @Test
+  public void testHungClient() throws InterruptedException
+  {
+    System.out.println("testHungClient");
+    StubTM tm = new StubTM(3, 0, -1);
+    tm.hungClient = 2;
+    TransactionFlusher instance = getInstance(tm, 3, true, 50);
+
+    try
+    {
+      addTransaction(instance, tm, 1);
+      long start = System.currentTimeMillis();
+      instance.updateTransactionStatus();
+
+      Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+      Assert.assertEquals("[1]", tm.closed.toString());
+      Assert.assertEquals(1, instance.getPhaseCalls(TransactionFlusher.PHASE_ROLLBACK, 1));
+      Assert.assertEquals(1, instance.getPhaseCalls(TransactionFlusher.PHASE_ROLLBACK, 3));
+      Assert.assertEquals(0, instance.getPhaseCalls(TransactionFlusher.PHASE_COMMIT, 1));
+    }
+    finally
+    {
+      tm.release.countDown();
+    }
+  }
+
+ /**
+  * Ordered transactions close in turn, independent ones do not wait for a
+  * slow transaction.
+  *
+  * @throws InterruptedException
+  */
+  @Test
+  public void testTransactionOrdering() throws InterruptedException
+  {
+    System.out.println("testTransactionOrdering");
+    StubTM tm = new StubTM(2, 0, -1);
+    tm.slowTransaction = 1;
+    TransactionFlusher instance = getInstance(tm, 2, true, 0);
+
+    addTransaction(instance, tm, 1);
+    addTransaction(instance, tm, 2);
+    instance.updateTransactionStatus();
+    Assert.assertEquals("[1, 2]", tm.closed.toString());
+
+    tm = new StubTM(2, 0, -1);
+    tm.slowTransaction = 3;
+    tm.closeLatch = new CountDownLatch(2);
+    instance = getInstance(tm, 4, false, 0);
+
+    addTransaction(instance, tm, 3);
+    addTransaction(instance, tm, 4);
+    instance.updateTransactionStatus();
+    Assert.assertTrue(tm.closeLatch.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals("[4, 3]", tm.closed.toString());
+
+    // the transaction leaves the flush list just after it is closed
+    Assert.assertTrue(instance.waitForFlushedTransactions(10000));
+    Assert.assertEquals(0, instance.getFlushedTransactionCount());
+  }
+
+ /**
+  * Create a flusher for the stub transaction manager.
+  */
+  private static TransactionFlusher getInstance(StubTM tm, int commitThreads, boolean orderedCommit, long phaseTimeout)
+  {
+    TransactionFlusher instance = new TransactionFlusher();
+    instance.setTMReference(tm);
+    instance.setPipelineName("TestPipe");
+    instance.setLogger(tm.getPipeLog());
+    instance.setCommitScheduling(commitThreads, orderedCommit, phaseTimeout);
+    return instance;
+  }
+
+ /**
+  * Add a transaction with all clients flushed to the flusher.
+  */
+  private static TransactionInfo addTransaction(TransactionFlusher instance, StubTM tm, int transNumber)
+  {
+    TransactionInfo trans = new TransactionInfo();
+    trans.setTransactionNumber(transNumber);
+    for (int i = 1; i <= tm.clients.length; i++)
+    {
+      trans.setClientStatus(i, TMD.TM_FLUSHED);
+    }
+    instance.addTransactionToFlushList(trans);
+    return trans;
+  }
+
+ /**
+  * Transaction manager with stub clients. The overall status is the lowest
+  * client status, as in the transaction manager.
+  */
+  private static class StubTM extends TransactionManager
+  {
+    private final ILogger log = new DefaultLogger();
+    private final StubClient[] clients;
+    final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+    final List<Integer> closed = Collections.synchronizedList(new ArrayList<Integer>());
+    final AtomicInteger concurrent = new AtomicInteger();
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+    volatile int slowTransaction = -1;
+    volatile int hungClient = -1;
+    final CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch closeLatch = new CountDownLatch(0);
+
+    StubTM(int clientCount, long delay, int slowFlushClient)
+    {
+      clients = new StubClient[clientCount];
+      for (int i = 0; i < clientCount; i++)
+      {
+        clients[i] = new StubClient(this, i + 1, delay, (i + 1 == slowFlushClient) ? 300 : delay);
+      }
+    }
+
+    @Override
+    int getClientCount()
+    {
+      return clients.length;
+    }
+
+    @Override
+    public ITMClient getClient(int i)
+    {
+      return clients[i - 1];
+    }
+
+    @Override
+    public synchronized int getOverallStatus(int transNumber, TransactionInfo cachedTrans)
+    {
+      int status = TMD.TM_CLOSED;
+      for (int i = 1; i <= clients.length; i++)
+      {
+        status = Math.min(status, cachedTrans.getClientStatus(i));
+      }
+      cachedTrans.setTransactionStatus(status);
+      return status;
+    }
+
+    @Override
+    public void closeTransaction(int transNumber)
+    {
+      closed.add(transNumber);
+      closeLatch.countDown();
+    }
+
+    @Override
+    protected ILogger getPipeLog()
+    {
+      return log;
+    }
+  }
+
+ /**
+  * Client which records the calls and takes a while over the flush and commit.
+  */
+  private static class StubClient implements ITMClient
+  {
+    private final StubTM tm;
+    private final int number;
+    private final long delay;
+    private final long flushDelay;
+
+    StubClient(StubTM tm, int number, long delay, long flushDelay)
+    {
+      this.tm = tm;
+      this.number = number;
+      this.delay = delay;
+      this.flushDelay = flushDelay;
+    }
+
+    @Override
+    public boolean updateTransactionStatusFlush(int transactionNumber)
+    {
+      if (number == tm.hungClient)
+      {
+        // hang, ignoring interrupts, until the test lets us go
+        boolean released = false;
+        while (!released)
+        {
+          try
+          {
+            released = tm.release.await(10, TimeUnit.SECONDS);
+          }
+          catch (InterruptedException ex)
+          {
+            // ignore
+          }
+        }
+      }
+      work("Flush", transactionNumber, flushDelay);
+      return true;
+    }
+
+    @Override
+    public void updateTransactionStatusCommit(int transactionNumber)
+    {
+      work("Commit", transactionNumber, (transactionNumber == tm.slowTransaction) ? 300 : delay);
+    }
+
+    @Override
+    public void updateTransactionStatusRollback(int transactionNumber)
+    {
+      work("Rollback", transactionNumber, 0);
+    }
+
+    @Override
+    public void updateTransactionStatusClose(int transactionNumber)
+    {
+      work("Close", transactionNumber, 0);
+    }
+
+    private void work(String phase, int transactionNumber, long millis)
+    {
+      int now = tm.concurrent.incrementAndGet();
+      synchronized (tm.maxConcurrent)
+      {
+        tm.maxConcurrent.set(Math.max(tm.maxConcurrent.get(), now));
+      }
+      try
+      {
+        Thread.sleep(millis);
+      }
+      catch (InterruptedException ex)
+      {
+        // ignore
+      }
+      tm.calls.add(phase + " " + number + " " + transactionNumber);
+      tm.concurrent.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package OpenRate.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Benchmark of DateConversionEngine and ZoneOffsetCache against the shared
+ * SimpleDateFormat and Calendar which ConversionUtils used before. This takes
+ * some seconds, so it is not named as a unit test and is not part of the
+ * normal test run. Run it on its own with
+ * "mvn test -Dtest=DateConversionEngineBenchmark".
+ */
+public class DateConversionEngineBenchmark
+{
+  // the number of dates used in the benchmark
+  private static final int BENCHMARK_DATES = 500000;
+
+ /**
+  * Compare the rate of parsing and taking the day of week and minute of day
+  * with the shared SimpleDateFormat and Calendar used before. This reports the
+  * figures but only asserts the results are the same, as the timings depend
+  * on the machine.
+  *
+  * @throws ParseException
+  */
+  @Test
+  public void testBenchmarkAgainstSimpleDateFormat() throws ParseException
+  {
+    System.out.println("testBenchmarkAgainstSimpleDateFormat");
+    String pattern = "yyyyMMddHHmmss";
+    SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+    sdf.setLenient(false);
+    Calendar cal = new GregorianCalendar();
+    DateConversionEngine engine = new DateConversionEngine(pattern, false);
+    ZoneOffsetCache zoneOffsets = ZoneOffsetCache.getInstance(TimeZone.getDefault());
+    String[] dates = new String[BENCHMARK_DATES];
+    Random random = new Random(42);
+
+    for (int i = 0; i < dates.length; i++)
+    {
+      // 2010 to 2020
+      dates[i] = sdf.format(new Date(1262304000000L + (long) (random.nextDouble() * 315532800000L)));
+    }
+
+    // warm up both, then time them
+    long sdfHash = legacyConversions(sdf, cal, dates);
+    long engineHash = engineConversions(engine, zoneOffsets, dates);
+    Assert.assertEquals(sdfHash, engineHash);
+
+    // take the best of a few runs
+    long sdfTime = Long.MAX_VALUE;
+    long engineTime = Long.MAX_VALUE;
+    for (int run = 0; run < 3; run++)
+    {
+      long start = System.nanoTime();
+      legacyConversions(sdf, cal, dates);
+      sdfTime = Math.min(sdfTime, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      engineConversions(engine, zoneOffsets, dates);
+      engineTime = Math.min(engineTime, System.nanoTime() - start);
+    }
+
+    System.out.println("  SimpleDateFormat/Calendar: conversions/s <" + (BENCHMARK_DATES * 1000000000L / Math.max(sdfTime, 1)) + ">");
+    System.out.println("  DateConversionEngine:      conversions/s <" + (BENCHMARK_DATES * 1000000000L / Math.max(engineTime, 1)) + ">");
+  }
+
+ /**
+  * Parse, get the day of week and minute of day, as ConversionUtils did.
+  */
+  private static long legacyConversions(SimpleDateFormat sdf, Calendar cal, String[] dates) throws ParseException
+  {
+    long hash = 0;
+    for (String date : dates)
+    {
+      long utc = sdf.parse(date).getTime() / 1000;
+      cal.setTimeInMillis(utc * 1000);
+      hash = hash * 31 + utc + cal.get(Calendar.DAY_OF_WEEK) + cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+    }
+    return hash;
+  }
+
+ /**
+  * Parse, get the day of week and minute of day using the engine.
+  */
+  private static long engineConversions(DateConversionEngine engine, ZoneOffsetCache zoneOffsets, String[] dates) throws ParseException
+  {
+    long hash = 0;
+    for (String date : dates)
+    {
+      long utc = engine.parseToUTC(date);
+      hash = hash * 31 + utc + zoneOffsets.getDayOfWeek(utc) + zoneOffsets.getMinuteOfDay(utc);
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,257 @@
+package OpenRate.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for DateConversionEngine and ZoneOffsetCache. The results are
+ * checked against SimpleDateFormat and GregorianCalendar, including zones with
+ * unusual daylight savings rules. The speed comparison with the shared
+ * SimpleDateFormat and Calendar which ConversionUtils used before is in
+ * DateConversionEngineBenchmark.
+ */
+public class DateConversionEngineTest
+{
+  // the zones we check
+  private static final String[] ZONES = {"UTC", "Europe/Zurich", "America/New_York",
+                                         "Australia/Lord_Howe", "Pacific/Apia", "Asia/Kolkata"};
+
+  // the patterns we check, the last is not fixed width
+  private static final String[] PATTERNS = {"yyyyMMddHHmmss", "yyyy-MM-dd HH:mm:ss",
+                                            "dd.MM.yyyy HH:mm:ss.SSS", "yyyyMMddhhmmss"};
+
+ /**
+  * Parse and format random dates and dates through 2011, every quarter hour
+  * on the days with a DST change and on the day Samoa skipped, and compare
+  * the results with SimpleDateFormat.
+  *
+  * @throws ParseException
+  */
+  @Test
+  public void testSameAsSimpleDateFormat() throws ParseException
+  {
+    System.out.println("testSameAsSimpleDateFormat");
+    Random random = new Random(1234);
+    long start2011 = 1293840000000L;
+
+    for (String zoneId : ZONES)
+    {
+      TimeZone zone = TimeZone.getTimeZone(zoneId);
+
+      for (String pattern : PATTERNS)
+      {
+        DateConversionEngine instance = new DateConversionEngine(pattern, zone, false);
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+        sdf.setTimeZone(zone);
+        sdf.setLenient(false);
+
+        for (int i = 0; i < 1000; i++)
+        {
+          // 1960 to 2110
+          checkDate(instance, sdf, -315619200000L + (long) (random.nextDouble() * 4733510400000L));
+        }
+
+        for (long day = start2011; day < start2011 + 365 * 86400000L; day += 86400000L)
+        {
+          // every quarter hour on the days the offset changes, otherwise
+          // a few times a day at varying times
+          long step = (zone.getOffset(day) == zone.getOffset(day + 86400000L)) ? 11700000 : 900000;
+
+          for (long date = day; date < day + 86400000L; date += step)
+          {
+            checkDate(instance, sdf, date + random.nextInt(1000));
+          }
+        }
+      }
+    }
+  }
+
+ /**
+  * Check that the engine formats a date as SimpleDateFormat does, and parses
+  * the formatted string to the same date, or rejects it if SimpleDateFormat
+  * does.
+  */
+  private static void checkDate(DateConversionEngine instance, SimpleDateFormat sdf, long date)
+    throws ParseException
+  {
+    String expectedString = sdf.format(new Date(date));
+    Assert.assertEquals(expectedString, instance.format(date));
+
+    long expectedDate;
+    try
+    {
+      expectedDate = sdf.parse(expectedString).getTime();
+    }
+    catch (ParseException ex)
+    {
+      // a 12 hour time may land in a DST gap, so it must be rejected too
+      try
+      {
+        instance.parseToUTC(expectedString);
+        Assert.fail("Expected ParseException for " + expectedString);
+      }
+      catch (ParseException expected)
+      {
+        return;
+      }
+      throw ex;
+    }
+
+    Assert.assertEquals(expectedString, expectedDate / 1000, instance.parseToUTC(expectedString));
+    Assert.assertEquals(expectedString, expectedDate, instance.parse(expectedString).getTime());
+  }
+
+ /**
+  * Check that invalid dates are rejected, and that values which are not in
+  * the fixed width form are still handled as SimpleDateFormat handles them.
+  *
+  * @throws ParseException
+  */
+  @Test
+  public void testInvalidAndNonFixedWidth() throws ParseException
+  {
+    System.out.println("testInvalidAndNonFixedWidth");
+    TimeZone zone = TimeZone.getTimeZone("Europe/Zurich");
+    DateConversionEngine strict = new DateConversionEngine("yyyy-MM-dd HH:mm:ss", zone, false);
+    DateConversionEngine lenient = new DateConversionEngine("yyyy-MM-dd HH:mm:ss", zone, true);
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    sdf.setTimeZone(zone);
+    sdf.setLenient(true);
+
+    String[] invalid = {"2012-13-01 00:00:00", "2012-02-30 00:00:00", "2012-01-01 24:00:00",
+                        "2011-02-29 12:00:00", "2012-01-01 00:60:00", "2012/01/01 00:00:00", "nonsense"};
+
+    for (String value : invalid)
+    {
+      try
+      {
+        strict.parseToUTC(value);
+        Assert.fail("Expected ParseException for " + value);
+      }
+      catch (ParseException ex)
+      {
+        // expected
+      }
+    }
+
+    // lenient parsing rolls over, as SimpleDateFormat does
+    Assert.assertEquals(sdf.parse("2012-13-01 00:00:00").getTime() / 1000, lenient.parseToUTC("2012-13-01 00:00:00"));
+
+    // not padded, and trailing text, are accepted by SimpleDateFormat
+    Assert.assertEquals(sdf.parse("2012-1-5 3:04:05").getTime() / 1000, strict.parseToUTC("2012-1-5 3:04:05"));
+    Assert.assertEquals(sdf.parse("2012-01-05 03:04:05 CET").getTime() / 1000, strict.parseToUTC("2012-01-05 03:04:05 CET"));
+  }
+
+ /**
+  * Compare the day of week and minute of day with GregorianCalendar.
+  */
+  @Test
+  public void testDayOfWeekAndMinuteOfDay()
+  {
+    System.out.println("testDayOfWeekAndMinuteOfDay");
+    Random random = new Random(4321);
+
+    for (String zoneId : ZONES)
+    {
+      TimeZone zone = TimeZone.getTimeZone(zoneId);
+      ZoneOffsetCache instance = ZoneOffsetCache.getInstance(zone);
+      Calendar cal = new GregorianCalendar(zone);
+
+      for (int i = 0; i < 20000; i++)
+      {
+        // 1960 to 2110
+        long date = -315619200L + (long) (random.nextDouble() * 4733510400L);
+        cal.setTimeInMillis(date * 1000);
+
+        Assert.assertEquals(cal.get(Calendar.DAY_OF_WEEK), instance.getDayOfWeek(date));
+        Assert.assertEquals(cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE), instance.getMinuteOfDay(date));
+      }
+    }
+  }
+
+ /**
+  * Use one instance of ConversionUtils from several threads at once.
+  *
+  * @throws Exception
+  */
+  @Test
+  public void testConcurrentUse() throws Exception
+  {
+    System.out.println("testConcurrentUse");
+    final ConversionUtils instance = new ConversionUtils();
+    instance.setInputDateFormat("yyyy-MM-dd HH:mm:ss");
+    instance.setOutputDateFormat("yyyy-MM-dd HH:mm:ss");
+    final String[] dates = new String[10000];
+    final long[] expected = new long[dates.length];
+    final int[] expectedDay = new int[dates.length];
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    Calendar cal = new GregorianCalendar();
+    Random random = new Random(99);
+
+    for (int i = 0; i < dates.length; i++)
+    {
+      // 1960 to 2110, so that both paths are used
+      long date = (-315619200L + (long) (random.nextDouble() * 4733510400L)) * 1000;
+      dates[i] = sdf.format(new Date(date));
+      expected[i] = sdf.parse(dates[i]).getTime() / 1000;
+      cal.setTimeInMillis(expected[i] * 1000);
+      expectedDay[i] = cal.get(Calendar.DAY_OF_WEEK);
+    }
+
+    final AtomicInteger errors = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+
+    for (int t = 0; t < 4; t++)
+    {
+      final int offset = t;
+      Thread thread = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            for (int loop = 0; loop < 5; loop++)
+            {
+              for (int i = 0; i < dates.length; i++)
+              {
+                int index = (i * 7 + offset * 1013) % dates.length;
+                long result = instance.convertInputDateToUTC(dates[index]);
+                if (result != expected[index] ||
+                    instance.getDayOfWeek(result) != expectedDay[index] ||
+                    !dates[index].equals(instance.formatLongDate(result)) ||
+                    instance.getDayStart(instance.getDateFromUTC(result)).getTime() > result * 1000)
+                {
+                  errors.incrementAndGet();
+                }
+              }
+            }
+          }
+          catch (ParseException ex)
+          {
+            errors.incrementAndGet();
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+
+    for (Thread thread : threads)
+    {
+      thread.join();
+    }
+
+    Assert.assertEquals(0, errors.get());
+  }
+}